@@ -0,0 +1,75 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.jmh;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.IndexedTransactionalQueue;
+import org.tools4j.eventsourcing.mmap.MmapBuilder;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Queue and payload setup shared by the benchmarks.
+ */
+final class BenchmarkQueues {
+    static final String DIRECTORY = System.getProperty("java.io.tmpdir");
+    static final long MAX_FILE_SIZE = 4L * 1024 * 1024 * 1024;
+
+    static IndexedQueue queue(final String filePrefix,
+                              final RegionRingFactory regionRingFactory,
+                              final int regionSize) throws IOException {
+        return MmapBuilder.create()
+                .directory(DIRECTORY)
+                .filePrefix(filePrefix)
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize)
+                .maxFileSize(MAX_FILE_SIZE)
+                .buildQueue();
+    }
+
+    static IndexedTransactionalQueue transactionalQueue(final String filePrefix,
+                                                        final RegionRingFactory regionRingFactory,
+                                                        final int regionSize) throws IOException {
+        return MmapBuilder.create()
+                .directory(DIRECTORY)
+                .filePrefix(filePrefix)
+                .regionRingFactory(regionRingFactory)
+                .clearFiles(true)
+                .regionSize(regionSize)
+                .maxFileSize(MAX_FILE_SIZE)
+                .buildTransactionalQueue();
+    }
+
+    static UnsafeBuffer payload(final int payloadSize) {
+        final UnsafeBuffer payload = new UnsafeBuffer(ByteBuffer.allocateDirect(payloadSize));
+        for (int i = 0; i < payloadSize; i++) {
+            payload.putByte(i, (byte) ('a' + i % 26));
+        }
+        return payload;
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.jmh;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tools4j.eventsourcing.api.EventProcessingQueue;
+import org.tools4j.eventsourcing.api.IndexedMessageConsumer;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.mmap.RegionRingFactoryConfig;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.nobark.loop.Step;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end processing of an upstream event by the processor step of DefaultEventProcessingQueue:
+ * the event is appended to the upstream queue and the processor step is performed until the event is processed
+ * and the resulting downstream entry is committed. Queue files are recreated for each iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class EventProcessingQueueBenchmark {
+    @Param({"SYNC", "ASYNC"})
+    public String regionRingFactory;
+    @Param({"65536", "4194304"})
+    public int regionSize;
+    @Param({"64", "512"})
+    public int payloadSize;
+
+    private RegionRingFactory ringFactory;
+    private UnsafeBuffer payload;
+    private EventProcessingQueue queue;
+    private IndexedMessageConsumer appender;
+    private Step processorStep;
+    private long sourceSeq;
+    private long processedSourceSeq;
+
+    @Setup(Level.Trial)
+    public void setupTrial() {
+        ringFactory = RegionRingFactoryConfig.get(regionRingFactory);
+        ringFactory.onComplete();
+        payload = BenchmarkQueues.payload(payloadSize);
+    }
+
+    @Setup(Level.Iteration)
+    public void setupIteration() throws IOException {
+        sourceSeq = 0;
+        processedSourceSeq = 0;
+        queue = EventProcessingQueue.builder()
+                .upstreamQueue(BenchmarkQueues.queue("jmhUpstream", ringFactory, regionSize))
+                .downstreamQueue(BenchmarkQueues.transactionalQueue("jmhDownstream", ringFactory, regionSize))
+                .upstreamFactory(MessageConsumer.UpstreamFactory.PASS_THROUGH)
+                .downstreamFactory(MessageConsumer.DownstreamFactory.NO_OP)
+                .onUpstreamProcessingComplete((index, source, sourceSeq, eventTimeNanos) -> processedSourceSeq = sourceSeq)
+                .build();
+        appender = queue.appender();
+        processorStep = queue.processorStep();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() {
+        queue.close();
+    }
+
+    @Benchmark
+    public long process() {
+        sourceSeq++;
+        appender.accept(1, sourceSeq, sourceSeq, payload, 0, payloadSize);
+        while (processedSourceSeq < sourceSeq) {
+            processorStep.perform();
+        }
+        return processedSourceSeq;
+    }
+}
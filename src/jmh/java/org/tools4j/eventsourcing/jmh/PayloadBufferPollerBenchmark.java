@@ -0,0 +1,127 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.jmh;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tools4j.eventsourcing.api.IndexedClaimingAppender;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Transaction;
+import org.tools4j.eventsourcing.common.MultiPayloadAppender;
+import org.tools4j.eventsourcing.common.PayloadBufferPoller;
+import org.tools4j.eventsourcing.common.SinglePayloadAppender;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding single and multi payload messages with PayloadBufferPoller from an in-memory buffer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PayloadBufferPollerBenchmark {
+    @Param({"1", "4", "10"})
+    public int entries;
+    @Param({"64", "512"})
+    public int payloadSize;
+
+    private final PayloadBufferPoller bufferPoller = new PayloadBufferPoller();
+    private final BufferAppender singlePayloadBuffer = new BufferAppender();
+    private final BufferAppender multiPayloadBuffer = new BufferAppender();
+    private MessageConsumer consumer;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        final UnsafeBuffer payload = BenchmarkQueues.payload(payloadSize);
+
+        new SinglePayloadAppender(singlePayloadBuffer).accept(1, 1, 1, payload, 0, payloadSize);
+
+        final Transaction transaction = new MultiPayloadAppender(multiPayloadBuffer);
+        transaction.init(1, 1, 1, false);
+        for (int entry = 0; entry < entries; entry++) {
+            transaction.accept(payload, 0, payloadSize);
+        }
+        transaction.commit();
+
+        consumer = (buffer, offset, length) -> blackhole.consume(buffer.getByte(offset + length - 1));
+    }
+
+    @Benchmark
+    public int singlePayload() {
+        return bufferPoller.poll(singlePayloadBuffer.buffer, 0, singlePayloadBuffer.length, consumer);
+    }
+
+    @Benchmark
+    public int multiPayload() {
+        return bufferPoller.poll(multiPayloadBuffer.buffer, 0, multiPayloadBuffer.length, consumer);
+    }
+
+    /**
+     * Claiming appender encoding a message into an in-memory buffer.
+     */
+    private static final class BufferAppender implements IndexedClaimingAppender {
+        private final UnsafeBuffer buffer = new UnsafeBuffer(new byte[64 * 1024]);
+        private int length;
+
+        @Override
+        public MutableDirectBuffer claim(final int length) {
+            return extendClaim(length, 0);
+        }
+
+        @Override
+        public MutableDirectBuffer extendClaim(final int length, final int encodedLength) {
+            if (length > buffer.capacity()) {
+                throw new IllegalArgumentException("Message length " + length + " exceeds buffer capacity " + buffer.capacity());
+            }
+            return buffer;
+        }
+
+        @Override
+        public void commit(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+            this.length = length;
+        }
+
+        @Override
+        public void accept(final int source, final long sourceSeq, final long eventTimeNanos,
+                           final DirectBuffer buffer, final int offset, final int length) {
+            throw new UnsupportedOperationException("Messages are encoded by claim and commit");
+        }
+    }
+}
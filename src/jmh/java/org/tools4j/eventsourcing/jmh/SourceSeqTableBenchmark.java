@@ -0,0 +1,117 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.jmh;
+
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.collections.LongLongConsumer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.tools4j.eventsourcing.common.SourceSeqTable;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-source sequence lookups, updates and iteration with SourceSeqTable compared to Long2LongHashMap previously
+ * used by DefaultEventProcessingState. The update benchmarks put the sourceSeq of one source and iterate the sources,
+ * as done for each commit when pushing noops, the table iterating changed sources only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SourceSeqTableBenchmark {
+    private static final int LOOKUPS = 64;
+
+    @Param({"10", "1000", "10000"})
+    public int sources;
+
+    private final Long2LongHashMap map = new Long2LongHashMap(SourceSeqTable.MISSING_VALUE);
+    private final SourceSeqTable table = new SourceSeqTable();
+    private int[] lookupSources;
+    private LongLongConsumer consumer;
+    private int nextSource;
+    private long nextSeq;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        for (int source = 0; source < sources; source++) {
+            map.put(source, 1);
+            table.put(source, 1);
+        }
+        table.forEachChanged((source, sourceSeq) -> {});
+        lookupSources = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookupSources[i] = (int) ((i * 2654435761L) % sources);
+        }
+        consumer = (source, sourceSeq) -> blackhole.consume(sourceSeq);
+    }
+
+    @Benchmark
+    public long mapLookup() {
+        long sum = 0;
+        for (final int source : lookupSources) {
+            sum += map.get(source);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long tableLookup() {
+        long sum = 0;
+        for (final int source : lookupSources) {
+            sum += table.get(source);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void mapUpdateAndIterate() {
+        map.put(nextSource(), nextSeq);
+        map.longForEach(consumer);
+    }
+
+    @Benchmark
+    public void tableUpdateAndIterateChanged() {
+        table.put(nextSource(), nextSeq);
+        table.forEachChanged(consumer);
+    }
+
+    private int nextSource() {
+        nextSeq++;
+        nextSource = nextSource + 1 == sources ? 0 : nextSource + 1;
+        return nextSource;
+    }
+}
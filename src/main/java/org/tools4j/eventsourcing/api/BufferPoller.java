@@ -24,6 +24,7 @@
 package org.tools4j.eventsourcing.api;
 
 import org.agrona.DirectBuffer;
+import org.agrona.collections.LongLongConsumer;
 
 /**
  * Interfaces that allows to process multiple messages encoded in the message.
@@ -38,4 +39,19 @@ public interface BufferPoller {
      * @return number of processed encoded messages
      */
     int poll(DirectBuffer srcBuffer, int srcOffset, int srcLength, MessageConsumer consumer);
+
+    /**
+     * Polls a buffer as {@link #poll(DirectBuffer, int, int, MessageConsumer)} and passes the sources of
+     * a checkpoint entry, added by {@link Transaction#acceptNoop(int, long)}, to the checkpoint consumer.
+     * @param srcBuffer source buffer where the messages are encoded
+     * @param srcOffset offset of the message that contains multiple encoded messages
+     * @param srcLength length of the message that contains multiple encoded messages
+     * @param consumer consumer that is to receive the multiple encoded messages
+     * @param checkpointConsumer consumer of source and sourceSeq of the checkpoint sources
+     * @return number of processed encoded messages
+     */
+    default int poll(final DirectBuffer srcBuffer, final int srcOffset, final int srcLength,
+                     final MessageConsumer consumer, final LongLongConsumer checkpointConsumer) {
+        return poll(srcBuffer, srcOffset, srcLength, consumer);
+    }
 }
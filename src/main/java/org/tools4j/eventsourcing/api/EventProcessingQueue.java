@@ -23,11 +23,14 @@
  */
 package org.tools4j.eventsourcing.api;
 
+import org.tools4j.eventsourcing.common.AdaptiveProcessorStep;
+import org.tools4j.eventsourcing.common.BackgroundSnapshotStore;
 import org.tools4j.eventsourcing.common.DefaultEventProcessingQueue;
 import org.tools4j.eventsourcing.common.DownstreamWhileDoneThenUpstreamOnceStep;
 import org.tools4j.nobark.loop.Step;
 
 import java.io.IOException;
+import java.util.Objects;
 import java.util.function.BinaryOperator;
 import java.util.function.BooleanSupplier;
 import java.util.function.LongSupplier;
@@ -38,7 +41,9 @@ import java.util.function.LongSupplier;
  * queue.
  *
  * The appender() method returns an appender to the upstream queue.
- * The createPoller() method creates a poller for the downstream queue.
+ * The createPoller() method creates a poller for the downstream queue. Senders publishing events externally can
+ * create the poller with {@link Poller.Options#pauseAtDurableWatermark()}, if the downstream queue has a durability
+ * policy, so that published events are never ahead of the persisted downstream queue.
  */
 public interface EventProcessingQueue extends IndexedQueue {
     /**
@@ -47,6 +52,27 @@ public interface EventProcessingQueue extends IndexedQueue {
      */
     Step processorStep();
 
+    /**
+     * @return upstream processor step of a pipelined queue to be performed by own thread, see
+     *         {@link Builder.OptionalsBuilder#pipelineDepth(int)}
+     * @throws IllegalStateException if the queue is not pipelined
+     */
+    Step upstreamProcessorStep();
+
+    /**
+     * @return downstream processor step of a pipelined queue to be performed by own thread, see
+     *         {@link Builder.OptionalsBuilder#pipelineDepth(int)}
+     * @throws IllegalStateException if the queue is not pipelined
+     */
+    Step downstreamProcessorStep();
+
+    /**
+     * @return the processor step of a queue with adaptive processor step, to read its decision counters, see
+     *         {@link Builder.OptionalsBuilder#adaptiveProcessorStep(long)}
+     * @throws IllegalStateException if the processor step is not adaptive
+     */
+    AdaptiveProcessorStep adaptiveProcessorStep();
+
     static Builder builder() {
         return new DefaultBuilder();
     }
@@ -81,6 +107,76 @@ public interface EventProcessingQueue extends IndexedQueue {
 
             OptionalsBuilder processorStepFactory(BinaryOperator<Step> processorStepFactory);
 
+            /**
+             * @param burstBacklog min backlog of the upstream poller at which the processor step switches from
+             *                     performing the upstream step once to performing it until done, see
+             *                     {@link AdaptiveProcessorStep}. Replaces processorStepFactory. Decision counters
+             *                     of the step are read through {@link EventProcessingQueue#adaptiveProcessorStep()}.
+             * @return this builder
+             */
+            OptionalsBuilder adaptiveProcessorStep(long burstBacklog);
+
+            /**
+             * @param downstreamPollBatchSize maximum number of downstream entries applied in one downstream step,
+             *                                larger batches speed up rebuilding state from the downstream queue.
+             * @return this builder
+             */
+            OptionalsBuilder downstreamPollBatchSize(int downstreamPollBatchSize);
+
+            /**
+             * @param snapshotStore store of snapshots of application state, if set the queue starts from the latest
+             *                      snapshot and replays only downstream entries following it.
+             *                      snapshotLoader and either snapshotWriter or snapshotCapture are required
+             *                      with snapshotStore.
+             * @return this builder
+             */
+            OptionalsBuilder snapshotStore(SnapshotStore snapshotStore);
+
+            /**
+             * @param snapshotWriter writer of application state invoked by the processor step, the processor step
+             *                       is blocked while the snapshot is written.
+             * @return this builder
+             */
+            OptionalsBuilder snapshotWriter(SnapshotWriter snapshotWriter);
+
+            /**
+             * @param snapshotCapture capture of application state image, the processor step only captures the image
+             *                        and the snapshot is written by {@link BackgroundSnapshotStore} in own thread.
+             * @return this builder
+             */
+            OptionalsBuilder snapshotCapture(SnapshotCapture snapshotCapture);
+
+            OptionalsBuilder snapshotLoader(SnapshotLoader snapshotLoader);
+
+            /**
+             * @param snapshotPeriodMillis min period in millis between snapshots, defaults to 60 seconds
+             * @return this builder
+             */
+            OptionalsBuilder snapshotPeriodMillis(long snapshotPeriodMillis);
+
+            /**
+             * @param partitions number of recovery threads replaying the downstream queue on start, each thread
+             *                   applying messages of own partition through the recovery consumer of the partition
+             *                   before the downstream message consumer takes over, defaults to 1 which replays
+             *                   the queue through the downstream message consumer only.
+             * @param partitioner partitioner of downstream messages
+             * @param recoveryFactory factory for recovery consumers of the partitions
+             * @return this builder
+             */
+            OptionalsBuilder partitionedRecovery(int partitions,
+                                                 MessageConsumer.Partitioner partitioner,
+                                                 MessageConsumer.RecoveryFactory recoveryFactory);
+
+            /**
+             * @param pipelineDepth if positive, upstream and downstream processor steps can be performed by separate
+             *                      threads, the upstream processor step processing up to pipelineDepth events
+             *                      ahead of the downstream processor step. Defaults to 0, in which case
+             *                      the upstream processor step pauses until the downstream processor step has
+             *                      completed the entries of the previous event. Not supported with snapshotStore.
+             * @return this builder
+             */
+            OptionalsBuilder pipelineDepth(int pipelineDepth);
+
             EventProcessingQueue build() throws IOException;
         }
     }
@@ -97,6 +193,17 @@ public interface EventProcessingQueue extends IndexedQueue {
         private MessageConsumer.UpstreamFactory upstreamFactory = MessageConsumer.UpstreamFactory.PASS_THROUGH;
         private MessageConsumer.DownstreamFactory downstreamFactory = MessageConsumer.DownstreamFactory.NO_OP;
         private BinaryOperator<Step> processorStepFactory = DownstreamWhileDoneThenUpstreamOnceStep::new;
+        private int downstreamPollBatchSize = 1;
+        private SnapshotStore snapshotStore;
+        private SnapshotCapture snapshotCapture;
+        private boolean backgroundSnapshots;
+        private SnapshotLoader snapshotLoader;
+        private long snapshotPeriodMillis = 60000;
+        private int recoveryPartitions = 1;
+        private MessageConsumer.Partitioner recoveryPartitioner;
+        private MessageConsumer.RecoveryFactory recoveryFactory;
+        private int pipelineDepth;
+        private long adaptiveBurstBacklog;
 
         @Override
         public DownstreamQueueBuilder upstreamQueue(final IndexedQueue upstreamQueue) {
@@ -164,8 +271,93 @@ public interface EventProcessingQueue extends IndexedQueue {
             return this;
         }
 
+        @Override
+        public OptionalsBuilder adaptiveProcessorStep(final long burstBacklog) {
+            if (burstBacklog < 1) {
+                throw new IllegalArgumentException("burstBacklog must be positive but was " + burstBacklog);
+            }
+            this.adaptiveBurstBacklog = burstBacklog;
+            return this;
+        }
+
+        @Override
+        public OptionalsBuilder downstreamPollBatchSize(final int downstreamPollBatchSize) {
+            this.downstreamPollBatchSize = downstreamPollBatchSize;
+            return this;
+        }
+
+        @Override
+        public OptionalsBuilder snapshotStore(final SnapshotStore snapshotStore) {
+            this.snapshotStore = snapshotStore;
+            return this;
+        }
+
+        @Override
+        public OptionalsBuilder snapshotWriter(final SnapshotWriter snapshotWriter) {
+            Objects.requireNonNull(snapshotWriter);
+            this.snapshotCapture = () -> snapshotWriter;
+            this.backgroundSnapshots = false;
+            return this;
+        }
+
+        @Override
+        public OptionalsBuilder snapshotCapture(final SnapshotCapture snapshotCapture) {
+            this.snapshotCapture = Objects.requireNonNull(snapshotCapture);
+            this.backgroundSnapshots = true;
+            return this;
+        }
+
+        @Override
+        public OptionalsBuilder snapshotLoader(final SnapshotLoader snapshotLoader) {
+            this.snapshotLoader = snapshotLoader;
+            return this;
+        }
+
+        @Override
+        public OptionalsBuilder snapshotPeriodMillis(final long snapshotPeriodMillis) {
+            this.snapshotPeriodMillis = snapshotPeriodMillis;
+            return this;
+        }
+
+        @Override
+        public OptionalsBuilder partitionedRecovery(final int partitions,
+                                                    final MessageConsumer.Partitioner partitioner,
+                                                    final MessageConsumer.RecoveryFactory recoveryFactory) {
+            if (partitions < 1) {
+                throw new IllegalArgumentException("partitions must be positive but was " + partitions);
+            }
+            this.recoveryPartitions = partitions;
+            this.recoveryPartitioner = Objects.requireNonNull(partitioner);
+            this.recoveryFactory = Objects.requireNonNull(recoveryFactory);
+            return this;
+        }
+
+        @Override
+        public OptionalsBuilder pipelineDepth(final int pipelineDepth) {
+            if (pipelineDepth < 0) {
+                throw new IllegalArgumentException("pipelineDepth must not be negative but was " + pipelineDepth);
+            }
+            this.pipelineDepth = pipelineDepth;
+            return this;
+        }
+
         @Override
         public EventProcessingQueue build() throws IOException {
+            if (snapshotStore != null && (snapshotCapture == null || snapshotLoader == null)) {
+                throw new IllegalStateException("snapshotWriter or snapshotCapture and snapshotLoader are required with snapshotStore");
+            }
+            if (snapshotStore != null && pipelineDepth > 0) {
+                throw new IllegalStateException("snapshotStore is not supported with pipelineDepth");
+            }
+            final DefaultEventProcessingQueue.Config config = new DefaultEventProcessingQueue.Config()
+                    .downstreamPollBatchSize(downstreamPollBatchSize)
+                    .partitionedRecovery(recoveryPartitions, recoveryPartitioner, recoveryFactory)
+                    .pipelineDepth(pipelineDepth)
+                    .adaptiveProcessorStep(adaptiveBurstBacklog);
+            if (snapshotStore != null) {
+                config.snapshots(backgroundSnapshots ? new BackgroundSnapshotStore(snapshotStore) : snapshotStore,
+                        snapshotCapture, snapshotLoader, snapshotPeriodMillis);
+            }
             return new DefaultEventProcessingQueue(
                     upstreamQueue,
                     downstreamQueue,
@@ -177,7 +369,8 @@ public interface EventProcessingQueue extends IndexedQueue {
                     onDownstreamProcessingCompleted,
                     upstreamFactory,
                     downstreamFactory,
-                    processorStepFactory
+                    processorStepFactory,
+                    config
             );
         }
     }
@@ -73,6 +73,14 @@ public interface EventProcessingState {
      */
     void forEachSourceEntry(LongLongConsumer consumer);
 
+    /**
+     * For each source entry whose sourceSeq changed since the previous call, by default for each source entry.
+     * @param consumer to run
+     */
+    default void forEachChangedSourceEntry(final LongLongConsumer consumer) {
+        forEachSourceEntry(consumer);
+    }
+
     default boolean isAheadOf(final EventProcessingState another) {
         return sourceSeq() > 0 && another.sourceSeq() > 0 &&
                 sourceSeq() > another.sourceSeq(source());
@@ -0,0 +1,61 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.api;
+
+import org.agrona.MutableDirectBuffer;
+
+/**
+ * Indexed message consumer that allows a message to be encoded in place, directly into the storage of the queue,
+ * rather than into an intermediate buffer that is then copied by {@link #accept(int, long, long, org.agrona.DirectBuffer, int, int)}.
+ * A message is claimed with a minimum length, encoded into the returned buffer starting at offset 0 and
+ * published on commit. A claim that is not committed is discarded by the next claim.
+ */
+public interface IndexedClaimingAppender extends IndexedMessageConsumer {
+    /**
+     * Claims space for a message.
+     * @param length - minimum length of the message
+     * @return buffer starting at the claimed message with capacity of at least length bytes.
+     */
+    MutableDirectBuffer claim(int length);
+
+    /**
+     * Extends the current claim to the given minimum length. If the claimed space cannot be extended in place,
+     * the message is moved together with its already encoded bytes. Encoding continues in the returned buffer,
+     * which is not necessarily the buffer returned by {@link #claim(int)}, so encoders wrapping the claimed
+     * buffer must be re-wrapped if it is another buffer.
+     * @param length - new minimum length of the message
+     * @param encodedLength - number of bytes already encoded from the start of the claimed buffer
+     * @return buffer starting at the claimed message with capacity of at least length bytes.
+     */
+    MutableDirectBuffer extendClaim(int length, int encodedLength);
+
+    /**
+     * Publishes the claimed message with index details.
+     * @param source - message source
+     * @param sourceSeq - sequence in the source
+     * @param eventTimeNanos - time of the event
+     * @param length - encoded length of the message
+     */
+    void commit(int source, long sourceSeq, long eventTimeNanos, int length);
+}
@@ -76,12 +76,13 @@ public interface MessageConsumer {
          * It is injected with a downstreamAppender so that resulting messages can be appended to a downstream queue.
          * It is also injected with upstream-before and downstream-after processing state instances.
          *
-         * @param downstreamAppender - resulting message consumer which is a currently initialised transaction.
+         * @param downstreamAppender - currently initialised transaction to append resulting messages to, either
+         *                           by copying or by claiming an entry and encoding it in place.
          * @param currentUpstreamProcessingState - event processing state before upstream processing
          * @param completedDownstreamProcessingState - event processing state after downstream processing
          * @return upstream message consumer.
          */
-        MessageConsumer create(MessageConsumer downstreamAppender,
+        MessageConsumer create(Transaction downstreamAppender,
                                EventProcessingState currentUpstreamProcessingState,
                                EventProcessingState completedDownstreamProcessingState);
     }
@@ -101,4 +102,34 @@ public interface MessageConsumer {
         MessageConsumer create(EventProcessingState currentDownstreamProcessingState,
                                EventProcessingState completedDownstreamProcessingState);
     }
+
+    /**
+     * Partitioner of downstream messages for partitioned recovery of application state.
+     */
+    interface Partitioner {
+        /**
+         * Returns partition of a downstream message, messages of the same partition are applied in queue order
+         * by the recovery consumer of the partition.
+         * @param buffer - direct buffer to read message from
+         * @param offset - offset of the message in the buffer
+         * @param length - length of the message
+         * @param partitions - number of partitions
+         * @return partition of the message from 0 to partitions - 1
+         */
+        int partition(DirectBuffer buffer, int offset, int length, int partitions);
+    }
+
+    /**
+     * Factory for recovery consumers of partitioned downstream messages.
+     */
+    interface RecoveryFactory {
+        /**
+         * Recovery consumer rebuilds the shard of in-memory application state owned by the partition while
+         * the downstream queue is replayed on start. It is invoked by the recovery thread of the partition and
+         * must only access state of the partition.
+         * @param partition - partition from 0 to partitions - 1
+         * @return recovery message consumer of the partition
+         */
+        MessageConsumer create(int partition);
+    }
 }
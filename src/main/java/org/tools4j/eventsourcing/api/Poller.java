@@ -23,6 +23,7 @@
  */
 package org.tools4j.eventsourcing.api;
 
+import org.agrona.collections.LongLongConsumer;
 import org.tools4j.eventsourcing.common.TransactionCommitAndPushNoops;
 
 import java.io.Closeable;
@@ -30,7 +31,10 @@ import java.util.Objects;
 import java.util.function.BooleanSupplier;
 
 /**
- * Queue poller
+ * Queue poller.
+ * Seeking is optional, the default seek methods throw {@link UnsupportedOperationException}. Pollers of mmap queues
+ * support all seek methods, {@link org.tools4j.eventsourcing.common.MergingPoller} supports
+ * {@link #seekToEventTime(long)} only, and pollers of branched queues do not support seeking.
  */
 public interface Poller extends Closeable {
     /**
@@ -40,6 +44,73 @@ public interface Poller extends Closeable {
      */
     int poll(MessageConsumer consumer);
 
+    /**
+     * polls a queue draining up to maxEntries entries and invokes the consumer for each available message.
+     * Polling stops early if no more entries are available or the poller is paused.
+     * The default implementation counts an entry as processed if messages were polled or the {@link #backlog()}
+     * decreased, so that skipped entries and entries without messages do not end the batch. Pollers not tracking
+     * the backlog end the batch at the first entry without polled messages.
+     * @param consumer of polled messages
+     * @param maxEntries maximum number of entries to process
+     * @return number of polled messages
+     */
+    default int poll(final MessageConsumer consumer, final int maxEntries) {
+        int done = 0;
+        long backlog = backlog();
+        for (int entry = 0; entry < maxEntries; entry++) {
+            final int polled = poll(consumer);
+            final long remaining = backlog();
+            if (polled == 0 && remaining >= backlog) break;
+            done += polled;
+            backlog = remaining;
+        }
+        return done;
+    }
+
+    /**
+     * Positions the poller at the given index so that the next poll processes the entry with the given index.
+     * No skip or processing callbacks are invoked for the entries the poller moves over.
+     * @param index - index of the entry, starting from 0
+     * @return true if the poller is positioned at the given index, false if the index is beyond the entry following
+     *         the last published entry, in which case the poller position is not changed.
+     */
+    default boolean seek(final long index) {
+        throw new UnsupportedOperationException("seek is not supported");
+    }
+
+    /**
+     * Positions the poller at the first entry of the given source that has sourceSeq greater than or equal to
+     * the given sourceSeq. If there is no such entry, the poller is positioned after the last published entry.
+     * Entries are binary-searched, so the search assumes that sourceSeq of the entries of a source are increasing.
+     * Pollers of mmap queues scan forward to the next entry of the source on each probe, hence seeking costs
+     * logarithmic time if entries of the source are spread over the queue, and linear time if the source has few or
+     * no entries.
+     * @param source - source of the entry
+     * @param sourceSeq - minimum sequence of the entry in the source
+     * @return index of the entry the poller is positioned at
+     */
+    default long seekToSourceSeq(final int source, final long sourceSeq) {
+        throw new UnsupportedOperationException("seekToSourceSeq is not supported");
+    }
+
+    /**
+     * Positions the poller at the first entry that has eventTimeNanos greater than or equal to the given time.
+     * If there is no such entry, the poller is positioned after the last published entry.
+     * Entries are binary-searched, so the search assumes that eventTimeNanos of the entries are non-decreasing.
+     * @param timeNanos - minimum event time of the entry in nanos
+     * @return index of the entry the poller is positioned at
+     */
+    default long seekToEventTime(final long timeNanos) {
+        throw new UnsupportedOperationException("seekToEventTime is not supported");
+    }
+
+    /**
+     * @return number of entries published after the poller position, or 0 if the poller does not track it
+     */
+    default long backlog() {
+        return 0;
+    }
+
     @Override
     default void close(){}
 
@@ -180,6 +251,16 @@ public interface Poller extends Closeable {
         IndexConsumer onProcessingStart();
         IndexConsumer onProcessingComplete();
         IndexConsumer onProcessingSkipped();
+        /**
+         * @return consumer of source and sourceSeq of the sources of a checkpoint entry, applied in addition to
+         *         the processing callbacks of the entry, see {@link Transaction#acceptNoop(int, long)}.
+         */
+        LongLongConsumer onCheckpoint();
+        /**
+         * @return true if the poller pauses at the first entry that has not been forced to the storage device yet,
+         *         so that polled entries are never ahead of the persisted entries of the queue.
+         */
+        boolean pauseAtDurableWatermark();
 
         interface Builder {
             Builder skipWhen(IndexPredicate skipWhen);
@@ -187,6 +268,18 @@ public interface Poller extends Closeable {
             Builder onProcessingStart(IndexConsumer onProcessingStart);
             Builder onProcessingComplete(IndexConsumer onProcessingComplete);
             Builder onProcessingSkipped(IndexConsumer onProcessingSkipped);
+            Builder onCheckpoint(LongLongConsumer onCheckpoint);
+            /**
+             * Pauses polling at the durable watermark of the queue. Entries of a queue without durability policy
+             * are never forced to the storage device by the queue, so creating a poller with the option is rejected
+             * for such a queue as for segmented queues.
+             * The latency of polled entries is bounded by the flush batching of the durability policy, e.g. entries
+             * of a queue with policy {@code DurabilityPolicy.everyEntries(entries, periodMillis)} are polled at most
+             * periodMillis plus the flush time after they were appended.
+             * @param pauseAtDurableWatermark - true to poll durable entries only, false by default
+             * @return builder
+             */
+            Builder pauseAtDurableWatermark(boolean pauseAtDurableWatermark);
             Options build();
         }
 
@@ -197,6 +290,8 @@ public interface Poller extends Closeable {
                 private IndexConsumer onProcessingStart = IndexConsumer.noop();
                 private IndexConsumer onProcessingComplete = IndexConsumer.noop();
                 private IndexConsumer onProcessingSkipped = IndexConsumer.noop();
+                private LongLongConsumer onCheckpoint = (source, sourceSeq) -> {};
+                private boolean pauseAtDurableWatermark = false;
 
                 @Override
                 public Builder skipWhen(final IndexPredicate skipWhen) {
@@ -228,6 +323,18 @@ public interface Poller extends Closeable {
                     return this;
                 }
 
+                @Override
+                public Builder onCheckpoint(final LongLongConsumer onCheckpoint) {
+                    this.onCheckpoint = onCheckpoint;
+                    return this;
+                }
+
+                @Override
+                public Builder pauseAtDurableWatermark(final boolean pauseAtDurableWatermark) {
+                    this.pauseAtDurableWatermark = pauseAtDurableWatermark;
+                    return this;
+                }
+
                 @Override
                 public Options build() {
                     return new Options() {
@@ -255,9 +362,35 @@ public interface Poller extends Closeable {
                         public IndexConsumer onProcessingSkipped() {
                             return onProcessingSkipped;
                         }
+
+                        @Override
+                        public LongLongConsumer onCheckpoint() {
+                            return onCheckpoint;
+                        }
+
+                        @Override
+                        public boolean pauseAtDurableWatermark() {
+                            return pauseAtDurableWatermark;
+                        }
                     };
                 }
             };
         }
+
+        /**
+         * @param options - options to copy
+         * @return builder initialised with all values of the given options, so that a poller decorating
+         *         some of the values does not drop the others.
+         */
+        static Builder builder(final Options options) {
+            return builder()
+                    .skipWhen(options.skipWhen())
+                    .pauseWhen(options.pauseWhen())
+                    .onProcessingStart(options.onProcessingStart())
+                    .onProcessingComplete(options.onProcessingComplete())
+                    .onProcessingSkipped(options.onProcessingSkipped())
+                    .onCheckpoint(options.onCheckpoint())
+                    .pauseAtDurableWatermark(options.pauseAtDurableWatermark());
+        }
     }
 }
@@ -0,0 +1,65 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.api;
+
+import org.agrona.collections.LongLongConsumer;
+
+import java.io.Closeable;
+
+/**
+ * Snapshot store persists application state together with the completed downstream processing state, that is
+ * the index, source, sourceSeq and event time of the last applied downstream entry and the last sourceSeq of each
+ * source.
+ */
+public interface SnapshotStore extends Closeable {
+    long NO_SNAPSHOT = -1;
+
+    /**
+     * Persists a snapshot.
+     * @param completedDownstreamState - processing state of the last downstream entry applied to application state
+     * @param writer - writer of application state
+     */
+    void write(EventProcessingState completedDownstreamState, SnapshotWriter writer);
+
+    /**
+     * @return true if a snapshot can be written, false if the previous snapshot is still being written
+     */
+    default boolean isReady() {
+        return true;
+    }
+
+    /**
+     * Loads the latest snapshot.
+     * @param lastEntryConsumer - consumer of index, source, sourceSeq and event time of the last downstream entry
+     *                          applied to the snapshot
+     * @param sourceSeqConsumer - consumer of the last sourceSeq of each source
+     * @param loader - loader of application state
+     * @return index of the last downstream entry applied to the snapshot, or {@link #NO_SNAPSHOT} if there is
+     *         no snapshot.
+     */
+    long load(Poller.IndexConsumer lastEntryConsumer, LongLongConsumer sourceSeqConsumer, SnapshotLoader loader);
+
+    @Override
+    default void close() {}
+}
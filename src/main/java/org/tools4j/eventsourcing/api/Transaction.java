@@ -23,6 +23,8 @@
  */
 package org.tools4j.eventsourcing.api;
 
+import org.agrona.MutableDirectBuffer;
+
 /**
  * Transactional message consumer that allows to handle multiple messages atomically
  * following initialisation with index details and followed by commit method to
@@ -38,6 +40,24 @@ public interface Transaction extends MessageConsumer {
      */
     void init(int source, long sourceSeq, long eventTimeNanos, final boolean allowEmpty);
 
+    /**
+     * Claims an entry in the transaction to be encoded in place, avoiding a copy of the entry.
+     * The entry is to be encoded into the returned buffer starting at offset 0 up to the claimed length,
+     * the buffer is valid until the next entry is appended or the transaction is committed.
+     * @param length - length of the entry
+     * @return buffer of the entry with capacity of the given length
+     */
+    MutableDirectBuffer claim(int length);
+
+    /**
+     * Adds a noop of another source to a transaction without entries, so that noops of multiple sources are
+     * committed in a single checkpoint entry. The entry is indexed with the source and sourceSeq the transaction was
+     * initialised with, added sources are passed to {@link Poller.Options#onCheckpoint()} when polled.
+     * @param source - source of the event
+     * @param sourceSeq - sequence within a source
+     */
+    void acceptNoop(int source, long sourceSeq);
+
     /**
      * @return number of entries committed
      * Commit the transaction.
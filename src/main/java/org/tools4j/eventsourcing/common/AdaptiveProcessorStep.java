@@ -0,0 +1,140 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.tools4j.nobark.loop.Step;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Processor step switching between the behaviour of {@link DownstreamWhileDoneThenUpstreamOnceStep} and
+ * {@link DownstreamWhileDoneThenUpstreamUntilDoneStep} by the upstream backlog. The downstream step is performed
+ * while it does work, then the upstream step is performed once in single-step mode, or until it does work in burst
+ * mode. The step switches to burst mode when the upstream backlog reaches the burst backlog and back to single-step
+ * mode when there is no upstream backlog. Decisions of the step are counted and can be read by other threads.
+ */
+public final class AdaptiveProcessorStep implements Step {
+    private final LongSupplier upstreamBacklog;
+    private final long burstBacklog;
+
+    private final Step upstreamProcessStepState;
+    private Step downstreamProcessStepState;
+    private Step currentStep;
+    private boolean burst;
+
+    private final AtomicLong burstSwitches = new AtomicLong();
+    private final AtomicLong singleStepSwitches = new AtomicLong();
+    private final AtomicLong burstUpstreamSteps = new AtomicLong();
+    private final AtomicLong singleUpstreamSteps = new AtomicLong();
+
+    /**
+     * @param upstreamProcessStep - upstream process step
+     * @param downstreamProcessStep - downstream process step
+     * @param upstreamBacklog - backlog of the upstream poller, see {@link org.tools4j.eventsourcing.api.Poller#backlog()}
+     * @param burstBacklog - min upstream backlog to switch to burst mode
+     */
+    public AdaptiveProcessorStep(final Step upstreamProcessStep,
+                                 final Step downstreamProcessStep,
+                                 final LongSupplier upstreamBacklog,
+                                 final long burstBacklog) {
+        Objects.requireNonNull(upstreamProcessStep);
+        Objects.requireNonNull(downstreamProcessStep);
+        if (burstBacklog < 1) {
+            throw new IllegalArgumentException("burstBacklog must be positive but was " + burstBacklog);
+        }
+        this.upstreamBacklog = Objects.requireNonNull(upstreamBacklog);
+        this.burstBacklog = burstBacklog;
+
+        upstreamProcessStepState = () -> {
+            adapt();
+            final boolean workDone = upstreamProcessStep.perform();
+            if (burst) {
+                increment(burstUpstreamSteps);
+                if (workDone) currentStep = downstreamProcessStepState;
+            } else {
+                increment(singleUpstreamSteps);
+                currentStep = downstreamProcessStepState;
+            }
+            return workDone;
+        };
+
+        downstreamProcessStepState = () -> {
+            final boolean workDone = downstreamProcessStep.perform();
+            if (!workDone) currentStep = upstreamProcessStepState;
+            return workDone;
+        };
+
+        currentStep = downstreamProcessStepState;
+    }
+
+    @Override
+    public boolean perform() {
+        return currentStep.perform();
+    }
+
+    private void adapt() {
+        final long backlog = upstreamBacklog.getAsLong();
+        if (!burst && backlog >= burstBacklog) {
+            burst = true;
+            increment(burstSwitches);
+        } else if (burst && backlog == 0) {
+            burst = false;
+            increment(singleStepSwitches);
+        }
+    }
+
+    private static void increment(final AtomicLong counter) {
+        counter.lazySet(counter.get() + 1);
+    }
+
+    /**
+     * @return number of switches to burst mode
+     */
+    public long burstSwitches() {
+        return burstSwitches.get();
+    }
+
+    /**
+     * @return number of switches to single-step mode
+     */
+    public long singleStepSwitches() {
+        return singleStepSwitches.get();
+    }
+
+    /**
+     * @return number of upstream steps performed in burst mode
+     */
+    public long burstUpstreamSteps() {
+        return burstUpstreamSteps.get();
+    }
+
+    /**
+     * @return number of upstream steps performed in single-step mode
+     */
+    public long singleUpstreamSteps() {
+        return singleUpstreamSteps.get();
+    }
+}
@@ -0,0 +1,125 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.collections.LongLongConsumer;
+import org.agrona.concurrent.SleepingMillisIdleStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tools4j.eventsourcing.api.EventProcessingState;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.SnapshotLoader;
+import org.tools4j.eventsourcing.api.SnapshotStore;
+import org.tools4j.eventsourcing.api.SnapshotWriter;
+
+import java.util.Objects;
+
+/**
+ * Snapshot store writing snapshots of the delegate store in own thread.
+ * The processor thread only copies the completed downstream processing state and hands it off together with
+ * the writer of the captured application state image, see {@link org.tools4j.eventsourcing.api.SnapshotCapture}.
+ * The store is not ready for the next snapshot until the previous one is written.
+ */
+public final class BackgroundSnapshotStore implements SnapshotStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundSnapshotStore.class);
+    public static final long DEFAULT_IDLE_MILLIS = 1;
+
+    private final SnapshotStore delegate;
+    private final DefaultEventProcessingState cutState;
+    private final ThreadService snapshotService;
+
+    private SnapshotWriter cutWriter;
+    private volatile boolean pending;
+
+    /**
+     * Starts the snapshot thread.
+     * @param delegate - snapshot store to write snapshots to
+     * @param idleMillis - time in millis the snapshot thread sleeps while there is no snapshot to write
+     */
+    public BackgroundSnapshotStore(final SnapshotStore delegate, final long idleMillis) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.cutState = new DefaultEventProcessingState(System::nanoTime);
+        this.snapshotService = new ThreadService(
+                "SnapshotWriter",
+                (name, threadRunCondition) ->
+                        new WhileLoop(name,
+                                threadRunCondition,
+                                new SleepingMillisIdleStrategy(idleMillis)::idle,
+                                (message, exception) -> LOGGER.error("{} {}", message, exception),
+                                this::writePending
+                        ),
+                (name, runnable) -> {
+                    final Thread thread = new Thread(null, runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    public BackgroundSnapshotStore(final SnapshotStore delegate) {
+        this(delegate, DEFAULT_IDLE_MILLIS);
+    }
+
+    @Override
+    public void write(final EventProcessingState completedDownstreamState, final SnapshotWriter writer) {
+        if (pending) {
+            throw new IllegalStateException("Previous snapshot is still being written");
+        }
+        cutState.copy(completedDownstreamState);
+        cutWriter = Objects.requireNonNull(writer);
+        pending = true;
+    }
+
+    @Override
+    public boolean isReady() {
+        return !pending;
+    }
+
+    @Override
+    public long load(final Poller.IndexConsumer lastEntryConsumer,
+                     final LongLongConsumer sourceSeqConsumer,
+                     final SnapshotLoader loader) {
+        return delegate.load(lastEntryConsumer, sourceSeqConsumer, loader);
+    }
+
+    private boolean writePending() {
+        if (!pending) {
+            return false;
+        }
+        try {
+            delegate.write(cutState, cutWriter);
+        } finally {
+            cutWriter = null;
+            pending = false;
+        }
+        return true;
+    }
+
+    @Override
+    public void close() {
+        snapshotService.shutdown();
+        writePending();
+        delegate.close();
+    }
+}
@@ -71,6 +71,8 @@ public final class BranchedIndexedTransactionalQueue implements IndexedTransacti
                         .pauseWhen(options.pauseWhen())
                         .onProcessingStart(options.onProcessingStart())
                         .onProcessingComplete(options.onProcessingComplete())
+                        .onCheckpoint(options.onCheckpoint())
+                        .pauseAtDurableWatermark(options.pauseAtDurableWatermark())
                         .build()
         );
 
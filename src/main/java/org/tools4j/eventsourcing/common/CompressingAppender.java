@@ -0,0 +1,151 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.IndexedClaimingAppender;
+import org.tools4j.eventsourcing.sbe.CompressedPayloadEncoder;
+import org.tools4j.eventsourcing.sbe.MessageHeaderEncoder;
+
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * Compression stage between {@link SinglePayloadAppender} or {@link MultiPayloadAppender} and the appender of
+ * the message file. Claimed messages are encoded into an intermediate buffer and compressed on commit directly
+ * into the message claimed from delegateAppender, encoded with SBE CompressedPayloadEncoder, which
+ * {@link PayloadBufferPoller} decompresses.
+ * Messages shorter than minLength or not getting shorter by compression are committed uncompressed.
+ */
+public final class CompressingAppender implements IndexedClaimingAppender {
+    public static final int DEFAULT_MIN_LENGTH = 64;
+
+    private static final int VALUE_OFFSET = MessageHeaderEncoder.ENCODED_LENGTH + CompressedPayloadEncoder.BLOCK_LENGTH
+            + CompressedPayloadEncoder.valueHeaderLength();
+
+    private final IndexedClaimingAppender delegateAppender;
+    private final CompressionDictionary dictionary;
+    private final int minLength;
+
+    private final ExpandableArrayBuffer sourceBuffer;
+    private final UnsafeBuffer claimBuffer = new UnsafeBuffer(0, 0);
+    private final int[] primedHashTable = new int[Lz4BlockCodec.HASH_TABLE_SIZE];
+    private final int[] hashTable = new int[Lz4BlockCodec.HASH_TABLE_SIZE];
+
+    private final MessageHeaderEncoder messageHeaderEncoder = new MessageHeaderEncoder();
+    private final CompressedPayloadEncoder compressedPayloadEncoder = new CompressedPayloadEncoder();
+
+    public CompressingAppender(final IndexedClaimingAppender delegateAppender,
+                               final CompressionDictionary dictionary) {
+        this(delegateAppender, dictionary, DEFAULT_MIN_LENGTH);
+    }
+
+    /**
+     * @param delegateAppender - appender of the message file
+     * @param dictionary - dictionary of the queue, {@link CompressionDictionary#NONE} to compress without dictionary
+     * @param minLength - min length of a message to be compressed
+     */
+    public CompressingAppender(final IndexedClaimingAppender delegateAppender,
+                               final CompressionDictionary dictionary,
+                               final int minLength) {
+        this.delegateAppender = Objects.requireNonNull(delegateAppender);
+        this.dictionary = Objects.requireNonNull(dictionary);
+        this.minLength = minLength;
+        //the dictionary precedes the claimed message, so that the message can refer to it
+        this.sourceBuffer = new ExpandableArrayBuffer(dictionary.length() + 4096);
+        this.sourceBuffer.putBytes(0, dictionary.content(), 0, dictionary.length());
+        Lz4BlockCodec.prime(sourceBuffer, dictionary.length(), primedHashTable);
+    }
+
+    @Override
+    public MutableDirectBuffer claim(final int length) {
+        final int dictionaryLength = dictionary.length();
+        sourceBuffer.checkLimit(dictionaryLength + length);
+        claimBuffer.wrap(sourceBuffer.byteArray(), dictionaryLength, sourceBuffer.capacity() - dictionaryLength);
+        return claimBuffer;
+    }
+
+    @Override
+    public MutableDirectBuffer extendClaim(final int length, final int encodedLength) {
+        //expanding the intermediate buffer retains the encoded bytes
+        return claim(length);
+    }
+
+    @Override
+    public void commit(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+        final int dictionaryLength = dictionary.length();
+        if (length < minLength) {
+            commitUncompressed(source, sourceSeq, eventTimeNanos, length);
+            return;
+        }
+        final MutableDirectBuffer messageEncodingBuffer = delegateAppender.claim(
+                VALUE_OFFSET + Lz4BlockCodec.maxCompressedLength(length));
+
+        System.arraycopy(primedHashTable, 0, hashTable, 0, hashTable.length);
+        final int compressedLength = Lz4BlockCodec.compress(sourceBuffer, dictionaryLength, length,
+                messageEncodingBuffer, VALUE_OFFSET, hashTable);
+
+        if (VALUE_OFFSET + compressedLength >= length) {
+            messageEncodingBuffer.putBytes(0, sourceBuffer, dictionaryLength, length);
+            delegateAppender.commit(source, sourceSeq, eventTimeNanos, length);
+            return;
+        }
+
+        final int headerLength = messageHeaderEncoder.wrap(messageEncodingBuffer, 0)
+                .blockLength(CompressedPayloadEncoder.BLOCK_LENGTH)
+                .schemaId(CompressedPayloadEncoder.SCHEMA_ID)
+                .version(CompressedPayloadEncoder.SCHEMA_VERSION)
+                .templateId(CompressedPayloadEncoder.TEMPLATE_ID)
+                .encodedLength();
+
+        compressedPayloadEncoder.wrap(messageEncodingBuffer, headerLength)
+                .uncompressedLength(length)
+                .dictionaryId(dictionary.id());
+
+        //value is compressed in place, so only its length header is encoded
+        messageEncodingBuffer.putInt(VALUE_OFFSET - CompressedPayloadEncoder.valueHeaderLength(), compressedLength,
+                ByteOrder.LITTLE_ENDIAN);
+
+        delegateAppender.commit(source, sourceSeq, eventTimeNanos, VALUE_OFFSET + compressedLength);
+    }
+
+    @Override
+    public void accept(final int source,
+                       final long sourceSeq,
+                       final long eventTimeNanos,
+                       final DirectBuffer buffer,
+                       final int offset,
+                       final int length) {
+        claim(length).putBytes(0, buffer, offset, length);
+        commit(source, sourceSeq, eventTimeNanos, length);
+    }
+
+    private void commitUncompressed(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+        delegateAppender.claim(length).putBytes(0, sourceBuffer, dictionary.length(), length);
+        delegateAppender.commit(source, sourceSeq, eventTimeNanos, length);
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * Dictionary of a queue used by {@link CompressingAppender} and {@link PayloadBufferPoller}, consisting of
+ * content typical for the messages of the queue, which compressed messages refer to instead of repeating it.
+ * A dictionary is trained from sample messages, for instance polled from an existing queue, and saved in the
+ * queue directory in file {@code <filePrefix>_dictionary}, before the queue is opened with compression enabled.
+ * Messages are compressed with the dictionary id, so they cannot be decompressed with a different dictionary.
+ *
+ * Dictionary file layout:
+ *  - magic (4 bytes)
+ *  - id (4 bytes)
+ *  - length (4 bytes)
+ *  - content
+ */
+public final class CompressionDictionary {
+    public static final int NONE_ID = 0;
+    public static final CompressionDictionary NONE = new CompressionDictionary(NONE_ID, new UnsafeBuffer(new byte[0]));
+    public static final int MAX_LENGTH = Lz4BlockCodec.MAX_DICTIONARY_LENGTH;
+
+    private static final int MAGIC = 0x44494354;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int ID_OFFSET = 4;
+    private static final int LENGTH_OFFSET = 8;
+    private static final int HEADER_LENGTH = 12;
+    private static final String DICTIONARY_SUFFIX = "_dictionary";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final int id;
+    private final DirectBuffer content;
+
+    private CompressionDictionary(final int id, final DirectBuffer content) {
+        this.id = id;
+        this.content = Objects.requireNonNull(content);
+    }
+
+    /**
+     * @param content - dictionary content, only the last {@link #MAX_LENGTH} bytes are used
+     * @return dictionary with id derived from the content
+     */
+    public static CompressionDictionary of(final byte[] content) {
+        final int offset = Math.max(0, content.length - MAX_LENGTH);
+        final byte[] dictionary = new byte[content.length - offset];
+        System.arraycopy(content, offset, dictionary, 0, dictionary.length);
+        if (dictionary.length == 0) {
+            return NONE;
+        }
+        final CRC32 crc32 = new CRC32();
+        crc32.update(dictionary);
+        final int id = (int) crc32.getValue();
+        return new CompressionDictionary(id == NONE_ID ? 1 : id, new UnsafeBuffer(dictionary));
+    }
+
+    /**
+     * Trains a dictionary from the messages of a queue.
+     * @param poller - poller of the queue, positioned at the first sample message
+     * @param maxLength - max length of the dictionary
+     * @return dictionary
+     */
+    public static CompressionDictionary train(final Poller poller, final int maxLength) {
+        final Trainer trainer = new Trainer(maxLength);
+        while (!trainer.isComplete() && poller.poll(trainer) > 0);
+        return trainer.dictionary();
+    }
+
+    /**
+     * Loads the dictionary of a queue.
+     * @param directory - directory of the queue
+     * @param filePrefix - file prefix of the queue
+     * @return the dictionary, or {@link #NONE} if the queue has no dictionary file
+     * @throws IOException if the dictionary file could not be read or is invalid
+     */
+    public static CompressionDictionary load(final String directory, final String filePrefix) throws IOException {
+        final File file = file(directory, filePrefix);
+        if (!file.exists()) {
+            return NONE;
+        }
+        final UnsafeBuffer buffer = new UnsafeBuffer(Files.readAllBytes(file.toPath()));
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(MAGIC_OFFSET) != MAGIC ||
+                buffer.getInt(LENGTH_OFFSET) != buffer.capacity() - HEADER_LENGTH) {
+            throw new IOException("Invalid dictionary file " + file);
+        }
+        final byte[] content = new byte[buffer.getInt(LENGTH_OFFSET)];
+        buffer.getBytes(HEADER_LENGTH, content);
+        final CompressionDictionary dictionary = of(content);
+        if (dictionary.id() != buffer.getInt(ID_OFFSET)) {
+            throw new IOException("Invalid dictionary file " + file + ", id does not match content");
+        }
+        return dictionary;
+    }
+
+    /**
+     * Saves the dictionary as dictionary of a queue, replacing the existing dictionary file.
+     * @param directory - directory of the queue
+     * @param filePrefix - file prefix of the queue
+     * @throws IOException if the dictionary file could not be written
+     */
+    public void save(final String directory, final String filePrefix) throws IOException {
+        final File file = file(directory, filePrefix);
+        final File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+        final UnsafeBuffer buffer = new UnsafeBuffer(new byte[HEADER_LENGTH + length()]);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(ID_OFFSET, id);
+        buffer.putInt(LENGTH_OFFSET, length());
+        buffer.putBytes(HEADER_LENGTH, content, 0, length());
+        Files.write(tempFile.toPath(), buffer.byteArray());
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public DirectBuffer content() {
+        return content;
+    }
+
+    public int length() {
+        return content.capacity();
+    }
+
+    private static File file(final String directory, final String filePrefix) {
+        return new File(Objects.requireNonNull(directory), Objects.requireNonNull(filePrefix) + DICTIONARY_SUFFIX);
+    }
+
+    /**
+     * Collects distinct sample messages until the given max length is reached. Samples at the end of the
+     * dictionary are cheapest to refer to, so the latest samples are placed last.
+     */
+    public static final class Trainer implements MessageConsumer {
+        private final int maxLength;
+        private final ExpandableArrayBuffer samples = new ExpandableArrayBuffer();
+        private int length;
+        private int lastSampleOffset;
+        private int lastSampleLength;
+
+        public Trainer(final int maxLength) {
+            if (maxLength < 0 || maxLength > MAX_LENGTH) {
+                throw new IllegalArgumentException("maxLength must be in [0, " + MAX_LENGTH + "] but was " + maxLength);
+            }
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        public void accept(final DirectBuffer buffer, final int offset, final int length) {
+            final int sampleLength = Math.min(length, maxLength - this.length);
+            if (sampleLength <= 0 || isLastSample(buffer, offset, sampleLength)) {
+                return;
+            }
+            samples.putBytes(this.length, buffer, offset, sampleLength);
+            lastSampleOffset = this.length;
+            lastSampleLength = sampleLength;
+            this.length += sampleLength;
+        }
+
+        public boolean isComplete() {
+            return length >= maxLength;
+        }
+
+        public CompressionDictionary dictionary() {
+            final byte[] content = new byte[length];
+            samples.getBytes(0, content);
+            return of(content);
+        }
+
+        private boolean isLastSample(final DirectBuffer buffer, final int offset, final int length) {
+            if (length != lastSampleLength) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (samples.getByte(lastSampleOffset + i) != buffer.getByte(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
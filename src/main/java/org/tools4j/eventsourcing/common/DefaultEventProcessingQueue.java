@@ -24,16 +24,21 @@
 package org.tools4j.eventsourcing.common;
 
 import org.tools4j.eventsourcing.api.EventProcessingQueue;
+import org.tools4j.eventsourcing.api.EventProcessingState;
 import org.tools4j.eventsourcing.api.IndexedMessageConsumer;
 import org.tools4j.eventsourcing.api.IndexedQueue;
 import org.tools4j.eventsourcing.api.IndexedTransactionalQueue;
 import org.tools4j.eventsourcing.api.MessageConsumer;
 import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.SnapshotCapture;
+import org.tools4j.eventsourcing.api.SnapshotLoader;
+import org.tools4j.eventsourcing.api.SnapshotStore;
 import org.tools4j.eventsourcing.api.Transaction;
 import org.tools4j.nobark.loop.Step;
 
 import java.io.IOException;
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BinaryOperator;
 import java.util.function.BooleanSupplier;
 import java.util.function.LongSupplier;
@@ -42,9 +47,14 @@ public final class DefaultEventProcessingQueue implements EventProcessingQueue {
     private final IndexedQueue upstreamQueue;
     private final IndexedTransactionalQueue downstreamQueue;
     private final Step processorStep;
+    private final AdaptiveProcessorStep adaptiveProcessorStep;
+    private final Step upstreamProcessorStep;
+    private final Step downstreamProcessorStep;
+    private final boolean pipelined;
 
     private final Poller upstreamProcessorPoller;
     private final Poller downstreamProcessorPoller;
+    private final SnapshotStore snapshotStore;
 
     public DefaultEventProcessingQueue(final IndexedQueue upstreamQueue,
                                        final IndexedTransactionalQueue downstreamQueue,
@@ -57,6 +67,30 @@ public final class DefaultEventProcessingQueue implements EventProcessingQueue {
                                        final MessageConsumer.UpstreamFactory upstreamFactory,
                                        final MessageConsumer.DownstreamFactory downstreamFactory,
                                        final BinaryOperator<Step> processorStepFactory) throws IOException {
+        this(upstreamQueue, downstreamQueue, systemNanoClock, leadership,
+                onStartUpstreamProcessingHandler, onCompleteUpstreamProcessingHandler,
+                onStartDownstreamProcessingHandler, onCompletedDownstreamProcessingHandler,
+                upstreamFactory, downstreamFactory, processorStepFactory, new Config());
+    }
+
+    /**
+     * Creates event processing queue with optional features of the config, see {@link Config}.
+     */
+    public DefaultEventProcessingQueue(final IndexedQueue upstreamQueue,
+                                       final IndexedTransactionalQueue downstreamQueue,
+                                       final LongSupplier systemNanoClock,
+                                       final BooleanSupplier leadership,
+                                       final Poller.IndexConsumer onStartUpstreamProcessingHandler,
+                                       final Poller.IndexConsumer onCompleteUpstreamProcessingHandler,
+                                       final Poller.IndexConsumer onStartDownstreamProcessingHandler,
+                                       final Poller.IndexConsumer onCompletedDownstreamProcessingHandler,
+                                       final MessageConsumer.UpstreamFactory upstreamFactory,
+                                       final MessageConsumer.DownstreamFactory downstreamFactory,
+                                       final BinaryOperator<Step> processorStepFactory,
+                                       final Config config) throws IOException {
+        if (config.pipelineDepth > 0 && config.snapshotStore != null) {
+            throw new IllegalStateException("Pipelined queue does not support snapshots");
+        }
         this.upstreamQueue = Objects.requireNonNull(upstreamQueue);
         this.downstreamQueue = Objects.requireNonNull(downstreamQueue);
 
@@ -65,23 +99,34 @@ public final class DefaultEventProcessingQueue implements EventProcessingQueue {
         final DefaultEventProcessingState currentDownstreamState = new DefaultEventProcessingState(systemNanoClock);
         final DefaultEventProcessingState completedDownstreamState = new DefaultEventProcessingState(systemNanoClock);
 
-        final Transaction downstreamAppender = downstreamQueue.appender();
+        // the upstream processor sees the downstream queue through the pipeline if the steps are performed
+        // by separate threads, otherwise it pauses until the downstream processor has completed own entries
+        final ProcessingPipeline pipeline = config.pipelineDepth > 0 ?
+                new ProcessingPipeline(config.pipelineDepth, downstreamQueue.appender(), systemNanoClock) : null;
+        final Transaction downstreamAppender = pipeline != null ?
+                pipeline.upstreamTransaction() : downstreamQueue.appender();
+        final EventProcessingState upstreamDownstreamState = pipeline != null ?
+                pipeline.committedDownstreamState() : completedDownstreamState;
+        final Poller.IndexConsumer transactionCommit = Poller.IndexConsumer.transactionCommitAndPushNoops(
+                downstreamAppender, completedUpstreamState, upstreamDownstreamState);
 
         this.upstreamProcessorPoller = upstreamQueue.createPoller(
                 Poller.Options.builder()
                         .skipWhen(
-                            Poller.IndexPredicate.isLessThanOrEqual(completedDownstreamState))
+                            Poller.IndexPredicate.isLessThanOrEqual(upstreamDownstreamState))
                         .pauseWhen(
                             Poller.IndexPredicate.isNotLeader(leadership)
-                                .and(Poller.IndexPredicate.isGreaterThan(completedDownstreamState))
-                                .or(Poller.IndexPredicate.isTrue(() ->
-                                        completedUpstreamState.isAheadOf(completedDownstreamState))))
+                                .and(Poller.IndexPredicate.isGreaterThan(upstreamDownstreamState))
+                                .or(pipeline != null ?
+                                        Poller.IndexPredicate.isTrue(pipeline::isBlocked) :
+                                        Poller.IndexPredicate.isTrue(() ->
+                                                completedUpstreamState.isAheadOf(completedDownstreamState))))
                         .onProcessingStart(
                                 currentUpstreamState
                                         .andThen(Poller.IndexConsumer.transactionInit(downstreamAppender))
                                         .andThen(onStartUpstreamProcessingHandler))
                         .onProcessingComplete(
-                                Poller.IndexConsumer.transactionCommitAndPushNoops(downstreamAppender, completedUpstreamState, completedDownstreamState)
+                                (pipeline != null ? pipeline.commit(transactionCommit) : transactionCommit)
                                         .andThen(completedUpstreamState)
                                         .andThen(onCompleteUpstreamProcessingHandler))
                         .build()
@@ -90,31 +135,70 @@ public final class DefaultEventProcessingQueue implements EventProcessingQueue {
         final MessageConsumer upstreamMessageConsumer = upstreamFactory.create(
                 downstreamAppender,
                 currentUpstreamState,
-                completedDownstreamState);
+                upstreamDownstreamState);
 
         final MessageConsumer downstreamMessageConsumer = downstreamFactory.create(
                 currentDownstreamState,
                 completedDownstreamState);
 
-        final Step upstreamProcessorStep = new PollingProcessStep(this.upstreamProcessorPoller, upstreamMessageConsumer);
+        final Step upstreamPollingStep = new PollingProcessStep(this.upstreamProcessorPoller, upstreamMessageConsumer);
 
         this.downstreamProcessorPoller = downstreamQueue.createPoller(
                 Poller.Options.builder().skipWhen(
-                                Poller.IndexPredicate.isEqualTo(completedUpstreamState))
+                                pipeline != null ?
+                                        pipeline.isOwnEntry() :
+                                        Poller.IndexPredicate.isEqualTo(completedUpstreamState))
                         .onProcessingStart(
                                 currentDownstreamState.andThen(onStartDownstreamProcessingHandler))
                         .onProcessingComplete(
-                                completedDownstreamState.andThen(onCompletedDownstreamProcessingHandler))
+                                (pipeline != null ?
+                                        completedDownstreamState.andThen(pipeline.stageCompleted()) :
+                                        completedDownstreamState)
+                                        .andThen(onCompletedDownstreamProcessingHandler))
                         .onProcessingSkipped(
                                 // skip is equivalent to committed as we apply changes to state in upstream processor and skip when
                                 // downstream matches upstream source/sourceSeq
                                 currentDownstreamState.andThen(completedDownstreamState))
+                        .onCheckpoint((source, sourceSeq) -> {
+                            currentDownstreamState.acceptCheckpoint(source, sourceSeq);
+                            completedDownstreamState.acceptCheckpoint(source, sourceSeq);
+                            if (pipeline != null) {
+                                pipeline.stageCheckpoint(source, sourceSeq);
+                            }
+                        })
                         .build()
         );
 
-        final Step downstreamProcessorStep = new PollingProcessStep(this.downstreamProcessorPoller, downstreamMessageConsumer);
+        final Step downstreamPollingStep = config.recoveryPartitions > 1 ?
+                new PartitionedRecoveryStep(
+                        new PollingProcessStep(this.downstreamProcessorPoller, downstreamMessageConsumer, config.downstreamPollBatchSize),
+                        this.downstreamProcessorPoller, completedDownstreamState,
+                        config.recoveryPartitions, config.recoveryPartitioner, config.recoveryFactory, config.downstreamPollBatchSize) :
+                new PollingProcessStep(this.downstreamProcessorPoller, downstreamMessageConsumer, config.downstreamPollBatchSize);
+
+        final Step downstreamProcessorStep;
+        this.snapshotStore = config.snapshotStore;
+        if (config.snapshotStore != null) {
+            final long snapshotIndex = config.snapshotStore.load(completedDownstreamState,
+                    completedDownstreamState::restoreSourceSeq, config.snapshotLoader);
+            if (snapshotIndex != SnapshotStore.NO_SNAPSHOT && !downstreamProcessorPoller.seek(snapshotIndex + 1)) {
+                throw new IllegalStateException("Snapshot at index " + snapshotIndex + " is ahead of downstream queue");
+            }
+            downstreamProcessorStep = new SnapshotStep(downstreamPollingStep, completedDownstreamState,
+                    config.snapshotStore, config.snapshotCapture, systemNanoClock,
+                    TimeUnit.MILLISECONDS.toNanos(config.snapshotPeriodMillis), snapshotIndex);
+        } else {
+            downstreamProcessorStep = downstreamPollingStep;
+        }
 
-        this.processorStep = processorStepFactory.apply(upstreamProcessorStep, downstreamProcessorStep);
+        this.pipelined = pipeline != null;
+        this.upstreamProcessorStep = pipeline != null ? pipeline.upstreamStep(upstreamPollingStep) : upstreamPollingStep;
+        this.downstreamProcessorStep = pipeline != null ? pipeline.downstreamStep(downstreamProcessorStep) : downstreamProcessorStep;
+        this.adaptiveProcessorStep = config.adaptiveBurstBacklog > 0 ?
+                new AdaptiveProcessorStep(this.upstreamProcessorStep, this.downstreamProcessorStep,
+                        this.upstreamProcessorPoller::backlog, config.adaptiveBurstBacklog) : null;
+        this.processorStep = adaptiveProcessorStep != null ? adaptiveProcessorStep :
+                processorStepFactory.apply(this.upstreamProcessorStep, this.downstreamProcessorStep);
     }
 
     @Override
@@ -127,6 +211,30 @@ public final class DefaultEventProcessingQueue implements EventProcessingQueue {
         return processorStep;
     }
 
+    @Override
+    public Step upstreamProcessorStep() {
+        if (!pipelined) {
+            throw new IllegalStateException("Queue is not pipelined");
+        }
+        return upstreamProcessorStep;
+    }
+
+    @Override
+    public Step downstreamProcessorStep() {
+        if (!pipelined) {
+            throw new IllegalStateException("Queue is not pipelined");
+        }
+        return downstreamProcessorStep;
+    }
+
+    @Override
+    public AdaptiveProcessorStep adaptiveProcessorStep() {
+        if (adaptiveProcessorStep == null) {
+            throw new IllegalStateException("Processor step is not adaptive");
+        }
+        return adaptiveProcessorStep;
+    }
+
     @Override
     public Poller createPoller(final Poller.Options options) throws IOException {
         return downstreamQueue.createPoller(options);
@@ -138,5 +246,101 @@ public final class DefaultEventProcessingQueue implements EventProcessingQueue {
         downstreamQueue.close();
         upstreamProcessorPoller.close();
         downstreamProcessorPoller.close();
+        if (snapshotStore != null) {
+            snapshotStore.close();
+        }
+    }
+
+    /**
+     * Optional features of the queue, by default the queue applies one downstream entry per downstream step, has no
+     * snapshots, replays the downstream queue through the downstream message consumer, is not pipelined and its
+     * processor step is created by the processorStepFactory.
+     */
+    public static final class Config {
+        private int downstreamPollBatchSize = 1;
+        private SnapshotStore snapshotStore;
+        private SnapshotCapture snapshotCapture;
+        private SnapshotLoader snapshotLoader;
+        private long snapshotPeriodMillis;
+        private int recoveryPartitions = 1;
+        private MessageConsumer.Partitioner recoveryPartitioner;
+        private MessageConsumer.RecoveryFactory recoveryFactory;
+        private int pipelineDepth;
+        private long adaptiveBurstBacklog;
+
+        /**
+         * @param downstreamPollBatchSize - maximum number of downstream entries applied in one downstream step
+         * @return this config
+         */
+        public Config downstreamPollBatchSize(final int downstreamPollBatchSize) {
+            this.downstreamPollBatchSize = downstreamPollBatchSize;
+            return this;
+        }
+
+        /**
+         * Application state is loaded from the latest snapshot using snapshotLoader and only downstream entries
+         * following the snapshot are applied to it. Application state is captured by snapshotCapture and written
+         * to snapshotStore when downstream processing has caught up and at least snapshotPeriodMillis have elapsed
+         * since the previous snapshot.
+         * @param snapshotStore - store of snapshots
+         * @param snapshotCapture - capture of application state
+         * @param snapshotLoader - loader of application state
+         * @param snapshotPeriodMillis - min period in millis between snapshots
+         * @return this config
+         */
+        public Config snapshots(final SnapshotStore snapshotStore,
+                                final SnapshotCapture snapshotCapture,
+                                final SnapshotLoader snapshotLoader,
+                                final long snapshotPeriodMillis) {
+            this.snapshotStore = Objects.requireNonNull(snapshotStore);
+            this.snapshotCapture = Objects.requireNonNull(snapshotCapture);
+            this.snapshotLoader = Objects.requireNonNull(snapshotLoader);
+            this.snapshotPeriodMillis = snapshotPeriodMillis;
+            return this;
+        }
+
+        /**
+         * If partitions is greater than 1, downstream entries on start are replayed by a
+         * {@link PartitionedRecoveryStep} dispatching messages by the partitioner to recovery consumers created
+         * by the recoveryFactory, each applying the messages of its partition in own thread, before the downstream
+         * message consumer takes over.
+         * @param partitions - number of recovery partitions
+         * @param partitioner - partitioner of downstream messages
+         * @param recoveryFactory - factory for recovery consumers of the partitions
+         * @return this config
+         */
+        public Config partitionedRecovery(final int partitions,
+                                          final MessageConsumer.Partitioner partitioner,
+                                          final MessageConsumer.RecoveryFactory recoveryFactory) {
+            this.recoveryPartitions = partitions;
+            this.recoveryPartitioner = partitioner;
+            this.recoveryFactory = recoveryFactory;
+            return this;
+        }
+
+        /**
+         * If pipelineDepth is positive, the upstream and downstream processor steps can be performed by separate
+         * threads connected by a {@link ProcessingPipeline} of the given depth, see
+         * {@link DefaultEventProcessingQueue#upstreamProcessorStep()} and
+         * {@link DefaultEventProcessingQueue#downstreamProcessorStep()}. Snapshots are not supported by a pipelined queue as application
+         * state is changed by the upstream processor while the downstream processor step is performed.
+         * @param pipelineDepth - depth of the pipeline
+         * @return this config
+         */
+        public Config pipelineDepth(final int pipelineDepth) {
+            this.pipelineDepth = pipelineDepth;
+            return this;
+        }
+
+        /**
+         * If burstBacklog is positive, the processor step is an {@link AdaptiveProcessorStep} switching to burst
+         * mode at the given backlog of the upstream poller, otherwise it is created by the processorStepFactory.
+         * @param burstBacklog - min upstream backlog to switch to burst mode
+         * @return this config
+         */
+        public Config adaptiveProcessorStep(final long burstBacklog) {
+            this.adaptiveBurstBacklog = burstBacklog;
+            return this;
+        }
     }
 }
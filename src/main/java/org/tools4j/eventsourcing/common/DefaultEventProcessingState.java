@@ -23,7 +23,6 @@
  */
 package org.tools4j.eventsourcing.common;
 
-import org.agrona.collections.Long2LongHashMap;
 import org.agrona.collections.LongLongConsumer;
 import org.tools4j.eventsourcing.api.EventProcessingState;
 import org.tools4j.eventsourcing.api.Poller;
@@ -32,9 +31,9 @@ import java.util.Objects;
 import java.util.function.LongSupplier;
 
 public final class DefaultEventProcessingState implements EventProcessingState, Poller.IndexConsumer {
-    private static final long MISSING_VALUE = -1;
-    private final Long2LongHashMap sourceSeqMap;
+    private final SourceSeqTable sourceSeqTable;
     private final LongSupplier systemNanoClock;
+    private final LongLongConsumer restoreSourceSeq = this::restoreSourceSeq;
 
     private long id = NOT_INITIALISED;
     private int source = NOT_INITIALISED;
@@ -44,18 +43,18 @@ public final class DefaultEventProcessingState implements EventProcessingState,
 
     public DefaultEventProcessingState(final LongSupplier systemNanoClock) {
         this.systemNanoClock = Objects.requireNonNull(systemNanoClock);
-        this.sourceSeqMap = new Long2LongHashMap(MISSING_VALUE);
+        this.sourceSeqTable = new SourceSeqTable();
         this.eventTimeNanos = 0;
     }
 
     @Override
     public long sourceSeq(final int source) {
-        return sourceSeqMap.get(source);
+        return sourceSeqTable.get(source);
     }
 
     @Override
     public void accept(final long id, final int source, final long sourceSeq, final long eventTimeNanos) {
-        sourceSeqMap.put(source, sourceSeq);
+        sourceSeqTable.put(source, sourceSeq);
         this.id = id;
         this.source = source;
         this.sourceSeq = sourceSeq;
@@ -90,7 +89,44 @@ public final class DefaultEventProcessingState implements EventProcessingState,
 
     @Override
     public void forEachSourceEntry(final LongLongConsumer consumer) {
-        sourceSeqMap.longForEach(consumer);
+        sourceSeqTable.forEach(consumer);
+    }
+
+    @Override
+    public void forEachChangedSourceEntry(final LongLongConsumer consumer) {
+        sourceSeqTable.forEachChanged(consumer);
+    }
+
+    /**
+     * Copies the given state including sourceSeqs of all sources.
+     * @param state - state to copy
+     */
+    void copy(final EventProcessingState state) {
+        sourceSeqTable.clear();
+        state.forEachSourceEntry(restoreSourceSeq);
+        this.id = state.id();
+        this.source = state.source();
+        this.sourceSeq = state.sourceSeq();
+        this.eventTimeNanos = state.eventTimeNanos();
+        this.ingestionTimeNanos = state.ingestionTimeNanos();
+    }
+
+    /**
+     * Applies sourceSeq of a source of a checkpoint entry, details of the last event are not changed.
+     * @param source - source
+     * @param sourceSeq - last sourceSeq of the source
+     */
+    public void acceptCheckpoint(final long source, final long sourceSeq) {
+        sourceSeqTable.put((int) source, sourceSeq);
+    }
+
+    /**
+     * Restores sourceSeq of the source from a snapshot.
+     * @param source - source
+     * @param sourceSeq - last sourceSeq of the source
+     */
+    void restoreSourceSeq(final long source, final long sourceSeq) {
+        sourceSeqTable.put((int) source, sourceSeq);
     }
 
 }
@@ -0,0 +1,161 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Doorbell rung after appends to a queue, so that idle threads polling the queue can park instead of spinning,
+ * see {@link ParkingIdleStrategy}. Threads about to park register as waiters, and ringing only advances the doorbell
+ * sequence and unparks threads of the process awaiting the doorbell while waiters are registered, so that appends
+ * do not pay for the doorbell unless pollers park. A waiter registers before it polls for the last time prior to
+ * parking, so a ring is missed only if the appender reads the waiters before the registration became visible,
+ * in which case the waiter notices the append after at most the max park time.
+ * The state can be shared with other processes, such as the doorbell of the index file header, their waiters notice
+ * rings after at most the max park time as they are not unparked.
+ */
+public final class Doorbell {
+    private final State state;
+    private final Set<Thread> parked = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Shared state of the doorbell.
+     */
+    public interface State {
+        /**
+         * @return doorbell sequence
+         */
+        long sequence();
+
+        /**
+         * Increments the doorbell sequence, atomically unless the doorbell is rung by a single thread.
+         */
+        void increment();
+
+        /**
+         * @return number of registered waiters
+         */
+        int waiters();
+
+        /**
+         * Atomically adds to the number of registered waiters.
+         * @param delta - 1 to register a waiter, -1 to deregister it
+         */
+        void addWaiters(int delta);
+    }
+
+    /**
+     * Creates a doorbell with the state held in the process.
+     */
+    public Doorbell() {
+        this(new State() {
+            private final AtomicLong sequence = new AtomicLong();
+            private final AtomicInteger waiters = new AtomicInteger();
+
+            @Override
+            public long sequence() {
+                return sequence.get();
+            }
+
+            @Override
+            public void increment() {
+                sequence.incrementAndGet();
+            }
+
+            @Override
+            public int waiters() {
+                return waiters.get();
+            }
+
+            @Override
+            public void addWaiters(final int delta) {
+                waiters.addAndGet(delta);
+            }
+        });
+    }
+
+    /**
+     * @param state - state of the doorbell
+     */
+    public Doorbell(final State state) {
+        this.state = Objects.requireNonNull(state);
+    }
+
+    /**
+     * @return doorbell sequence, it changes when the doorbell is rung while waiters are registered
+     */
+    public long sequence() {
+        return state.sequence();
+    }
+
+    /**
+     * Advances the doorbell sequence and unparks awaiting threads if waiters are registered.
+     */
+    public void ring() {
+        if (state.waiters() > 0) {
+            state.increment();
+            for (final Thread thread : parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    /**
+     * Registers a waiter, the doorbell is rung from then on until the waiter is deregistered.
+     */
+    public void register() {
+        state.addWaiters(1);
+    }
+
+    /**
+     * Deregisters a waiter registered by {@link #register()}.
+     */
+    public void deregister() {
+        state.addWaiters(-1);
+    }
+
+    /**
+     * Parks the current thread unless the doorbell sequence has changed from the given sequence.
+     * The thread is to be registered as waiter, see {@link #register()}. It is unparked when the doorbell is rung,
+     * after the max park time or spuriously.
+     * @param sequence - doorbell sequence read before checking for work
+     * @param maxParkNanos - max park time
+     */
+    public void await(final long sequence, final long maxParkNanos) {
+        final Thread thread = Thread.currentThread();
+        parked.add(thread);
+        try {
+            if (sequence() == sequence) {
+                LockSupport.parkNanos(this, maxParkNanos);
+            }
+        } finally {
+            parked.remove(thread);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.ExpandableDirectByteBuffer;
+import org.agrona.collections.LongLongConsumer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tools4j.eventsourcing.api.EventProcessingState;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.SnapshotLoader;
+import org.tools4j.eventsourcing.api.SnapshotStore;
+import org.tools4j.eventsourcing.api.SnapshotWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Snapshot store keeping each snapshot in own file named {@code <filePrefix>_snapshot_<index>}, where index is
+ * the index of the last downstream entry applied to the snapshot. A snapshot is written to a temporary file
+ * which is renamed once forced to the storage device, so the latest snapshot file is always complete.
+ * Only the given number of latest snapshots is retained.
+ *
+ * Snapshot layout:
+ *  - magic (4 bytes)
+ *  - source (4 bytes) - source of the last applied entry
+ *  - index (8 bytes) - index of the last applied entry
+ *  - sourceSeq (8 bytes) - sourceSeq of the last applied entry
+ *  - event time (8 bytes) - event time in nanos of the last applied entry
+ *  - source count (4 bytes)
+ *  - state length (4 bytes)
+ *  - source entries (16 bytes each) - source (8 bytes) and last sourceSeq (8 bytes)
+ *  - application state
+ */
+public final class FileSnapshotStore implements SnapshotStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSnapshotStore.class);
+    private static final int MAGIC = 0x534e4150;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int SOURCE_OFFSET = 4;
+    private static final int INDEX_OFFSET = 8;
+    private static final int SOURCE_SEQ_OFFSET = 16;
+    private static final int EVENT_TIME_OFFSET = 24;
+    private static final int SOURCE_COUNT_OFFSET = 32;
+    private static final int STATE_LENGTH_OFFSET = 36;
+    private static final int HEADER_LENGTH = 40;
+    private static final int SOURCE_ENTRY_LENGTH = 16;
+    private static final String SNAPSHOT_INFIX = "_snapshot_";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final File directory;
+    private final String fileNamePrefix;
+    private final int retainSnapshots;
+    private final ExpandableDirectByteBuffer snapshotBuffer = new ExpandableDirectByteBuffer(4096);
+    private final SourceEntryEncoder sourceEntryEncoder = new SourceEntryEncoder();
+    private volatile long lastSnapshotIndex;
+
+    /**
+     * @param directory - directory of the snapshot files
+     * @param filePrefix - file prefix of the snapshot files
+     * @param retainSnapshots - number of latest snapshots to retain
+     * @throws IOException when the directory could not be created
+     */
+    public FileSnapshotStore(final String directory, final String filePrefix, final int retainSnapshots) throws IOException {
+        if (retainSnapshots < 1) {
+            throw new IllegalArgumentException("retainSnapshots must be positive but was " + retainSnapshots);
+        }
+        this.directory = new File(Objects.requireNonNull(directory));
+        this.fileNamePrefix = Objects.requireNonNull(filePrefix) + SNAPSHOT_INFIX;
+        this.retainSnapshots = retainSnapshots;
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IOException("Failed to create snapshot directory " + directory);
+        }
+        final long[] snapshots = snapshotIndices();
+        this.lastSnapshotIndex = snapshots.length > 0 ? snapshots[snapshots.length - 1] : NO_SNAPSHOT;
+    }
+
+    @Override
+    public void write(final EventProcessingState completedDownstreamState, final SnapshotWriter writer) {
+        sourceEntryEncoder.count = 0;
+        completedDownstreamState.forEachSourceEntry(sourceEntryEncoder);
+        final int stateOffset = HEADER_LENGTH + sourceEntryEncoder.count * SOURCE_ENTRY_LENGTH;
+        final int stateLength = writer.write(snapshotBuffer, stateOffset);
+        final long index = completedDownstreamState.id();
+
+        snapshotBuffer.putInt(MAGIC_OFFSET, MAGIC);
+        snapshotBuffer.putInt(SOURCE_OFFSET, completedDownstreamState.source());
+        snapshotBuffer.putLong(INDEX_OFFSET, index);
+        snapshotBuffer.putLong(SOURCE_SEQ_OFFSET, completedDownstreamState.sourceSeq());
+        snapshotBuffer.putLong(EVENT_TIME_OFFSET, completedDownstreamState.eventTimeNanos());
+        snapshotBuffer.putInt(SOURCE_COUNT_OFFSET, sourceEntryEncoder.count);
+        snapshotBuffer.putInt(STATE_LENGTH_OFFSET, stateLength);
+
+        final File snapshotFile = snapshotFile(index);
+        final File tempFile = new File(directory, snapshotFile.getName() + TEMP_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                final ByteBuffer byteBuffer = snapshotBuffer.byteBuffer().duplicate();
+                byteBuffer.limit(stateOffset + stateLength).position(0);
+                while (byteBuffer.hasRemaining()) {
+                    channel.write(byteBuffer);
+                }
+                channel.force(true);
+            }
+            Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to write snapshot " + snapshotFile, e);
+        }
+        lastSnapshotIndex = index;
+        removeOldSnapshots();
+    }
+
+    @Override
+    public long load(final Poller.IndexConsumer lastEntryConsumer,
+                     final LongLongConsumer sourceSeqConsumer,
+                     final SnapshotLoader loader) {
+        final long[] snapshots = snapshotIndices();
+        for (int i = snapshots.length - 1; i >= 0; i--) {
+            final File snapshotFile = snapshotFile(snapshots[i]);
+            final UnsafeBuffer buffer;
+            try {
+                buffer = new UnsafeBuffer(Files.readAllBytes(snapshotFile.toPath()));
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Failed to read snapshot " + snapshotFile, e);
+            }
+            if (!isValid(buffer, snapshots[i])) {
+                LOGGER.warn("Skipping invalid snapshot {}", snapshotFile);
+                continue;
+            }
+            final int sourceCount = buffer.getInt(SOURCE_COUNT_OFFSET);
+            final int stateOffset = HEADER_LENGTH + sourceCount * SOURCE_ENTRY_LENGTH;
+            lastEntryConsumer.accept(buffer.getLong(INDEX_OFFSET), buffer.getInt(SOURCE_OFFSET),
+                    buffer.getLong(SOURCE_SEQ_OFFSET), buffer.getLong(EVENT_TIME_OFFSET));
+            for (int offset = HEADER_LENGTH; offset < stateOffset; offset += SOURCE_ENTRY_LENGTH) {
+                sourceSeqConsumer.accept(buffer.getLong(offset), buffer.getLong(offset + 8));
+            }
+            loader.load(buffer, stateOffset, buffer.getInt(STATE_LENGTH_OFFSET));
+            return snapshots[i];
+        }
+        return NO_SNAPSHOT;
+    }
+
+    /**
+     * Retention watermark of the downstream queue, see {@link org.tools4j.eventsourcing.mmap.MmapBuilder}.
+     * @return index of the first downstream entry that is not included in the latest snapshot, or 0 if there
+     *         is no snapshot.
+     */
+    public long watermark() {
+        return lastSnapshotIndex + 1;
+    }
+
+    private static boolean isValid(final UnsafeBuffer buffer, final long index) {
+        if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(MAGIC_OFFSET) != MAGIC ||
+                buffer.getLong(INDEX_OFFSET) != index) {
+            return false;
+        }
+        final long length = HEADER_LENGTH + (long) buffer.getInt(SOURCE_COUNT_OFFSET) * SOURCE_ENTRY_LENGTH +
+                buffer.getInt(STATE_LENGTH_OFFSET);
+        return buffer.getInt(SOURCE_COUNT_OFFSET) >= 0 && buffer.getInt(STATE_LENGTH_OFFSET) >= 0 &&
+                length == buffer.capacity();
+    }
+
+    private void removeOldSnapshots() {
+        final long[] snapshots = snapshotIndices();
+        for (int i = 0; i < snapshots.length - retainSnapshots; i++) {
+            final File snapshotFile = snapshotFile(snapshots[i]);
+            if (!snapshotFile.delete()) {
+                LOGGER.warn("Failed to delete snapshot {}", snapshotFile);
+            }
+        }
+    }
+
+    private File snapshotFile(final long index) {
+        return new File(directory, fileNamePrefix + index);
+    }
+
+    /**
+     * @return indices of the snapshot files in ascending order
+     */
+    private long[] snapshotIndices() {
+        final String[] names = directory.list((dir, name) -> name.startsWith(fileNamePrefix) && !name.endsWith(TEMP_SUFFIX));
+        if (names == null) {
+            return new long[0];
+        }
+        final long[] indices = new long[names.length];
+        int count = 0;
+        for (final String name : names) {
+            try {
+                indices[count] = Long.parseLong(name.substring(fileNamePrefix.length()));
+                count++;
+            } catch (final NumberFormatException e) {
+                //not a snapshot file
+            }
+        }
+        final long[] snapshots = Arrays.copyOf(indices, count);
+        Arrays.sort(snapshots);
+        return snapshots;
+    }
+
+    /**
+     * Not thread-safe. Avoids lambda capturing when encoding source entries.
+     */
+    private final class SourceEntryEncoder implements LongLongConsumer {
+        int count;
+
+        @Override
+        public void accept(final long source, final long sourceSeq) {
+            final int offset = HEADER_LENGTH + count * SOURCE_ENTRY_LENGTH;
+            snapshotBuffer.putLong(offset, source);
+            snapshotBuffer.putLong(offset + 8, sourceSeq);
+            count++;
+        }
+    }
+}
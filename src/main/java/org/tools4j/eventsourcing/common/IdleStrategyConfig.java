@@ -0,0 +1,123 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.BusySpinIdleStrategy;
+import org.agrona.concurrent.SleepingMillisIdleStrategy;
+import org.agrona.concurrent.YieldingIdleStrategy;
+import org.tools4j.nobark.loop.IdleStrategy;
+
+import java.util.Objects;
+
+/**
+ * Idle strategies of {@link WhileLoop} services. Strategies keep state between idles, so that each service is to be
+ * given own instance. Strategies are named BUSY_SPIN, YIELDING, BACKOFF, SLEEPING and PARKING, the latter requiring
+ * the doorbell of the polled queue, such as {@link org.tools4j.eventsourcing.mmap.MmapIndexedQueue#doorbell()}.
+ */
+public class IdleStrategyConfig {
+    public static final long DEFAULT_MAX_SPINS = 100;
+    public static final long DEFAULT_MAX_YIELDS = 10;
+    public static final long DEFAULT_MIN_PARK_NANOS = 1000;
+    public static final long DEFAULT_MAX_PARK_NANOS = 1_000_000;
+    public static final long DEFAULT_SLEEP_MILLIS = 1;
+
+    public static IdleStrategy busySpin() {
+        return of(new BusySpinIdleStrategy());
+    }
+
+    public static IdleStrategy yielding() {
+        return of(new YieldingIdleStrategy());
+    }
+
+    public static IdleStrategy backoff() {
+        return backoff(DEFAULT_MAX_SPINS, DEFAULT_MAX_YIELDS, DEFAULT_MIN_PARK_NANOS, DEFAULT_MAX_PARK_NANOS);
+    }
+
+    public static IdleStrategy backoff(final long maxSpins,
+                                       final long maxYields,
+                                       final long minParkNanos,
+                                       final long maxParkNanos) {
+        return of(new BackoffIdleStrategy(maxSpins, maxYields, minParkNanos, maxParkNanos));
+    }
+
+    public static IdleStrategy sleeping(final long sleepMillis) {
+        return of(new SleepingMillisIdleStrategy(sleepMillis));
+    }
+
+    public static IdleStrategy parking(final Doorbell doorbell) {
+        return parking(doorbell, DEFAULT_MAX_SPINS, DEFAULT_MAX_YIELDS, DEFAULT_MAX_PARK_NANOS);
+    }
+
+    public static IdleStrategy parking(final Doorbell doorbell,
+                                       final long maxSpins,
+                                       final long maxYields,
+                                       final long maxParkNanos) {
+        return new ParkingIdleStrategy(doorbell, maxSpins, maxYields, maxParkNanos);
+    }
+
+    /**
+     * Adapts agrona idle strategy, the strategy is reset when work is done.
+     * @param idleStrategy - agrona idle strategy
+     * @return idle strategy of the while loop
+     */
+    public static IdleStrategy of(final org.agrona.concurrent.IdleStrategy idleStrategy) {
+        Objects.requireNonNull(idleStrategy);
+        return new IdleStrategy() {
+            @Override
+            public void idle() {
+                idleStrategy.idle();
+            }
+
+            @Override
+            public void reset() {
+                idleStrategy.reset();
+            }
+        };
+    }
+
+    public static IdleStrategy get(final String name) {
+        return get(name, null);
+    }
+
+    /**
+     * @param name - name of the idle strategy
+     * @param doorbell - doorbell of the polled queue, required by the PARKING strategy only
+     * @return new idle strategy with default settings
+     */
+    public static IdleStrategy get(final String name, final Doorbell doorbell) {
+        switch (name) {
+            case "BUSY_SPIN": return busySpin();
+            case "YIELDING": return yielding();
+            case "BACKOFF": return backoff();
+            case "SLEEPING": return sleeping(DEFAULT_SLEEP_MILLIS);
+            case "PARKING":
+                if (doorbell == null) {
+                    throw new IllegalArgumentException("Idle strategy PARKING requires a doorbell");
+                }
+                return parking(doorbell);
+            default: throw new IllegalArgumentException("Unknown idleStrategy name " + name);
+        }
+    }
+}
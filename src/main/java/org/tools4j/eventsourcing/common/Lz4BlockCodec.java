@@ -0,0 +1,239 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Block compression in LZ4 block format: a sequence of tokens, each followed by literals and a match
+ * given by its offset back from the current position, see
+ * <a href="https://github.com/lz4/lz4/blob/dev/doc/lz4_Block_format.md">LZ4 Block Format</a>.
+ * Matches may refer to a dictionary preceding the block in both, the source buffer of compression and
+ * the target buffer of decompression.
+ */
+final class Lz4BlockCodec {
+    static final int MAX_DICTIONARY_LENGTH = 65535;
+    static final int HASH_TABLE_SIZE = 1 << 12;
+
+    private static final int HASH_SHIFT = 32 - 12;
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_OFFSET = 65535;
+    private static final int RUN_MASK = 15;
+
+    static int maxCompressedLength(final int length) {
+        return length + length / 255 + 16;
+    }
+
+    /**
+     * Initialises the hash table with the positions of the dictionary.
+     * @param src - buffer starting with the dictionary
+     * @param dictionaryLength - length of the dictionary
+     * @param hashTable - hash table to initialise
+     */
+    static void prime(final DirectBuffer src, final int dictionaryLength, final int[] hashTable) {
+        Arrays.fill(hashTable, -1);
+        for (int position = 0; position + MIN_MATCH <= dictionaryLength; position++) {
+            hashTable[hash(src.getInt(position, ByteOrder.LITTLE_ENDIAN))] = position;
+        }
+    }
+
+    /**
+     * Compresses a block.
+     * @param src - source buffer, bytes preceding srcOffset are the dictionary
+     * @param srcOffset - offset of the block in src
+     * @param srcLength - length of the block
+     * @param dst - target buffer with capacity of at least {@link #maxCompressedLength(int)}
+     * @param dstOffset - offset of the compressed block in dst
+     * @param hashTable - hash table initialised by {@link #prime(DirectBuffer, int, int[])}
+     * @return compressed length
+     */
+    static int compress(final DirectBuffer src, final int srcOffset, final int srcLength,
+                        final MutableDirectBuffer dst, final int dstOffset,
+                        final int[] hashTable) {
+        final int srcLimit = srcOffset + srcLength;
+        final int matchLimit = srcLimit - LAST_LITERALS;
+        final int matchFindLimit = srcLimit - MATCH_FIND_LIMIT;
+
+        int anchor = srcOffset;
+        int srcPosition = srcOffset;
+        int dstPosition = dstOffset;
+
+        while (srcPosition < matchFindLimit) {
+            final int sequence = src.getInt(srcPosition, ByteOrder.LITTLE_ENDIAN);
+            final int hash = hash(sequence);
+            int reference = hashTable[hash];
+            hashTable[hash] = srcPosition;
+            if (reference < 0 || reference >= srcPosition || srcPosition - reference > MAX_OFFSET ||
+                    src.getInt(reference, ByteOrder.LITTLE_ENDIAN) != sequence) {
+                srcPosition++;
+                continue;
+            }
+            int matchStart = srcPosition;
+            while (matchStart > anchor && reference > 0 && src.getByte(matchStart - 1) == src.getByte(reference - 1)) {
+                matchStart--;
+                reference--;
+            }
+            int matchEnd = srcPosition + MIN_MATCH;
+            while (matchEnd < matchLimit && src.getByte(matchEnd) == src.getByte(reference + matchEnd - matchStart)) {
+                matchEnd++;
+            }
+            dstPosition = writeSequence(src, anchor, matchStart - anchor, dst, dstPosition,
+                    matchStart - reference, matchEnd - matchStart);
+            srcPosition = matchEnd;
+            anchor = matchEnd;
+        }
+        dstPosition = writeSequence(src, anchor, srcLimit - anchor, dst, dstPosition, 0, 0);
+        return dstPosition - dstOffset;
+    }
+
+    /**
+     * Decompresses a block.
+     * @param src - buffer containing the compressed block
+     * @param srcOffset - offset of the compressed block in src
+     * @param srcLength - length of the compressed block
+     * @param dst - target buffer, bytes preceding dstOffset are the dictionary
+     * @param dstOffset - offset of the decompressed block in dst
+     * @param dstLength - length of the decompressed block
+     * @throws IllegalStateException if the block is corrupt or its length is not dstLength
+     */
+    static void decompress(final DirectBuffer src, final int srcOffset, final int srcLength,
+                           final MutableDirectBuffer dst, final int dstOffset, final int dstLength) {
+        final int srcLimit = srcOffset + srcLength;
+        final int dstLimit = dstOffset + dstLength;
+
+        int srcPosition = srcOffset;
+        int dstPosition = dstOffset;
+
+        while (srcPosition < srcLimit) {
+            final int token = src.getByte(srcPosition++) & 0xff;
+
+            int literalLength = token >>> 4;
+            if (literalLength == RUN_MASK) {
+                int lengthByte;
+                do {
+                    checkLimit(srcPosition + 1, srcLimit);
+                    lengthByte = src.getByte(srcPosition++) & 0xff;
+                    literalLength += lengthByte;
+                } while (lengthByte == 255);
+            }
+            checkLimit(srcPosition + literalLength, srcLimit);
+            checkLimit(dstPosition + literalLength, dstLimit);
+            dst.putBytes(dstPosition, src, srcPosition, literalLength);
+            srcPosition += literalLength;
+            dstPosition += literalLength;
+            if (srcPosition == srcLimit) {
+                break;
+            }
+
+            checkLimit(srcPosition + 2, srcLimit);
+            final int offset = (src.getByte(srcPosition) & 0xff) | ((src.getByte(srcPosition + 1) & 0xff) << 8);
+            srcPosition += 2;
+            int matchLength = token & RUN_MASK;
+            if (matchLength == RUN_MASK) {
+                int lengthByte;
+                do {
+                    checkLimit(srcPosition + 1, srcLimit);
+                    lengthByte = src.getByte(srcPosition++) & 0xff;
+                    matchLength += lengthByte;
+                } while (lengthByte == 255);
+            }
+            matchLength += MIN_MATCH;
+            final int reference = dstPosition - offset;
+            if (offset == 0 || reference < 0) {
+                throw new IllegalStateException("Corrupt compressed block, invalid match offset " + offset);
+            }
+            checkLimit(dstPosition + matchLength, dstLimit);
+            if (offset >= matchLength) {
+                dst.putBytes(dstPosition, dst, reference, matchLength);
+            } else {
+                //overlapping match repeats the bytes just copied
+                for (int i = 0; i < matchLength; i++) {
+                    dst.putByte(dstPosition + i, dst.getByte(reference + i));
+                }
+            }
+            dstPosition += matchLength;
+        }
+        if (dstPosition != dstLimit) {
+            throw new IllegalStateException("Corrupt compressed block, decompressed length " +
+                    (dstPosition - dstOffset) + " instead of " + dstLength);
+        }
+    }
+
+    private static int writeSequence(final DirectBuffer src, final int literalOffset, final int literalLength,
+                                     final MutableDirectBuffer dst, final int dstOffset,
+                                     final int matchOffset, final int matchLength) {
+        final int tokenPosition = dstOffset;
+        int dstPosition = dstOffset + 1;
+        int token;
+        if (literalLength >= RUN_MASK) {
+            token = RUN_MASK << 4;
+            dstPosition = writeLength(dst, dstPosition, literalLength - RUN_MASK);
+        } else {
+            token = literalLength << 4;
+        }
+        dst.putBytes(dstPosition, src, literalOffset, literalLength);
+        dstPosition += literalLength;
+
+        if (matchLength > 0) {
+            dst.putByte(dstPosition++, (byte) matchOffset);
+            dst.putByte(dstPosition++, (byte) (matchOffset >>> 8));
+            final int matchLengthCode = matchLength - MIN_MATCH;
+            if (matchLengthCode >= RUN_MASK) {
+                token |= RUN_MASK;
+                dstPosition = writeLength(dst, dstPosition, matchLengthCode - RUN_MASK);
+            } else {
+                token |= matchLengthCode;
+            }
+        }
+        dst.putByte(tokenPosition, (byte) token);
+        return dstPosition;
+    }
+
+    private static int writeLength(final MutableDirectBuffer dst, final int dstOffset, final int length) {
+        int dstPosition = dstOffset;
+        int remaining = length;
+        while (remaining >= 255) {
+            dst.putByte(dstPosition++, (byte) 255);
+            remaining -= 255;
+        }
+        dst.putByte(dstPosition++, (byte) remaining);
+        return dstPosition;
+    }
+
+    private static void checkLimit(final int position, final int limit) {
+        if (position > limit) {
+            throw new IllegalStateException("Corrupt compressed block, position " + position + " exceeds limit " + limit);
+        }
+    }
+
+    private static int hash(final int sequence) {
+        return (sequence * -1640531535) >>> HASH_SHIFT;
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.tools4j.eventsourcing.api.IndexedPollerFactory;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Poller of multiple queues polled as one queue. With {@link Ordering#EVENT_TIME} the entry with the earliest
+ * eventTimeNanos among the next entries of the queues available when polled is polled next, entries with the same
+ * event time are polled in queue order, and polling pauses while the earliest entry is paused. With {@link Ordering#ROUND_ROBIN} the queues are polled in turn, starting
+ * with the queue following the last polled queue.
+ *
+ * Event time of the next entry of a queue is peeked by the pause predicate of the queue poller and the queues with
+ * peeked entries are kept in a binary heap ordered by the peeked event time, so polling does not allocate.
+ * Index passed to the poller callbacks is the index of the entry in its queue, sources of the entries are expected
+ * to be unique across the queues. Seeking is supported by event time only, as entries of the merged queues have no
+ * common index.
+ */
+public final class MergingPoller implements Poller {
+    private final Poller[] queuePollers;
+    private final Ordering ordering;
+    private final boolean[] peeked;
+    private final long[] peekedEventTimeNanos;
+    private final int[] heap;
+    private int heapSize;
+    private int peekingQueue = -1;
+    private int nextQueue;
+
+    /**
+     * Ordering of entries of the merged queues
+     */
+    public enum Ordering {
+        EVENT_TIME,
+        ROUND_ROBIN
+    }
+
+    /**
+     * @param options - poller options applied to the entries of all queues
+     * @param ordering - ordering of entries of the queues
+     * @param queues - poller factories of the queues
+     * @throws IOException when a poller of a queue could not be created
+     */
+    public MergingPoller(final Options options,
+                         final Ordering ordering,
+                         final IndexedPollerFactory... queues) throws IOException {
+        Objects.requireNonNull(options);
+        if (queues.length < 1) {
+            throw new IllegalArgumentException("At least one queue is required");
+        }
+        this.ordering = Objects.requireNonNull(ordering);
+        this.queuePollers = new Poller[queues.length];
+        this.peeked = new boolean[queues.length];
+        this.peekedEventTimeNanos = new long[queues.length];
+        this.heap = new int[queues.length];
+        for (int queue = 0; queue < queues.length; queue++) {
+            final int pollerQueue = queue;
+            queuePollers[queue] = queues[queue].createPoller(Options.builder(options)
+                    .pauseWhen((index, source, sourceSeq, eventTimeNanos) -> {
+                        if (peekingQueue == pollerQueue) {
+                            peeked[pollerQueue] = true;
+                            peekedEventTimeNanos[pollerQueue] = eventTimeNanos;
+                            return true;
+                        }
+                        return options.pauseWhen().test(index, source, sourceSeq, eventTimeNanos);
+                    })
+                    .build());
+        }
+    }
+
+    /**
+     * @param ordering - ordering of entries of the queues
+     * @param queues - poller factories of the queues
+     * @return factory of pollers merging the queues
+     */
+    public static IndexedPollerFactory factory(final Ordering ordering, final IndexedPollerFactory... queues) {
+        Objects.requireNonNull(ordering);
+        final IndexedPollerFactory[] mergedQueues = queues.clone();
+        return options -> new MergingPoller(options, ordering, mergedQueues);
+    }
+
+    @Override
+    public int poll(final MessageConsumer consumer) {
+        return ordering == Ordering.EVENT_TIME ? pollEarliest(consumer) : pollNext(consumer);
+    }
+
+    private int pollEarliest(final MessageConsumer consumer) {
+        for (int queue = 0; queue < queuePollers.length; queue++) {
+            if (!peeked[queue]) {
+                peekingQueue = queue;
+                queuePollers[queue].poll(MessageConsumer.NO_OP);
+                peekingQueue = -1;
+                if (peeked[queue]) {
+                    push(queue);
+                }
+            }
+        }
+        if (heapSize == 0) {
+            return 0;
+        }
+        final int queue = pop();
+        peeked[queue] = false;
+        return queuePollers[queue].poll(consumer);
+    }
+
+    private int pollNext(final MessageConsumer consumer) {
+        for (int polled = 0; polled < queuePollers.length; polled++) {
+            final int queue = nextQueue;
+            nextQueue = queue + 1 == queuePollers.length ? 0 : queue + 1;
+            final int done = queuePollers[queue].poll(consumer);
+            if (done > 0) {
+                return done;
+            }
+        }
+        return 0;
+    }
+
+    private boolean isBefore(final int queue, final int other) {
+        final long eventTimeNanos = peekedEventTimeNanos[queue];
+        final long otherEventTimeNanos = peekedEventTimeNanos[other];
+        return eventTimeNanos < otherEventTimeNanos || (eventTimeNanos == otherEventTimeNanos && queue < other);
+    }
+
+    private void push(final int queue) {
+        int child = heapSize++;
+        while (child > 0) {
+            final int parent = (child - 1) >>> 1;
+            if (!isBefore(queue, heap[parent])) {
+                break;
+            }
+            heap[child] = heap[parent];
+            child = parent;
+        }
+        heap[child] = queue;
+    }
+
+    private int pop() {
+        final int top = heap[0];
+        final int last = heap[--heapSize];
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && isBefore(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!isBefore(heap[child], last)) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        if (heapSize > 0) {
+            heap[parent] = last;
+        }
+        return top;
+    }
+
+    /**
+     * Positions the poller of each queue at the first entry of the queue with eventTimeNanos greater than or equal
+     * to the given time, see {@link Poller#seekToEventTime(long)}.
+     * @param timeNanos - minimum event time of the entry in nanos
+     * @return sum of the indices the queue pollers are positioned at, that is the number of entries of the queues
+     *         before the position
+     */
+    @Override
+    public long seekToEventTime(final long timeNanos) {
+        long index = 0;
+        for (int queue = 0; queue < queuePollers.length; queue++) {
+            index += queuePollers[queue].seekToEventTime(timeNanos);
+            peeked[queue] = false;
+        }
+        heapSize = 0;
+        nextQueue = 0;
+        return index;
+    }
+
+    /**
+     * @return sum of the backlogs of the queues
+     */
+    @Override
+    public long backlog() {
+        long backlog = 0;
+        for (final Poller queuePoller : queuePollers) {
+            backlog += queuePoller.backlog();
+        }
+        return backlog;
+    }
+
+    @Override
+    public void close() {
+        for (final Poller queuePoller : queuePollers) {
+            queuePoller.close();
+        }
+    }
+}
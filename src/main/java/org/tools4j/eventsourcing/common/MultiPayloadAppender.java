@@ -25,39 +25,60 @@ package org.tools4j.eventsourcing.common;
 
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
-import org.tools4j.eventsourcing.api.IndexedMessageConsumer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.IndexedClaimingAppender;
 import org.tools4j.eventsourcing.api.Transaction;
 import org.tools4j.eventsourcing.sbe.MessageHeaderEncoder;
 import org.tools4j.eventsourcing.sbe.MultiPayloadEncoder;
+import org.tools4j.eventsourcing.sbe.CheckpointEncoder;
 
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
- * Appender that encodes multiple messages with SBE MultiPayloadEncoder and delegates appending of the encoded message to
- * delegateAppender.
+ * Appender that encodes multiple messages with SBE MultiPayloadEncoder directly into the message claimed
+ * from delegateAppender and commits it with the delegateAppender.
+ * The number of entries is not limited: once the entries group of a MultiPayload frame is full, the following
+ * entries are encoded in the next MultiPayload frame of the same message, so that all entries of the transaction
+ * are still published by a single commit.
+ * Noops of other sources added to a transaction without entries are encoded in Checkpoint frames instead.
  */
 public final class MultiPayloadAppender implements Transaction {
-    private static final int MAX_ENTRIES = 10;
+    /**
+     * Max count of a repeating group with uint16 numInGroup.
+     */
+    static final int MAX_FRAME_ENTRIES = 65534;
+    private static final int FRAME_HEADER_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH + MultiPayloadEncoder.BLOCK_LENGTH
+            + MultiPayloadEncoder.EntriesEncoder.sbeHeaderSize();
+    private static final int ENTRY_OVERHEAD = MultiPayloadEncoder.EntriesEncoder.sbeBlockLength()
+            + MultiPayloadEncoder.EntriesEncoder.valueHeaderLength();
+    private static final int CHECKPOINT_FRAME_HEADER_LENGTH = MessageHeaderEncoder.ENCODED_LENGTH
+            + CheckpointEncoder.BLOCK_LENGTH + CheckpointEncoder.SourceSeqsEncoder.sbeHeaderSize();
 
-    private final IndexedMessageConsumer delegateAppender;
-    private final MutableDirectBuffer messageEncodingBuffer;
+    private final IndexedClaimingAppender delegateAppender;
 
     private final MessageHeaderEncoder messageHeaderEncoder = new MessageHeaderEncoder();
     private final MultiPayloadEncoder multiPayloadEncoder = new MultiPayloadEncoder();
+    private final CheckpointEncoder checkpointEncoder = new CheckpointEncoder();
+    private final UnsafeBuffer entryBuffer = new UnsafeBuffer(0, 0);
 
+    private MutableDirectBuffer messageEncodingBuffer;
     private int source;
     private long sourceSeq;
     private long eventTimeNanos;
     private boolean allowEmpty;
-    private int messageLength;
     private int entries;
+    private int frameEntries;
+    private int frameOffset;
     private int limitBeforeEntries;
     private MultiPayloadEncoder.EntriesEncoder entriesEncoder;
+    private int[] noopSources = new int[16];
+    private long[] noopSourceSeqs = new long[16];
+    private int noops;
 
-    public MultiPayloadAppender(final IndexedMessageConsumer delegateAppender,
-                                final MutableDirectBuffer messageEncodingBuffer) {
+    public MultiPayloadAppender(final IndexedClaimingAppender delegateAppender) {
         this.delegateAppender = Objects.requireNonNull(delegateAppender);
-        this.messageEncodingBuffer = Objects.requireNonNull(messageEncodingBuffer);
     }
 
     @Override
@@ -67,39 +88,162 @@ public final class MultiPayloadAppender implements Transaction {
         this.sourceSeq = sourceSeq;
         this.eventTimeNanos = eventTimeNanos;
         this.allowEmpty = allowEmpty;
+        this.noops = 0;
 
-        final int headerLength = messageHeaderEncoder.wrap(messageEncodingBuffer, 0)
+        messageEncodingBuffer = delegateAppender.claim(FRAME_HEADER_LENGTH);
+        startFrame(0);
+    }
+
+    @Override
+    public int commit() {
+        if (noops > 0) {
+            delegateAppender.commit(source, sourceSeq, eventTimeNanos, encodeNoops());
+        } else if (allowEmpty || entries > 0) {
+            completeFrame();
+            final int messageLength = multiPayloadEncoder.limit();
+            //messageLength = BitUtil.align(messageLength, 64);
+            delegateAppender.commit(source, sourceSeq, eventTimeNanos, messageLength);
+        }
+        return entries;
+    }
+
+    @Override
+    public void acceptNoop(final int source, final long sourceSeq) {
+        if (entries > 0) {
+            throw new IllegalStateException("Noops cannot be added to transaction with entries");
+        }
+        if (noops == noopSources.length) {
+            noopSources = Arrays.copyOf(noopSources, noops * 2);
+            noopSourceSeqs = Arrays.copyOf(noopSourceSeqs, noops * 2);
+        }
+        noopSources[noops] = source;
+        noopSourceSeqs[noops] = sourceSeq;
+        noops++;
+    }
+
+    @Override
+    public void accept(final DirectBuffer buffer, final int offset, final int length) {
+        checkNoNoops();
+        ensureCapacity(length);
+        entriesEncoder = entriesEncoder.next().putValue(buffer, offset, length);
+        entries++;
+        frameEntries++;
+    }
+
+    @Override
+    public MutableDirectBuffer claim(final int length) {
+        checkNoNoops();
+        ensureCapacity(length);
+        entriesEncoder = entriesEncoder.next();
+        final int valueOffset = multiPayloadEncoder.limit();
+        messageEncodingBuffer.putInt(valueOffset, length, ByteOrder.LITTLE_ENDIAN);
+        multiPayloadEncoder.limit(valueOffset + MultiPayloadEncoder.EntriesEncoder.valueHeaderLength() + length);
+        entries++;
+        frameEntries++;
+
+        entryBuffer.wrap(messageEncodingBuffer, valueOffset + MultiPayloadEncoder.EntriesEncoder.valueHeaderLength(), length);
+        return entryBuffer;
+    }
+
+    private void checkNoNoops() {
+        if (noops > 0) {
+            throw new IllegalStateException("Entries cannot be added to transaction with noops");
+        }
+    }
+
+    /**
+     * Extends the claimed message if the next entry does not fit into it. The encoders of the current frame are
+     * re-wrapped if the extended claim is returned in another buffer than the claimed one. Starts the next frame
+     * if the entries group of the current frame is full.
+     * @param length - length of the next entry
+     */
+    private void ensureCapacity(final int length) {
+        final boolean frameFull = frameEntries == MAX_FRAME_ENTRIES;
+        final int limit = multiPayloadEncoder.limit();
+        final int requiredLength = limit + (frameFull ? FRAME_HEADER_LENGTH : 0) + ENTRY_OVERHEAD + length;
+        if (requiredLength > messageEncodingBuffer.capacity()) {
+            final MutableDirectBuffer extendedBuffer = delegateAppender.extendClaim(requiredLength, limit);
+            if (extendedBuffer != messageEncodingBuffer) {
+                messageEncodingBuffer = extendedBuffer;
+                rewrapFrame();
+            }
+        }
+        if (frameFull) {
+            completeFrame();
+            startFrame(limit);
+        }
+    }
+
+    private void startFrame(final int frameOffset) {
+        this.frameOffset = frameOffset;
+        final int headerLength = messageHeaderEncoder.wrap(messageEncodingBuffer, frameOffset)
                 .blockLength(MultiPayloadEncoder.BLOCK_LENGTH)
                 .schemaId(MultiPayloadEncoder.SCHEMA_ID)
                 .version(MultiPayloadEncoder.SCHEMA_VERSION)
                 .templateId(MultiPayloadEncoder.TEMPLATE_ID)
                 .encodedLength();
 
-        messageLength = headerLength;
-        multiPayloadEncoder.wrap(messageEncodingBuffer, headerLength);
+        multiPayloadEncoder.wrap(messageEncodingBuffer, frameOffset + headerLength);
         limitBeforeEntries = multiPayloadEncoder.limit();
+        entriesEncoder = multiPayloadEncoder.entriesCount(MAX_FRAME_ENTRIES);
+        frameEntries = 0;
+    }
 
-        entriesEncoder = multiPayloadEncoder.entriesCount(MAX_ENTRIES);
+    /**
+     * Wraps the encoders of the current frame around the message encoding buffer keeping the encoded entries.
+     */
+    private void rewrapFrame() {
+        final int limit = multiPayloadEncoder.limit();
+        multiPayloadEncoder.wrap(messageEncodingBuffer, frameOffset + MessageHeaderEncoder.ENCODED_LENGTH);
+        multiPayloadEncoder.limit(limitBeforeEntries);
+        entriesEncoder = multiPayloadEncoder.entriesCount(MAX_FRAME_ENTRIES);
+        for (int entry = 0; entry < frameEntries; entry++) {
+            entriesEncoder.next();
+        }
+        multiPayloadEncoder.limit(limit);
     }
 
-    @Override
-    public int commit() {
-        if (allowEmpty || entries > 0) {
-            final int saveLimit = multiPayloadEncoder.limit();
-            multiPayloadEncoder.limit(limitBeforeEntries);
-            multiPayloadEncoder.entriesCount(entries);
-            multiPayloadEncoder.limit(saveLimit);
+    /**
+     * Encodes the noops in consecutive Checkpoint frames replacing the MultiPayload frame started on init.
+     * @return length of the encoded frames
+     */
+    private int encodeNoops() {
+        final int frames = (noops + MAX_FRAME_ENTRIES - 1) / MAX_FRAME_ENTRIES;
+        final int requiredLength = frames * CHECKPOINT_FRAME_HEADER_LENGTH
+                + noops * CheckpointEncoder.SourceSeqsEncoder.sbeBlockLength();
+        if (requiredLength > messageEncodingBuffer.capacity()) {
+            messageEncodingBuffer = delegateAppender.extendClaim(requiredLength, 0);
+        }
+        int frameOffset = 0;
+        for (int first = 0; first < noops; first += MAX_FRAME_ENTRIES) {
+            final int headerLength = messageHeaderEncoder.wrap(messageEncodingBuffer, frameOffset)
+                    .blockLength(CheckpointEncoder.BLOCK_LENGTH)
+                    .schemaId(CheckpointEncoder.SCHEMA_ID)
+                    .version(CheckpointEncoder.SCHEMA_VERSION)
+                    .templateId(CheckpointEncoder.TEMPLATE_ID)
+                    .encodedLength();
 
-            messageLength += multiPayloadEncoder.encodedLength();
-            //messageLength = BitUtil.align(messageLength, 64);
-            delegateAppender.accept(source, sourceSeq, eventTimeNanos, messageEncodingBuffer, 0, messageLength);
+            final int last = Math.min(first + MAX_FRAME_ENTRIES, noops);
+            final CheckpointEncoder.SourceSeqsEncoder sourceSeqsEncoder = checkpointEncoder
+                    .wrap(messageEncodingBuffer, frameOffset + headerLength)
+                    .sourceSeqsCount(last - first);
+            for (int noop = first; noop < last; noop++) {
+                sourceSeqsEncoder.next()
+                        .source(noopSources[noop])
+                        .sourceSeq(noopSourceSeqs[noop]);
+            }
+            frameOffset = checkpointEncoder.limit();
         }
-        return entries;
+        return frameOffset;
     }
 
-    @Override
-    public void accept(final DirectBuffer buffer, final int offset, final int length) {
-        entriesEncoder = entriesEncoder.next().putValue(buffer, offset, length);
-        entries++;
+    /**
+     * Sets the actual count of the entries group of the current frame.
+     */
+    private void completeFrame() {
+        final int saveLimit = multiPayloadEncoder.limit();
+        multiPayloadEncoder.limit(limitBeforeEntries);
+        multiPayloadEncoder.entriesCount(frameEntries);
+        multiPayloadEncoder.limit(saveLimit);
     }
 }
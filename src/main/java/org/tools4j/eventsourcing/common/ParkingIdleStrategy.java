@@ -0,0 +1,102 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.hints.ThreadHints;
+import org.tools4j.nobark.loop.IdleStrategy;
+
+import java.util.Objects;
+
+/**
+ * Idle strategy spinning, then yielding and then parking until the doorbell is rung or the max park time elapses.
+ * Once spinning and yielding are exhausted, the strategy registers as waiter of the doorbell and returns without
+ * parking, so that the step is performed once more before parking and an append after the registration rings
+ * the doorbell. The strategy remains registered until it is reset, as appends only ring the doorbell while
+ * waiters are registered. Idling returns without parking when the doorbell sequence has changed.
+ */
+public final class ParkingIdleStrategy implements IdleStrategy {
+    private final Doorbell doorbell;
+    private final long maxSpins;
+    private final long maxYields;
+    private final long maxParkNanos;
+
+    private long idles;
+    private long observedSequence;
+    private boolean registered;
+
+    /**
+     * @param doorbell - doorbell rung after appends to the polled queues
+     * @param maxSpins - max number of idles spinning
+     * @param maxYields - max number of idles yielding after spinning
+     * @param maxParkNanos - max park time when idling after spinning and yielding
+     */
+    public ParkingIdleStrategy(final Doorbell doorbell,
+                               final long maxSpins,
+                               final long maxYields,
+                               final long maxParkNanos) {
+        if (maxSpins < 0 || maxYields < 0) {
+            throw new IllegalArgumentException("maxSpins and maxYields must not be negative but were " + maxSpins +
+                    " and " + maxYields);
+        }
+        if (maxParkNanos < 1) {
+            throw new IllegalArgumentException("maxParkNanos must be positive but was " + maxParkNanos);
+        }
+        this.doorbell = Objects.requireNonNull(doorbell);
+        this.maxSpins = maxSpins;
+        this.maxYields = maxYields;
+        this.maxParkNanos = maxParkNanos;
+        this.observedSequence = doorbell.sequence();
+    }
+
+    @Override
+    public void idle() {
+        final long sequence = doorbell.sequence();
+        if (sequence != observedSequence) {
+            observedSequence = sequence;
+            idles = 0;
+        } else if (idles < maxSpins) {
+            idles++;
+            ThreadHints.onSpinWait();
+        } else if (idles < maxSpins + maxYields) {
+            idles++;
+            Thread.yield();
+        } else if (!registered) {
+            doorbell.register();
+            registered = true;
+        } else {
+            doorbell.await(sequence, maxParkNanos);
+            observedSequence = doorbell.sequence();
+        }
+    }
+
+    @Override
+    public void reset() {
+        if (registered) {
+            doorbell.deregister();
+            registered = false;
+        }
+        idles = 0;
+        observedSequence = doorbell.sequence();
+    }
+}
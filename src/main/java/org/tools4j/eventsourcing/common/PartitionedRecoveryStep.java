@@ -0,0 +1,233 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.BitUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.BackoffIdleStrategy;
+import org.agrona.concurrent.MessageHandler;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.concurrent.ringbuffer.OneToOneRingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBuffer;
+import org.agrona.concurrent.ringbuffer.RingBufferDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tools4j.eventsourcing.api.EventProcessingState;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.nobark.loop.Step;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Downstream process step that replays the downstream queue on start in parallel. The downstream poller scans
+ * the queue once and dispatches each message by its partition to a ring buffer drained by the recovery thread
+ * of the partition, so that every recovery thread rebuilds own shard of application state.
+ * When the scan has caught up with the downstream queue, the step waits until all partitions have applied
+ * their messages, stops the recovery threads and from then on delegates to the downstream process step,
+ * which continues from the position of the downstream poller.
+ * A message longer than the max message length of the ring buffer is applied by the step itself once
+ * the ring buffer of its partition is drained.
+ */
+public final class PartitionedRecoveryStep implements Step {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PartitionedRecoveryStep.class);
+    public static final int DEFAULT_PARTITION_BUFFER_SIZE = 1 << 20;
+    private static final int MESSAGE_TYPE_ID = 1;
+
+    private final Step downstreamProcessStep;
+    private final Poller downstreamPoller;
+    private final EventProcessingState completedDownstreamState;
+    private final MessageConsumer.Partitioner partitioner;
+    private final MessageConsumer.RecoveryFactory recoveryFactory;
+    private final int partitions;
+    private final int partitionBufferSize;
+    private final int maxEntriesPerPoll;
+    private final MessageConsumer dispatcher = this::dispatch;
+    private final BackoffIdleStrategy dispatchIdleStrategy = new BackoffIdleStrategy(100, 10, 1000, 100_000);
+    private final AtomicReference<Exception> recoveryFailure = new AtomicReference<>();
+
+    private RingBuffer[] partitionBuffers;
+    private MessageConsumer[] recoveryConsumers;
+    private ThreadService[] recoveryServices;
+    private boolean recovered;
+
+    /**
+     * @param downstreamProcessStep - downstream process step to delegate to after recovery
+     * @param downstreamPoller - poller of the downstream process step
+     * @param completedDownstreamState - completed downstream processing state updated by the poller
+     * @param partitions - number of partitions and recovery threads
+     * @param partitioner - partitioner of downstream messages
+     * @param recoveryFactory - factory for recovery consumers of the partitions
+     * @param partitionBufferSize - size of the ring buffer of a partition, power of 2
+     * @param maxEntriesPerPoll - maximum number of entries dispatched in one step
+     */
+    public PartitionedRecoveryStep(final Step downstreamProcessStep,
+                                   final Poller downstreamPoller,
+                                   final EventProcessingState completedDownstreamState,
+                                   final int partitions,
+                                   final MessageConsumer.Partitioner partitioner,
+                                   final MessageConsumer.RecoveryFactory recoveryFactory,
+                                   final int partitionBufferSize,
+                                   final int maxEntriesPerPoll) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be positive but was " + partitions);
+        }
+        if (maxEntriesPerPoll < 1) {
+            throw new IllegalArgumentException("maxEntriesPerPoll must be positive but was " + maxEntriesPerPoll);
+        }
+        if (!BitUtil.isPowerOfTwo(partitionBufferSize)) {
+            throw new IllegalArgumentException("partitionBufferSize must be a power of 2 but was " + partitionBufferSize);
+        }
+        this.downstreamProcessStep = Objects.requireNonNull(downstreamProcessStep);
+        this.downstreamPoller = Objects.requireNonNull(downstreamPoller);
+        this.completedDownstreamState = Objects.requireNonNull(completedDownstreamState);
+        this.partitioner = Objects.requireNonNull(partitioner);
+        this.recoveryFactory = Objects.requireNonNull(recoveryFactory);
+        this.partitions = partitions;
+        this.partitionBufferSize = partitionBufferSize;
+        this.maxEntriesPerPoll = maxEntriesPerPoll;
+    }
+
+    public PartitionedRecoveryStep(final Step downstreamProcessStep,
+                                   final Poller downstreamPoller,
+                                   final EventProcessingState completedDownstreamState,
+                                   final int partitions,
+                                   final MessageConsumer.Partitioner partitioner,
+                                   final MessageConsumer.RecoveryFactory recoveryFactory,
+                                   final int maxEntriesPerPoll) {
+        this(downstreamProcessStep, downstreamPoller, completedDownstreamState, partitions, partitioner,
+                recoveryFactory, DEFAULT_PARTITION_BUFFER_SIZE, maxEntriesPerPoll);
+    }
+
+    @Override
+    public boolean perform() {
+        if (recovered) {
+            return downstreamProcessStep.perform();
+        }
+        if (recoveryServices == null) {
+            startRecovery();
+        }
+        checkRecoveryFailure();
+        //skipped, noop and checkpoint entries advance the completed state without dispatching any messages
+        final long completedIndex = completedDownstreamState.id();
+        if (maxEntriesPerPoll == 1) {
+            downstreamPoller.poll(dispatcher);
+        } else {
+            downstreamPoller.poll(dispatcher, maxEntriesPerPoll);
+        }
+        if (completedDownstreamState.id() == completedIndex) {
+            completeRecovery();
+        }
+        return true;
+    }
+
+    private void startRecovery() {
+        LOGGER.info("Starting recovery of {} partitions", partitions);
+        partitionBuffers = new RingBuffer[partitions];
+        recoveryConsumers = new MessageConsumer[partitions];
+        recoveryServices = new ThreadService[partitions];
+        for (int partition = 0; partition < partitions; partition++) {
+            final RingBuffer partitionBuffer = new OneToOneRingBuffer(new UnsafeBuffer(
+                    ByteBuffer.allocateDirect(partitionBufferSize + RingBufferDescriptor.TRAILER_LENGTH)));
+            final MessageConsumer recoveryConsumer = Objects.requireNonNull(recoveryFactory.create(partition));
+            final MessageHandler recoveryHandler = (msgTypeId, buffer, offset, length) ->
+                    recoveryConsumer.accept(buffer, offset, length);
+            partitionBuffers[partition] = partitionBuffer;
+            recoveryConsumers[partition] = recoveryConsumer;
+            recoveryServices[partition] = new ThreadService(
+                    "PartitionRecovery-" + partition,
+                    (name, threadRunCondition) ->
+                            new WhileLoop(name,
+                                    threadRunCondition,
+                                    new BackoffIdleStrategy(100, 10, 1000, 100_000)::idle,
+                                    (message, exception) -> recoveryFailure.compareAndSet(null, exception),
+                                    () -> partitionBuffer.read(recoveryHandler) > 0
+                            ),
+                    (name, runnable) -> {
+                        final Thread thread = new Thread(null, runnable, name);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+            );
+        }
+    }
+
+    private void dispatch(final DirectBuffer buffer, final int offset, final int length) {
+        final int partition = partitioner.partition(buffer, offset, length, partitions);
+        if (partition < 0 || partition >= partitions) {
+            throw new IllegalStateException("Partition " + partition + " is not in range [0, " + partitions + ")");
+        }
+        final RingBuffer partitionBuffer = partitionBuffers[partition];
+        if (length > partitionBuffer.maxMsgLength()) {
+            awaitDrained(partitionBuffer);
+            recoveryConsumers[partition].accept(buffer, offset, length);
+            return;
+        }
+        dispatchIdleStrategy.reset();
+        while (!partitionBuffer.write(MESSAGE_TYPE_ID, buffer, offset, length)) {
+            checkRecoveryFailure();
+            dispatchIdleStrategy.idle();
+        }
+    }
+
+    private void completeRecovery() {
+        for (final RingBuffer partitionBuffer : partitionBuffers) {
+            awaitDrained(partitionBuffer);
+        }
+        stopRecoveryThreads();
+        checkRecoveryFailure();
+        partitionBuffers = null;
+        recoveryConsumers = null;
+        recovered = true;
+        LOGGER.info("Completed recovery of {} partitions at index {}", partitions, completedDownstreamState.id());
+    }
+
+    /**
+     * Waits until the recovery thread has applied all messages of the partition, the ring buffer consumer
+     * position is advanced only after the messages have been applied.
+     */
+    private void awaitDrained(final RingBuffer partitionBuffer) {
+        dispatchIdleStrategy.reset();
+        while (partitionBuffer.size() > 0) {
+            checkRecoveryFailure();
+            dispatchIdleStrategy.idle();
+        }
+    }
+
+    private void stopRecoveryThreads() {
+        for (final ThreadService recoveryService : recoveryServices) {
+            recoveryService.shutdown();
+        }
+    }
+
+    private void checkRecoveryFailure() {
+        final Exception failure = recoveryFailure.get();
+        if (failure != null) {
+            stopRecoveryThreads();
+            throw new IllegalStateException("Partitioned recovery failed", failure);
+        }
+    }
+}
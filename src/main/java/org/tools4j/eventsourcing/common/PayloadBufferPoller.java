@@ -24,43 +24,124 @@
 package org.tools4j.eventsourcing.common;
 
 import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.collections.LongLongConsumer;
 import org.tools4j.eventsourcing.api.BufferPoller;
 import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.sbe.CompressedPayloadDecoder;
 import org.tools4j.eventsourcing.sbe.MessageHeaderDecoder;
 import org.tools4j.eventsourcing.sbe.MultiPayloadDecoder;
+import org.tools4j.eventsourcing.sbe.CheckpointDecoder;
 import org.tools4j.eventsourcing.sbe.SinglePayloadDecoder;
 
+import java.util.Objects;
+
+/**
+ * Buffer poller decoding messages encoded by {@link SinglePayloadAppender} or {@link MultiPayloadAppender},
+ * decompressing messages compressed by {@link CompressingAppender} into a reusable buffer beforehand.
+ * Sources and sourceSeqs of a checkpoint committed by {@link MultiPayloadAppender} are passed to the checkpoint
+ * consumer, the checkpoint counts as one message like an empty transaction.
+ */
 public final class PayloadBufferPoller implements BufferPoller {
+    private static final LongLongConsumer NO_CHECKPOINT_CONSUMER = (source, sourceSeq) -> {};
 
     private final MessageHeaderDecoder messageHeaderDecoder = new MessageHeaderDecoder();
     private final SinglePayloadDecoder singlePayloadBodyDecoder = new SinglePayloadDecoder();
     private final MultiPayloadDecoder multiPayloadDecoder = new MultiPayloadDecoder();
+    private final CompressedPayloadDecoder compressedPayloadDecoder = new CompressedPayloadDecoder();
+    private final CheckpointDecoder checkpointDecoder = new CheckpointDecoder();
+    private final CompressionDictionary dictionary;
+    private final ExpandableArrayBuffer decompressionBuffer;
+
+    public PayloadBufferPoller() {
+        this(CompressionDictionary.NONE);
+    }
+
+    /**
+     * @param dictionary - dictionary of the queue to decompress messages compressed with the dictionary
+     */
+    public PayloadBufferPoller(final CompressionDictionary dictionary) {
+        this.dictionary = Objects.requireNonNull(dictionary);
+        //the dictionary precedes the decompressed message, so that the message can refer to it
+        this.decompressionBuffer = new ExpandableArrayBuffer(dictionary.length() + 4096);
+        this.decompressionBuffer.putBytes(0, dictionary.content(), 0, dictionary.length());
+    }
 
     @Override
     public int poll(final DirectBuffer srcBuffer, final int srcOffset, final int srcLength, final MessageConsumer consumer) {
+        return poll(srcBuffer, srcOffset, srcLength, consumer, NO_CHECKPOINT_CONSUMER);
+    }
+
+    @Override
+    public int poll(final DirectBuffer srcBuffer, final int srcOffset, final int srcLength, final MessageConsumer consumer,
+                    final LongLongConsumer checkpointConsumer) {
         messageHeaderDecoder.wrap(srcBuffer, srcOffset);
 
-        int done = 0;
+        if (messageHeaderDecoder.templateId() == CompressedPayloadDecoder.TEMPLATE_ID) {
+            compressedPayloadDecoder.wrap(srcBuffer, srcOffset + messageHeaderDecoder.encodedLength(),
+                    messageHeaderDecoder.blockLength(), messageHeaderDecoder.schemaId());
+
+            final int dictionaryId = compressedPayloadDecoder.dictionaryId();
+            if (dictionaryId != CompressionDictionary.NONE_ID && dictionaryId != dictionary.id()) {
+                throw new IllegalStateException("Message compressed with dictionary " + dictionaryId +
+                        " but dictionary of the queue is " + dictionary.id());
+            }
+            final int uncompressedLength = (int) compressedPayloadDecoder.uncompressedLength();
+            final int dictionaryLength = dictionary.length();
+            decompressionBuffer.checkLimit(dictionaryLength + uncompressedLength);
+            Lz4BlockCodec.decompress(compressedPayloadDecoder.buffer(),
+                    compressedPayloadDecoder.limit() + CompressedPayloadDecoder.valueHeaderLength(),
+                    compressedPayloadDecoder.valueLength(),
+                    decompressionBuffer, dictionaryLength, uncompressedLength);
+            return pollUncompressed(decompressionBuffer, dictionaryLength, uncompressedLength, consumer, checkpointConsumer);
+        }
+        return pollUncompressed(srcBuffer, srcOffset, srcLength, consumer, checkpointConsumer);
+    }
+
+    private int pollUncompressed(final DirectBuffer srcBuffer, final int srcOffset, final int srcLength, final MessageConsumer consumer,
+                                 final LongLongConsumer checkpointConsumer) {
+        messageHeaderDecoder.wrap(srcBuffer, srcOffset);
 
         if (messageHeaderDecoder.templateId() == SinglePayloadDecoder.TEMPLATE_ID) {
-            singlePayloadBodyDecoder.wrap(srcBuffer, messageHeaderDecoder.encodedLength(),
+            singlePayloadBodyDecoder.wrap(srcBuffer, srcOffset + messageHeaderDecoder.encodedLength(),
                     messageHeaderDecoder.blockLength(), messageHeaderDecoder.schemaId());
 
             consumer.accept(singlePayloadBodyDecoder.buffer(),
                     singlePayloadBodyDecoder.limit() + SinglePayloadDecoder.valueHeaderLength(),
                     singlePayloadBodyDecoder.valueLength());
-            return ++done;
+            return 1;
         } else if (messageHeaderDecoder.templateId() == MultiPayloadDecoder.TEMPLATE_ID) {
-            multiPayloadDecoder.wrap(srcBuffer, messageHeaderDecoder.encodedLength(),
-                    messageHeaderDecoder.blockLength(), messageHeaderDecoder.schemaId());
-            for (final MultiPayloadDecoder.EntriesDecoder entriesDecoder : multiPayloadDecoder.entries()) {
-                consumer.accept(multiPayloadDecoder.buffer(),
-                        multiPayloadDecoder.limit() + MultiPayloadDecoder.EntriesDecoder.valueHeaderLength(),
-                        entriesDecoder.valueLength());
-                multiPayloadDecoder.limit(multiPayloadDecoder.limit() + MultiPayloadDecoder.EntriesDecoder.valueHeaderLength() + entriesDecoder.valueLength());
-                done++;
-            }
+            //large transactions are encoded in consecutive MultiPayload frames
+            final int srcLimit = srcOffset + srcLength;
+            int frameOffset = srcOffset;
+            int done = 0;
+            do {
+                multiPayloadDecoder.wrap(srcBuffer, frameOffset + messageHeaderDecoder.encodedLength(),
+                        messageHeaderDecoder.blockLength(), messageHeaderDecoder.schemaId());
+                for (final MultiPayloadDecoder.EntriesDecoder entriesDecoder : multiPayloadDecoder.entries()) {
+                    consumer.accept(multiPayloadDecoder.buffer(),
+                            multiPayloadDecoder.limit() + MultiPayloadDecoder.EntriesDecoder.valueHeaderLength(),
+                            entriesDecoder.valueLength());
+                    multiPayloadDecoder.limit(multiPayloadDecoder.limit() + MultiPayloadDecoder.EntriesDecoder.valueHeaderLength() + entriesDecoder.valueLength());
+                    done++;
+                }
+                frameOffset = multiPayloadDecoder.limit();
+            } while (frameOffset + MessageHeaderDecoder.ENCODED_LENGTH <= srcLimit &&
+                    messageHeaderDecoder.wrap(srcBuffer, frameOffset).templateId() == MultiPayloadDecoder.TEMPLATE_ID);
             return Math.max(done, 1); //empty multiPayload is treated at one message done.
+        } else if (messageHeaderDecoder.templateId() == CheckpointDecoder.TEMPLATE_ID) {
+            final int srcLimit = srcOffset + srcLength;
+            int frameOffset = srcOffset;
+            do {
+                checkpointDecoder.wrap(srcBuffer, frameOffset + messageHeaderDecoder.encodedLength(),
+                        messageHeaderDecoder.blockLength(), messageHeaderDecoder.schemaId());
+                for (final CheckpointDecoder.SourceSeqsDecoder sourceSeqsDecoder : checkpointDecoder.sourceSeqs()) {
+                    checkpointConsumer.accept(sourceSeqsDecoder.source(), sourceSeqsDecoder.sourceSeq());
+                }
+                frameOffset = checkpointDecoder.limit();
+            } while (frameOffset + MessageHeaderDecoder.ENCODED_LENGTH <= srcLimit &&
+                    messageHeaderDecoder.wrap(srcBuffer, frameOffset).templateId() == CheckpointDecoder.TEMPLATE_ID);
+            return 1;
         } else {
             throw new IllegalStateException("Unexpected message type " + messageHeaderDecoder.templateId());
         }
@@ -32,15 +32,29 @@ import java.util.Objects;
 public final class PollingProcessStep implements Step {
     private final Poller inputPoller;
     private final MessageConsumer consumer;
+    private final int maxEntriesPerPoll;
 
-    public PollingProcessStep(final Poller inputPoller, final MessageConsumer consumer) {
+    /**
+     * @param inputPoller - poller of the input queue
+     * @param consumer - consumer of polled messages
+     * @param maxEntriesPerPoll - maximum number of entries drained by the poller in one step
+     */
+    public PollingProcessStep(final Poller inputPoller, final MessageConsumer consumer, final int maxEntriesPerPoll) {
+        if (maxEntriesPerPoll < 1) {
+            throw new IllegalArgumentException("maxEntriesPerPoll must be positive but was " + maxEntriesPerPoll);
+        }
         this.inputPoller = Objects.requireNonNull(inputPoller);
         this.consumer = Objects.requireNonNull(consumer);
+        this.maxEntriesPerPoll = maxEntriesPerPoll;
+    }
+
+    public PollingProcessStep(final Poller inputPoller, final MessageConsumer consumer) {
+        this(inputPoller, consumer, 1);
     }
 
     @Override
     public boolean perform() {
-        final int processed = inputPoller.poll(consumer);
+        final int processed = maxEntriesPerPoll == 1 ? inputPoller.poll(consumer) : inputPoller.poll(consumer, maxEntriesPerPoll);
         return processed > 0;
     }
 }
@@ -0,0 +1,291 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.BitUtil;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.collections.LongLongConsumer;
+import org.tools4j.eventsourcing.api.EventProcessingState;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.Transaction;
+import org.tools4j.nobark.loop.Step;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Pipeline between the upstream and the downstream processor steps of an event processing queue performed by
+ * separate threads, so that the upstream step can process further events while the downstream step is still
+ * polling entries of previous events.
+ *
+ * Upstream events with downstream entries are recorded as own entries before the transaction is committed,
+ * so that the downstream step skips them as their changes have been applied by the upstream processor, and the
+ * upstream step pauses when the pipeline depth of own entries not yet polled by the downstream step is reached.
+ * Sources of other downstream entries completed by the downstream step are staged under a lock and applied by the
+ * upstream step to the committed downstream state, which replaces the completed downstream state for the upstream
+ * processor. Changes of application state applied by the downstream message consumer before an entry is staged
+ * are therefore visible to the upstream processor once the entry is applied to the committed downstream state.
+ * The upstream step pauses until the downstream step has caught up with the downstream queue on start.
+ */
+public final class ProcessingPipeline {
+    public static final int DEFAULT_DEPTH = 1024;
+
+    private final int depth;
+    private final int mask;
+    private final int[] ownSources;
+    private final long[] ownSourceSeqs;
+    private final AtomicLong ownHead = new AtomicLong();
+    private final AtomicLong ownTail = new AtomicLong();
+
+    private final DefaultEventProcessingState committedDownstreamState;
+    private final EntryCountingTransaction upstreamTransaction;
+    private final LongLongConsumer applyStagedSourceSeq = this::applyStagedSourceSeq;
+
+    private final SourceSeqTable stagedSourceSeqs = new SourceSeqTable();
+    private long stagedId = EventProcessingState.NOT_INITIALISED;
+    private int stagedSource;
+    private long stagedSourceSeq;
+    private long stagedEventTimeNanos;
+    private volatile boolean staged;
+    private volatile boolean downstreamCaughtUp;
+
+    /**
+     * @param depth - max number of own entries committed by the upstream step and not yet polled by the downstream step
+     * @param downstreamAppender - appender of the downstream queue
+     * @param systemNanoClock - system clock in nanos
+     */
+    public ProcessingPipeline(final int depth,
+                              final Transaction downstreamAppender,
+                              final LongSupplier systemNanoClock) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("depth must be positive but was " + depth);
+        }
+        this.depth = depth;
+        final int capacity = BitUtil.findNextPositivePowerOfTwo(depth);
+        this.mask = capacity - 1;
+        this.ownSources = new int[capacity];
+        this.ownSourceSeqs = new long[capacity];
+        this.committedDownstreamState = new DefaultEventProcessingState(systemNanoClock);
+        this.upstreamTransaction = new EntryCountingTransaction(downstreamAppender);
+    }
+
+    /**
+     * @return downstream appender to be used by the upstream step
+     */
+    public Transaction upstreamTransaction() {
+        return upstreamTransaction;
+    }
+
+    /**
+     * @return state of the downstream queue as seen by the upstream step, including own entries committed by
+     *         the upstream step and other entries completed by the downstream step.
+     */
+    public EventProcessingState committedDownstreamState() {
+        return committedDownstreamState;
+    }
+
+    /**
+     * @return true if the downstream step has not caught up on start yet, or if the pipeline is full
+     */
+    public boolean isBlocked() {
+        return !downstreamCaughtUp || ownTail.get() - ownHead.get() >= depth;
+    }
+
+    /**
+     * @param transactionCommit - commit of the transaction of the upstream event
+     * @return upstream complete consumer recording own entry before and applying it to the committed downstream
+     *         state after the transaction commit.
+     */
+    public Poller.IndexConsumer commit(final Poller.IndexConsumer transactionCommit) {
+        Objects.requireNonNull(transactionCommit);
+        return (index, source, sourceSeq, eventTimeNanos) -> {
+            final boolean ownEntry = upstreamTransaction.entries > 0;
+            if (ownEntry) {
+                offerOwnEntry(source, sourceSeq);
+            }
+            transactionCommit.accept(index, source, sourceSeq, eventTimeNanos);
+            if (ownEntry) {
+                committedDownstreamState.acceptCheckpoint(source, sourceSeq);
+            }
+        };
+    }
+
+    /**
+     * @param upstreamStep - upstream processor step
+     * @return step applying staged downstream entries to the committed downstream state before the upstream step
+     */
+    public Step upstreamStep(final Step upstreamStep) {
+        Objects.requireNonNull(upstreamStep);
+        return () -> {
+            final boolean applied = applyStaged();
+            return upstreamStep.perform() || applied;
+        };
+    }
+
+    /**
+     * @param downstreamStep - downstream processor step
+     * @return step marking the downstream step as caught up the first time it has no more work to do
+     */
+    public Step downstreamStep(final Step downstreamStep) {
+        Objects.requireNonNull(downstreamStep);
+        return () -> {
+            if (downstreamStep.perform()) {
+                return true;
+            }
+            if (!downstreamCaughtUp) {
+                downstreamCaughtUp = true;
+            }
+            return false;
+        };
+    }
+
+    /**
+     * @return downstream skip predicate matching the next own entry
+     */
+    public Poller.IndexPredicate isOwnEntry() {
+        return (index, source, sourceSeq, eventTimeNanos) -> pollOwnEntry(source, sourceSeq);
+    }
+
+    /**
+     * @return downstream complete consumer staging the entry for the upstream step
+     */
+    public Poller.IndexConsumer stageCompleted() {
+        return (index, source, sourceSeq, eventTimeNanos) -> {
+            synchronized (stagedSourceSeqs) {
+                stagedSourceSeqs.put(source, sourceSeq);
+                stagedId = index;
+                stagedSource = source;
+                stagedSourceSeq = sourceSeq;
+                stagedEventTimeNanos = eventTimeNanos;
+                staged = true;
+            }
+        };
+    }
+
+    /**
+     * Stages a source of a checkpoint polled by the downstream step for the upstream step.
+     * @param source - source
+     * @param sourceSeq - last sourceSeq of the source
+     */
+    public void stageCheckpoint(final long source, final long sourceSeq) {
+        synchronized (stagedSourceSeqs) {
+            stagedSourceSeqs.put((int) source, sourceSeq);
+            staged = true;
+        }
+    }
+
+    private void offerOwnEntry(final int source, final long sourceSeq) {
+        final long tail = ownTail.get();
+        if (tail - ownHead.get() >= depth) {
+            throw new IllegalStateException("Pipeline depth " + depth + " exceeded");
+        }
+        final int slot = (int) tail & mask;
+        ownSources[slot] = source;
+        ownSourceSeqs[slot] = sourceSeq;
+        ownTail.lazySet(tail + 1);
+    }
+
+    private boolean pollOwnEntry(final int source, final long sourceSeq) {
+        final long head = ownHead.get();
+        if (head == ownTail.get()) {
+            return false;
+        }
+        final int slot = (int) head & mask;
+        if (ownSources[slot] != source || ownSourceSeqs[slot] != sourceSeq) {
+            return false;
+        }
+        ownHead.lazySet(head + 1);
+        return true;
+    }
+
+    private boolean applyStaged() {
+        if (!staged) {
+            return false;
+        }
+        synchronized (stagedSourceSeqs) {
+            stagedSourceSeqs.forEachChanged(applyStagedSourceSeq);
+            if (stagedId != EventProcessingState.NOT_INITIALISED &&
+                    stagedSourceSeq >= committedDownstreamState.sourceSeq(stagedSource)) {
+                committedDownstreamState.accept(stagedId, stagedSource, stagedSourceSeq, stagedEventTimeNanos);
+            }
+            stagedId = EventProcessingState.NOT_INITIALISED;
+            staged = false;
+        }
+        return true;
+    }
+
+    /**
+     * Own entries are applied to the committed downstream state on commit, a staged checkpoint pushed before
+     * a later own entry of the same source must not move the committed sourceSeq of the source back.
+     */
+    private void applyStagedSourceSeq(final long source, final long sourceSeq) {
+        if (sourceSeq > committedDownstreamState.sourceSeq((int) source)) {
+            committedDownstreamState.acceptCheckpoint(source, sourceSeq);
+        }
+    }
+
+    /**
+     * Transaction counting the entries of the upstream event.
+     * Not thread-safe.
+     */
+    private static final class EntryCountingTransaction implements Transaction {
+        private final Transaction delegate;
+        int entries;
+
+        EntryCountingTransaction(final Transaction delegate) {
+            this.delegate = Objects.requireNonNull(delegate);
+        }
+
+        @Override
+        public void init(final int source, final long sourceSeq, final long eventTimeNanos, final boolean allowEmpty) {
+            entries = 0;
+            delegate.init(source, sourceSeq, eventTimeNanos, allowEmpty);
+        }
+
+        @Override
+        public void accept(final DirectBuffer buffer, final int offset, final int length) {
+            delegate.accept(buffer, offset, length);
+            entries++;
+        }
+
+        @Override
+        public MutableDirectBuffer claim(final int length) {
+            final MutableDirectBuffer claimed = delegate.claim(length);
+            entries++;
+            return claimed;
+        }
+
+        @Override
+        public void acceptNoop(final int source, final long sourceSeq) {
+            delegate.acceptNoop(source, sourceSeq);
+        }
+
+        @Override
+        public int commit() {
+            return delegate.commit();
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.tools4j.eventsourcing.api.EventProcessingQueue;
+import org.tools4j.eventsourcing.api.IndexedMessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.nobark.loop.Step;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Event processing queue composed of independent shard queues, each with own upstream and downstream queues
+ * and processor step. Upstream entries are routed to the shard of their source, so that sources are processed
+ * in parallel when the processor steps of the shards are performed by separate threads, see
+ * {@link #processorStep(int)}. All entries of a source must be routed to the same shard as processing state
+ * of a source is kept by its shard.
+ *
+ * Pollers created by the queue merge the downstream queues of the shards ordered by eventTimeNanos,
+ * see {@link MergingPoller}.
+ */
+public final class ShardedEventProcessingQueue implements EventProcessingQueue {
+    private final EventProcessingQueue[] shards;
+    private final IndexedMessageConsumer appender;
+    private final Step processorStep;
+
+    /**
+     * @param shards - shard queues
+     * @param sharder - sharder of upstream entries by source
+     */
+    public ShardedEventProcessingQueue(final EventProcessingQueue[] shards, final Sharder sharder) {
+        Objects.requireNonNull(sharder);
+        if (shards.length < 1) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = shards.clone();
+        final IndexedMessageConsumer[] shardAppenders = new IndexedMessageConsumer[shards.length];
+        final Step[] shardSteps = new Step[shards.length];
+        for (int shard = 0; shard < shards.length; shard++) {
+            shardAppenders[shard] = Objects.requireNonNull(shards[shard]).appender();
+            shardSteps[shard] = shards[shard].processorStep();
+        }
+        this.appender = (source, sourceSeq, eventTimeNanos, buffer, offset, length) ->
+                shardAppenders[sharder.shard(source, shardAppenders.length)]
+                        .accept(source, sourceSeq, eventTimeNanos, buffer, offset, length);
+        this.processorStep = allOf(shardSteps);
+    }
+
+    public ShardedEventProcessingQueue(final EventProcessingQueue[] shards) {
+        this(shards, Sharder.BY_SOURCE);
+    }
+
+    /**
+     * @return number of shards
+     */
+    public int shards() {
+        return shards.length;
+    }
+
+    /**
+     * @param shard - shard from 0 to shards - 1
+     * @return the shard queue
+     */
+    public EventProcessingQueue shard(final int shard) {
+        return shards[shard];
+    }
+
+    /**
+     * @param shard - shard from 0 to shards - 1
+     * @return processor step of the shard to be performed by own thread
+     */
+    public Step processorStep(final int shard) {
+        return shards[shard].processorStep();
+    }
+
+    @Override
+    public IndexedMessageConsumer appender() {
+        return appender;
+    }
+
+    /**
+     * @return step performing the processor steps of all shards in turn
+     */
+    @Override
+    public Step processorStep() {
+        return processorStep;
+    }
+
+    @Override
+    public Step upstreamProcessorStep() {
+        return allOf(EventProcessingQueue::upstreamProcessorStep);
+    }
+
+    @Override
+    public Step downstreamProcessorStep() {
+        return allOf(EventProcessingQueue::downstreamProcessorStep);
+    }
+
+    /**
+     * @throws IllegalStateException always, as each shard has own processor step, see {@link #shard(int)}
+     */
+    @Override
+    public AdaptiveProcessorStep adaptiveProcessorStep() {
+        throw new IllegalStateException("Processor steps are adaptive per shard");
+    }
+
+    @Override
+    public Poller createPoller(final Poller.Options options) throws IOException {
+        return new MergingPoller(options, MergingPoller.Ordering.EVENT_TIME, shards);
+    }
+
+    @Override
+    public void close() {
+        for (final EventProcessingQueue shard : shards) {
+            shard.close();
+        }
+    }
+
+    private Step allOf(final Function<? super EventProcessingQueue, ? extends Step> shardStep) {
+        final Step[] shardSteps = new Step[shards.length];
+        for (int shard = 0; shard < shards.length; shard++) {
+            shardSteps[shard] = shardStep.apply(shards[shard]);
+        }
+        return allOf(shardSteps);
+    }
+
+    private static Step allOf(final Step[] shardSteps) {
+        return () -> {
+            boolean workDone = false;
+            for (final Step shardStep : shardSteps) {
+                workDone |= shardStep.perform();
+            }
+            return workDone;
+        };
+    }
+
+    /**
+     * Sharder of upstream entries.
+     */
+    public interface Sharder {
+        Sharder BY_SOURCE = (source, shards) -> Math.floorMod(source, shards);
+
+        /**
+         * @param source - source of the entry
+         * @param shards - number of shards
+         * @return shard of the source from 0 to shards - 1
+         */
+        int shard(int source, int shards);
+    }
+}
@@ -25,6 +25,7 @@ package org.tools4j.eventsourcing.common;
 
 import org.agrona.DirectBuffer;
 import org.agrona.MutableDirectBuffer;
+import org.tools4j.eventsourcing.api.IndexedClaimingAppender;
 import org.tools4j.eventsourcing.api.IndexedMessageConsumer;
 import org.tools4j.eventsourcing.sbe.MessageHeaderEncoder;
 import org.tools4j.eventsourcing.sbe.SinglePayloadEncoder;
@@ -32,21 +33,21 @@ import org.tools4j.eventsourcing.sbe.SinglePayloadEncoder;
 import java.util.Objects;
 
 /**
- * Appender that encodes given message with SBE SinglePayloadEncoder and delegates appending of encoded message to
- * delegateAppender.
+ * Appender that encodes given message with SBE SinglePayloadEncoder directly into the message claimed
+ * from delegateAppender and commits it with the delegateAppender.
  */
 public final class SinglePayloadAppender implements IndexedMessageConsumer {
 
-    private final IndexedMessageConsumer delegateAppender;
-    private final MutableDirectBuffer messageEncodingBuffer;
+    private static final int MESSAGE_OVERHEAD = MessageHeaderEncoder.ENCODED_LENGTH + SinglePayloadEncoder.BLOCK_LENGTH
+            + SinglePayloadEncoder.valueHeaderLength();
+
+    private final IndexedClaimingAppender delegateAppender;
 
     private final MessageHeaderEncoder messageHeaderEncoder = new MessageHeaderEncoder();
     private final SinglePayloadEncoder singlePayloadEncoder = new SinglePayloadEncoder();
 
-    public SinglePayloadAppender(final IndexedMessageConsumer delegateAppender,
-                                 final MutableDirectBuffer messageEncodingBuffer) {
+    public SinglePayloadAppender(final IndexedClaimingAppender delegateAppender) {
         this.delegateAppender = Objects.requireNonNull(delegateAppender);
-        this.messageEncodingBuffer = Objects.requireNonNull(messageEncodingBuffer);
     }
 
     @Override
@@ -57,6 +58,8 @@ public final class SinglePayloadAppender implements IndexedMessageConsumer {
                        final int offset,
                        final int length) {
 
+        final MutableDirectBuffer messageEncodingBuffer = delegateAppender.claim(MESSAGE_OVERHEAD + length);
+
         final int headerLength = messageHeaderEncoder.wrap(messageEncodingBuffer, 0)
                 .blockLength(SinglePayloadEncoder.BLOCK_LENGTH)
                 .schemaId(SinglePayloadEncoder.SCHEMA_ID)
@@ -70,6 +73,6 @@ public final class SinglePayloadAppender implements IndexedMessageConsumer {
 
         //messageLength = BitUtil.align(messageLength, 64);
 
-        delegateAppender.accept(source, sourceSeq, eventTimeNanos, messageEncodingBuffer, 0, messageLength);
+        delegateAppender.commit(source, sourceSeq, eventTimeNanos, messageLength);
     }
 }
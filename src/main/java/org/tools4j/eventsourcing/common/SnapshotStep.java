@@ -0,0 +1,93 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.tools4j.eventsourcing.api.EventProcessingState;
+import org.tools4j.eventsourcing.api.SnapshotStore;
+import org.tools4j.eventsourcing.api.SnapshotCapture;
+import org.tools4j.nobark.loop.Step;
+
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Downstream process step that takes a snapshot when the snapshot period has elapsed and the downstream step
+ * has no more entries to apply, so that application state is consistent with the completed downstream state.
+ * If the snapshot store is not ready, the snapshot is taken on a later step.
+ */
+public final class SnapshotStep implements Step {
+    private final Step downstreamProcessStep;
+    private final EventProcessingState completedDownstreamState;
+    private final SnapshotStore snapshotStore;
+    private final SnapshotCapture snapshotCapture;
+    private final LongSupplier systemNanoClock;
+    private final long snapshotPeriodNanos;
+
+    private long lastSnapshotIndex;
+    private long lastSnapshotTimeNanos;
+
+    /**
+     * @param downstreamProcessStep - downstream process step
+     * @param completedDownstreamState - completed downstream processing state
+     * @param snapshotStore - store to write snapshots to
+     * @param snapshotCapture - capture of application state image
+     * @param systemNanoClock - system clock in nanos
+     * @param snapshotPeriodNanos - min period in nanos between snapshots
+     * @param lastSnapshotIndex - index of the last downstream entry applied to the loaded snapshot, or
+     *                          {@link SnapshotStore#NO_SNAPSHOT}
+     */
+    public SnapshotStep(final Step downstreamProcessStep,
+                        final EventProcessingState completedDownstreamState,
+                        final SnapshotStore snapshotStore,
+                        final SnapshotCapture snapshotCapture,
+                        final LongSupplier systemNanoClock,
+                        final long snapshotPeriodNanos,
+                        final long lastSnapshotIndex) {
+        this.downstreamProcessStep = Objects.requireNonNull(downstreamProcessStep);
+        this.completedDownstreamState = Objects.requireNonNull(completedDownstreamState);
+        this.snapshotStore = Objects.requireNonNull(snapshotStore);
+        this.snapshotCapture = Objects.requireNonNull(snapshotCapture);
+        this.systemNanoClock = Objects.requireNonNull(systemNanoClock);
+        this.snapshotPeriodNanos = snapshotPeriodNanos;
+        this.lastSnapshotIndex = lastSnapshotIndex;
+        this.lastSnapshotTimeNanos = systemNanoClock.getAsLong();
+    }
+
+    @Override
+    public boolean perform() {
+        if (downstreamProcessStep.perform()) {
+            return true;
+        }
+        final long index = completedDownstreamState.id();
+        if (index > lastSnapshotIndex) {
+            final long timeNanos = systemNanoClock.getAsLong();
+            if (timeNanos - lastSnapshotTimeNanos >= snapshotPeriodNanos && snapshotStore.isReady()) {
+                snapshotStore.write(completedDownstreamState, snapshotCapture.capture());
+                lastSnapshotIndex = index;
+                lastSnapshotTimeNanos = timeNanos;
+            }
+        }
+        return false;
+    }
+}
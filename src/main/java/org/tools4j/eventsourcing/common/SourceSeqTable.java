@@ -0,0 +1,179 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.collections.Int2IntHashMap;
+import org.agrona.collections.Long2LongHashMap;
+import org.agrona.collections.LongLongConsumer;
+
+import java.util.Arrays;
+
+/**
+ * Table of the last sourceSeq per source. Sources from 0 to {@link #MAX_DENSE_SOURCE} are stored in arrays indexed
+ * by source, so that a lookup is a single array load, other sources are stored in a hash map.
+ * Each source is assigned a slot on first put, so that iteration visits the stored sources only, and sources whose
+ * sourceSeq changed are tracked by slot until visited by {@link #forEachChanged(LongLongConsumer)}.
+ * Not thread-safe.
+ */
+public final class SourceSeqTable {
+    public static final long MISSING_VALUE = -1;
+    public static final int MAX_DENSE_SOURCE = 64 * 1024 - 1;
+    private static final int NO_SLOT = -1;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] denseSeqs = new long[INITIAL_CAPACITY];
+    private int[] denseSlots = new int[INITIAL_CAPACITY];
+    private final Long2LongHashMap sparseSeqs = new Long2LongHashMap(MISSING_VALUE);
+    private final Int2IntHashMap sparseSlots = new Int2IntHashMap(NO_SLOT);
+
+    private int[] slotSources = new int[INITIAL_CAPACITY];
+    private boolean[] changedSlots = new boolean[INITIAL_CAPACITY];
+    private int[] changed = new int[INITIAL_CAPACITY];
+    private int size;
+    private int changedSize;
+
+    public SourceSeqTable() {
+        Arrays.fill(denseSeqs, MISSING_VALUE);
+        Arrays.fill(denseSlots, NO_SLOT);
+    }
+
+    /**
+     * @param source - source
+     * @return last sourceSeq of the source, or {@link #MISSING_VALUE} if there is none
+     */
+    public long get(final int source) {
+        if (source >= 0 && source < denseSeqs.length) {
+            return denseSeqs[source];
+        }
+        return sparseSeqs.get(source);
+    }
+
+    /**
+     * Stores sourceSeq of the source, marking the source as changed if sourceSeq differs from the stored one.
+     * @param source - source
+     * @param sourceSeq - last sourceSeq of the source
+     * @throws IllegalArgumentException if sourceSeq is {@link #MISSING_VALUE}
+     */
+    public void put(final int source, final long sourceSeq) {
+        if (sourceSeq == MISSING_VALUE) {
+            throw new IllegalArgumentException("Invalid sourceSeq " + sourceSeq + " of source " + source);
+        }
+        final long previousSeq;
+        int slot;
+        if (source >= 0 && source <= MAX_DENSE_SOURCE) {
+            if (source >= denseSeqs.length) {
+                growDense(source);
+            }
+            previousSeq = denseSeqs[source];
+            denseSeqs[source] = sourceSeq;
+            slot = denseSlots[source];
+            if (slot == NO_SLOT) {
+                slot = addSlot(source);
+                denseSlots[source] = slot;
+            }
+        } else {
+            previousSeq = sparseSeqs.put(source, sourceSeq);
+            slot = sparseSlots.get(source);
+            if (slot == NO_SLOT) {
+                slot = addSlot(source);
+                sparseSlots.put(source, slot);
+            }
+        }
+        if (previousSeq != sourceSeq && !changedSlots[slot]) {
+            changedSlots[slot] = true;
+            changed[changedSize++] = slot;
+        }
+    }
+
+    /**
+     * @return number of stored sources
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Visits all stored sources in order of their first put.
+     * @param consumer - consumer of source and sourceSeq
+     */
+    public void forEach(final LongLongConsumer consumer) {
+        for (int slot = 0; slot < size; slot++) {
+            final int source = slotSources[slot];
+            consumer.accept(source, get(source));
+        }
+    }
+
+    /**
+     * Visits the sources whose sourceSeq changed since the previous call and clears their changed mark.
+     * The consumer must not put sourceSeqs to this table.
+     * @param consumer - consumer of source and sourceSeq
+     */
+    public void forEachChanged(final LongLongConsumer consumer) {
+        for (int i = 0; i < changedSize; i++) {
+            final int slot = changed[i];
+            changedSlots[slot] = false;
+            final int source = slotSources[slot];
+            consumer.accept(source, get(source));
+        }
+        changedSize = 0;
+    }
+
+    /**
+     * Removes all sources.
+     */
+    public void clear() {
+        for (int slot = 0; slot < size; slot++) {
+            final int source = slotSources[slot];
+            if (source >= 0 && source < denseSeqs.length) {
+                denseSeqs[source] = MISSING_VALUE;
+                denseSlots[source] = NO_SLOT;
+            }
+            changedSlots[slot] = false;
+        }
+        sparseSeqs.clear();
+        sparseSlots.clear();
+        size = 0;
+        changedSize = 0;
+    }
+
+    private int addSlot(final int source) {
+        if (size == slotSources.length) {
+            final int capacity = size * 2;
+            slotSources = Arrays.copyOf(slotSources, capacity);
+            changedSlots = Arrays.copyOf(changedSlots, capacity);
+            changed = Arrays.copyOf(changed, capacity);
+        }
+        slotSources[size] = source;
+        return size++;
+    }
+
+    private void growDense(final int source) {
+        final int length = denseSeqs.length;
+        final int capacity = Math.min(Math.max(length * 2, Integer.highestOneBit(source) * 2), MAX_DENSE_SOURCE + 1);
+        denseSeqs = Arrays.copyOf(denseSeqs, capacity);
+        denseSlots = Arrays.copyOf(denseSlots, capacity);
+        Arrays.fill(denseSeqs, length, capacity, MISSING_VALUE);
+        Arrays.fill(denseSlots, length, capacity, NO_SLOT);
+    }
+}
@@ -28,8 +28,14 @@ import org.tools4j.eventsourcing.api.EventProcessingState;
 import org.tools4j.eventsourcing.api.Poller;
 import org.tools4j.eventsourcing.api.Transaction;
 
+import java.util.Arrays;
 import java.util.Objects;
 
+/**
+ * Commits the transaction of an upstream event and, if it has entries, pushes noops of other sources whose completed
+ * upstream sourceSeq is ahead of the completed downstream sourceSeq. Only sources that changed since the previous push
+ * are visited, and their noops are committed in a single checkpoint entry, see {@link Transaction#acceptNoop(int, long)}.
+ */
 public class TransactionCommitAndPushNoops implements Poller.IndexConsumer {
     private final Transaction transaction;
     private final EventProcessingState completedUpstreamState;
@@ -47,10 +53,11 @@ public class TransactionCommitAndPushNoops implements Poller.IndexConsumer {
     @Override
     public void accept(final long index, final int source, final long sourceSeq, final long eventTimeNanos) {
         pushMoreUpToDateNoopSourceSeqs.excludedSource = source;
-        pushMoreUpToDateNoopSourceSeqs.eventTimeNanos = eventTimeNanos;
+        pushMoreUpToDateNoopSourceSeqs.noops = 0;
 
         if (transaction.commit() > 0) {
-            completedUpstreamState.forEachSourceEntry(pushMoreUpToDateNoopSourceSeqs);
+            completedUpstreamState.forEachChangedSourceEntry(pushMoreUpToDateNoopSourceSeqs);
+            pushMoreUpToDateNoopSourceSeqs.commit(eventTimeNanos);
         }
     }
 
@@ -59,12 +66,29 @@ public class TransactionCommitAndPushNoops implements Poller.IndexConsumer {
      */
     private class PushMoreUpToDateNoopSourceSeqs implements LongLongConsumer {
         int excludedSource;
-        long eventTimeNanos;
+        int noops;
+        int[] sources = new int[16];
+        long[] sourceSeqs = new long[16];
 
         @Override
         public void accept(final long source, final long sourceSeq) {
             if (source != excludedSource && sourceSeq > completedDownstreamState.sourceSeq((int) source)) {
-                transaction.init((int) source, sourceSeq, eventTimeNanos, true);
+                if (noops == sources.length) {
+                    sources = Arrays.copyOf(sources, noops * 2);
+                    sourceSeqs = Arrays.copyOf(sourceSeqs, noops * 2);
+                }
+                sources[noops] = (int) source;
+                sourceSeqs[noops] = sourceSeq;
+                noops++;
+            }
+        }
+
+        void commit(final long eventTimeNanos) {
+            if (noops > 0) {
+                transaction.init(sources[0], sourceSeqs[0], eventTimeNanos, true);
+                for (int noop = 1; noop < noops; noop++) {
+                    transaction.acceptNoop(sources[noop], sourceSeqs[noop]);
+                }
                 transaction.commit();
             }
         }
@@ -0,0 +1,97 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+
+import java.nio.ByteOrder;
+
+/**
+ * CRC-32C (Castagnoli) checksum computed eight bytes at a time with the slicing-by-8 tables, giving the same values
+ * as java.util.zip.CRC32C that is not available before Java 9.
+ * Checksum values are chained like with {@link java.util.zip.Checksum}: the checksum of concatenated data is
+ * computed by updating the checksum of the preceding data, starting with 0.
+ */
+final class Crc32c {
+    private static final int POLYNOMIAL = 0x82f63b78;
+    private static final int[][] TABLES = tables();
+    private static final int[] T0 = TABLES[0];
+    private static final int[] T1 = TABLES[1];
+    private static final int[] T2 = TABLES[2];
+    private static final int[] T3 = TABLES[3];
+    private static final int[] T4 = TABLES[4];
+    private static final int[] T5 = TABLES[5];
+    private static final int[] T6 = TABLES[6];
+    private static final int[] T7 = TABLES[7];
+
+    static int update(final int checksum, final DirectBuffer buffer, final int offset, final int length) {
+        int crc = ~checksum;
+        int position = offset;
+        final int limit = offset + length;
+        for (; position + 8 <= limit; position += 8) {
+            crc = update8(crc, buffer.getLong(position, ByteOrder.LITTLE_ENDIAN));
+        }
+        for (; position < limit; position++) {
+            crc = (crc >>> 8) ^ T0[(crc ^ buffer.getByte(position)) & 0xff];
+        }
+        return ~crc;
+    }
+
+    static int update(final int checksum, final long value) {
+        return ~update8(~checksum, value);
+    }
+
+    static int update(final int checksum, final int value) {
+        int crc = ~checksum;
+        for (int shift = 0; shift < 32; shift += 8) {
+            crc = (crc >>> 8) ^ T0[(crc ^ (value >>> shift)) & 0xff];
+        }
+        return ~crc;
+    }
+
+    private static int update8(final int crc, final long value) {
+        final int low = (int) value ^ crc;
+        final int high = (int) (value >>> 32);
+        return T7[low & 0xff] ^ T6[(low >>> 8) & 0xff] ^ T5[(low >>> 16) & 0xff] ^ T4[low >>> 24] ^
+                T3[high & 0xff] ^ T2[(high >>> 8) & 0xff] ^ T1[(high >>> 16) & 0xff] ^ T0[high >>> 24];
+    }
+
+    private static int[][] tables() {
+        final int[][] tables = new int[8][256];
+        for (int n = 0; n < 256; n++) {
+            int crc = n;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+            tables[0][n] = crc;
+        }
+        for (int n = 0; n < 256; n++) {
+            for (int table = 1; table < 8; table++) {
+                final int previous = tables[table - 1][n];
+                tables[table][n] = (previous >>> 8) ^ tables[0][previous & 0xff];
+            }
+        }
+        return tables;
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+/**
+ * Policy of forcing appended index entries and their messages to the storage device, applied by
+ * {@link DurableFlusher} in own thread so that appenders are not blocked by the flush. Entries are flushed in batches,
+ * once the given number of entries is pending or the oldest pending entry has been pending for the given time,
+ * whatever comes first. Smaller batches reduce the window of entries lost on a crash of the host at the cost of
+ * more frequent flushes.
+ */
+public final class DurabilityPolicy {
+    public static final long DEFAULT_PERIOD_MILLIS = 1000;
+    private static final int UNLIMITED_ENTRIES = Integer.MAX_VALUE;
+    private static final long UNLIMITED_MILLIS = Long.MAX_VALUE;
+
+    private static final DurabilityPolicy NONE = new DurabilityPolicy(UNLIMITED_ENTRIES, UNLIMITED_MILLIS);
+    private static final DurabilityPolicy EVERY_TRANSACTION = new DurabilityPolicy(1, UNLIMITED_MILLIS);
+
+    private final int maxPendingEntries;
+    private final long maxPendingMillis;
+
+    private DurabilityPolicy(final int maxPendingEntries, final long maxPendingMillis) {
+        if (maxPendingEntries < 1) {
+            throw new IllegalArgumentException("Max pending entries must be positive: " + maxPendingEntries);
+        }
+        if (maxPendingMillis < 0) {
+            throw new IllegalArgumentException("Max pending millis must not be negative: " + maxPendingMillis);
+        }
+        this.maxPendingEntries = maxPendingEntries;
+        this.maxPendingMillis = maxPendingMillis;
+    }
+
+    /**
+     * @return policy leaving the flush to the operating system, the default.
+     */
+    public static DurabilityPolicy none() {
+        return NONE;
+    }
+
+    /**
+     * @param periodMillis - max time in millis an entry is pending before it is flushed
+     * @return policy flushing pending entries periodically
+     */
+    public static DurabilityPolicy periodic(final long periodMillis) {
+        return new DurabilityPolicy(UNLIMITED_ENTRIES, periodMillis);
+    }
+
+    /**
+     * @param entries - number of pending entries to be flushed together
+     * @return policy flushing every given number of entries, or every {@link #DEFAULT_PERIOD_MILLIS} if fewer
+     *         entries are pending, so that trailing entries become durable as well.
+     */
+    public static DurabilityPolicy everyEntries(final int entries) {
+        return everyEntries(entries, DEFAULT_PERIOD_MILLIS);
+    }
+
+    /**
+     * @param entries - number of pending entries to be flushed together
+     * @param periodMillis - max time in millis an entry is pending before it is flushed
+     * @return policy flushing every given number of entries, or periodically if fewer entries are pending.
+     */
+    public static DurabilityPolicy everyEntries(final int entries, final long periodMillis) {
+        return new DurabilityPolicy(entries, periodMillis);
+    }
+
+    /**
+     * A transaction is appended as a single index entry, so that every transaction is flushed as soon as
+     * the flusher observes it, transactions appended during a flush are flushed together by the next flush.
+     * @return policy flushing every transaction
+     */
+    public static DurabilityPolicy everyTransaction() {
+        return EVERY_TRANSACTION;
+    }
+
+    /**
+     * @return true if entries are not flushed by the policy
+     */
+    public boolean isNone() {
+        return maxPendingEntries == UNLIMITED_ENTRIES && maxPendingMillis == UNLIMITED_MILLIS;
+    }
+
+    /**
+     * @return number of pending entries triggering a flush
+     */
+    public int maxPendingEntries() {
+        return maxPendingEntries;
+    }
+
+    /**
+     * @return time in millis an entry can be pending before triggering a flush
+     */
+    public long maxPendingMillis() {
+        return maxPendingMillis;
+    }
+}
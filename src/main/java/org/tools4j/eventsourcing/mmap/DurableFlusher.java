@@ -0,0 +1,140 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.SleepingMillisIdleStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tools4j.eventsourcing.common.ThreadService;
+import org.tools4j.eventsourcing.common.WhileLoop;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+
+import java.io.Closeable;
+import java.util.Objects;
+
+/**
+ * Flusher forcing the queue files to the storage device according to the {@link DurabilityPolicy}, in own thread
+ * so that appenders are not blocked by the flush. The flusher observes the tail position published in the index
+ * file header, forces the message file and then the index file, and records the observed tail as the durable
+ * position in the index file header. All entries before the durable position are durable together with their
+ * messages, entries appended during a flush are flushed together by the next flush.
+ */
+public final class DurableFlusher implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DurableFlusher.class);
+    public static final long DEFAULT_IDLE_MILLIS = 1;
+    private static final int INDEX_LENGTH = 4 + IndexDecoder.ENCODED_LENGTH;
+    private static final long FIRST_INDEX_POSITION = IndexFileHeader.LENGTH;
+    private static final long NOT_PENDING = -1;
+
+    private final RegionAccessorSupplier regionAccessorSupplier;
+    private final IndexFileHeader indexHeader;
+    private final DurabilityPolicy policy;
+    private final ThreadService flusherService;
+
+    private long pendingSinceMillis = NOT_PENDING;
+
+    /**
+     * Starts the flusher.
+     * @param regionAccessorSupplier - read-write region accessor supplier of the files
+     * @param policy - durability policy
+     * @param idleMillis - time in millis to idle while no entries are to be flushed
+     */
+    public DurableFlusher(final RegionAccessorSupplier regionAccessorSupplier,
+                          final DurabilityPolicy policy,
+                          final long idleMillis) {
+        this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.indexHeader = regionAccessorSupplier.indexHeader();
+        this.policy = Objects.requireNonNull(policy);
+
+        this.flusherService = new ThreadService(
+                "DurableFlusher",
+                (name, threadRunCondition) ->
+                        new WhileLoop(name,
+                                threadRunCondition,
+                                new SleepingMillisIdleStrategy(idleMillis)::idle,
+                                (message, exception) -> LOGGER.error("{} {}", message, exception),
+                                this::flushPending
+                        ),
+                (name, runnable) -> {
+                    final Thread thread = new Thread(null, runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    /**
+     * @return index following the last durable entry
+     */
+    public long durableIndex() {
+        return durableIndex(indexHeader);
+    }
+
+    /**
+     * @param indexHeader - index file header
+     * @return index following the last durable entry recorded in the index file header
+     */
+    static long durableIndex(final IndexFileHeader indexHeader) {
+        final long durablePosition = indexHeader.durablePosition();
+        return durablePosition <= FIRST_INDEX_POSITION ? 0 : (durablePosition - FIRST_INDEX_POSITION) / INDEX_LENGTH;
+    }
+
+    private boolean flushPending() {
+        final long tailPosition = indexHeader.tailPosition();
+        final long durablePosition = Math.max(indexHeader.durablePosition(), FIRST_INDEX_POSITION);
+        if (tailPosition <= durablePosition) {
+            pendingSinceMillis = NOT_PENDING;
+            return false;
+        }
+        final long nowMillis = System.currentTimeMillis();
+        if (pendingSinceMillis == NOT_PENDING) {
+            pendingSinceMillis = nowMillis;
+        }
+        if ((tailPosition - durablePosition) / INDEX_LENGTH < policy.maxPendingEntries() &&
+                nowMillis - pendingSinceMillis < policy.maxPendingMillis()) {
+            return false;
+        }
+        flush(tailPosition);
+        return true;
+    }
+
+    private void flush(final long tailPosition) {
+        regionAccessorSupplier.force();
+        //the tail could have been truncated by recovery of the appender during the flush
+        indexHeader.durablePosition(Math.min(tailPosition, indexHeader.tailPosition()));
+        pendingSinceMillis = NOT_PENDING;
+    }
+
+    /**
+     * Stops the flusher and flushes entries still pending.
+     */
+    @Override
+    public void close() {
+        flusherService.shutdown();
+        final long tailPosition = indexHeader.tailPosition();
+        if (tailPosition > indexHeader.durablePosition()) {
+            flush(tailPosition);
+        }
+    }
+}
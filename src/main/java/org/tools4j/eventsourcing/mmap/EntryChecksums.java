@@ -0,0 +1,146 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+import java.nio.ByteOrder;
+
+/**
+ * Checksums of index entries, enabled for the files with {@link IndexFileHeader#checksums(boolean)} when the
+ * index is empty. The CRC-32C checksum covers the message and the source, sourceSeq and event time of the index
+ * entry, and is appended to the message in the message file, so that the message length of the index entry
+ * includes the checksum.
+ */
+final class EntryChecksums {
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntryChecksums.class);
+    static final int LENGTH = 4;
+
+    private static final int LENGTH_OFFSET = 0;
+    private static final int LENGTH_LENGTH = 4;
+    private static final int INDEX_OFFSET = LENGTH_OFFSET + LENGTH_LENGTH;
+    private static final int INDEX_LENGTH = LENGTH_LENGTH + IndexDecoder.ENCODED_LENGTH;
+    private static final long FIRST_INDEX_POSITION = IndexFileHeader.LENGTH;
+
+    private EntryChecksums() {
+    }
+
+    /**
+     * @param message - buffer containing the message
+     * @param offset - offset of the message in the buffer
+     * @param length - length of the message excluding the checksum
+     * @param source - source of the index entry
+     * @param sourceSeq - sourceSeq of the index entry
+     * @param eventTimeNanos - event time of the index entry
+     * @return checksum of the entry
+     */
+    static int checksum(final DirectBuffer message, final int offset, final int length,
+                        final int source, final long sourceSeq, final long eventTimeNanos) {
+        int checksum = Crc32c.update(0, message, offset, length);
+        checksum = Crc32c.update(checksum, source);
+        checksum = Crc32c.update(checksum, sourceSeq);
+        return Crc32c.update(checksum, eventTimeNanos);
+    }
+
+    /**
+     * Appends the checksum of the entry to the message.
+     * @param message - buffer containing the message, with capacity for the checksum following the message
+     * @param length - length of the message excluding the checksum
+     * @param source - source of the index entry
+     * @param sourceSeq - sourceSeq of the index entry
+     * @param eventTimeNanos - event time of the index entry
+     * @return length of the message including the checksum
+     */
+    static int append(final MutableDirectBuffer message, final int length,
+                      final int source, final long sourceSeq, final long eventTimeNanos) {
+        message.putInt(length, checksum(message, 0, length, source, sourceSeq, eventTimeNanos), ByteOrder.LITTLE_ENDIAN);
+        return length + LENGTH;
+    }
+
+    /**
+     * Verifies the entries of the tail region of the index, which are the entries that can be torn or corrupted
+     * by a crash, as the preceding regions were not written to any more. Entries from the first entry failing
+     * verification are cleared.
+     * @param indexAccessor - index region accessor
+     * @param messageAccessor - message region accessor
+     * @param tailPosition - position following the last published index entry
+     * @return position following the last verified index entry
+     */
+    static long verifyTail(final RegionAccessor indexAccessor,
+                           final RegionAccessor messageAccessor,
+                           final long tailPosition) {
+        final UnsafeBuffer mappedIndexBuffer = new UnsafeBuffer();
+        final UnsafeBuffer mappedMessageBuffer = new UnsafeBuffer();
+        final ExpandableArrayBuffer spanningBuffer = new ExpandableArrayBuffer();
+        final IndexDecoder indexDecoder = new IndexDecoder();
+
+        //region size is a multiple of the index entry length, so a region starts at an index entry
+        final int regionSize = indexAccessor.size();
+        final long regionStart = (tailPosition - INDEX_LENGTH) / regionSize * regionSize;
+
+        for (long indexPosition = Math.max(FIRST_INDEX_POSITION, regionStart); indexPosition < tailPosition;
+             indexPosition += INDEX_LENGTH) {
+            final int length = IndexTailLocator.messageLength(indexAccessor, mappedIndexBuffer, indexPosition);
+            indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
+            if (length < LENGTH || !verify(messageAccessor, mappedMessageBuffer, spanningBuffer, indexDecoder, length)) {
+                LOGGER.warn("Entry {} failed checksum verification, truncating index from the entry",
+                        (indexPosition - FIRST_INDEX_POSITION) / INDEX_LENGTH);
+                for (long position = indexPosition; position < tailPosition; position += INDEX_LENGTH) {
+                    IndexTailLocator.messageLength(indexAccessor, mappedIndexBuffer, position);
+                    mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, 0);
+                }
+                return indexPosition;
+            }
+        }
+        return tailPosition;
+    }
+
+    private static boolean verify(final RegionAccessor messageAccessor,
+                                  final UnsafeBuffer mappedMessageBuffer,
+                                  final ExpandableArrayBuffer spanningBuffer,
+                                  final IndexDecoder indexDecoder,
+                                  final int length) {
+        final long position = indexDecoder.position();
+        if (!messageAccessor.wrap(position, mappedMessageBuffer)) {
+            throw new IllegalStateException("Failed to wrap message buffer to position " + position);
+        }
+        final DirectBuffer message;
+        if (mappedMessageBuffer.capacity() < length) {
+            MessageSpans.read(messageAccessor, mappedMessageBuffer, position, spanningBuffer, length);
+            message = spanningBuffer;
+        } else {
+            message = mappedMessageBuffer;
+        }
+        final int messageLength = length - LENGTH;
+        return message.getInt(messageLength, ByteOrder.LITTLE_ENDIAN) == checksum(message, 0, messageLength,
+                indexDecoder.source(), indexDecoder.sourceSeq(), indexDecoder.eventTimeNanos());
+    }
+}
@@ -0,0 +1,301 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.common.Doorbell;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Header located at the start of the index file, index entries follow the header.
+ * The header is mapped separately from the index regions so that it can be accessed at any time without
+ * remapping the region ring.
+ *
+ * Header layout:
+ *  - tail position (8 bytes) - position in the index file following the last published index entry. It is
+ *    updated by the appender with ordered semantic after each publish, so that the appender can start appending
+ *    without walking all index entries. Concurrent appenders advance it with compare-and-set over contiguously
+ *    published entries, so it may lag behind the published entries.
+ *  - index claim position (8 bytes) - position of the next index entry to be claimed by concurrent appenders.
+ *  - message claim position (8 bytes) - position in the message file of the next message to be claimed by
+ *    concurrent appenders.
+ *  - end position (8 bytes) - position following the last index entry of a sealed segment of a segmented queue,
+ *    0 while entries can still be appended.
+ *  - checksums (4 bytes) - 1 if index entries are checksummed, see {@link EntryChecksums}, set while the index
+ *    is empty.
+ *  - durable (4 bytes) - 1 if the queue of the appender has a durability policy advancing the durable position,
+ *    set when the queue is opened for appending.
+ *  - durable position (8 bytes) - position in the index file following the last index entry forced to the
+ *    storage device together with its message, see {@link DurableFlusher}.
+ *  - doorbell (8 bytes) - sequence incremented after appends by the queue of the appender while doorbell waiters
+ *    are registered, so that pollers of other processes can park while idle,
+ *    see {@link Doorbell}.
+ *  - doorbell waiters (4 bytes) - number of pollers registered to park until the doorbell is rung.
+ *  - reserved up to {@link #LENGTH} bytes.
+ */
+public final class IndexFileHeader implements Closeable {
+    public static final int LENGTH = 128;
+    private static final int TAIL_POSITION_OFFSET = 0;
+    private static final int INDEX_CLAIM_POSITION_OFFSET = 8;
+    private static final int MESSAGE_CLAIM_POSITION_OFFSET = 16;
+    private static final int END_POSITION_OFFSET = 24;
+    private static final int CHECKSUMS_OFFSET = 32;
+    private static final int DURABLE_OFFSET = 36;
+    private static final int DURABLE_POSITION_OFFSET = 40;
+    private static final int DOORBELL_OFFSET = 48;
+    private static final int DOORBELL_WAITERS_OFFSET = 56;
+
+    private final MappedByteBuffer mappedByteBuffer;
+    private final UnsafeBuffer headerBuffer;
+
+    private IndexFileHeader(final MappedByteBuffer mappedByteBuffer) {
+        this.mappedByteBuffer = mappedByteBuffer;
+        this.headerBuffer = new UnsafeBuffer(mappedByteBuffer);
+    }
+
+    /**
+     * Maps header of the index file.
+     * @param fileChannel - file channel of the index file
+     * @param mapMode - map mode
+     * @return index file header
+     * @throws IOException when the header could not be mapped
+     */
+    public static IndexFileHeader map(final FileChannel fileChannel, final FileChannel.MapMode mapMode) throws IOException {
+        return new IndexFileHeader(fileChannel.map(mapMode, 0, LENGTH));
+    }
+
+    /**
+     * @return position in the index file following the last published index entry,
+     *         or 0 if not yet initialised.
+     */
+    public long tailPosition() {
+        return headerBuffer.getLongVolatile(TAIL_POSITION_OFFSET);
+    }
+
+    /**
+     * Sets the tail position with ordered semantic.
+     * @param tailPosition - position in the index file following the last published index entry
+     */
+    public void tailPosition(final long tailPosition) {
+        headerBuffer.putLongOrdered(TAIL_POSITION_OFFSET, tailPosition);
+    }
+
+    /**
+     * Atomically sets the tail position if it currently equals the expected value.
+     * @param expectedTailPosition - expected tail position
+     * @param tailPosition - new tail position
+     * @return true if successful, false if the current tail position was not equal to the expected value.
+     */
+    public boolean compareAndSetTailPosition(final long expectedTailPosition, final long tailPosition) {
+        return headerBuffer.compareAndSetLong(TAIL_POSITION_OFFSET, expectedTailPosition, tailPosition);
+    }
+
+    /**
+     * @return position of the next index entry to be claimed by concurrent appenders
+     */
+    public long indexClaimPosition() {
+        return headerBuffer.getLongVolatile(INDEX_CLAIM_POSITION_OFFSET);
+    }
+
+    /**
+     * Sets the index claim position with ordered semantic.
+     * @param indexClaimPosition - position of the next index entry to be claimed
+     */
+    public void indexClaimPosition(final long indexClaimPosition) {
+        headerBuffer.putLongOrdered(INDEX_CLAIM_POSITION_OFFSET, indexClaimPosition);
+    }
+
+    /**
+     * Atomically claims an index entry.
+     * @param indexLength - length of the index entry
+     * @return position of the claimed index entry
+     */
+    public long claimIndex(final int indexLength) {
+        return headerBuffer.getAndAddLong(INDEX_CLAIM_POSITION_OFFSET, indexLength);
+    }
+
+    /**
+     * @return position in the message file of the next message to be claimed by concurrent appenders
+     */
+    public long messageClaimPosition() {
+        return headerBuffer.getLongVolatile(MESSAGE_CLAIM_POSITION_OFFSET);
+    }
+
+    /**
+     * Sets the message claim position with ordered semantic.
+     * @param messageClaimPosition - position in the message file of the next message to be claimed
+     */
+    public void messageClaimPosition(final long messageClaimPosition) {
+        headerBuffer.putLongOrdered(MESSAGE_CLAIM_POSITION_OFFSET, messageClaimPosition);
+    }
+
+    /**
+     * Atomically sets the message claim position if it currently equals the expected value.
+     * @param expectedMessageClaimPosition - expected message claim position
+     * @param messageClaimPosition - new message claim position
+     * @return true if successful, false if the current message claim position was not equal to the expected value.
+     */
+    public boolean compareAndSetMessageClaimPosition(final long expectedMessageClaimPosition, final long messageClaimPosition) {
+        return headerBuffer.compareAndSetLong(MESSAGE_CLAIM_POSITION_OFFSET, expectedMessageClaimPosition, messageClaimPosition);
+    }
+
+    /**
+     * @return position following the last index entry of a sealed segment, or 0 if the segment is not sealed.
+     */
+    public long endPosition() {
+        return headerBuffer.getLongVolatile(END_POSITION_OFFSET);
+    }
+
+    /**
+     * Seals the segment with ordered semantic, no entries are to be appended after the end position.
+     * @param endPosition - position following the last index entry of the segment
+     */
+    public void endPosition(final long endPosition) {
+        headerBuffer.putLongOrdered(END_POSITION_OFFSET, endPosition);
+    }
+
+    /**
+     * @return true if the messages of the index entries are followed by checksums
+     */
+    public boolean checksums() {
+        return headerBuffer.getIntVolatile(CHECKSUMS_OFFSET) == 1;
+    }
+
+    /**
+     * Enables or disables checksums of index entries with ordered semantic, to be set while the index is empty.
+     * @param checksums - true if the messages of the index entries are to be followed by checksums
+     */
+    public void checksums(final boolean checksums) {
+        headerBuffer.putIntOrdered(CHECKSUMS_OFFSET, checksums ? 1 : 0);
+    }
+
+    /**
+     * @return true if the durable position is advanced by a durability policy of the queue
+     */
+    public boolean durable() {
+        return headerBuffer.getIntVolatile(DURABLE_OFFSET) == 1;
+    }
+
+    /**
+     * Records with ordered semantic whether the durable position is advanced by a durability policy of the queue.
+     * @param durable - true if the queue has a durability policy
+     */
+    public void durable(final boolean durable) {
+        headerBuffer.putIntOrdered(DURABLE_OFFSET, durable ? 1 : 0);
+    }
+
+    /**
+     * @return position in the index file following the last durable index entry, or 0 if no entry is known
+     *         to be durable.
+     */
+    public long durablePosition() {
+        return headerBuffer.getLongVolatile(DURABLE_POSITION_OFFSET);
+    }
+
+    /**
+     * Sets the durable position with ordered semantic.
+     * @param durablePosition - position in the index file following the last durable index entry
+     */
+    public void durablePosition(final long durablePosition) {
+        headerBuffer.putLongOrdered(DURABLE_POSITION_OFFSET, durablePosition);
+    }
+
+    /**
+     * @return doorbell sequence, it changes after appends
+     */
+    public long doorbell() {
+        return headerBuffer.getLongVolatile(DOORBELL_OFFSET);
+    }
+
+    /**
+     * Atomically increments the doorbell sequence, for queues with concurrent appenders.
+     */
+    public void ringDoorbell() {
+        headerBuffer.getAndAddLong(DOORBELL_OFFSET, 1);
+    }
+
+    /**
+     * Increments the doorbell sequence with ordered semantic, for queues with a single appender.
+     */
+    public void ringDoorbellOrdered() {
+        headerBuffer.putLongOrdered(DOORBELL_OFFSET, headerBuffer.getLong(DOORBELL_OFFSET) + 1);
+    }
+
+    /**
+     * @return number of registered doorbell waiters
+     */
+    public int doorbellWaiters() {
+        return headerBuffer.getIntVolatile(DOORBELL_WAITERS_OFFSET);
+    }
+
+    /**
+     * Atomically adds to the number of registered doorbell waiters.
+     * @param delta - 1 to register a waiter, -1 to deregister it
+     */
+    public void addDoorbellWaiters(final int delta) {
+        headerBuffer.getAndAddInt(DOORBELL_WAITERS_OFFSET, delta);
+    }
+
+    /**
+     * @param concurrentRingers - true if the doorbell is rung by concurrent appenders
+     * @return doorbell state held in the header
+     */
+    public Doorbell.State doorbellState(final boolean concurrentRingers) {
+        return new Doorbell.State() {
+            @Override
+            public long sequence() {
+                return doorbell();
+            }
+
+            @Override
+            public void increment() {
+                if (concurrentRingers) {
+                    ringDoorbell();
+                } else {
+                    ringDoorbellOrdered();
+                }
+            }
+
+            @Override
+            public int waiters() {
+                return doorbellWaiters();
+            }
+
+            @Override
+            public void addWaiters(final int delta) {
+                addDoorbellWaiters(delta);
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        IoUtil.unmap(mappedByteBuffer);
+    }
+}
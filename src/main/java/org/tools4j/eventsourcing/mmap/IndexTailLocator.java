@@ -0,0 +1,148 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+/**
+ * Locates the tail of the index, which is the position following the last published index entry.
+ * The search starts from the tail position recorded in the index file header:
+ *  - tail position in the header may be ahead of the published entries if the header reached the disk but
+ *    the index entries did not. A bounded number of entries are scanned back, and if the header cannot be
+ *    trusted the search falls back to scanning from the first entry.
+ *  - tail position in the header may be behind the published entries if the appender stopped between
+ *    publishing an entry and updating the header, so the entries published after the header update are
+ *    scanned forward.
+ * On recovery, entries beyond the tail claimed by concurrent appenders are cleared, as some of them could have been
+ * published after an entry that was claimed but never published. If the index entries are checksummed, the entries
+ * of the tail region are verified and the index is truncated before the first entry failing verification.
+ */
+final class IndexTailLocator {
+    private static final int LENGTH_OFFSET = 0;
+    private static final int LENGTH_LENGTH = 4;
+    private static final int INDEX_OFFSET = LENGTH_OFFSET + LENGTH_LENGTH;
+    private static final int INDEX_LENGTH = LENGTH_LENGTH + IndexDecoder.ENCODED_LENGTH;
+    private static final long FIRST_INDEX_POSITION = IndexFileHeader.LENGTH;
+    private static final int MAX_TAIL_ENTRIES_TO_SCAN_BACK = 1024;
+
+    private IndexTailLocator() {
+    }
+
+    /**
+     * @param indexAccessor - index region accessor
+     * @param mappedIndexBuffer - buffer to wrap index entries, remains wrapped at the last scanned entry
+     * @param headerTailPosition - tail position recorded in the index file header
+     * @return position following the last published index entry
+     */
+    static long locate(final RegionAccessor indexAccessor,
+                       final UnsafeBuffer mappedIndexBuffer,
+                       final long headerTailPosition) {
+        long indexPosition = initialIndexPosition(headerTailPosition);
+
+        int scannedEntries = 0;
+        while (indexPosition > FIRST_INDEX_POSITION && messageLength(indexAccessor, mappedIndexBuffer, indexPosition - INDEX_LENGTH) <= 0) {
+            indexPosition -= INDEX_LENGTH;
+            if (++scannedEntries > MAX_TAIL_ENTRIES_TO_SCAN_BACK) {
+                indexPosition = FIRST_INDEX_POSITION;
+                break;
+            }
+        }
+
+        while (messageLength(indexAccessor, mappedIndexBuffer, indexPosition) > 0) {
+            indexPosition += INDEX_LENGTH;
+        }
+        return indexPosition;
+    }
+
+    /**
+     * Recovers the tail of the index before appending is started, and resets the claim positions in the
+     * index file header to the tail.
+     * @param indexAccessor - index region accessor
+     * @param messageAccessor - message region accessor
+     * @param mappedIndexBuffer - buffer to wrap index entries
+     * @param indexHeader - index file header
+     * @param checksums - true to enable checksums of index entries if the index is empty, see {@link EntryChecksums}.
+     *                  Otherwise entries are checksummed if the index file header says so.
+     * @return position following the last published index entry
+     */
+    static long recover(final RegionAccessor indexAccessor,
+                        final RegionAccessor messageAccessor,
+                        final UnsafeBuffer mappedIndexBuffer,
+                        final IndexFileHeader indexHeader,
+                        final boolean checksums) {
+        long tailPosition = locate(indexAccessor, mappedIndexBuffer, indexHeader.tailPosition());
+
+        for (long indexPosition = tailPosition; indexPosition < indexHeader.indexClaimPosition(); indexPosition += INDEX_LENGTH) {
+            if (messageLength(indexAccessor, mappedIndexBuffer, indexPosition) != 0) {
+                mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, 0);
+            }
+        }
+
+        if (tailPosition == FIRST_INDEX_POSITION) {
+            indexHeader.checksums(checksums);
+        } else if (indexHeader.checksums()) {
+            tailPosition = EntryChecksums.verifyTail(indexAccessor, messageAccessor, tailPosition);
+        }
+
+        long messagePosition = indexHeader.messageClaimPosition();
+        if (tailPosition > FIRST_INDEX_POSITION) {
+            final int lastMessageLength = messageLength(indexAccessor, mappedIndexBuffer, tailPosition - INDEX_LENGTH);
+            final long lastMessagePosition = new IndexDecoder().wrap(mappedIndexBuffer, INDEX_OFFSET).position();
+            messagePosition = Math.max(messagePosition, lastMessagePosition + lastMessageLength);
+        }
+
+        indexHeader.messageClaimPosition(messagePosition);
+        indexHeader.indexClaimPosition(tailPosition);
+        indexHeader.tailPosition(tailPosition);
+        if (indexHeader.durablePosition() > tailPosition) {
+            indexHeader.durablePosition(tailPosition);
+        }
+        return tailPosition;
+    }
+
+    /**
+     * Wraps the index entry at given position and returns the message length with volatile semantic.
+     * @param indexAccessor - index region accessor
+     * @param mappedIndexBuffer - buffer to wrap the index entry
+     * @param indexPosition - position of the index entry
+     * @return message length, zero if the entry is not published yet
+     */
+    static int messageLength(final RegionAccessor indexAccessor,
+                             final UnsafeBuffer mappedIndexBuffer,
+                             final long indexPosition) {
+        if (!indexAccessor.wrap(indexPosition, mappedIndexBuffer)) {
+            throw new IllegalStateException("Failed to wrap index buffer to position " + indexPosition);
+        }
+        return mappedIndexBuffer.getIntVolatile(LENGTH_OFFSET);
+    }
+
+    private static long initialIndexPosition(final long headerTailPosition) {
+        if (headerTailPosition < FIRST_INDEX_POSITION || (headerTailPosition - FIRST_INDEX_POSITION) % INDEX_LENGTH != 0) {
+            return FIRST_INDEX_POSITION;
+        }
+        return headerTailPosition;
+    }
+}
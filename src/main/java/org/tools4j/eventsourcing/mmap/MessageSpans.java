@@ -0,0 +1,81 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+/**
+ * Copies messages longer than the region size, spanning consecutive regions of the message file.
+ * Messages that fit into a region never span regions, as appenders move them to the start of the next region,
+ * so a message spans regions if and only if its length exceeds the remaining size of its first region.
+ */
+final class MessageSpans {
+    /**
+     * Writes a message to the message file starting at the given position.
+     * @param messageAccessor - accessor of the message file
+     * @param regionBuffer - buffer to wrap the regions with
+     * @param position - position of the message in the message file
+     * @param src - buffer containing the message
+     * @param srcOffset - offset of the message in src
+     * @param length - length of the message
+     */
+    static void write(final RegionAccessor messageAccessor, final UnsafeBuffer regionBuffer, final long position,
+                      final DirectBuffer src, final int srcOffset, final int length) {
+        int done = 0;
+        while (done < length) {
+            wrap(messageAccessor, regionBuffer, position + done);
+            final int chunk = Math.min(regionBuffer.capacity(), length - done);
+            regionBuffer.putBytes(0, src, srcOffset + done, chunk);
+            done += chunk;
+        }
+    }
+
+    /**
+     * Reads a message from the message file starting at the given position.
+     * @param messageAccessor - accessor of the message file
+     * @param regionBuffer - buffer to wrap the regions with
+     * @param position - position of the message in the message file
+     * @param dst - buffer to copy the message to at offset 0
+     * @param length - length of the message
+     */
+    static void read(final RegionAccessor messageAccessor, final UnsafeBuffer regionBuffer, final long position,
+                     final MutableDirectBuffer dst, final int length) {
+        int done = 0;
+        while (done < length) {
+            wrap(messageAccessor, regionBuffer, position + done);
+            final int chunk = Math.min(regionBuffer.capacity(), length - done);
+            dst.putBytes(done, regionBuffer, 0, chunk);
+            done += chunk;
+        }
+    }
+
+    private static void wrap(final RegionAccessor messageAccessor, final UnsafeBuffer regionBuffer, final long position) {
+        if (!messageAccessor.wrap(position, regionBuffer)) {
+            throw new IllegalStateException("Failed to wrap message buffer for position " + position);
+        }
+    }
+}
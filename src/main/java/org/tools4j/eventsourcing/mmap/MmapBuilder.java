@@ -7,6 +7,10 @@ import org.tools4j.mmap.region.api.RegionRingFactory;
 import org.tools4j.mmap.region.impl.MappedFile;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.LongSupplier;
 
 public interface MmapBuilder {
     FilePrefixBuilder directory(String directory);
@@ -25,7 +29,75 @@ public interface MmapBuilder {
         Optionals regionRingSize(int regionRingSize);
         Optionals regionsToMapAhead(int regionsToMapAhead);
         Optionals maxFileSize(long maxFileSize);
-        Optionals encodingBufferSize(int encodingBufferSize);
+        /**
+         * Number of threads that can append to the queue concurrently, applicable to {@link #buildQueue()}.
+         * @param producers - number of producer threads, 1 by default for a single producer appender.
+         * @return optionals builder
+         */
+        Optionals producers(int producers);
+        /**
+         * Enables segmented queue files, rolling to a new segment when the index or message file of the current
+         * segment reaches the given size.
+         * @param segmentSize - max size of the segment files in bytes, not less than the region size.
+         * @return optionals builder
+         */
+        Optionals segmentSize(long segmentSize);
+        /**
+         * Enables segmented queue files, rolling to a new segment when the given period has elapsed since
+         * the current segment was started.
+         * @param segmentPeriodMillis - period of a segment in millis
+         * @return optionals builder
+         */
+        Optionals segmentPeriodMillis(long segmentPeriodMillis);
+        /**
+         * Enables retention of segments, applicable to segmented {@link #buildQueue()} and
+         * {@link #buildTransactionalQueue()}, see {@link SegmentRetention}.
+         * @param retainMillis - min time in millis to retain a segment after the next segment was started
+         * @return optionals builder
+         */
+        Optionals retainMillis(long retainMillis);
+        /**
+         * Enables retention of segments, applicable to segmented {@link #buildQueue()} and
+         * {@link #buildTransactionalQueue()}, see {@link SegmentRetention}.
+         * @param retainBytes - max total size of the segment files in bytes
+         * @return optionals builder
+         */
+        Optionals retainBytes(long retainBytes);
+        /**
+         * Adds a retention watermark in addition to the positions of the pollers created by the queue.
+         * @param watermark - supplier of the index before which entries are not needed any more,
+         *                  e.g. downstream index of the latest state snapshot.
+         * @return optionals builder
+         */
+        Optionals retentionWatermark(LongSupplier watermark);
+        /**
+         * @param archiveDirectory - directory to move the files of removed segments to, instead of deleting them.
+         * @return optionals builder
+         */
+        Optionals archiveDirectory(String archiveDirectory);
+        /**
+         * Enables compression of appended messages with the dictionary of the queue, if saved in the queue
+         * directory, see {@link org.tools4j.eventsourcing.common.CompressionDictionary}. Pollers decompress
+         * messages regardless of this option.
+         * @param compress - true to compress messages, false by default
+         * @return optionals builder
+         */
+        Optionals compress(boolean compress);
+        /**
+         * Enables CRC-32C checksums of index entries, verified for the tail region of the index on recovery to
+         * truncate entries torn or corrupted by a crash. Checksums are enabled for queue files created empty,
+         * existing files retain the setting they were created with.
+         * @param checksums - true to checksum index entries, false by default
+         * @return optionals builder
+         */
+        Optionals checksums(boolean checksums);
+        /**
+         * Sets the policy of forcing appended entries to the storage device by a background {@link DurableFlusher},
+         * not applicable to segmented queue files.
+         * @param durability - durability policy, {@link DurabilityPolicy#none()} by default
+         * @return optionals builder
+         */
+        Optionals durability(DurabilityPolicy durability);
         IndexedQueue buildQueue() throws IOException;
         IndexedQueue buildReadOnlyQueue() throws IOException;
         IndexedPollerFactory buildPollerFactory() throws IOException;
@@ -45,7 +117,16 @@ public interface MmapBuilder {
         private int regionRingSize = 4;
         private int regionsToMapAhead = 1;
         private long maxFileSize = 1024 * 1024 * 1024 * 2L;
-        private int encodingBufferSize = 8 * 1024;
+        private int producers = 1;
+        private long segmentSize = 0;
+        private long segmentPeriodMillis = 0;
+        private long retainMillis = SegmentRetention.UNLIMITED;
+        private long retainBytes = SegmentRetention.UNLIMITED;
+        private final List<LongSupplier> retentionWatermarks = new ArrayList<>();
+        private String archiveDirectory;
+        private boolean compress = false;
+        private boolean checksums = false;
+        private DurabilityPolicy durability = DurabilityPolicy.none();
 
         @Override
         public FilePrefixBuilder directory(final String directory) {
@@ -96,13 +177,118 @@ public interface MmapBuilder {
         }
 
         @Override
-        public Optionals encodingBufferSize(final int encodingBufferSize) {
-            this.encodingBufferSize = encodingBufferSize;
+        public Optionals producers(final int producers) {
+            this.producers = producers;
             return this;
         }
 
+        @Override
+        public Optionals segmentSize(final long segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        @Override
+        public Optionals segmentPeriodMillis(final long segmentPeriodMillis) {
+            this.segmentPeriodMillis = segmentPeriodMillis;
+            return this;
+        }
+
+        @Override
+        public Optionals retainMillis(final long retainMillis) {
+            this.retainMillis = retainMillis;
+            return this;
+        }
+
+        @Override
+        public Optionals retainBytes(final long retainBytes) {
+            this.retainBytes = retainBytes;
+            return this;
+        }
+
+        @Override
+        public Optionals retentionWatermark(final LongSupplier watermark) {
+            this.retentionWatermarks.add(Objects.requireNonNull(watermark));
+            return this;
+        }
+
+        @Override
+        public Optionals archiveDirectory(final String archiveDirectory) {
+            this.archiveDirectory = archiveDirectory;
+            return this;
+        }
+
+        @Override
+        public Optionals compress(final boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        @Override
+        public Optionals checksums(final boolean checksums) {
+            this.checksums = checksums;
+            return this;
+        }
+
+        @Override
+        public Optionals durability(final DurabilityPolicy durability) {
+            this.durability = Objects.requireNonNull(durability);
+            return this;
+        }
+
+        private boolean retained() {
+            return retainMillis != SegmentRetention.UNLIMITED || retainBytes != SegmentRetention.UNLIMITED;
+        }
+
+        private SegmentRetention retention() throws IOException {
+            if (!retained()) {
+                return null;
+            }
+            final SegmentRetention retention = new SegmentRetention(
+                    directory,
+                    filePrefix,
+                    retainMillis,
+                    retainBytes,
+                    archiveDirectory,
+                    SegmentRetention.DEFAULT_CHECK_PERIOD_MILLIS);
+            retentionWatermarks.forEach(retention::register);
+            return retention;
+        }
+
+        private boolean segmented() {
+            return segmentSize > 0 || segmentPeriodMillis > 0;
+        }
+
+        private long segmentSize() {
+            return segmentSize > 0 ? segmentSize : maxFileSize;
+        }
+
         @Override
         public IndexedQueue buildQueue() throws IOException {
+            if (segmented()) {
+                if (!durability.isNone()) {
+                    throw new IllegalStateException("Segmented queue does not support durability policy");
+                }
+                if (producers > 1) {
+                    throw new IllegalStateException("Segmented queue does not support multiple producers");
+                }
+                return new MmapSegmentedIndexedQueue(
+                        directory,
+                        filePrefix,
+                        clearFiles,
+                        regionRingFactory,
+                        regionSize,
+                        regionRingSize,
+                        regionsToMapAhead,
+                        segmentSize(),
+                        segmentPeriodMillis,
+                        retention(),
+                        compress,
+                        checksums);
+            }
+            if (retained()) {
+                throw new IllegalStateException("Retention requires segmented queue files");
+            }
             return new MmapIndexedQueue(
                     directory,
                     filePrefix,
@@ -112,11 +298,18 @@ public interface MmapBuilder {
                     regionRingSize,
                     regionsToMapAhead,
                     maxFileSize,
-                    encodingBufferSize);
+                    new MmapIndexedQueue.Config()
+                            .producers(producers)
+                            .compress(compress)
+                            .checksums(checksums)
+                            .durability(durability));
         }
 
         @Override
         public IndexedQueue buildReadOnlyQueue() throws IOException {
+            if (segmented()) {
+                return new MmapReadOnlyIndexedQueue(buildPollerFactory());
+            }
             return new MmapReadOnlyIndexedQueue(
                     directory,
                     filePrefix,
@@ -128,6 +321,15 @@ public interface MmapBuilder {
 
         @Override
         public IndexedPollerFactory buildPollerFactory() throws IOException {
+            if (segmented()) {
+                return new MmapSegmentedPollerFactory(
+                        directory,
+                        filePrefix,
+                        regionRingFactory,
+                        regionSize,
+                        regionRingSize,
+                        regionsToMapAhead);
+            }
             return new MmapIndexedPollerFactory(
                     directory,
                     filePrefix,
@@ -139,6 +341,27 @@ public interface MmapBuilder {
 
         @Override
         public IndexedTransactionalQueue buildTransactionalQueue() throws IOException {
+            if (segmented()) {
+                if (!durability.isNone()) {
+                    throw new IllegalStateException("Segmented queue does not support durability policy");
+                }
+                return new MmapSegmentedIndexedTransactionalQueue(
+                        directory,
+                        filePrefix,
+                        clearFiles,
+                        regionRingFactory,
+                        regionSize,
+                        regionRingSize,
+                        regionsToMapAhead,
+                        segmentSize(),
+                        segmentPeriodMillis,
+                        retention(),
+                        compress,
+                        checksums);
+            }
+            if (retained()) {
+                throw new IllegalStateException("Retention requires segmented queue files");
+            }
             return new MmapIndexedTransactionalQueue(
                     directory,
                     filePrefix,
@@ -148,7 +371,10 @@ public interface MmapBuilder {
                     regionRingSize,
                     regionsToMapAhead,
                     maxFileSize,
-                    encodingBufferSize);
+                    new MmapIndexedTransactionalQueue.Config()
+                            .compress(compress)
+                            .checksums(checksums)
+                            .durability(durability));
         }
     }
 
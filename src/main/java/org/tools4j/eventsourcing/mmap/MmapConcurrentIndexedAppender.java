@@ -0,0 +1,268 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.IndexedClaimingAppender;
+import org.tools4j.eventsourcing.sbe.IndexEncoder;
+
+import java.io.Closeable;
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * An appender that appends index and message details to two separate memory-mapped-files concurrently
+ * with other instances of this appender appending to the same files.
+ * Each instance is to be used by a single thread and is to be given own region accessor supplier,
+ * see {@link RegionAccessorSupplier#forConcurrentReadWrite}, while the appenders coordinate through the claim
+ * positions in the shared index file header:
+ *  - message space is claimed with compare-and-set of the message claim position, so that a message never
+ *    spans two regions unless it is longer than the region size. Such message is encoded into a heap buffer
+ *    and written across consecutive regions on commit, see {@link MessageSpans};
+ *  - index entry is claimed with fetch-add of the index claim position on commit, and published with ordered
+ *    write of the message length, the same way as with {@link MmapIndexedAppender}.
+ *  After publishing, appenders advance the tail position in the header over contiguously published entries.
+ *  Claim positions are to be recovered with {@link #recover(RegionAccessorSupplier)} before any of the appenders
+ *  is used, from the thread that uses the given region accessor supplier or before the thread starts using it.
+ *  If the index entries are checksummed, the checksum is appended to the message on commit, see {@link EntryChecksums}.
+ */
+public final class MmapConcurrentIndexedAppender implements IndexedClaimingAppender, Closeable {
+    private static final int LENGTH_OFFSET = 0;
+    private static final int LENGTH_LENGTH = 4;
+    private static final int INDEX_OFFSET = LENGTH_OFFSET + LENGTH_LENGTH;
+    private static final int INDEX_LENGTH = LENGTH_LENGTH + IndexEncoder.ENCODED_LENGTH;
+
+    private final RegionAccessorSupplier regionAccessorSupplier;
+    private final IndexFileHeader indexHeader;
+    private final int regionSize;
+
+    private final UnsafeBuffer mappedIndexBuffer;
+    private final UnsafeBuffer mappedMessageBuffer;
+    private final UnsafeBuffer claimedMessageBuffer;
+    private final MutableDirectBuffer relocationBuffer = new ExpandableArrayBuffer();
+    private final ExpandableArrayBuffer spanningBuffer = new ExpandableArrayBuffer();
+    private final UnsafeBuffer checksumBuffer = new UnsafeBuffer(new byte[EntryChecksums.LENGTH]);
+
+    private final IndexEncoder indexEncoder = new IndexEncoder();
+
+    private long claimedMessagePosition;
+    private int claimedMessageLength;
+    private boolean claimed;
+    private boolean spanning;
+    private int checksumLength;
+
+    public MmapConcurrentIndexedAppender(final RegionAccessorSupplier regionAccessorSupplier) {
+        this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.indexHeader = regionAccessorSupplier.indexHeader();
+        this.regionSize = regionAccessorSupplier.messageAccessor().size();
+
+        this.mappedIndexBuffer = new UnsafeBuffer();
+        this.mappedMessageBuffer = new UnsafeBuffer();
+        this.claimedMessageBuffer = new UnsafeBuffer();
+    }
+
+    /**
+     * Recovers the tail and claim positions in the index file header, clearing entries claimed but not
+     * published by appenders of a previous run.
+     * @param regionAccessorSupplier - region accessor supplier of the files
+     */
+    public static void recover(final RegionAccessorSupplier regionAccessorSupplier) {
+        recover(regionAccessorSupplier, false);
+    }
+
+    /**
+     * Recovers the tail and claim positions in the index file header, clearing entries claimed but not
+     * published by appenders of a previous run.
+     * @param regionAccessorSupplier - region accessor supplier of the files
+     * @param checksums - true to checksum index entries if the index is empty, otherwise entries are checksummed
+     *                  if the index file header says so.
+     */
+    public static void recover(final RegionAccessorSupplier regionAccessorSupplier, final boolean checksums) {
+        IndexTailLocator.recover(regionAccessorSupplier.indexAccessor(), regionAccessorSupplier.messageAccessor(),
+                new UnsafeBuffer(), regionAccessorSupplier.indexHeader(), checksums);
+    }
+
+    @Override
+    public void accept(final int source, final long sourceSeq, final long eventTimeNanos, final DirectBuffer buffer, final int offset, final int length) {
+        checksumLength = indexHeader.checksums() ? EntryChecksums.LENGTH : 0;
+        if (length + checksumLength > regionSize) {
+            claimedMessagePosition = claimMessage(length + checksumLength);
+            claimedMessageLength = length + checksumLength;
+            MessageSpans.write(regionAccessorSupplier.messageAccessor(), mappedMessageBuffer, claimedMessagePosition,
+                    buffer, offset, length);
+            if (checksumLength > 0) {
+                checksumBuffer.putInt(0, EntryChecksums.checksum(buffer, offset, length, source, sourceSeq, eventTimeNanos),
+                        ByteOrder.LITTLE_ENDIAN);
+                MessageSpans.write(regionAccessorSupplier.messageAccessor(), mappedMessageBuffer,
+                        claimedMessagePosition + length, checksumBuffer, 0, checksumLength);
+            }
+            spanning = false;
+            publish(source, sourceSeq, eventTimeNanos, claimedMessageLength);
+        } else {
+            final MutableDirectBuffer claimedBuffer = claim(length);
+            buffer.getBytes(offset, claimedBuffer, 0, length);
+            commit(source, sourceSeq, eventTimeNanos, length);
+        }
+    }
+
+    @Override
+    public MutableDirectBuffer claim(final int length) {
+        checksumLength = indexHeader.checksums() ? EntryChecksums.LENGTH : 0;
+        final int claimLength = length + checksumLength;
+        claimedMessagePosition = claimMessage(claimLength);
+        claimedMessageLength = claimLength;
+        spanning = false;
+        if (claimLength > regionSize) {
+            wrapSpanningMessage(claimLength, 0);
+        } else {
+            wrapMessage(claimedMessagePosition, claimLength);
+        }
+        claimed = true;
+        return claimedMessageBuffer;
+    }
+
+    @Override
+    public MutableDirectBuffer extendClaim(final int minLength, final int encodedLength) {
+        if (!claimed) {
+            throw new IllegalStateException("No message has been claimed");
+        }
+        final int claimedLength = claimedMessageLength;
+        final int length = minLength + checksumLength;
+        if (claimedLength < length) {
+            final long claimedEnd = claimedMessagePosition + claimedLength;
+            if (spanning || length > regionSize) {
+                //the message is written to the claimed space on commit, so the claim can move without relocation
+                wrapSpanningMessage(length, encodedLength);
+                if (!indexHeader.compareAndSetMessageClaimPosition(claimedEnd, claimedMessagePosition + length)) {
+                    claimedMessagePosition = claimMessage(length);
+                }
+                claimedMessageLength = length;
+            } else if (claimedMessagePosition / regionSize == (claimedMessagePosition + length - 1) / regionSize &&
+                    indexHeader.compareAndSetMessageClaimPosition(claimedEnd, claimedMessagePosition + length)) {
+                wrapMessage(claimedMessagePosition, length);
+                claimedMessageLength = length;
+            } else {
+                relocationBuffer.putBytes(0, claimedMessageBuffer, 0, encodedLength);
+                final int newLength = Math.max(length, Math.min(regionSize, claimedLength * 2));
+                claimedMessagePosition = claimMessage(newLength);
+                wrapMessage(claimedMessagePosition, newLength);
+                claimedMessageLength = newLength;
+                claimedMessageBuffer.putBytes(0, relocationBuffer, 0, encodedLength);
+            }
+        }
+        return claimedMessageBuffer;
+    }
+
+    @Override
+    public void commit(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+        if (!claimed) {
+            throw new IllegalStateException("No message has been claimed");
+        }
+        final int messageLength = checksumLength > 0 ? EntryChecksums.append(spanning ? spanningBuffer : mappedMessageBuffer,
+                length, source, sourceSeq, eventTimeNanos) : length;
+        if (spanning) {
+            MessageSpans.write(regionAccessorSupplier.messageAccessor(), mappedMessageBuffer, claimedMessagePosition,
+                    spanningBuffer, 0, messageLength);
+            spanning = false;
+        }
+        publish(source, sourceSeq, eventTimeNanos, messageLength);
+    }
+
+    private void publish(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+        claimed = false;
+        //give back unused claimed space if no other message has been claimed since
+        indexHeader.compareAndSetMessageClaimPosition(claimedMessagePosition + claimedMessageLength,
+                claimedMessagePosition + length);
+
+        final long indexPosition = indexHeader.claimIndex(INDEX_LENGTH);
+        if (regionAccessorSupplier.indexAccessor().wrap(indexPosition, mappedIndexBuffer)) {
+            indexEncoder.wrap(mappedIndexBuffer, INDEX_OFFSET)
+                    .position(claimedMessagePosition)
+                    .source(source)
+                    .sourceSeq(sourceSeq)
+                    .eventTimeNanos(eventTimeNanos);
+
+            mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, length);
+        } else {
+            throw new IllegalStateException("Failed to wrap index buffer for position " + indexPosition);
+        }
+        advanceTailPosition();
+    }
+
+    private long claimMessage(final int length) {
+        while (true) {
+            final long messageClaimPosition = indexHeader.messageClaimPosition();
+            final int regionRemaining = (int) (regionSize - messageClaimPosition % regionSize);
+            final long messagePosition = regionRemaining < length && length <= regionSize ?
+                    messageClaimPosition + regionRemaining : messageClaimPosition;
+            if (indexHeader.compareAndSetMessageClaimPosition(messageClaimPosition, messagePosition + length)) {
+                return messagePosition;
+            }
+        }
+    }
+
+    private void wrapMessage(final long messagePosition, final int length) {
+        if (regionAccessorSupplier.messageAccessor().wrap(messagePosition, mappedMessageBuffer)) {
+            //space for the checksum following the message is excluded from the claimed buffer
+            claimedMessageBuffer.wrap(mappedMessageBuffer, 0, length - checksumLength);
+        } else {
+            throw new IllegalStateException("Failed to wrap body buffer for position " + messagePosition);
+        }
+    }
+
+    /**
+     * Wraps the claimed buffer around the heap buffer of a message spanning regions, keeping the encoded bytes.
+     * @param length - minimum length of the message
+     * @param encodedLength - number of bytes already encoded
+     */
+    private void wrapSpanningMessage(final int length, final int encodedLength) {
+        if (!spanning) {
+            spanningBuffer.putBytes(0, claimedMessageBuffer, 0, encodedLength);
+            spanning = true;
+        }
+        spanningBuffer.checkLimit(length);
+        claimedMessageBuffer.wrap(spanningBuffer.byteArray(), 0, spanningBuffer.capacity() - checksumLength);
+    }
+
+    /**
+     * Advances the tail position over the published entries, including entries published by other appenders
+     * that could not advance the tail as a preceding entry had not been published yet.
+     */
+    private void advanceTailPosition() {
+        long tailPosition = indexHeader.tailPosition();
+        while (tailPosition < indexHeader.indexClaimPosition() &&
+                IndexTailLocator.messageLength(regionAccessorSupplier.indexAccessor(), mappedIndexBuffer, tailPosition) > 0) {
+            indexHeader.compareAndSetTailPosition(tailPosition, tailPosition + INDEX_LENGTH);
+            tailPosition = indexHeader.tailPosition();
+        }
+    }
+
+    @Override
+    public void close() {
+        regionAccessorSupplier.close();
+    }
+}
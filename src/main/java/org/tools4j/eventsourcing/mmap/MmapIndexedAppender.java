@@ -24,12 +24,14 @@
 package org.tools4j.eventsourcing.mmap;
 
 import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
-import org.tools4j.eventsourcing.api.IndexedMessageConsumer;
-import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.eventsourcing.api.IndexedClaimingAppender;
 import org.tools4j.eventsourcing.sbe.IndexEncoder;
 
 import java.io.Closeable;
+import java.nio.ByteOrder;
 import java.util.Objects;
 
 /**
@@ -38,10 +40,17 @@ import java.util.Objects;
  * by having two random access lookups:
  *  - first random access lookup of index and position/length of message located in another memory-mapped-file
  *  - second random access lookup of the message located at position/length in another memory-mapped-file
- *  Appendable message is represented as a buffer at offset with length.
+ *  Appendable message is represented as a buffer at offset with length, or alternatively it can be claimed and
+ *  encoded directly into the mapped message region and then committed, avoiding an intermediate copy.
+ *  A claim that does not fit into the remainder of the current region is moved to the start of the next region.
+ *  A message longer than the region size is encoded into a heap buffer and on commit written across consecutive
+ *  regions, see {@link MessageSpans}.
  *  Length of a message is a first field in the index record which has a volatile semantic for thread synchronisation.
+ *  Tail position of the index is recorded in the index file header after each append, so that on start the appender
+ *  resumes from the recorded tail rather than walking all index entries from the beginning of the file.
+ *  If the index entries are checksummed, the checksum is appended to the message on commit, see {@link EntryChecksums}.
  */
-public final class MmapIndexedAppender implements IndexedMessageConsumer, Closeable {
+public final class MmapIndexedAppender implements IndexedClaimingAppender, Closeable {
     private static final long NOT_INITIALISED = -1;
     private static final int LENGTH_OFFSET = 0;
     private static final int LENGTH_LENGTH = 4;
@@ -52,52 +61,195 @@ public final class MmapIndexedAppender implements IndexedMessageConsumer, Closea
 
     private final UnsafeBuffer mappedIndexBuffer;
     private final UnsafeBuffer mappedMessageBuffer;
+    private final UnsafeBuffer claimedMessageBuffer = new UnsafeBuffer();
+    private final IndexFileHeader indexHeader;
 
     private final IndexEncoder indexEncoder = new IndexEncoder();
-    private final IndexDecoder indexDecoder = new IndexDecoder();
+    private final MutableDirectBuffer relocationBuffer = new ExpandableArrayBuffer();
+    private final ExpandableArrayBuffer spanningBuffer = new ExpandableArrayBuffer();
+    private final UnsafeBuffer spanningRegionBuffer = new UnsafeBuffer();
+    private final UnsafeBuffer checksumBuffer = new UnsafeBuffer(new byte[EntryChecksums.LENGTH]);
+    private final int regionSize;
+    private final boolean checksums;
 
     private long currentIndexPosition = NOT_INITIALISED;
     private long currentMessagePosition = 0;
+    private boolean claimed;
+    private boolean spanning;
+    private int checksumLength;
 
     public MmapIndexedAppender(final RegionAccessorSupplier regionAccessorSupplier) {
+        this(regionAccessorSupplier, false);
+    }
+
+    /**
+     * @param regionAccessorSupplier - region accessor supplier of the files
+     * @param checksums - true to checksum index entries if the index is empty, otherwise entries are checksummed
+     *                  if the index file header says so.
+     */
+    public MmapIndexedAppender(final RegionAccessorSupplier regionAccessorSupplier, final boolean checksums) {
         this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
+        this.checksums = checksums;
 
         this.mappedIndexBuffer = new UnsafeBuffer();
         this.mappedMessageBuffer = new UnsafeBuffer();
+        this.indexHeader = regionAccessorSupplier.indexHeader();
+        this.regionSize = regionAccessorSupplier.messageAccessor().size();
     }
 
     @Override
     public void accept(final int source, final long sourceSeq, final long eventTimeNanos, final DirectBuffer buffer, final int offset, final int length) {
         advanceIndexToLastAppendPosition();
+        if (length + checksumLength > regionSize) {
+            MessageSpans.write(regionAccessorSupplier.messageAccessor(), spanningRegionBuffer, currentMessagePosition,
+                    buffer, offset, length);
+            if (checksumLength > 0) {
+                checksumBuffer.putInt(0, EntryChecksums.checksum(buffer, offset, length, source, sourceSeq, eventTimeNanos),
+                        ByteOrder.LITTLE_ENDIAN);
+                MessageSpans.write(regionAccessorSupplier.messageAccessor(), spanningRegionBuffer,
+                        currentMessagePosition + length, checksumBuffer, 0, checksumLength);
+            }
+            spanning = false;
+            publish(source, sourceSeq, eventTimeNanos, length + checksumLength);
+        } else {
+            final MutableDirectBuffer claimedBuffer = claim(length);
+            buffer.getBytes(offset, claimedBuffer, 0, length);
+            commit(source, sourceSeq, eventTimeNanos, length);
+        }
+    }
 
-        if (regionAccessorSupplier.messageAccessor().wrap(currentMessagePosition, mappedMessageBuffer)) {
-            if (regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
+    @Override
+    public MutableDirectBuffer claim(final int length) {
+        advanceIndexToLastAppendPosition();
+        spanning = false;
+        final int claimLength = length + checksumLength;
+        if (claimLength > regionSize) {
+            wrapSpanningMessage(claimLength, 0);
+        } else {
+            wrapMessage(claimLength);
+        }
+        claimed = true;
+        return claimedBuffer();
+    }
 
-                if (mappedMessageBuffer.capacity() < length) {
-                    currentMessagePosition += mappedMessageBuffer.capacity();
-                    if (!regionAccessorSupplier.messageAccessor().wrap(currentMessagePosition, mappedMessageBuffer)) {
-                        throw new IllegalStateException("Failed to wrap message buffer for position " + currentMessagePosition);
-                    }
-                }
-                buffer.getBytes(offset, mappedMessageBuffer, 0, length);
+    @Override
+    public MutableDirectBuffer extendClaim(final int length, final int encodedLength) {
+        if (!claimed) {
+            throw new IllegalStateException("No message has been claimed");
+        }
+        final int claimLength = length + checksumLength;
+        if (mappedMessageBuffer.capacity() < claimLength) {
+            if (spanning || claimLength > regionSize) {
+                wrapSpanningMessage(claimLength, encodedLength);
+                return claimedBuffer();
+            }
+            relocationBuffer.putBytes(0, mappedMessageBuffer, 0, encodedLength);
+            currentMessagePosition += mappedMessageBuffer.capacity();
+            wrapMessage(claimLength);
+            mappedMessageBuffer.putBytes(0, relocationBuffer, 0, encodedLength);
+        }
+        return claimedBuffer();
+    }
 
-                indexEncoder.wrap(mappedIndexBuffer, INDEX_OFFSET)
-                        .position(currentMessagePosition)
-                        .source(source)
-                        .sourceSeq(sourceSeq)
-                        .eventTimeNanos(eventTimeNanos);
+    /**
+     * @return the mapped message buffer, or if index entries are checksummed, the mapped message buffer
+     *         excluding space for the checksum following the message.
+     */
+    private MutableDirectBuffer claimedBuffer() {
+        if (checksumLength == 0) {
+            return mappedMessageBuffer;
+        }
+        claimedMessageBuffer.wrap(mappedMessageBuffer, 0, mappedMessageBuffer.capacity() - checksumLength);
+        return claimedMessageBuffer;
+    }
 
-                mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, length);
+    @Override
+    public void commit(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+        if (!claimed) {
+            throw new IllegalStateException("No message has been claimed");
+        }
+        final int messageLength = checksumLength > 0 ?
+                EntryChecksums.append(mappedMessageBuffer, length, source, sourceSeq, eventTimeNanos) : length;
+        if (spanning) {
+            MessageSpans.write(regionAccessorSupplier.messageAccessor(), spanningRegionBuffer, currentMessagePosition,
+                    spanningBuffer, 0, messageLength);
+            spanning = false;
+        }
+        publish(source, sourceSeq, eventTimeNanos, messageLength);
+    }
+
+    private void publish(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+        if (regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
+            indexEncoder.wrap(mappedIndexBuffer, INDEX_OFFSET)
+                    .position(currentMessagePosition)
+                    .source(source)
+                    .sourceSeq(sourceSeq)
+                    .eventTimeNanos(eventTimeNanos);
+
+            mappedIndexBuffer.putIntOrdered(LENGTH_OFFSET, length);
+
+            claimed = false;
+            advanceIndexToNextAppendPosition(length);
+            indexHeader.tailPosition(currentIndexPosition);
+        } else {
+            throw new IllegalStateException("Failed to wrap index buffer for position " + currentIndexPosition);
+        }
+    }
 
-                advanceIndexToNextAppendPosition(length);
-            } else {
-                throw new IllegalStateException("Failed to wrap index buffer for position " + currentIndexPosition);
+    private void wrapMessage(final int length) {
+        if (regionAccessorSupplier.messageAccessor().wrap(currentMessagePosition, mappedMessageBuffer)) {
+            if (mappedMessageBuffer.capacity() < length) {
+                currentMessagePosition += mappedMessageBuffer.capacity();
+                if (!regionAccessorSupplier.messageAccessor().wrap(currentMessagePosition, mappedMessageBuffer)) {
+                    throw new IllegalStateException("Failed to wrap message buffer for position " + currentMessagePosition);
+                }
+                if (mappedMessageBuffer.capacity() < length) {
+                    throw new IllegalStateException("Message length " + length + " exceeds region size " + mappedMessageBuffer.capacity());
+                }
             }
         } else {
             throw new IllegalStateException("Failed to wrap body buffer for position " + currentMessagePosition);
         }
     }
 
+    /**
+     * Wraps the claimed buffer around the heap buffer of a message spanning regions, keeping the encoded bytes.
+     * The message is written to the message file at the current message position on commit.
+     * @param length - minimum length of the message
+     * @param encodedLength - number of bytes already encoded
+     */
+    private void wrapSpanningMessage(final int length, final int encodedLength) {
+        if (!spanning) {
+            spanningBuffer.putBytes(0, mappedMessageBuffer, 0, encodedLength);
+            spanning = true;
+        }
+        spanningBuffer.checkLimit(length);
+        mappedMessageBuffer.wrap(spanningBuffer.byteArray(), 0, spanningBuffer.capacity());
+    }
+
+    /**
+     * @return position in the index file of the next index entry to be appended
+     */
+    long indexPosition() {
+        advanceIndexToLastAppendPosition();
+        return currentIndexPosition;
+    }
+
+    /**
+     * @return position in the message file of the next message to be appended
+     */
+    long messagePosition() {
+        advanceIndexToLastAppendPosition();
+        return currentMessagePosition;
+    }
+
+    /**
+     * Seals the files as a completed segment of a segmented queue, no more messages are to be appended.
+     */
+    void seal() {
+        indexHeader.endPosition(indexPosition());
+    }
+
     private void advanceIndexToNextAppendPosition(int messageLength) {
         currentIndexPosition += INDEX_LENGTH;
         currentMessagePosition += messageLength;
@@ -105,19 +257,10 @@ public final class MmapIndexedAppender implements IndexedMessageConsumer, Closea
 
     private void advanceIndexToLastAppendPosition() {
         if (currentIndexPosition == NOT_INITIALISED) {
-            currentIndexPosition = 0;
-            int currentMessageLength;
-            do {
-                if (regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
-                    if ((currentMessageLength = mappedIndexBuffer.getInt(LENGTH_OFFSET)) > 0) {
-                        indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
-                        currentMessagePosition = indexDecoder.position();
-                        advanceIndexToNextAppendPosition(currentMessageLength);
-                    }
-                } else {
-                    throw new IllegalStateException("Failed to wrap index buffer to position " + currentIndexPosition);
-                }
-            } while (currentMessageLength != 0);
+            currentIndexPosition = IndexTailLocator.recover(regionAccessorSupplier.indexAccessor(),
+                    regionAccessorSupplier.messageAccessor(), mappedIndexBuffer, indexHeader, checksums);
+            currentMessagePosition = indexHeader.messageClaimPosition();
+            checksumLength = indexHeader.checksums() ? EntryChecksums.LENGTH : 0;
         }
     }
 
@@ -23,6 +23,7 @@
  */
 package org.tools4j.eventsourcing.mmap;
 
+import org.agrona.ExpandableArrayBuffer;
 import org.agrona.concurrent.UnsafeBuffer;
 import org.tools4j.eventsourcing.api.BufferPoller;
 import org.tools4j.eventsourcing.api.MessageConsumer;
@@ -31,25 +32,36 @@ import org.tools4j.eventsourcing.sbe.IndexDecoder;
 
 import java.util.Objects;
 
+/**
+ * Poller of the index and message files of a queue. If the options say so, polling pauses at the durable position
+ * recorded in the index file header by the {@link DurableFlusher} of the queue.
+ * Sources of a checkpoint entry are passed to the checkpoint consumer of the options between the processing start
+ * and complete callbacks of the entry.
+ */
 public class MmapIndexedPoller implements Poller {
     private static final int LENGTH_OFFSET = 0;
     private static final int LENGTH_LENGTH = 4;
     private static final int INDEX_OFFSET = LENGTH_OFFSET + LENGTH_LENGTH;
     private static final int INDEX_LENGTH = LENGTH_LENGTH + IndexDecoder.ENCODED_LENGTH;
+    private static final long FIRST_INDEX_POSITION = IndexFileHeader.LENGTH;
+    private static final int PAUSED = -1;
+    static final long NOT_FOUND = -1;
 
     private final RegionAccessorSupplier regionAccessorSupplier;
 
     private final UnsafeBuffer mappedIndexBuffer;
     private final UnsafeBuffer mappedMessageBuffer;
+    private final IndexFileHeader indexHeader;
 
     private final Options options;
     private final BufferPoller bufferPoller;
-
+    private final boolean pauseAtDurableWatermark;
 
     private final IndexDecoder indexDecoder = new IndexDecoder();
+    private final ExpandableArrayBuffer spanningBuffer = new ExpandableArrayBuffer();
 
     private long currentIndex = 0;
-    private long currentIndexPosition = 0;
+    private long currentIndexPosition = FIRST_INDEX_POSITION;
 
     public MmapIndexedPoller(final RegionAccessorSupplier regionAccessorSupplier,
                              final Options options,
@@ -57,18 +69,67 @@ public class MmapIndexedPoller implements Poller {
         this.regionAccessorSupplier = Objects.requireNonNull(regionAccessorSupplier);
         this.options = Objects.requireNonNull(options);
         this.bufferPoller = Objects.requireNonNull(bufferPoller);
+        this.pauseAtDurableWatermark = options.pauseAtDurableWatermark();
 
         this.mappedIndexBuffer = new UnsafeBuffer();
         this.mappedMessageBuffer = new UnsafeBuffer();
+        this.indexHeader = regionAccessorSupplier.indexHeader();
+        if (pauseAtDurableWatermark && !indexHeader.durable()) {
+            regionAccessorSupplier.close();
+            throw new IllegalArgumentException("Queue without durability policy does not support pausing at durable watermark");
+        }
     }
 
     @Override
     public int poll(final MessageConsumer processingHandler) {
-        wrapIndex();
+        wrapIndex(currentIndexPosition);
 
         final int messageLength = currentMessageLength();
         if (messageLength <= 0) return 0;
+        if (pauseAtDurableWatermark && currentIndexPosition >= indexHeader.durablePosition()) return 0;
+
+        final int done = pollEntry(messageLength, processingHandler);
+        return done == PAUSED ? 0 : done;
+    }
+
+    /**
+     * Reads the tail position published in the index header once and processes up to maxEntries entries below it,
+     * reading subsequent index entries within the same mapped region without re-wrapping the index buffer.
+     * If the header does not show any published entries yet, falls back to polling a single entry.
+     * When pausing at the durable watermark, entries are processed up to the durable position instead.
+     */
+    @Override
+    public int poll(final MessageConsumer processingHandler, final int maxEntries) {
+        final long limitPosition = pauseAtDurableWatermark ?
+                Math.min(indexHeader.tailPosition(), indexHeader.durablePosition()) : indexHeader.tailPosition();
+        final long publishedEntries = (limitPosition - currentIndexPosition) / INDEX_LENGTH;
+        if (publishedEntries <= 0) {
+            return poll(processingHandler);
+        }
+
+        final int entries = (int) Math.min(maxEntries, publishedEntries);
+        int done = 0;
+        int entryOffset = 0;
+        wrapIndexRegion(currentIndexPosition);
+        for (int entry = 0; entry < entries; entry++) {
+            if (entryOffset + INDEX_LENGTH > mappedIndexBuffer.capacity()) {
+                wrapIndexRegion(currentIndexPosition);
+                entryOffset = 0;
+            }
+            final int messageLength = mappedIndexBuffer.getInt(entryOffset + LENGTH_OFFSET);
+            if (messageLength <= 0) break;
+
+            indexDecoder.wrap(mappedIndexBuffer, entryOffset + INDEX_OFFSET);
+            final int entryDone = pollEntry(messageLength, processingHandler);
+            if (entryDone == PAUSED) break;
+
+            done += entryDone;
+            entryOffset += INDEX_LENGTH;
+        }
+        return done;
+    }
 
+    private int pollEntry(final int messageLength, final MessageConsumer processingHandler) {
         final long messagePosition = indexDecoder.position();
         final int source = indexDecoder.source();
         final long sourceSeq = indexDecoder.sourceSeq();
@@ -83,10 +144,128 @@ public class MmapIndexedPoller implements Poller {
             advanceIndexToNextAppendPosition();
             return done;
         } else {
-            return 0;
+            return PAUSED;
         }
     }
 
+    @Override
+    public boolean seek(final long index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid index " + index);
+        }
+        if (index > tailIndex()) {
+            return false;
+        }
+        moveTo(index);
+        return true;
+    }
+
+    @Override
+    public long seekToSourceSeq(final int source, final long sourceSeq) {
+        final long tailIndex = tailIndex();
+        final long foundIndex = firstIndexOf(source, sourceSeqBoundary(source, sourceSeq, tailIndex), tailIndex);
+        final long index = foundIndex == NOT_FOUND ? tailIndex : foundIndex;
+        moveTo(index);
+        return index;
+    }
+
+    /**
+     * Binary-searches the entries below the given tail index, assuming that the sourceSeq of entries of the source
+     * are increasing. Each probe scans forward to the next entry of the source, but not beyond the upper bound of
+     * the search, hence the cost is logarithmic in the number of entries if entries of the source are spread over
+     * the queue, and linear in the number of entries if the source has few or no entries.
+     * @param source - source of the entry
+     * @param sourceSeq - sequence in the source
+     * @param tailIndex - index following the last entry to search
+     * @return index following the last entry of the source with sourceSeq less than the given sourceSeq,
+     *         or 0 if there is no such entry.
+     */
+    long sourceSeqBoundary(final int source, final long sourceSeq, final long tailIndex) {
+        long low = 0;
+        long high = tailIndex;
+        while (low < high) {
+            final long middle = (low + high) >>> 1;
+            final long nextIndex = firstIndexOf(source, middle, high);
+            if (nextIndex == NOT_FOUND || indexDecoder.sourceSeq() >= sourceSeq) {
+                high = middle;
+            } else {
+                low = nextIndex + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Searches entries forward from the given index.
+     * @param source - source of the entry
+     * @param fromIndex - index of the first entry to search
+     * @param tailIndex - index following the last entry to search
+     * @return index of the first entry of the source, or NOT_FOUND if there is no such entry. The index decoder
+     *         is left wrapped at the found entry.
+     */
+    long firstIndexOf(final int source, final long fromIndex, final long tailIndex) {
+        for (long index = fromIndex; index < tailIndex; index++) {
+            wrapIndex(indexPosition(index));
+            if (indexDecoder.source() == source) {
+                return index;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public long seekToEventTime(final long timeNanos) {
+        long low = 0;
+        long high = tailIndex();
+        while (low < high) {
+            final long middle = (low + high) >>> 1;
+            wrapIndex(indexPosition(middle));
+            if (indexDecoder.eventTimeNanos() < timeNanos) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        moveTo(low);
+        return low;
+    }
+
+    /**
+     * @return number of entries below the tail position published in the index header after the poller position
+     */
+    @Override
+    public long backlog() {
+        final long tailPosition = indexHeader.tailPosition();
+        return tailPosition > currentIndexPosition ? (tailPosition - currentIndexPosition) / INDEX_LENGTH : 0;
+    }
+
+    /**
+     * @return true if the files are a sealed segment of a segmented queue and all entries of the segment have been
+     *         polled or skipped.
+     */
+    boolean endOfSegment() {
+        final long endPosition = indexHeader.endPosition();
+        return endPosition > 0 && currentIndexPosition >= endPosition;
+    }
+
+    /**
+     * @return index following the last published entry
+     */
+    long tailIndex() {
+        final long tailPosition = IndexTailLocator.locate(regionAccessorSupplier.indexAccessor(), mappedIndexBuffer,
+                indexHeader.tailPosition());
+        return (tailPosition - FIRST_INDEX_POSITION) / INDEX_LENGTH;
+    }
+
+    private static long indexPosition(final long index) {
+        return FIRST_INDEX_POSITION + index * INDEX_LENGTH;
+    }
+
+    private void moveTo(final long index) {
+        currentIndex = index;
+        currentIndexPosition = indexPosition(index);
+    }
+
     private int currentMessageLength() {
         return mappedIndexBuffer.getIntVolatile(LENGTH_OFFSET);
     }
@@ -97,18 +276,31 @@ public class MmapIndexedPoller implements Poller {
             throw new IllegalStateException("Failed to wrap message buffer to position " + messagePosition);
         }
         options.onProcessingStart().accept(currentIndex, source, sourceSeq, eventTimeNanos);
-        final int done = bufferPoller.poll(mappedMessageBuffer, 0, messageLength, processingHandler);
+        final int payloadLength = indexHeader.checksums() ? messageLength - EntryChecksums.LENGTH : messageLength;
+        final int done;
+        if (mappedMessageBuffer.capacity() < messageLength) {
+            //message longer than region size spans consecutive regions
+            MessageSpans.read(regionAccessorSupplier.messageAccessor(), mappedMessageBuffer, messagePosition,
+                    spanningBuffer, payloadLength);
+            done = bufferPoller.poll(spanningBuffer, 0, payloadLength, processingHandler, options.onCheckpoint());
+        } else {
+            done = bufferPoller.poll(mappedMessageBuffer, 0, payloadLength, processingHandler, options.onCheckpoint());
+        }
         options.onProcessingComplete().accept(currentIndex, source, sourceSeq, eventTimeNanos);
         return done;
     }
 
-    private void wrapIndex() {
-        if (!regionAccessorSupplier.indexAccessor().wrap(currentIndexPosition, mappedIndexBuffer)) {
-            throw new IllegalStateException("Failed to wrap index buffer to position " + currentIndexPosition);
-        }
+    private void wrapIndex(final long indexPosition) {
+        wrapIndexRegion(indexPosition);
         indexDecoder.wrap(mappedIndexBuffer, INDEX_OFFSET);
     }
 
+    private void wrapIndexRegion(final long indexPosition) {
+        if (!regionAccessorSupplier.indexAccessor().wrap(indexPosition, mappedIndexBuffer)) {
+            throw new IllegalStateException("Failed to wrap index buffer to position " + indexPosition);
+        }
+    }
+
     private void advanceIndexToNextAppendPosition() {
         currentIndex++;
         currentIndexPosition += INDEX_LENGTH;
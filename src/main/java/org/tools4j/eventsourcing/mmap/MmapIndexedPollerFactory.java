@@ -25,6 +25,7 @@ package org.tools4j.eventsourcing.mmap;
 
 import org.tools4j.eventsourcing.api.IndexedPollerFactory;
 import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.common.CompressionDictionary;
 import org.tools4j.eventsourcing.common.PayloadBufferPoller;
 import org.tools4j.mmap.region.api.RegionRingFactory;
 
@@ -38,6 +39,7 @@ public class MmapIndexedPollerFactory implements IndexedPollerFactory {
     private final int regionSize;
     private final int regionRingSize;
     private final int regionsToMapAhead;
+    private final CompressionDictionary dictionary;
 
     public MmapIndexedPollerFactory(final String directory,
                                     final String filePrefix,
@@ -51,6 +53,7 @@ public class MmapIndexedPollerFactory implements IndexedPollerFactory {
         this.regionSize = regionSize;
         this.regionRingSize = regionRingSize;
         this.regionsToMapAhead = regionsToMapAhead;
+        this.dictionary = CompressionDictionary.load(directory, filePrefix);
     }
 
     @Override
@@ -64,6 +67,6 @@ public class MmapIndexedPollerFactory implements IndexedPollerFactory {
                         regionRingSize,
                         regionsToMapAhead),
                 options,
-                new PayloadBufferPoller());
+                new PayloadBufferPoller(dictionary));
     }
 }
@@ -23,22 +23,49 @@
  */
 package org.tools4j.eventsourcing.mmap;
 
-import org.agrona.concurrent.UnsafeBuffer;
 import org.tools4j.eventsourcing.api.IndexedMessageConsumer;
 import org.tools4j.eventsourcing.api.IndexedPollerFactory;
 import org.tools4j.eventsourcing.api.IndexedQueue;
 import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.common.CompressingAppender;
+import org.tools4j.eventsourcing.common.CompressionDictionary;
+import org.tools4j.eventsourcing.common.Doorbell;
 import org.tools4j.eventsourcing.common.SinglePayloadAppender;
 import org.tools4j.mmap.region.api.RegionRingFactory;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Indexed queue appending to memory-mapped files. With a single producer the appender is to be used by one thread,
+ * with multiple producers the appender can be used by up to the given number of threads concurrently, each thread
+ * being bound to own {@link MmapConcurrentIndexedAppender} on first append.
+ * The doorbell of the queue is rung after each append.
+ */
 public final class MmapIndexedQueue implements IndexedQueue {
     private final IndexedMessageConsumer appender;
     private final IndexedPollerFactory pollerFactory;
-    private final MmapIndexedAppender mmapIndexedAppender;
+    private final Runnable appenderCloser;
+    private final DurableFlusher durableFlusher;
+    private final IndexFileHeader indexHeader;
+    private final Doorbell doorbell;
 
+    public MmapIndexedQueue(final String directory,
+                            final String filePrefix,
+                            final boolean clearFiles,
+                            final RegionRingFactory regionRingFactory,
+                            final int regionSize,
+                            final int regionRingSize,
+                            final int regionsToMapAhead,
+                            final long maxFileSize) throws IOException {
+        this(directory, filePrefix, clearFiles, regionRingFactory, regionSize, regionRingSize, regionsToMapAhead,
+                maxFileSize, new Config());
+    }
+
+    /**
+     * Creates the queue with optional features of the config, see {@link Config}.
+     */
     public MmapIndexedQueue(final String directory,
                             final String filePrefix,
                             final boolean clearFiles,
@@ -47,21 +74,68 @@ public final class MmapIndexedQueue implements IndexedQueue {
                             final int regionRingSize,
                             final int regionsToMapAhead,
                             final long maxFileSize,
-                            final int encodingBufferSize) throws IOException {
-
-        this.mmapIndexedAppender = new MmapIndexedAppender(
-                RegionAccessorSupplier.forReadWrite(
-                        directory,
-                        filePrefix,
-                        clearFiles,
-                        regionRingFactory,
-                        regionSize,
-                        regionRingSize,
-                        regionsToMapAhead,
-                        maxFileSize));
-
-        this.appender = new SinglePayloadAppender(this.mmapIndexedAppender,
-                new UnsafeBuffer(ByteBuffer.allocateDirect(encodingBufferSize)));
+                            final Config config) throws IOException {
+        if (config.producers < 1) {
+            throw new IllegalArgumentException("Number of producers must be positive: " + config.producers);
+        }
+
+        final RegionAccessorSupplier flushedFiles;
+        final IndexedMessageConsumer appender;
+        if (config.producers == 1) {
+            final RegionAccessorSupplier regionAccessorSupplier = RegionAccessorSupplier.forReadWrite(
+                    directory,
+                    filePrefix,
+                    clearFiles,
+                    regionRingFactory,
+                    regionSize,
+                    regionRingSize,
+                    regionsToMapAhead,
+                    maxFileSize);
+            final MmapIndexedAppender mmapIndexedAppender = new MmapIndexedAppender(regionAccessorSupplier, config.checksums);
+            flushedFiles = regionAccessorSupplier;
+
+            appender = new SinglePayloadAppender(config.compress
+                    ? new CompressingAppender(mmapIndexedAppender, CompressionDictionary.load(directory, filePrefix))
+                    : mmapIndexedAppender);
+            this.appenderCloser = mmapIndexedAppender::close;
+        } else {
+            final RegionAccessorSupplier[] regionAccessorSuppliers = RegionAccessorSupplier.forConcurrentReadWrite(
+                    directory,
+                    filePrefix,
+                    clearFiles,
+                    regionRingFactory,
+                    regionSize,
+                    regionRingSize,
+                    regionsToMapAhead,
+                    maxFileSize,
+                    config.producers);
+            flushedFiles = regionAccessorSuppliers[0];
+
+            final CompressionDictionary dictionary = config.compress ? CompressionDictionary.load(directory, filePrefix) : null;
+            final MmapConcurrentIndexedAppender[] concurrentAppenders = new MmapConcurrentIndexedAppender[config.producers];
+            final IndexedMessageConsumer[] producerAppenders = new IndexedMessageConsumer[config.producers];
+            for (int i = 0; i < config.producers; i++) {
+                concurrentAppenders[i] = new MmapConcurrentIndexedAppender(regionAccessorSuppliers[i]);
+                producerAppenders[i] = new SinglePayloadAppender(config.compress
+                        ? new CompressingAppender(concurrentAppenders[i], dictionary)
+                        : concurrentAppenders[i]);
+            }
+
+            appender = threadBound(producerAppenders,
+                    () -> MmapConcurrentIndexedAppender.recover(regionAccessorSuppliers[0], config.checksums));
+            this.appenderCloser = () -> {
+                for (final MmapConcurrentIndexedAppender concurrentAppender : concurrentAppenders) {
+                    concurrentAppender.close();
+                }
+            };
+        }
+
+        this.indexHeader = flushedFiles.indexHeader();
+        this.indexHeader.durable(!config.durability.isNone());
+        this.durableFlusher = config.durability.isNone() ? null :
+                new DurableFlusher(flushedFiles, config.durability, DurableFlusher.DEFAULT_IDLE_MILLIS);
+        this.doorbell = new Doorbell(indexHeader.doorbellState(config.producers > 1));
+        this.appender = ringing(appender, doorbell);
 
         this.pollerFactory = new MmapIndexedPollerFactory(
                 directory,
@@ -72,6 +146,44 @@ public final class MmapIndexedQueue implements IndexedQueue {
                 regionsToMapAhead);
     }
 
+    /**
+     * Binds each appending thread to own producer appender on first append.
+     * @param producerAppenders - producer appenders
+     * @param recovery - recovery of the queue tail to be run when the first thread is bound, before any appends.
+     * @return appender delegating to the producer appender bound to the current thread
+     */
+    private static IndexedMessageConsumer threadBound(final IndexedMessageConsumer[] producerAppenders,
+                                                      final Runnable recovery) {
+        final AtomicInteger boundAppenders = new AtomicInteger();
+        final ThreadLocal<IndexedMessageConsumer> threadAppender = ThreadLocal.withInitial(() -> {
+            synchronized (boundAppenders) {
+                if (boundAppenders.get() == 0) {
+                    recovery.run();
+                }
+                if (boundAppenders.get() == producerAppenders.length) {
+                    throw new IllegalStateException("Number of appending threads exceeds number of producers " + producerAppenders.length);
+                }
+                return producerAppenders[boundAppenders.getAndIncrement()];
+            }
+        });
+        return (source, sourceSeq, eventTimeNanos, buffer, offset, length) ->
+                threadAppender.get().accept(source, sourceSeq, eventTimeNanos, buffer, offset, length);
+    }
+
+    /**
+     * Rings the doorbell after each append, so that pollers parked by {@link org.tools4j.eventsourcing.common.ParkingIdleStrategy}
+     * are unparked.
+     * @param appender - appender of the queue
+     * @param doorbell - doorbell of the queue
+     * @return appender ringing the doorbell
+     */
+    static IndexedMessageConsumer ringing(final IndexedMessageConsumer appender, final Doorbell doorbell) {
+        return (source, sourceSeq, eventTimeNanos, buffer, offset, length) -> {
+            appender.accept(source, sourceSeq, eventTimeNanos, buffer, offset, length);
+            doorbell.ring();
+        };
+    }
+
     @Override
     public IndexedMessageConsumer appender() {
         return this.appender;
@@ -82,8 +194,74 @@ public final class MmapIndexedQueue implements IndexedQueue {
         return pollerFactory.createPoller(options);
     }
 
+    /**
+     * @return index following the last entry forced to the storage device, see {@link DurableFlusher}
+     */
+    public long durableIndex() {
+        return DurableFlusher.durableIndex(indexHeader);
+    }
+
+    /**
+     * @return doorbell rung after appends, its sequence is shared through the index file header
+     */
+    public Doorbell doorbell() {
+        return doorbell;
+    }
+
     @Override
     public void close() {
-        mmapIndexedAppender.close();
+        if (durableFlusher != null) {
+            durableFlusher.close();
+        }
+        appenderCloser.run();
+    }
+
+    /**
+     * Optional features of the queue, by default the queue has a single producer, does not compress messages, does
+     * not checksum index entries and has no durability policy.
+     */
+    public static final class Config {
+        private int producers = 1;
+        private boolean compress;
+        private boolean checksums;
+        private DurabilityPolicy durability = DurabilityPolicy.none();
+
+        /**
+         * @param producers - number of threads that can append concurrently, each thread being bound to own
+         *                   {@link MmapConcurrentIndexedAppender} on first append
+         * @return this config
+         */
+        public Config producers(final int producers) {
+            this.producers = producers;
+            return this;
+        }
+
+        /**
+         * @param compress - true to compress messages with the dictionary of the queue, see {@link CompressingAppender}
+         * @return this config
+         */
+        public Config compress(final boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        /**
+         * @param checksums - true to checksum index entries if the queue is empty, see
+         *                   {@link MmapIndexedAppender#MmapIndexedAppender(RegionAccessorSupplier, boolean)}
+         * @return this config
+         */
+        public Config checksums(final boolean checksums) {
+            this.checksums = checksums;
+            return this;
+        }
+
+        /**
+         * @param durability - durability policy, the files are flushed by a {@link DurableFlusher} unless it is none
+         * @return this config
+         */
+        public Config durability(final DurabilityPolicy durability) {
+            this.durability = Objects.requireNonNull(durability);
+            return this;
+        }
     }
 }
@@ -23,19 +23,44 @@
  */
 package org.tools4j.eventsourcing.mmap;
 
-import org.agrona.concurrent.UnsafeBuffer;
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
 import org.tools4j.eventsourcing.api.*;
+import org.tools4j.eventsourcing.common.CompressingAppender;
+import org.tools4j.eventsourcing.common.CompressionDictionary;
+import org.tools4j.eventsourcing.common.Doorbell;
 import org.tools4j.eventsourcing.common.MultiPayloadAppender;
 import org.tools4j.mmap.region.api.RegionRingFactory;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.Objects;
 
+/**
+ * Transactional queue of a single index file and message file. The doorbell of the queue is rung after each commit.
+ */
 public class MmapIndexedTransactionalQueue implements IndexedTransactionalQueue {
     private final Transaction appender;
     private final IndexedPollerFactory pollerFactory;
     private final MmapIndexedAppender mmapIndexedAppender;
+    private final DurableFlusher durableFlusher;
+    private final IndexFileHeader indexHeader;
+    private final Doorbell doorbell;
 
+    public MmapIndexedTransactionalQueue(final String directory,
+                                         final String filePrefix,
+                                         final boolean clearFiles,
+                                         final RegionRingFactory regionRingFactory,
+                                         final int regionSize,
+                                         final int regionRingSize,
+                                         final int regionsToMapAhead,
+                                         final long maxFileSize) throws IOException {
+        this(directory, filePrefix, clearFiles, regionRingFactory, regionSize, regionRingSize, regionsToMapAhead,
+                maxFileSize, new Config());
+    }
+
+    /**
+     * Creates the queue with optional features of the config, see {@link Config}.
+     */
     public MmapIndexedTransactionalQueue(final String directory,
                                          final String filePrefix,
                                          final boolean clearFiles,
@@ -44,21 +69,27 @@ public class MmapIndexedTransactionalQueue implements IndexedTransactionalQueue
                                          final int regionRingSize,
                                          final int regionsToMapAhead,
                                          final long maxFileSize,
-                                         final int encodingBufferSize) throws IOException {
-
-        this.mmapIndexedAppender = new MmapIndexedAppender(
-                RegionAccessorSupplier.forReadWrite(
-                        directory,
-                        filePrefix,
-                        clearFiles,
-                        regionRingFactory,
-                        regionSize,
-                        regionRingSize,
-                        regionsToMapAhead,
-                        maxFileSize));
-
-        this.appender = new MultiPayloadAppender(this.mmapIndexedAppender,
-                new UnsafeBuffer(ByteBuffer.allocateDirect(encodingBufferSize)));
+                                         final Config config) throws IOException {
+
+        final RegionAccessorSupplier regionAccessorSupplier = RegionAccessorSupplier.forReadWrite(
+                directory,
+                filePrefix,
+                clearFiles,
+                regionRingFactory,
+                regionSize,
+                regionRingSize,
+                regionsToMapAhead,
+                maxFileSize);
+        this.mmapIndexedAppender = new MmapIndexedAppender(regionAccessorSupplier, config.checksums);
+        this.indexHeader = regionAccessorSupplier.indexHeader();
+        this.indexHeader.durable(!config.durability.isNone());
+        this.durableFlusher = config.durability.isNone() ? null :
+                new DurableFlusher(regionAccessorSupplier, config.durability, DurableFlusher.DEFAULT_IDLE_MILLIS);
+
+        this.doorbell = new Doorbell(indexHeader.doorbellState(false));
+        this.appender = ringing(new MultiPayloadAppender(config.compress
+                ? new CompressingAppender(this.mmapIndexedAppender, CompressionDictionary.load(directory, filePrefix))
+                : this.mmapIndexedAppender), doorbell);
 
         this.pollerFactory = new MmapIndexedPollerFactory(
                 directory,
@@ -69,6 +100,44 @@ public class MmapIndexedTransactionalQueue implements IndexedTransactionalQueue
                 regionsToMapAhead);
     }
 
+    /**
+     * Rings the doorbell after each commit, so that pollers parked by {@link org.tools4j.eventsourcing.common.ParkingIdleStrategy}
+     * are unparked.
+     * @param transaction - appender of the queue
+     * @param doorbell - doorbell of the queue
+     * @return appender ringing the doorbell
+     */
+    static Transaction ringing(final Transaction transaction, final Doorbell doorbell) {
+        return new Transaction() {
+            @Override
+            public void init(final int source, final long sourceSeq, final long eventTimeNanos, final boolean allowEmpty) {
+                transaction.init(source, sourceSeq, eventTimeNanos, allowEmpty);
+            }
+
+            @Override
+            public void accept(final DirectBuffer buffer, final int offset, final int length) {
+                transaction.accept(buffer, offset, length);
+            }
+
+            @Override
+            public MutableDirectBuffer claim(final int length) {
+                return transaction.claim(length);
+            }
+
+            @Override
+            public void acceptNoop(final int source, final long sourceSeq) {
+                transaction.acceptNoop(source, sourceSeq);
+            }
+
+            @Override
+            public int commit() {
+                final int entries = transaction.commit();
+                doorbell.ring();
+                return entries;
+            }
+        };
+    }
+
     @Override
     public Transaction appender() {
         return this.appender;
@@ -79,8 +148,63 @@ public class MmapIndexedTransactionalQueue implements IndexedTransactionalQueue
         return pollerFactory.createPoller(options);
     }
 
+    /**
+     * @return index following the last transaction forced to the storage device, see {@link DurableFlusher}
+     */
+    public long durableIndex() {
+        return DurableFlusher.durableIndex(indexHeader);
+    }
+
+    /**
+     * @return doorbell rung after commits, its sequence is shared through the index file header
+     */
+    public Doorbell doorbell() {
+        return doorbell;
+    }
+
     @Override
     public void close() {
+        if (durableFlusher != null) {
+            durableFlusher.close();
+        }
         mmapIndexedAppender.close();
     }
+
+    /**
+     * Optional features of the queue, by default the queue does not compress transactions, does not checksum index
+     * entries and has no durability policy.
+     */
+    public static final class Config {
+        private boolean compress;
+        private boolean checksums;
+        private DurabilityPolicy durability = DurabilityPolicy.none();
+
+        /**
+         * @param compress - true to compress transactions with the dictionary of the queue, see {@link CompressingAppender}
+         * @return this config
+         */
+        public Config compress(final boolean compress) {
+            this.compress = compress;
+            return this;
+        }
+
+        /**
+         * @param checksums - true to checksum index entries if the queue is empty, see
+         *                   {@link MmapIndexedAppender#MmapIndexedAppender(RegionAccessorSupplier, boolean)}
+         * @return this config
+         */
+        public Config checksums(final boolean checksums) {
+            this.checksums = checksums;
+            return this;
+        }
+
+        /**
+         * @param durability - durability policy, the files are flushed by a {@link DurableFlusher} unless it is none
+         * @return this config
+         */
+        public Config durability(final DurabilityPolicy durability) {
+            this.durability = Objects.requireNonNull(durability);
+            return this;
+        }
+    }
 }
@@ -30,6 +30,7 @@ import org.tools4j.eventsourcing.api.Poller;
 import org.tools4j.mmap.region.api.RegionRingFactory;
 
 import java.io.IOException;
+import java.util.Objects;
 
 public final class MmapReadOnlyIndexedQueue implements IndexedQueue {
     private final IndexedMessageConsumer appender;
@@ -41,18 +42,21 @@ public final class MmapReadOnlyIndexedQueue implements IndexedQueue {
                                     final int regionSize,
                                     final int regionRingSize,
                                     final int regionsToMapAhead) throws IOException {
-
-        this.appender = (source, sourceSeq, eventTimeNanos, buffer, offset, length) -> {
-            throw new UnsupportedOperationException("append operation is not supported");
-        };
-
-        this.pollerFactory = new MmapIndexedPollerFactory(
+        this(new MmapIndexedPollerFactory(
                 directory,
                 filePrefix,
                 regionRingFactory,
                 regionSize,
                 regionRingSize,
-                regionsToMapAhead);
+                regionsToMapAhead));
+    }
+
+    public MmapReadOnlyIndexedQueue(final IndexedPollerFactory pollerFactory) {
+        this.appender = (source, sourceSeq, eventTimeNanos, buffer, offset, length) -> {
+            throw new UnsupportedOperationException("append operation is not supported");
+        };
+
+        this.pollerFactory = Objects.requireNonNull(pollerFactory);
     }
 
     @Override
@@ -0,0 +1,189 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.tools4j.eventsourcing.api.IndexedClaimingAppender;
+import org.tools4j.eventsourcing.sbe.IndexEncoder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An appender to a segmented queue, appending to the last segment through {@link MmapIndexedAppender}.
+ * A new segment is started on claim of a message if the message does not fit into the remaining segment size,
+ * or if the segment period has elapsed since the segment was started.
+ * The files of the next segment are created and mapped by a background thread ahead of time, so that rolling to
+ * the next segment only registers the segment in the {@link SegmentManifest} and seals the previous segment.
+ */
+public final class MmapSegmentedIndexedAppender implements IndexedClaimingAppender, Closeable {
+    private static final long FIRST_INDEX_POSITION = IndexFileHeader.LENGTH;
+    private static final int INDEX_LENGTH = 4 + IndexEncoder.ENCODED_LENGTH;
+
+    private final SegmentManifest manifest;
+    private final SegmentAccessorFactory newSegments;
+    private final long segmentSize;
+    private final long segmentPeriodMillis;
+    private final ExecutorService segmentPreparer;
+    private final boolean checksums;
+
+    private long currentSegment;
+    private MmapIndexedAppender currentAppender;
+    private CompletableFuture<RegionAccessorSupplier> nextSegment;
+
+    /**
+     * Creates the appender, the first segment is created if the manifest does not have any segments.
+     * @param manifest - segment manifest opened for read-write
+     * @param existingSegments - factory of region accessors for existing segments
+     * @param newSegments - factory of region accessors for new segments, clearing the files
+     * @param segmentSize - max size of the index and message files of a segment
+     * @param segmentPeriodMillis - period in millis after which a new segment is started, 0 for no time limit
+     * @throws IOException when the files of the last segment could not be mapped.
+     */
+    public MmapSegmentedIndexedAppender(final SegmentManifest manifest,
+                                        final SegmentAccessorFactory existingSegments,
+                                        final SegmentAccessorFactory newSegments,
+                                        final long segmentSize,
+                                        final long segmentPeriodMillis) throws IOException {
+        this(manifest, existingSegments, newSegments, segmentSize, segmentPeriodMillis, false);
+    }
+
+    /**
+     * Creates the appender as above, checksumming index entries of new segments if checksums is true,
+     * see {@link MmapIndexedAppender#MmapIndexedAppender(RegionAccessorSupplier, boolean)}.
+     */
+    public MmapSegmentedIndexedAppender(final SegmentManifest manifest,
+                                        final SegmentAccessorFactory existingSegments,
+                                        final SegmentAccessorFactory newSegments,
+                                        final long segmentSize,
+                                        final long segmentPeriodMillis,
+                                        final boolean checksums) throws IOException {
+        this.checksums = checksums;
+        this.manifest = Objects.requireNonNull(manifest);
+        Objects.requireNonNull(existingSegments);
+        this.newSegments = Objects.requireNonNull(newSegments);
+        this.segmentSize = segmentSize;
+        this.segmentPeriodMillis = segmentPeriodMillis;
+        this.segmentPreparer = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(null, runnable, "SegmentPreparer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (manifest.lastSegment() == SegmentManifest.NO_SEGMENT) {
+            this.currentSegment = 0;
+            this.currentAppender = new MmapIndexedAppender(newSegments.open(currentSegment), checksums);
+            manifest.segment(currentSegment, 0, System.currentTimeMillis());
+            manifest.firstSegment(currentSegment);
+            manifest.lastSegment(currentSegment);
+        } else {
+            this.currentSegment = manifest.lastSegment();
+            this.currentAppender = new MmapIndexedAppender(existingSegments.open(currentSegment), checksums);
+        }
+        prepareNextSegment();
+    }
+
+    @Override
+    public void accept(final int source, final long sourceSeq, final long eventTimeNanos, final DirectBuffer buffer, final int offset, final int length) {
+        final MutableDirectBuffer claimedBuffer = claim(length);
+        buffer.getBytes(offset, claimedBuffer, 0, length);
+        commit(source, sourceSeq, eventTimeNanos, length);
+    }
+
+    @Override
+    public MutableDirectBuffer claim(final int length) {
+        if (shouldRoll(length)) {
+            roll();
+        }
+        return currentAppender.claim(length);
+    }
+
+    @Override
+    public MutableDirectBuffer extendClaim(final int length, final int encodedLength) {
+        return currentAppender.extendClaim(length, encodedLength);
+    }
+
+    @Override
+    public void commit(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+        currentAppender.commit(source, sourceSeq, eventTimeNanos, length);
+    }
+
+    private boolean shouldRoll(final int length) {
+        final long indexPosition = currentAppender.indexPosition();
+        if (indexPosition == FIRST_INDEX_POSITION) {
+            return false;
+        }
+        return currentAppender.messagePosition() + length > segmentSize ||
+                indexPosition + INDEX_LENGTH > segmentSize ||
+                segmentPeriodMillis > 0 &&
+                        System.currentTimeMillis() - manifest.createdTimeMillis(currentSegment) >= segmentPeriodMillis;
+    }
+
+    private void roll() {
+        final MmapIndexedAppender nextAppender = new MmapIndexedAppender(nextSegment.join(), checksums);
+        final long firstIndex = manifest.firstIndex(currentSegment) +
+                (currentAppender.indexPosition() - FIRST_INDEX_POSITION) / INDEX_LENGTH;
+
+        manifest.segment(currentSegment + 1, firstIndex, System.currentTimeMillis());
+        manifest.lastSegment(currentSegment + 1);
+        currentAppender.seal();
+        currentAppender.close();
+
+        currentSegment++;
+        currentAppender = nextAppender;
+        prepareNextSegment();
+    }
+
+    private void prepareNextSegment() {
+        final long segment = currentSegment + 1;
+        nextSegment = CompletableFuture.supplyAsync(() -> {
+            try {
+                return newSegments.open(segment);
+            } catch (final IOException e) {
+                throw new UncheckedIOException("Failed to create segment " + segment, e);
+            }
+        }, segmentPreparer);
+    }
+
+    /**
+     * Closes the appender after the next segment is prepared, so that preparation of the segment, clearing its files,
+     * cannot interfere with an appender of the queue opened after this one.
+     */
+    @Override
+    public void close() {
+        final RegionAccessorSupplier preparedSegment = nextSegment.exceptionally(exception -> null).join();
+        if (preparedSegment != null) {
+            preparedSegment.close();
+        }
+        segmentPreparer.shutdown();
+        currentAppender.close();
+        manifest.close();
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.tools4j.eventsourcing.api.IndexedMessageConsumer;
+import org.tools4j.eventsourcing.api.IndexedPollerFactory;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.common.CompressingAppender;
+import org.tools4j.eventsourcing.common.CompressionDictionary;
+import org.tools4j.eventsourcing.common.Doorbell;
+import org.tools4j.eventsourcing.common.SinglePayloadAppender;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+
+/**
+ * Indexed queue appending to a sequence of segments in the segment directory, each segment consisting of index and
+ * message files. A new segment is started when the current one reaches the segment size or the segment period,
+ * see {@link MmapSegmentedIndexedAppender}. Pollers move across the segments transparently.
+ * The doorbell of the queue is rung after each append.
+ */
+public final class MmapSegmentedIndexedQueue implements IndexedQueue {
+    private final IndexedMessageConsumer appender;
+    private final IndexedPollerFactory pollerFactory;
+    private final MmapSegmentedIndexedAppender segmentedAppender;
+    private final SegmentRetention retention;
+    private final Doorbell doorbell = new Doorbell();
+
+    public MmapSegmentedIndexedQueue(final String directory,
+                                     final String filePrefix,
+                                     final boolean clearFiles,
+                                     final RegionRingFactory regionRingFactory,
+                                     final int regionSize,
+                                     final int regionRingSize,
+                                     final int regionsToMapAhead,
+                                     final long segmentSize,
+                                     final long segmentPeriodMillis) throws IOException {
+        this(directory, filePrefix, clearFiles, regionRingFactory, regionSize, regionRingSize, regionsToMapAhead,
+                segmentSize, segmentPeriodMillis, null);
+    }
+
+    /**
+     * Creates the queue with retention of its segments, pollers created by the queue register their positions
+     * as retention watermarks. The retention, if not null, is closed with the queue.
+     */
+    public MmapSegmentedIndexedQueue(final String directory,
+                                     final String filePrefix,
+                                     final boolean clearFiles,
+                                     final RegionRingFactory regionRingFactory,
+                                     final int regionSize,
+                                     final int regionRingSize,
+                                     final int regionsToMapAhead,
+                                     final long segmentSize,
+                                     final long segmentPeriodMillis,
+                                     final SegmentRetention retention) throws IOException {
+        this(directory, filePrefix, clearFiles, regionRingFactory, regionSize, regionRingSize, regionsToMapAhead,
+                segmentSize, segmentPeriodMillis, retention, false, false);
+    }
+
+    /**
+     * Creates the queue with retention of its segments as above, compressing messages with the dictionary
+     * of the queue if compress is true, see {@link CompressingAppender},
+     * and checksumming index entries of new segments if checksums is true.
+     */
+    public MmapSegmentedIndexedQueue(final String directory,
+                                     final String filePrefix,
+                                     final boolean clearFiles,
+                                     final RegionRingFactory regionRingFactory,
+                                     final int regionSize,
+                                     final int regionRingSize,
+                                     final int regionsToMapAhead,
+                                     final long segmentSize,
+                                     final long segmentPeriodMillis,
+                                     final SegmentRetention retention,
+                                     final boolean compress,
+                                     final boolean checksums) throws IOException {
+        this.segmentedAppender = MmapSegmentedIndexedQueue.segmentedAppender(
+                directory,
+                filePrefix,
+                clearFiles,
+                regionRingFactory,
+                regionSize,
+                regionRingSize,
+                regionsToMapAhead,
+                segmentSize,
+                segmentPeriodMillis,
+                checksums);
+
+        this.appender = MmapIndexedQueue.ringing(new SinglePayloadAppender(compress
+                ? new CompressingAppender(segmentedAppender, CompressionDictionary.load(directory, filePrefix))
+                : segmentedAppender), doorbell);
+
+        this.pollerFactory = new MmapSegmentedPollerFactory(
+                directory,
+                filePrefix,
+                regionRingFactory,
+                regionSize,
+                regionRingSize,
+                regionsToMapAhead,
+                retention != null ? retention : SegmentWatermarks.NONE);
+        this.retention = retention;
+    }
+
+    static MmapSegmentedIndexedAppender segmentedAppender(final String directory,
+                                                          final String filePrefix,
+                                                          final boolean clearFiles,
+                                                          final RegionRingFactory regionRingFactory,
+                                                          final int regionSize,
+                                                          final int regionRingSize,
+                                                          final int regionsToMapAhead,
+                                                          final long segmentSize,
+                                                          final long segmentPeriodMillis,
+                                                          final boolean checksums) throws IOException {
+        if (segmentSize < regionSize) {
+            throw new IllegalArgumentException("Segment size " + segmentSize + " is less than region size " + regionSize);
+        }
+        //claims are checked against the segment size, the files can grow beyond it by the regions of a message
+        //moved to the next region and by the regions mapped ahead
+        final long maxFileSize = segmentSize + (regionsToMapAhead + 3L) * regionSize;
+
+        return new MmapSegmentedIndexedAppender(
+                SegmentManifest.forReadWrite(directory, filePrefix, clearFiles),
+                SegmentAccessorFactory.forReadWrite(directory, filePrefix, false, regionRingFactory,
+                        regionSize, regionRingSize, regionsToMapAhead, maxFileSize),
+                SegmentAccessorFactory.forReadWrite(directory, filePrefix, true, regionRingFactory,
+                        regionSize, regionRingSize, regionsToMapAhead, maxFileSize),
+                segmentSize,
+                segmentPeriodMillis,
+                checksums);
+    }
+
+    @Override
+    public IndexedMessageConsumer appender() {
+        return this.appender;
+    }
+
+    @Override
+    public Poller createPoller(final Poller.Options options) throws IOException {
+        return pollerFactory.createPoller(options);
+    }
+
+    /**
+     * @return doorbell rung after appends, its sequence is held in the process as segments have own index headers
+     */
+    public Doorbell doorbell() {
+        return doorbell;
+    }
+
+    @Override
+    public void close() {
+        if (retention != null) {
+            retention.close();
+        }
+        segmentedAppender.close();
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.tools4j.eventsourcing.api.*;
+import org.tools4j.eventsourcing.common.CompressingAppender;
+import org.tools4j.eventsourcing.common.CompressionDictionary;
+import org.tools4j.eventsourcing.common.Doorbell;
+import org.tools4j.eventsourcing.common.MultiPayloadAppender;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+
+public class MmapSegmentedIndexedTransactionalQueue implements IndexedTransactionalQueue {
+    private final Transaction appender;
+    private final IndexedPollerFactory pollerFactory;
+    private final MmapSegmentedIndexedAppender segmentedAppender;
+    private final SegmentRetention retention;
+    private final Doorbell doorbell = new Doorbell();
+
+    public MmapSegmentedIndexedTransactionalQueue(final String directory,
+                                                  final String filePrefix,
+                                                  final boolean clearFiles,
+                                                  final RegionRingFactory regionRingFactory,
+                                                  final int regionSize,
+                                                  final int regionRingSize,
+                                                  final int regionsToMapAhead,
+                                                  final long segmentSize,
+                                                  final long segmentPeriodMillis) throws IOException {
+        this(directory, filePrefix, clearFiles, regionRingFactory, regionSize, regionRingSize, regionsToMapAhead,
+                segmentSize, segmentPeriodMillis, null);
+    }
+
+    /**
+     * Creates the queue with retention of its segments, pollers created by the queue register their positions
+     * as retention watermarks. The retention, if not null, is closed with the queue.
+     */
+    public MmapSegmentedIndexedTransactionalQueue(final String directory,
+                                                  final String filePrefix,
+                                                  final boolean clearFiles,
+                                                  final RegionRingFactory regionRingFactory,
+                                                  final int regionSize,
+                                                  final int regionRingSize,
+                                                  final int regionsToMapAhead,
+                                                  final long segmentSize,
+                                                  final long segmentPeriodMillis,
+                                                  final SegmentRetention retention) throws IOException {
+        this(directory, filePrefix, clearFiles, regionRingFactory, regionSize, regionRingSize, regionsToMapAhead,
+                segmentSize, segmentPeriodMillis, retention, false, false);
+    }
+
+    /**
+     * Creates the queue with retention of its segments as above, compressing transactions with the dictionary
+     * of the queue if compress is true, see {@link CompressingAppender},
+     * and checksumming index entries of new segments if checksums is true.
+     */
+    public MmapSegmentedIndexedTransactionalQueue(final String directory,
+                                                  final String filePrefix,
+                                                  final boolean clearFiles,
+                                                  final RegionRingFactory regionRingFactory,
+                                                  final int regionSize,
+                                                  final int regionRingSize,
+                                                  final int regionsToMapAhead,
+                                                  final long segmentSize,
+                                                  final long segmentPeriodMillis,
+                                                  final SegmentRetention retention,
+                                                  final boolean compress,
+                                                  final boolean checksums) throws IOException {
+
+        this.segmentedAppender = MmapSegmentedIndexedQueue.segmentedAppender(
+                directory,
+                filePrefix,
+                clearFiles,
+                regionRingFactory,
+                regionSize,
+                regionRingSize,
+                regionsToMapAhead,
+                segmentSize,
+                segmentPeriodMillis,
+                checksums);
+
+        this.appender = MmapIndexedTransactionalQueue.ringing(new MultiPayloadAppender(compress
+                ? new CompressingAppender(segmentedAppender, CompressionDictionary.load(directory, filePrefix))
+                : segmentedAppender), doorbell);
+
+        this.pollerFactory = new MmapSegmentedPollerFactory(
+                directory,
+                filePrefix,
+                regionRingFactory,
+                regionSize,
+                regionRingSize,
+                regionsToMapAhead,
+                retention != null ? retention : SegmentWatermarks.NONE);
+        this.retention = retention;
+    }
+
+    @Override
+    public Transaction appender() {
+        return this.appender;
+    }
+
+    @Override
+    public Poller createPoller(final Poller.Options options) throws IOException {
+        return pollerFactory.createPoller(options);
+    }
+
+    /**
+     * @return doorbell rung after commits, its sequence is held in the process as segments have own index headers
+     */
+    public Doorbell doorbell() {
+        return doorbell;
+    }
+
+    @Override
+    public void close() {
+        if (retention != null) {
+            retention.close();
+        }
+        segmentedAppender.close();
+    }
+}
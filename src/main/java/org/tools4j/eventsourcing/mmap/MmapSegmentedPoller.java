@@ -0,0 +1,262 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.tools4j.eventsourcing.api.BufferPoller;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.function.LongSupplier;
+
+/**
+ * Poller of a segmented queue, polling segments listed in the {@link SegmentManifest} through
+ * {@link MmapIndexedPoller}. The poller moves to the next segment once all entries of a sealed segment have been
+ * polled or skipped. Indexes passed to the options and returned by seek methods are indexes within the queue,
+ * i.e. the index of the first entry of the segment plus the index within the segment.
+ * The poller registers the first index of its current segment as a watermark, so that the segment is retained
+ * while polled. If segments have been removed by retention before the poller reached them, the poller continues
+ * with the first available segment.
+ */
+public final class MmapSegmentedPoller implements Poller {
+    private final SegmentManifest manifest;
+    private final SegmentAccessorFactory segments;
+    private final Options options;
+    private final BufferPoller bufferPoller;
+    private final SegmentWatermarks watermarks;
+    private final LongSupplier watermark = this::watermark;
+
+    private long currentSegment = SegmentManifest.NO_SEGMENT;
+    private volatile long currentFirstIndex;
+    private MmapIndexedPoller currentPoller;
+
+    public MmapSegmentedPoller(final SegmentManifest manifest,
+                               final SegmentAccessorFactory segments,
+                               final Options options,
+                               final BufferPoller bufferPoller) {
+        this(manifest, segments, options, bufferPoller, SegmentWatermarks.NONE);
+    }
+
+    public MmapSegmentedPoller(final SegmentManifest manifest,
+                               final SegmentAccessorFactory segments,
+                               final Options options,
+                               final BufferPoller bufferPoller,
+                               final SegmentWatermarks watermarks) {
+        this.manifest = Objects.requireNonNull(manifest);
+        this.segments = Objects.requireNonNull(segments);
+        this.options = Objects.requireNonNull(options);
+        this.bufferPoller = Objects.requireNonNull(bufferPoller);
+        this.watermarks = Objects.requireNonNull(watermarks);
+        this.watermarks.register(watermark);
+    }
+
+    @Override
+    public int poll(final MessageConsumer consumer) {
+        if (!initialised()) return 0;
+
+        final int done = currentPoller.poll(consumer);
+        if (done == 0 && currentPoller.endOfSegment() && currentSegment < manifest.lastSegment()) {
+            moveTo(Math.max(currentSegment + 1, manifest.firstSegment()));
+            return poll(consumer);
+        }
+        return done;
+    }
+
+    @Override
+    public int poll(final MessageConsumer consumer, final int maxEntries) {
+        if (!initialised()) return 0;
+
+        final int done = currentPoller.poll(consumer, maxEntries);
+        if (done == 0 && currentPoller.endOfSegment() && currentSegment < manifest.lastSegment()) {
+            moveTo(Math.max(currentSegment + 1, manifest.firstSegment()));
+            return poll(consumer, maxEntries);
+        }
+        return done;
+    }
+
+    @Override
+    public boolean seek(final long index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("Invalid index " + index);
+        }
+        if (manifest.firstSegment() == SegmentManifest.NO_SEGMENT) {
+            return false;
+        }
+        final long segment = manifest.segmentOf(index);
+        final long firstIndex = manifest.firstIndex(segment);
+        if (index < firstIndex) {
+            return false;
+        }
+        if (segment == currentSegment) {
+            return currentPoller.seek(index - firstIndex);
+        }
+        final MmapIndexedPoller segmentPoller = open(segment);
+        if (segmentPoller.seek(index - firstIndex)) {
+            switchTo(segment, segmentPoller);
+            return true;
+        }
+        segmentPoller.close();
+        return false;
+    }
+
+    @Override
+    public long seekToSourceSeq(final int source, final long sourceSeq) {
+        if (!initialised()) return 0;
+
+        final long firstSegment = manifest.firstSegment();
+        final long lastSegment = manifest.lastSegment();
+
+        long fromSegment = firstSegment;
+        long fromIndex = 0;
+        for (long segment = lastSegment; segment >= firstSegment; segment--) {
+            try (MmapIndexedPoller segmentPoller = open(segment)) {
+                final long boundary = segmentPoller.sourceSeqBoundary(source, sourceSeq, segmentPoller.tailIndex());
+                if (boundary > 0) {
+                    fromSegment = segment;
+                    fromIndex = boundary;
+                    break;
+                }
+            }
+        }
+
+        for (long segment = fromSegment; segment <= lastSegment; segment++) {
+            final MmapIndexedPoller segmentPoller = open(segment);
+            final long tailIndex = segmentPoller.tailIndex();
+            final long foundIndex = segmentPoller.firstIndexOf(source, fromIndex, tailIndex);
+            if (foundIndex != MmapIndexedPoller.NOT_FOUND || segment == lastSegment) {
+                final long index = foundIndex != MmapIndexedPoller.NOT_FOUND ? foundIndex : tailIndex;
+                segmentPoller.seek(index);
+                switchTo(segment, segmentPoller);
+                return currentFirstIndex + index;
+            }
+            segmentPoller.close();
+            fromIndex = 0;
+        }
+        throw new IllegalStateException("No segments in range " + fromSegment + ".." + lastSegment);
+    }
+
+    @Override
+    public long seekToEventTime(final long timeNanos) {
+        if (!initialised()) return 0;
+
+        final long firstSegment = manifest.firstSegment();
+        for (long segment = manifest.lastSegment(); segment >= firstSegment; segment--) {
+            final MmapIndexedPoller segmentPoller = open(segment);
+            final long index = segmentPoller.seekToEventTime(timeNanos);
+            if (index > 0 || segment == firstSegment) {
+                switchTo(segment, segmentPoller);
+                return currentFirstIndex + index;
+            }
+            segmentPoller.close();
+        }
+        throw new IllegalStateException("No segments in range " + firstSegment + ".." + manifest.lastSegment());
+    }
+
+    /**
+     * @return backlog in the current segment and number of entries of the following sealed segments, entries of
+     *         the last segment are only counted once the poller has moved to it.
+     */
+    @Override
+    public long backlog() {
+        if (currentPoller == null) {
+            return 0;
+        }
+        final long lastSegment = manifest.lastSegment();
+        final long followingEntries = currentSegment < lastSegment ?
+                manifest.firstIndex(lastSegment) - manifest.firstIndex(currentSegment + 1) : 0;
+        return currentPoller.backlog() + followingEntries;
+    }
+
+    /**
+     * @return index of the first entry of the current segment, or of the first available segment if the poller
+     *         has not polled yet.
+     */
+    private long watermark() {
+        return currentPoller == null ? manifest.firstIndex(manifest.firstSegment()) : currentFirstIndex;
+    }
+
+    private boolean initialised() {
+        if (currentPoller == null) {
+            final long firstSegment = manifest.firstSegment();
+            if (firstSegment == SegmentManifest.NO_SEGMENT) {
+                return false;
+            }
+            moveTo(firstSegment);
+        }
+        return true;
+    }
+
+    private void moveTo(final long segment) {
+        switchTo(segment, open(segment));
+    }
+
+    private void switchTo(final long segment, final MmapIndexedPoller segmentPoller) {
+        if (currentPoller != null) {
+            currentPoller.close();
+        }
+        currentSegment = segment;
+        currentFirstIndex = manifest.firstIndex(segment);
+        currentPoller = segmentPoller;
+    }
+
+    private MmapIndexedPoller open(final long segment) {
+        final long firstIndex = manifest.firstIndex(segment);
+        try {
+            return new MmapIndexedPoller(segments.open(segment), offset(options, firstIndex), bufferPoller);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to open segment " + segment, e);
+        }
+    }
+
+    /**
+     * @param options - options receiving indexes within the queue
+     * @param firstIndex - index of the first entry of the segment
+     * @return options receiving indexes within the segment, other options are retained
+     */
+    private static Options offset(final Options options, final long firstIndex) {
+        final IndexPredicate skipWhen = options.skipWhen();
+        final IndexPredicate pauseWhen = options.pauseWhen();
+        final IndexConsumer onProcessingStart = options.onProcessingStart();
+        final IndexConsumer onProcessingComplete = options.onProcessingComplete();
+        final IndexConsumer onProcessingSkipped = options.onProcessingSkipped();
+        return Options.builder(options)
+                .skipWhen((index, source, sourceSeq, eventTimeNanos) -> skipWhen.test(firstIndex + index, source, sourceSeq, eventTimeNanos))
+                .pauseWhen((index, source, sourceSeq, eventTimeNanos) -> pauseWhen.test(firstIndex + index, source, sourceSeq, eventTimeNanos))
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> onProcessingStart.accept(firstIndex + index, source, sourceSeq, eventTimeNanos))
+                .onProcessingComplete((index, source, sourceSeq, eventTimeNanos) -> onProcessingComplete.accept(firstIndex + index, source, sourceSeq, eventTimeNanos))
+                .onProcessingSkipped((index, source, sourceSeq, eventTimeNanos) -> onProcessingSkipped.accept(firstIndex + index, source, sourceSeq, eventTimeNanos))
+                .build();
+    }
+
+    @Override
+    public void close() {
+        watermarks.deregister(watermark);
+        if (currentPoller != null) {
+            currentPoller.close();
+        }
+        manifest.close();
+    }
+}
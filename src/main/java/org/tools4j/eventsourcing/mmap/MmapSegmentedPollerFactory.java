@@ -0,0 +1,87 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.tools4j.eventsourcing.api.IndexedPollerFactory;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.common.CompressionDictionary;
+import org.tools4j.eventsourcing.common.PayloadBufferPoller;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.Objects;
+
+public class MmapSegmentedPollerFactory implements IndexedPollerFactory {
+    private final String directory;
+    private final String filePrefix;
+    private final SegmentAccessorFactory segments;
+    private final SegmentWatermarks watermarks;
+    private final CompressionDictionary dictionary;
+
+    public MmapSegmentedPollerFactory(final String directory,
+                                      final String filePrefix,
+                                      final RegionRingFactory regionRingFactory,
+                                      final int regionSize,
+                                      final int regionRingSize,
+                                      final int regionsToMapAhead) throws IOException {
+        this(directory, filePrefix, regionRingFactory, regionSize, regionRingSize, regionsToMapAhead,
+                SegmentWatermarks.NONE);
+    }
+
+    /**
+     * Creates the factory of pollers registering their positions with the given watermarks.
+     */
+    public MmapSegmentedPollerFactory(final String directory,
+                                      final String filePrefix,
+                                      final RegionRingFactory regionRingFactory,
+                                      final int regionSize,
+                                      final int regionRingSize,
+                                      final int regionsToMapAhead,
+                                      final SegmentWatermarks watermarks) throws IOException {
+        this.watermarks = Objects.requireNonNull(watermarks);
+        this.directory = Objects.requireNonNull(directory);
+        this.filePrefix = Objects.requireNonNull(filePrefix);
+        this.segments = SegmentAccessorFactory.forReadOnly(
+                directory,
+                filePrefix,
+                Objects.requireNonNull(regionRingFactory),
+                regionSize,
+                regionRingSize,
+                regionsToMapAhead);
+        this.dictionary = CompressionDictionary.load(directory, filePrefix);
+    }
+
+    @Override
+    public Poller createPoller(final Poller.Options options) throws IOException {
+        if (options.pauseAtDurableWatermark()) {
+            throw new IllegalArgumentException("Segmented queue does not support pausing at durable watermark");
+        }
+        return new MmapSegmentedPoller(
+                SegmentManifest.forReadOnly(directory, filePrefix),
+                segments,
+                options,
+                new PayloadBufferPoller(dictionary),
+                watermarks);
+    }
+}
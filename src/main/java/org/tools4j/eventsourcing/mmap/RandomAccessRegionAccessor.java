@@ -0,0 +1,74 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.mmap.region.api.RegionAccessor;
+
+import java.util.Objects;
+
+/**
+ * Region accessor decorator that makes random access over a region ring accessor safe.
+ * Moving to another region, the region ring accessor unmaps the previously accessed region. If the two regions
+ * are in the same slot of the ring, the newly mapped region is unmapped instead, so such a move is done via
+ * an adjacent region. It is the case when appenders claim message space concurrently, or pollers seek.
+ */
+final class RandomAccessRegionAccessor implements RegionAccessor {
+    private static final long NOT_ACCESSED = -1;
+
+    private final RegionAccessor regionRingAccessor;
+    private final int regionSizeBits;
+    private final int regionRingSize;
+    private final UnsafeBuffer adjacentRegionBuffer = new UnsafeBuffer(0, 0);
+
+    private long currentRegion = NOT_ACCESSED;
+
+    RandomAccessRegionAccessor(final RegionAccessor regionRingAccessor, final int regionRingSize) {
+        this.regionRingAccessor = Objects.requireNonNull(regionRingAccessor);
+        this.regionSizeBits = Integer.numberOfTrailingZeros(regionRingAccessor.size());
+        this.regionRingSize = regionRingSize;
+    }
+
+    @Override
+    public boolean wrap(final long position, final DirectBuffer buffer) {
+        final long region = position >> regionSizeBits;
+        if (region != currentRegion && currentRegion != NOT_ACCESSED && (region - currentRegion) % regionRingSize == 0) {
+            final long adjacentRegion = region > currentRegion ? region - 1 : region + 1;
+            regionRingAccessor.wrap(adjacentRegion << regionSizeBits, adjacentRegionBuffer);
+        }
+        currentRegion = region;
+        return regionRingAccessor.wrap(position, buffer);
+    }
+
+    @Override
+    public int size() {
+        return regionRingAccessor.size();
+    }
+
+    @Override
+    public void close() {
+        regionRingAccessor.close();
+    }
+}
@@ -32,8 +32,10 @@ import org.tools4j.mmap.region.impl.RegionRingAccessor;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Index and Message region accessor supplier for indexed queues and stores.
@@ -49,10 +51,26 @@ public interface RegionAccessorSupplier extends Closeable {
      */
     RegionAccessor messageAccessor();
 
+    /**
+     * @return header of the index file
+     */
+    IndexFileHeader indexHeader();
+
+    /**
+     * Forces the message file and then the index file to the storage device, so that index entries published
+     * before the call are durable together with their messages.
+     * @throws UncheckedIOException if the files could not be forced
+     * @throws UnsupportedOperationException if the files are read-only
+     */
+    default void force() {
+        throw new UnsupportedOperationException("Read-only files cannot be forced");
+    }
+
     @Override
     default void close() {
         indexAccessor().close();
         messageAccessor().close();
+        indexHeader().close();
     }
 
     /**
@@ -81,7 +99,10 @@ public interface RegionAccessorSupplier extends Closeable {
         final MappedFile messagePollerFile = new MappedFile(messageFileName, MappedFile.Mode.READ_ONLY,
                 regionSize, (file, mode) -> {});
 
-        final RegionAccessor indexRegionRingAccessor = new RegionRingAccessor(
+        final IndexFileHeader indexHeader = IndexFileHeader.map(indexPollerFile.getFileChannel(),
+                indexPollerFile.getMode().getMapMode());
+
+        final RegionAccessor indexRegionRingAccessor = new RandomAccessRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -90,9 +111,9 @@ public interface RegionAccessorSupplier extends Closeable {
                         indexPollerFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                indexPollerFile::close);
+                indexPollerFile::close), regionRingSize);
 
-        final RegionAccessor messageRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor messageRegionRingAccessor = new RandomAccessRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -101,7 +122,7 @@ public interface RegionAccessorSupplier extends Closeable {
                         messagePollerFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                messagePollerFile::close);
+                messagePollerFile::close), regionRingSize);
 
         return new RegionAccessorSupplier() {
             @Override
@@ -113,6 +134,11 @@ public interface RegionAccessorSupplier extends Closeable {
             public RegionAccessor messageAccessor() {
                 return messageRegionRingAccessor;
             }
+
+            @Override
+            public IndexFileHeader indexHeader() {
+                return indexHeader;
+            }
         };
     }
 
@@ -196,7 +222,10 @@ public interface RegionAccessorSupplier extends Closeable {
         final MappedFile messageAppenderFile = new MappedFile(messageFileName, mapMode,
                 regionSize, (file, mode) -> {});
 
-        final RegionAccessor indexRegionRingAccessor = new RegionRingAccessor(
+        final IndexFileHeader indexHeader = IndexFileHeader.map(indexAppenderFile.getFileChannel(),
+                indexAppenderFile.getMode().getMapMode());
+
+        final RegionAccessor indexRegionRingAccessor = new RandomAccessRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -205,9 +234,9 @@ public interface RegionAccessorSupplier extends Closeable {
                         indexAppenderFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                indexAppenderFile::close);
+                indexAppenderFile::close), regionRingSize);
 
-        final RegionAccessor messageRegionRingAccessor = new RegionRingAccessor(
+        final RegionAccessor messageRegionRingAccessor = new RandomAccessRegionAccessor(new RegionRingAccessor(
                 regionRingFactory.create(
                         regionRingSize,
                         regionSize,
@@ -216,7 +245,7 @@ public interface RegionAccessorSupplier extends Closeable {
                         messageAppenderFile.getMode().getMapMode()),
                 regionSize,
                 regionsToMapAhead,
-                messageAppenderFile::close);
+                messageAppenderFile::close), regionRingSize);
 
         return new RegionAccessorSupplier() {
             @Override
@@ -228,13 +257,150 @@ public interface RegionAccessorSupplier extends Closeable {
             public RegionAccessor messageAccessor() {
                 return messageRegionRingAccessor;
             }
+
+            @Override
+            public IndexFileHeader indexHeader() {
+                return indexHeader;
+            }
+
+            @Override
+            public void force() {
+                RegionAccessorSupplier.force(messageAppenderFile, indexAppenderFile);
+            }
+        };
+    }
+
+    /**
+     * Factory method for readWrite region accessors to be used by concurrent appenders.
+     * The returned region accessor suppliers share the index and message files and the index file header,
+     * whereas each of them has own region rings, so that every supplier can be used by a different thread.
+     * The files are closed when all the suppliers are closed.
+     * @param directory - directory where the files are located
+     * @param filePrefix - file prefix for both index and message files.
+     *                   Index would have "_index" suffix and message would have "_message" suffix.
+     * @param clear - true if the files are to be cleared
+     * @param regionRingFactory - region ring factory
+     * @param regionSize - region size in bytes
+     * @param regionRingSize  - number of regions in a ring
+     * @param regionsToMapAhead - number of regions to map ahead.
+     * @param maxFileSize - max file size to prevent unexpected file growth
+     * @param suppliers - number of region accessor suppliers to create
+     * @return region accessor suppliers
+     * @throws IOException when either index and message files could not be mapped.
+     */
+    static RegionAccessorSupplier[] forConcurrentReadWrite(final String directory,
+                                                           final String filePrefix,
+                                                           final boolean clear,
+                                                           final RegionRingFactory regionRingFactory,
+                                                           final int regionSize,
+                                                           final int regionRingSize,
+                                                           final int regionsToMapAhead,
+                                                           final long maxFileSize,
+                                                           final int suppliers) throws IOException {
+        if (suppliers < 1) {
+            throw new IllegalArgumentException("Number of suppliers must be positive: " + suppliers);
+        }
+        final String indexFileName = directory + "/" + filePrefix + "_index";
+        final String messageFileName = directory + "/" + filePrefix + "_message";
+        final MappedFile.Mode mapMode = clear ? MappedFile.Mode.READ_WRITE_CLEAR : MappedFile.Mode.READ_WRITE;
+
+        final MappedFile indexAppenderFile = new MappedFile(indexFileName, mapMode,
+                regionSize, RegionAccessorSupplier::initIndexFile);
+        final MappedFile messageAppenderFile = new MappedFile(messageFileName, mapMode,
+                regionSize, (file, mode) -> {});
+
+        final IndexFileHeader indexHeader = IndexFileHeader.map(indexAppenderFile.getFileChannel(),
+                indexAppenderFile.getMode().getMapMode());
+
+        final FileSizeEnsurer indexFileSizeEnsurer = synchronizedFileSizeEnsurer(
+                FileSizeEnsurer.forWritableFile(indexAppenderFile::getFileLength, indexAppenderFile::setFileLength, maxFileSize));
+        final FileSizeEnsurer messageFileSizeEnsurer = synchronizedFileSizeEnsurer(
+                FileSizeEnsurer.forWritableFile(messageAppenderFile::getFileLength, messageAppenderFile::setFileLength, maxFileSize));
+
+        final AtomicInteger openSuppliers = new AtomicInteger(suppliers);
+        final RegionAccessorSupplier[] regionAccessorSuppliers = new RegionAccessorSupplier[suppliers];
+
+        for (int i = 0; i < suppliers; i++) {
+            final RegionAccessor indexRegionRingAccessor = new RandomAccessRegionAccessor(new RegionRingAccessor(
+                    regionRingFactory.create(
+                            regionRingSize,
+                            regionSize,
+                            indexAppenderFile::getFileChannel,
+                            indexFileSizeEnsurer,
+                            indexAppenderFile.getMode().getMapMode()),
+                    regionSize,
+                    regionsToMapAhead,
+                    () -> {}), regionRingSize);
+
+            final RegionAccessor messageRegionRingAccessor = new RandomAccessRegionAccessor(new RegionRingAccessor(
+                    regionRingFactory.create(
+                            regionRingSize,
+                            regionSize,
+                            messageAppenderFile::getFileChannel,
+                            messageFileSizeEnsurer,
+                            messageAppenderFile.getMode().getMapMode()),
+                    regionSize,
+                    regionsToMapAhead,
+                    () -> {}), regionRingSize);
+
+            regionAccessorSuppliers[i] = new RegionAccessorSupplier() {
+                @Override
+                public RegionAccessor indexAccessor() {
+                    return indexRegionRingAccessor;
+                }
+
+                @Override
+                public RegionAccessor messageAccessor() {
+                    return messageRegionRingAccessor;
+                }
+
+                @Override
+                public IndexFileHeader indexHeader() {
+                    return indexHeader;
+                }
+
+                @Override
+                public void force() {
+                    RegionAccessorSupplier.force(messageAppenderFile, indexAppenderFile);
+                }
+
+                @Override
+                public void close() {
+                    indexRegionRingAccessor.close();
+                    messageRegionRingAccessor.close();
+                    if (openSuppliers.decrementAndGet() == 0) {
+                        indexHeader.close();
+                        indexAppenderFile.close();
+                        messageAppenderFile.close();
+                    }
+                }
+            };
+        }
+        return regionAccessorSuppliers;
+    }
+
+    static void force(final MappedFile messageFile, final MappedFile indexFile) {
+        try {
+            //pages written through the mapped regions are flushed by forcing the file
+            messageFile.getFileChannel().force(false);
+            indexFile.getFileChannel().force(false);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to force files " + messageFile + " and " + indexFile, e);
+        }
+    }
+
+    static FileSizeEnsurer synchronizedFileSizeEnsurer(final FileSizeEnsurer fileSizeEnsurer) {
+        return minSize -> {
+            synchronized (fileSizeEnsurer) {
+                return fileSizeEnsurer.ensureSize(minSize);
+            }
         };
     }
 
     static void initIndexFile(final FileChannel fileChannel, final MappedFile.Mode mode) throws IOException {
         switch (mode) {
             case READ_ONLY:
-                if (fileChannel.size() < 8) {
+                if (fileChannel.size() < IndexFileHeader.LENGTH) {
                     throw new IllegalArgumentException("Invalid io format");
                 }
                 break;
@@ -255,7 +421,7 @@ public interface RegionAccessorSupplier extends Closeable {
         final FileLock lock = fileChannel.lock();
         try {
             fileChannel.truncate(0);
-            fileChannel.transferFrom(InitialBytes.ZERO, 0, 8);
+            fileChannel.transferFrom(InitialBytes.ZERO, 0, IndexFileHeader.LENGTH);
             fileChannel.force(true);
         } finally {
             lock.release();
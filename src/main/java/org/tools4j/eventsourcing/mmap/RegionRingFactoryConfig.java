@@ -23,60 +23,127 @@
  */
 package org.tools4j.eventsourcing.mmap;
 
-import org.agrona.concurrent.BusySpinIdleStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.tools4j.eventsourcing.common.IdleStrategyConfig;
 import org.tools4j.eventsourcing.common.ThreadService;
 import org.tools4j.eventsourcing.common.WhileLoop;
+import org.tools4j.mmap.region.api.AsyncRegion;
+import org.tools4j.mmap.region.api.FileSizeEnsurer;
+import org.tools4j.mmap.region.api.Region;
 import org.tools4j.mmap.region.api.RegionFactory;
 import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.nobark.loop.IdleStrategy;
 import org.tools4j.nobark.loop.Step;
 
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 import java.util.function.Supplier;
 
+/**
+ * Region ring factories named SYNC and ASYNC. The mapper thread of ASYNC busy spins unless an idle strategy
+ * of {@link IdleStrategyConfig} is given, either by name after a colon, such as ASYNC:BACKOFF, or as a supplier.
+ * The mapper idles after a pass over the region rings that processed no mapping request, and the idle strategy is
+ * reset after a pass that did, so regions to map ahead are to cover the max idle time of the strategy.
+ * The PARKING strategy is not supported by the mapper as mapping requests do not ring a doorbell.
+ */
 public class RegionRingFactoryConfig {
     private static final Logger LOGGER = LoggerFactory.getLogger(RegionRingFactoryConfig.class);
 
-    private static final Supplier<RegionRingFactory> ASYNC = () -> {
-        final List<Runnable> mutableMappingCommands = new CopyOnWriteArrayList<>();
-        return RegionRingFactory.forAsync(RegionFactory.ASYNC_VOLATILE_STATE_MACHINE,
-                mutableMappingCommands::add,
-                () -> {
-                    final Runnable[] mappingCommands = mutableMappingCommands.toArray(new Runnable[mutableMappingCommands.size()]);
-
-                    final Step step = () -> {
-                        for (final Runnable mappingCommand : mappingCommands) {
-                            mappingCommand.run();
+    private static RegionRingFactory async(final IdleStrategy mapperIdleStrategy) {
+        //mapping commands are re-read by the mapper thread, so that region rings created after onComplete,
+        //such as rings of new segments of a segmented queue, are mapped as well
+        final AtomicReference<BooleanSupplier[]> mappingCommands = new AtomicReference<>(new BooleanSupplier[0]);
+        final Step step = () -> {
+            boolean mapped = false;
+            for (final BooleanSupplier mappingCommand : mappingCommands.get()) {
+                try {
+                    mapped |= mappingCommand.getAsBoolean();
+                } catch (final Exception exception) {
+                    //requests of region rings with closed files fail, such rings are not mapped any more
+                    LOGGER.warn("Removing region ring mapping command {}", exception);
+                    mappingCommands.updateAndGet(commands -> remove(commands, mappingCommand));
+                }
+            }
+            return mapped;
+        };
+        return new RegionRingFactory() {
+            @Override
+            public Region[] create(final int ringSize,
+                                   final int regionSize,
+                                   final Supplier<FileChannel> fileChannelSupplier,
+                                   final FileSizeEnsurer fileSizeEnsurer,
+                                   final FileChannel.MapMode mapMode) {
+                final AsyncRegion[] regions = new AsyncRegion[ringSize];
+                for (int i = 0; i < ringSize; i++) {
+                    regions[i] = RegionFactory.ASYNC_VOLATILE_STATE_MACHINE.create(regionSize, fileChannelSupplier,
+                            fileSizeEnsurer, mapMode);
+                }
+                mappingCommands.updateAndGet(commands -> {
+                    final BooleanSupplier[] updated = Arrays.copyOf(commands, commands.length + 1);
+                    updated[commands.length] = () -> {
+                        boolean processed = false;
+                        for (final AsyncRegion region : regions) {
+                            processed |= region.processRequest();
                         }
-                        return true;
+                        return processed;
                     };
-
-                    new ThreadService(
-                            "RegionMapper",
-                            (name, threadRunCondition) ->
-                                    new WhileLoop(name,
-                                            () -> true,
-                                            new BusySpinIdleStrategy()::idle,
-                                            (message, exception) -> LOGGER.error("{} {}", message, exception),
-                                            step
-                                    ),
-                            (name, runnable) -> {
-                                final Thread thread = new Thread(null, runnable, name);
-                                thread.setDaemon(true);
-                                return thread;
-                            }
-                    );
+                    return updated;
                 });
-    };
+                return regions;
+            }
+
+            @Override
+            public void onComplete() {
+                new ThreadService(
+                        "RegionMapper",
+                        (name, threadRunCondition) ->
+                                new WhileLoop(name,
+                                        () -> true,
+                                        mapperIdleStrategy,
+                                        (message, exception) -> LOGGER.error("{} {}", message, exception),
+                                        step
+                                ),
+                        (name, runnable) -> {
+                            final Thread thread = new Thread(null, runnable, name);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                );
+            }
+        };
+    }
+
+    private static BooleanSupplier[] remove(final BooleanSupplier[] commands, final BooleanSupplier command) {
+        return Arrays.stream(commands).filter(c -> c != command).toArray(BooleanSupplier[]::new);
+    }
 
     private static final Supplier<RegionRingFactory> SYNC = () -> RegionRingFactory.forSync(RegionFactory.SYNC);
 
     public static RegionRingFactory get(final String name) {
+        final int separator = name.indexOf(':');
+        if (separator >= 0) {
+            final String mapperIdleStrategy = name.substring(separator + 1);
+            if ("PARKING".equals(mapperIdleStrategy)) {
+                throw new IllegalArgumentException("Mapper idle strategy PARKING is not supported in " + name +
+                        " as mapping requests do not ring a doorbell, use BACKOFF instead");
+            }
+            return get(name.substring(0, separator), () -> IdleStrategyConfig.get(mapperIdleStrategy));
+        }
+        return get(name, IdleStrategyConfig::busySpin);
+    }
+
+    /**
+     * @param name - SYNC or ASYNC
+     * @param mapperIdleStrategy - supplier of the idle strategy of the ASYNC mapper thread
+     * @return region ring factory
+     */
+    public static RegionRingFactory get(final String name, final Supplier<? extends IdleStrategy> mapperIdleStrategy) {
         switch (name) {
             case "SYNC": return SYNC.get();
-            case "ASYNC" :return ASYNC.get();
+            case "ASYNC" :return async(mapperIdleStrategy.get());
             default: throw new IllegalArgumentException("Unknown regionRingFactory name " + name);
         }
     }
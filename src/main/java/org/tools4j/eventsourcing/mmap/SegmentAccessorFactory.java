@@ -0,0 +1,78 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+
+/**
+ * Factory of region accessor suppliers for the segments of a segmented queue.
+ */
+@FunctionalInterface
+interface SegmentAccessorFactory {
+    /**
+     * Opens index and message files of the segment.
+     * @param segment - segment number
+     * @return region accessor supplier of the segment
+     * @throws IOException when either index and message files could not be mapped.
+     */
+    RegionAccessorSupplier open(long segment) throws IOException;
+
+    static SegmentAccessorFactory forReadOnly(final String directory,
+                                              final String filePrefix,
+                                              final RegionRingFactory regionRingFactory,
+                                              final int regionSize,
+                                              final int regionRingSize,
+                                              final int regionsToMapAhead) {
+        final String segmentDirectory = SegmentManifest.segmentDirectory(directory, filePrefix);
+        return segment -> RegionAccessorSupplier.forReadOnly(
+                segmentDirectory,
+                SegmentManifest.segmentFilePrefix(filePrefix, segment),
+                regionRingFactory,
+                regionSize,
+                regionRingSize,
+                regionsToMapAhead);
+    }
+
+    static SegmentAccessorFactory forReadWrite(final String directory,
+                                               final String filePrefix,
+                                               final boolean clear,
+                                               final RegionRingFactory regionRingFactory,
+                                               final int regionSize,
+                                               final int regionRingSize,
+                                               final int regionsToMapAhead,
+                                               final long maxFileSize) {
+        final String segmentDirectory = SegmentManifest.segmentDirectory(directory, filePrefix);
+        return segment -> RegionAccessorSupplier.forReadWrite(
+                segmentDirectory,
+                SegmentManifest.segmentFilePrefix(filePrefix, segment),
+                clear,
+                regionRingFactory,
+                regionSize,
+                regionRingSize,
+                regionsToMapAhead,
+                maxFileSize);
+    }
+}
@@ -0,0 +1,206 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.IoUtil;
+import org.agrona.concurrent.UnsafeBuffer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Manifest of a segmented queue located in the segment directory together with the segment files.
+ * Each segment consists of an index file and a message file, see {@link RegionAccessorSupplier}, with file prefix
+ * built by {@link #segmentFilePrefix(String, long)}.
+ * The manifest is updated by the appender and read by pollers.
+ *
+ * Manifest layout:
+ *  - first segment (8 bytes) - number of the first available segment, or {@link #NO_SEGMENT}
+ *  - last segment (8 bytes) - number of the last segment, or {@link #NO_SEGMENT}. It is updated with ordered
+ *    semantic after the segment entry is written.
+ *  - reserved up to 64 bytes.
+ *  - segment entries (16 bytes each) in a ring of {@link #CAPACITY} entries addressed by segment number:
+ *    - first index (8 bytes) - index of the first entry of the segment within the queue
+ *    - created time (8 bytes) - time in millis when the segment was started
+ */
+public final class SegmentManifest implements Closeable {
+    public static final long NO_SEGMENT = -1;
+    public static final int CAPACITY = 32 * 1024;
+
+    private static final int FIRST_SEGMENT_OFFSET = 0;
+    private static final int LAST_SEGMENT_OFFSET = 8;
+    private static final int HEADER_LENGTH = 64;
+    private static final int FIRST_INDEX_OFFSET = 0;
+    private static final int CREATED_TIME_OFFSET = 8;
+    private static final int ENTRY_LENGTH = 16;
+    private static final int LENGTH = HEADER_LENGTH + CAPACITY * ENTRY_LENGTH;
+    private static final String MANIFEST_SUFFIX = "_manifest";
+
+    private final MappedByteBuffer mappedByteBuffer;
+    private final UnsafeBuffer manifestBuffer;
+
+    private SegmentManifest(final MappedByteBuffer mappedByteBuffer) {
+        this.mappedByteBuffer = mappedByteBuffer;
+        this.manifestBuffer = new UnsafeBuffer(mappedByteBuffer);
+    }
+
+    /**
+     * Opens the manifest for the appender, creating the segment directory and the manifest if they do not exist.
+     * @param directory - directory of the queue
+     * @param filePrefix - file prefix of the queue
+     * @param clear - true if the manifest is to be cleared
+     * @return manifest
+     * @throws IOException when the manifest could not be mapped
+     */
+    public static SegmentManifest forReadWrite(final String directory, final String filePrefix, final boolean clear) throws IOException {
+        final File segmentDirectory = new File(segmentDirectory(directory, filePrefix));
+        if (!segmentDirectory.isDirectory() && !segmentDirectory.mkdirs()) {
+            throw new IOException("Failed to create segment directory " + segmentDirectory);
+        }
+        try (RandomAccessFile manifestFile = new RandomAccessFile(new File(segmentDirectory, filePrefix + MANIFEST_SUFFIX), "rw")) {
+            final boolean initialise = clear || manifestFile.length() == 0;
+            manifestFile.setLength(LENGTH);
+            final SegmentManifest manifest = new SegmentManifest(manifestFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, LENGTH));
+            if (initialise) {
+                manifest.firstSegment(NO_SEGMENT);
+                manifest.lastSegment(NO_SEGMENT);
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Opens the manifest for pollers.
+     * @param directory - directory of the queue
+     * @param filePrefix - file prefix of the queue
+     * @return manifest
+     * @throws IOException when the manifest could not be mapped
+     */
+    public static SegmentManifest forReadOnly(final String directory, final String filePrefix) throws IOException {
+        final File manifestFile = new File(segmentDirectory(directory, filePrefix), filePrefix + MANIFEST_SUFFIX);
+        try (RandomAccessFile file = new RandomAccessFile(manifestFile, "r")) {
+            if (file.length() < LENGTH) {
+                throw new IllegalArgumentException("Invalid manifest " + manifestFile);
+            }
+            return new SegmentManifest(file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, LENGTH));
+        }
+    }
+
+    /**
+     * @param directory - directory of the queue
+     * @param filePrefix - file prefix of the queue
+     * @return directory of the segment files and the manifest
+     */
+    public static String segmentDirectory(final String directory, final String filePrefix) {
+        return directory + "/" + filePrefix;
+    }
+
+    /**
+     * @param filePrefix - file prefix of the queue
+     * @param segment - segment number
+     * @return file prefix of the segment index and message files
+     */
+    public static String segmentFilePrefix(final String filePrefix, final long segment) {
+        return filePrefix + "_" + segment;
+    }
+
+    public long firstSegment() {
+        return manifestBuffer.getLongVolatile(FIRST_SEGMENT_OFFSET);
+    }
+
+    public void firstSegment(final long segment) {
+        manifestBuffer.putLongOrdered(FIRST_SEGMENT_OFFSET, segment);
+    }
+
+    public long lastSegment() {
+        return manifestBuffer.getLongVolatile(LAST_SEGMENT_OFFSET);
+    }
+
+    public void lastSegment(final long segment) {
+        manifestBuffer.putLongOrdered(LAST_SEGMENT_OFFSET, segment);
+    }
+
+    /**
+     * @param segment - segment number
+     * @return index of the first entry of the segment within the queue
+     */
+    public long firstIndex(final long segment) {
+        return manifestBuffer.getLong(entryOffset(segment) + FIRST_INDEX_OFFSET);
+    }
+
+    /**
+     * @param segment - segment number
+     * @return time in millis when the segment was started
+     */
+    public long createdTimeMillis(final long segment) {
+        return manifestBuffer.getLong(entryOffset(segment) + CREATED_TIME_OFFSET);
+    }
+
+    /**
+     * Writes the entry of the segment, the segment is to be published by {@link #lastSegment(long)} afterwards.
+     * @param segment - segment number
+     * @param firstIndex - index of the first entry of the segment within the queue
+     * @param createdTimeMillis - time in millis when the segment was started
+     */
+    public void segment(final long segment, final long firstIndex, final long createdTimeMillis) {
+        if (firstSegment() != NO_SEGMENT && segment - firstSegment() >= CAPACITY) {
+            throw new IllegalStateException("Number of segments exceeds manifest capacity " + CAPACITY);
+        }
+        manifestBuffer.putLong(entryOffset(segment) + FIRST_INDEX_OFFSET, firstIndex);
+        manifestBuffer.putLong(entryOffset(segment) + CREATED_TIME_OFFSET, createdTimeMillis);
+    }
+
+    /**
+     * Finds the segment containing the entry with the given index.
+     * @param index - index of the entry within the queue
+     * @return number of the last segment with first index less than or equal to the given index, or the first
+     *         segment if the index precedes the first segment.
+     */
+    public long segmentOf(final long index) {
+        long low = firstSegment();
+        long high = lastSegment();
+        while (low < high) {
+            final long middle = (low + high + 1) >>> 1;
+            if (firstIndex(middle) <= index) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    private static int entryOffset(final long segment) {
+        return HEADER_LENGTH + (int) (segment % CAPACITY) * ENTRY_LENGTH;
+    }
+
+    @Override
+    public void close() {
+        IoUtil.unmap(mappedByteBuffer);
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.SleepingMillisIdleStrategy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tools4j.eventsourcing.common.ThreadService;
+import org.tools4j.eventsourcing.common.WhileLoop;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+/**
+ * Retention of the segments of a segmented queue. The first segment is removed from the {@link SegmentManifest}
+ * and its files are deleted, or moved to the archive directory, once
+ *  - the next segment was started more than retainMillis ago, or the total size of the segment files exceeds
+ *    retainBytes, and
+ *  - all registered watermarks are at or past the first entry of the next segment.
+ * The last segment is never removed. Retention runs in own thread, so that neither the appender nor the pollers
+ * are blocked by file deletion.
+ */
+public final class SegmentRetention implements SegmentWatermarks, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentRetention.class);
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    public static final long DEFAULT_CHECK_PERIOD_MILLIS = 1000;
+    private static final String[] FILE_SUFFIXES = {"_index", "_message"};
+
+    private final SegmentManifest manifest;
+    private final String segmentDirectory;
+    private final String filePrefix;
+    private final String archiveDirectory;
+    private final long retainMillis;
+    private final long retainBytes;
+    private final List<LongSupplier> watermarks = new CopyOnWriteArrayList<>();
+    private final ThreadService retentionService;
+
+    /**
+     * Starts segment retention.
+     * @param directory - directory of the queue
+     * @param filePrefix - file prefix of the queue
+     * @param retainMillis - min time in millis to retain a segment after the next segment was started,
+     *                     or {@link #UNLIMITED}
+     * @param retainBytes - max total size of the segment files, or {@link #UNLIMITED}
+     * @param archiveDirectory - directory to move the files of removed segments to, or null to delete them
+     * @param checkPeriodMillis - period in millis of checking the segments
+     * @param initialWatermarks - watermarks registered before the first check, such as positions of pollers created
+     *                          after the retention is started
+     * @throws IOException when the manifest could not be mapped.
+     */
+    public SegmentRetention(final String directory,
+                            final String filePrefix,
+                            final long retainMillis,
+                            final long retainBytes,
+                            final String archiveDirectory,
+                            final long checkPeriodMillis,
+                            final LongSupplier... initialWatermarks) throws IOException {
+        this.manifest = SegmentManifest.forReadWrite(directory, filePrefix, false);
+        this.segmentDirectory = SegmentManifest.segmentDirectory(directory, filePrefix);
+        this.filePrefix = Objects.requireNonNull(filePrefix);
+        this.archiveDirectory = archiveDirectory;
+        this.retainMillis = retainMillis;
+        this.retainBytes = retainBytes;
+
+        if (archiveDirectory != null) {
+            Files.createDirectories(new File(archiveDirectory).toPath());
+        }
+        for (final LongSupplier watermark : initialWatermarks) {
+            register(watermark);
+        }
+
+        this.retentionService = new ThreadService(
+                "SegmentRetention",
+                (name, threadRunCondition) ->
+                        new WhileLoop(name,
+                                threadRunCondition,
+                                new SleepingMillisIdleStrategy(checkPeriodMillis)::idle,
+                                (message, exception) -> LOGGER.error("{} {}", message, exception),
+                                this::removeFirstSegment
+                        ),
+                (name, runnable) -> {
+                    final Thread thread = new Thread(null, runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+    }
+
+    @Override
+    public void register(final LongSupplier watermark) {
+        watermarks.add(Objects.requireNonNull(watermark));
+    }
+
+    @Override
+    public void deregister(final LongSupplier watermark) {
+        watermarks.remove(watermark);
+    }
+
+    private boolean removeFirstSegment() {
+        final long firstSegment = manifest.firstSegment();
+        final long lastSegment = manifest.lastSegment();
+        if (firstSegment == SegmentManifest.NO_SEGMENT || firstSegment >= lastSegment) {
+            return false;
+        }
+        if (!expired(firstSegment, lastSegment) || manifest.firstIndex(firstSegment + 1) > watermark()) {
+            return false;
+        }
+        manifest.firstSegment(firstSegment + 1);
+        for (final String fileSuffix : FILE_SUFFIXES) {
+            remove(segmentFile(firstSegment, fileSuffix));
+        }
+        LOGGER.info("Removed segment {} of {}", firstSegment, filePrefix);
+        return true;
+    }
+
+    private boolean expired(final long firstSegment, final long lastSegment) {
+        if (System.currentTimeMillis() - manifest.createdTimeMillis(firstSegment + 1) >= retainMillis) {
+            return true;
+        }
+        if (retainBytes != UNLIMITED) {
+            long bytes = 0;
+            for (long segment = firstSegment; segment <= lastSegment; segment++) {
+                for (final String fileSuffix : FILE_SUFFIXES) {
+                    bytes += segmentFile(segment, fileSuffix).toFile().length();
+                }
+            }
+            return bytes > retainBytes;
+        }
+        return false;
+    }
+
+    private long watermark() {
+        long watermark = Long.MAX_VALUE;
+        for (final LongSupplier supplier : watermarks) {
+            watermark = Math.min(watermark, supplier.getAsLong());
+        }
+        return watermark;
+    }
+
+    private Path segmentFile(final long segment, final String fileSuffix) {
+        return new File(segmentDirectory, SegmentManifest.segmentFilePrefix(filePrefix, segment) + fileSuffix).toPath();
+    }
+
+    private void remove(final Path file) {
+        try {
+            if (archiveDirectory == null) {
+                Files.deleteIfExists(file);
+            } else {
+                Files.move(file, new File(archiveDirectory, file.getFileName().toString()).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to remove segment file " + file, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        retentionService.shutdown();
+        manifest.close();
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.collections.LongLongConsumer;
+import org.junit.Test;
+import org.tools4j.eventsourcing.api.EventProcessingState;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.SnapshotLoader;
+import org.tools4j.eventsourcing.api.SnapshotStore;
+import org.tools4j.eventsourcing.api.SnapshotWriter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class BackgroundSnapshotStoreTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    private final SlowSnapshotStore delegate = new SlowSnapshotStore();
+
+    @Test
+    public void isNotReadyWhileSnapshotIsWritten() throws Exception {
+        final BackgroundSnapshotStore store = new BackgroundSnapshotStore(delegate);
+        try {
+            store.write(state(5, 2, 6), new CounterApplication().snapshotWriter());
+            assertThat(delegate.writing.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+
+            assertThat(store.isReady()).isFalse();
+            assertThatThrownBy(() -> store.write(state(6, 2, 7), new CounterApplication().snapshotWriter()))
+                    .isInstanceOf(IllegalStateException.class);
+
+            delegate.release.countDown();
+            awaitReady(store);
+            assertThat(delegate.indices).containsExactly(5L);
+        } finally {
+            delegate.release.countDown();
+            store.close();
+        }
+    }
+
+    @Test
+    public void writesPendingSnapshotOnClose() throws Exception {
+        delegate.release.countDown();
+        //the snapshot thread is idle while the snapshot is handed off and closed
+        final BackgroundSnapshotStore store = new BackgroundSnapshotStore(delegate, 500);
+
+        store.write(state(5, 2, 6), new CounterApplication().snapshotWriter());
+        store.close();
+
+        assertThat(delegate.indices).containsExactly(5L);
+        assertThat(delegate.closed).isTrue();
+    }
+
+    @Test
+    public void writesCopyOfCompletedDownstreamState() throws Exception {
+        final CounterApplication application = new CounterApplication();
+        application.counters.put(1, 10L);
+        final DefaultEventProcessingState state = state(5, 2, 6);
+        final BackgroundSnapshotStore store = new BackgroundSnapshotStore(delegate);
+        try {
+            store.write(state, application.snapshotCapture().capture());
+            assertThat(delegate.writing.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)).isTrue();
+
+            //processing continues while the snapshot is written
+            state.accept(6, 2, 7, 1100);
+            state.accept(7, 4, 1, 1200);
+            application.counters.put(1, 11L);
+            delegate.release.countDown();
+            awaitReady(store);
+
+            assertThat(delegate.indices).containsExactly(5L);
+            assertThat(delegate.sourceSeqs).containsEntry(2L, 6L).containsEntry(3L, 11L).hasSize(2);
+            assertThat(delegate.image.getInt(0)).isEqualTo(1);
+            assertThat(delegate.image.getLong(4)).isEqualTo(10L);
+        } finally {
+            delegate.release.countDown();
+            store.close();
+        }
+    }
+
+    private static DefaultEventProcessingState state(final long index, final int source, final long sourceSeq) {
+        final DefaultEventProcessingState state = new DefaultEventProcessingState(System::nanoTime);
+        state.acceptCheckpoint(3, 11);
+        state.accept(index, source, sourceSeq, 1000);
+        return state;
+    }
+
+    private static void awaitReady(final SnapshotStore store) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!store.isReady() && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+        assertThat(store.isReady()).isTrue();
+    }
+
+    /**
+     * Snapshot store blocking writes until released, recording the written state and image.
+     */
+    private static final class SlowSnapshotStore implements SnapshotStore {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Long> indices = new CopyOnWriteArrayList<>();
+        final Map<Long, Long> sourceSeqs = new ConcurrentHashMap<>();
+        final ExpandableArrayBuffer image = new ExpandableArrayBuffer(64);
+        volatile boolean closed;
+
+        @Override
+        public void write(final EventProcessingState completedDownstreamState, final SnapshotWriter writer) {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            completedDownstreamState.forEachSourceEntry(sourceSeqs::put);
+            writer.write(image, 0);
+            indices.add(completedDownstreamState.id());
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public long load(final Poller.IndexConsumer lastEntryConsumer,
+                         final LongLongConsumer sourceSeqConsumer,
+                         final SnapshotLoader loader) {
+            return NO_SNAPSHOT;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
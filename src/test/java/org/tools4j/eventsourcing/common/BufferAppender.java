@@ -0,0 +1,73 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.DirectBuffer;
+import org.agrona.ExpandableArrayBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.IndexedClaimingAppender;
+
+/**
+ * Claiming appender encoding messages into a heap buffer, keeping the length of the last committed message
+ * and the number of commits. If relocating, an extended claim is moved to a new heap buffer returned instead
+ * of the claimed buffer.
+ */
+final class BufferAppender implements IndexedClaimingAppender {
+    private final UnsafeBuffer claimBuffer = new UnsafeBuffer(0, 0);
+    ExpandableArrayBuffer buffer = new ExpandableArrayBuffer(64);
+    boolean relocating;
+    int length;
+    int commits;
+
+    @Override
+    public MutableDirectBuffer claim(final int length) {
+        return extendClaim(length, 0);
+    }
+
+    @Override
+    public MutableDirectBuffer extendClaim(final int length, final int encodedLength) {
+        if (relocating) {
+            final ExpandableArrayBuffer relocated = new ExpandableArrayBuffer(length);
+            relocated.putBytes(0, buffer, 0, encodedLength);
+            buffer = relocated;
+            return new UnsafeBuffer(relocated, 0, relocated.capacity());
+        }
+        buffer.checkLimit(length);
+        claimBuffer.wrap(buffer, 0, buffer.capacity());
+        return claimBuffer;
+    }
+
+    @Override
+    public void commit(final int source, final long sourceSeq, final long eventTimeNanos, final int length) {
+        this.length = length;
+        commits++;
+    }
+
+    @Override
+    public void accept(final int source, final long sourceSeq, final long eventTimeNanos,
+                       final DirectBuffer buffer, final int offset, final int length) {
+        throw new UnsupportedOperationException();
+    }
+}
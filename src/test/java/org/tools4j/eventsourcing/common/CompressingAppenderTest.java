@@ -0,0 +1,158 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.tools4j.eventsourcing.sbe.CompressedPayloadDecoder;
+import org.tools4j.eventsourcing.sbe.MessageHeaderDecoder;
+import org.tools4j.eventsourcing.sbe.SinglePayloadDecoder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CompressingAppenderTest {
+    private final BufferAppender bufferAppender = new BufferAppender();
+    private final List<String> polled = new ArrayList<>();
+
+    @Test
+    public void compressesRepetitiveTransaction() throws Exception {
+        final MultiPayloadAppender appender = new MultiPayloadAppender(
+                new CompressingAppender(bufferAppender, CompressionDictionary.NONE));
+        final UnsafeBuffer payload = new UnsafeBuffer(new byte[8]);
+        final int entries = 1000;
+
+        appender.init(1, 1, 1, false);
+        for (int i = 0; i < entries; i++) {
+            payload.putLong(0, i % 10);
+            appender.accept(payload, 0, 8);
+        }
+        appender.commit();
+
+        assertThat(templateId()).isEqualTo(CompressedPayloadDecoder.TEMPLATE_ID);
+        assertThat(bufferAppender.length).isLessThan(entries * 8 / 10);
+        final List<Long> values = new ArrayList<>();
+        final int done = new PayloadBufferPoller().poll(bufferAppender.buffer, 0, bufferAppender.length,
+                (buffer, offset, length) -> values.add(buffer.getLong(offset)));
+        assertThat(done).isEqualTo(entries);
+        for (int i = 0; i < entries; i++) {
+            assertThat(values.get(i)).isEqualTo(i % 10);
+        }
+    }
+
+    @Test
+    public void compressesWithDictionary() throws Exception {
+        final CompressionDictionary.Trainer trainer = new CompressionDictionary.Trainer(1024);
+        for (int i = 0; i < 3; i++) {
+            trainer.accept(message(i), 0, message(i).capacity());
+        }
+        final CompressionDictionary dictionary = trainer.dictionary();
+
+        final int withoutDictionary = appendCompressed(CompressionDictionary.NONE, 42);
+        final int withDictionary = appendCompressed(dictionary, 42);
+
+        assertThat(withDictionary).isLessThan(withoutDictionary);
+        assertThat(new PayloadBufferPoller(dictionary).poll(bufferAppender.buffer, 0, bufferAppender.length,
+                this::addPolled)).isEqualTo(1);
+        assertThat(polled).containsExactly(text(42));
+    }
+
+    @Test
+    public void rejectsMessageCompressedWithOtherDictionary() throws Exception {
+        final CompressionDictionary dictionary = CompressionDictionary.of(text(1).getBytes(StandardCharsets.US_ASCII));
+        appendCompressed(dictionary, 2);
+
+        assertThat(templateId()).isEqualTo(CompressedPayloadDecoder.TEMPLATE_ID);
+        assertThatThrownBy(() -> new PayloadBufferPoller().poll(bufferAppender.buffer, 0, bufferAppender.length,
+                this::addPolled)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void commitsShortAndIncompressibleMessagesUncompressed() throws Exception {
+        final SinglePayloadAppender appender = new SinglePayloadAppender(
+                new CompressingAppender(bufferAppender, CompressionDictionary.NONE));
+        final byte[] random = new byte[200];
+        new Random(1).nextBytes(random);
+
+        appender.accept(1, 1, 1, new UnsafeBuffer(new byte[16]), 0, 16);
+        assertThat(templateId()).isEqualTo(SinglePayloadDecoder.TEMPLATE_ID);
+
+        appender.accept(1, 2, 2, new UnsafeBuffer(random), 0, random.length);
+        assertThat(templateId()).isEqualTo(SinglePayloadDecoder.TEMPLATE_ID);
+    }
+
+    @Test
+    public void decompressesMessagesOfAnyContent() throws Exception {
+        final SinglePayloadAppender appender = new SinglePayloadAppender(
+                new CompressingAppender(bufferAppender, CompressionDictionary.NONE, 0));
+        final PayloadBufferPoller poller = new PayloadBufferPoller();
+        final Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            final byte[] message = new byte[random.nextInt(5000)];
+            final int alphabet = 1 + random.nextInt(255);
+            for (int j = 0; j < message.length; j++) {
+                message[j] = (byte) random.nextInt(alphabet);
+            }
+            appender.accept(1, i, i, new UnsafeBuffer(message), 0, message.length);
+
+            final byte[][] decompressed = new byte[1][];
+            poller.poll(bufferAppender.buffer, 0, bufferAppender.length, (buffer, offset, length) -> {
+                decompressed[0] = new byte[length];
+                buffer.getBytes(offset, decompressed[0]);
+            });
+            assertThat(decompressed[0]).isEqualTo(message);
+        }
+    }
+
+    private int appendCompressed(final CompressionDictionary dictionary, final int messageId) {
+        final SinglePayloadAppender appender = new SinglePayloadAppender(
+                new CompressingAppender(bufferAppender, dictionary));
+        final DirectBuffer message = message(messageId);
+        appender.accept(1, messageId, messageId, message, 0, message.capacity());
+        return bufferAppender.length;
+    }
+
+    private int templateId() {
+        return new MessageHeaderDecoder().wrap(bufferAppender.buffer, 0).templateId();
+    }
+
+    private void addPolled(final DirectBuffer buffer, final int offset, final int length) {
+        polled.add(buffer.getStringWithoutLengthAscii(offset, length));
+    }
+
+    private static DirectBuffer message(final int id) {
+        return new UnsafeBuffer(text(id).getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String text(final int id) {
+        return "OrderEvent{orderId=" + id + ", account=ACCOUNT-" + (id % 3) + ", side=BUY, symbol=AUDUSD, " +
+                "quantity=1000000, price=0.7512" + id + ", timeInForce=GOOD_TILL_CANCEL}";
+    }
+}
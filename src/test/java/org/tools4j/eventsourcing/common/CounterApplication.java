@@ -0,0 +1,121 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.DirectBuffer;
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.SnapshotCapture;
+import org.tools4j.eventsourcing.api.SnapshotLoader;
+import org.tools4j.eventsourcing.api.SnapshotWriter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Application keeping a counter per key, changed by messages of a key (4 bytes) and an amount (8 bytes).
+ * Amounts are folded into the counter in order, so equal counters show that the messages of each key have been
+ * applied in the same order. The upstream processor applies and appends upstream messages, the downstream
+ * processor applies replayed downstream messages, recording sourceSeqs of the processed and the replayed entries.
+ */
+final class CounterApplication {
+    static final int MESSAGE_LENGTH = 12;
+    static final MessageConsumer.Partitioner PARTITIONER =
+            (buffer, offset, length, partitions) -> Math.floorMod(buffer.getInt(offset), partitions);
+
+    final Map<Integer, Long> counters = new ConcurrentHashMap<>();
+    final List<Long> processed = new ArrayList<>();
+    final List<Long> replayed = new ArrayList<>();
+
+    void apply(final DirectBuffer buffer, final int offset, final int length) {
+        counters.merge(buffer.getInt(offset), buffer.getLong(offset + 4), (counter, amount) -> counter * 31 + amount);
+    }
+
+    MessageConsumer.UpstreamFactory upstreamFactory() {
+        return (downstreamAppender, currentUpstreamState, completedDownstreamState) -> (buffer, offset, length) -> {
+            processed.add(currentUpstreamState.sourceSeq());
+            apply(buffer, offset, length);
+            downstreamAppender.accept(buffer, offset, length);
+        };
+    }
+
+    MessageConsumer.DownstreamFactory downstreamFactory() {
+        return (currentDownstreamState, completedDownstreamState) -> (buffer, offset, length) -> {
+            replayed.add(currentDownstreamState.sourceSeq());
+            apply(buffer, offset, length);
+        };
+    }
+
+    /**
+     * @return recovery consumers applying messages of own partition, keys are partitioned by {@link #PARTITIONER}
+     */
+    MessageConsumer.RecoveryFactory recoveryFactory() {
+        return partition -> this::apply;
+    }
+
+    SnapshotWriter snapshotWriter() {
+        return (buffer, offset) -> write(counters, buffer, offset);
+    }
+
+    SnapshotCapture snapshotCapture() {
+        return () -> {
+            final Map<Integer, Long> image = new HashMap<>(counters);
+            return (buffer, offset) -> write(image, buffer, offset);
+        };
+    }
+
+    SnapshotLoader snapshotLoader() {
+        return (buffer, offset, length) -> {
+            counters.clear();
+            for (int entryOffset = offset; entryOffset < offset + length; entryOffset += MESSAGE_LENGTH) {
+                counters.put(buffer.getInt(entryOffset), buffer.getLong(entryOffset + 4));
+            }
+        };
+    }
+
+    private static int write(final Map<Integer, Long> counters, final MutableDirectBuffer buffer, final int offset) {
+        int length = 0;
+        for (final Map.Entry<Integer, Long> counter : counters.entrySet()) {
+            buffer.putInt(offset + length, counter.getKey());
+            buffer.putLong(offset + length + 4, counter.getValue());
+            length += MESSAGE_LENGTH;
+        }
+        return length;
+    }
+
+    static UnsafeBuffer message(final int key, final long amount) {
+        return message(key, amount, MESSAGE_LENGTH);
+    }
+
+    static UnsafeBuffer message(final int key, final long amount, final int length) {
+        final UnsafeBuffer message = new UnsafeBuffer(new byte[length]);
+        message.putInt(0, key);
+        message.putLong(4, amount);
+        return message;
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.SnapshotStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileSnapshotStoreTest {
+    private static final String PREFIX = "app";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void writesSnapshotFileByRenamingTempFile() throws Exception {
+        final CounterApplication application = new CounterApplication();
+        application.counters.put(1, 10L);
+        application.counters.put(2, 20L);
+        final FileSnapshotStore store = store(2);
+
+        store.write(state(5, 7, 42, 1000), application.snapshotWriter());
+
+        assertThat(folder.getRoot().list()).containsExactly(PREFIX + "_snapshot_5");
+
+        final CounterApplication restored = new CounterApplication();
+        final DefaultEventProcessingState restoredState = new DefaultEventProcessingState(System::nanoTime);
+        final Map<Long, Long> sourceSeqs = new HashMap<>();
+        final long index = store(2).load(restoredState, sourceSeqs::put, restored.snapshotLoader());
+
+        assertThat(index).isEqualTo(5);
+        assertThat(restoredState.id()).isEqualTo(5);
+        assertThat(restoredState.source()).isEqualTo(7);
+        assertThat(restoredState.sourceSeq()).isEqualTo(42);
+        assertThat(restoredState.eventTimeNanos()).isEqualTo(1000);
+        assertThat(sourceSeqs).containsEntry(7L, 42L).containsEntry(3L, 11L).hasSize(2);
+        assertThat(restored.counters).isEqualTo(application.counters);
+    }
+
+    @Test
+    public void loadsNoSnapshotFromEmptyDirectory() throws Exception {
+        final long index = store(2).load((id, source, sourceSeq, eventTimeNanos) -> {}, (source, sourceSeq) -> {},
+                (buffer, offset, length) -> {});
+
+        assertThat(index).isEqualTo(SnapshotStore.NO_SNAPSHOT);
+    }
+
+    @Test
+    public void skipsInvalidSnapshotsOnLoad() throws Exception {
+        final CounterApplication application = new CounterApplication();
+        final FileSnapshotStore store = store(3);
+        application.counters.put(1, 10L);
+        store.write(state(3, 7, 4, 1000), application.snapshotWriter());
+        application.counters.put(1, 11L);
+        store.write(state(6, 7, 8, 2000), application.snapshotWriter());
+        application.counters.put(1, 12L);
+        store.write(state(9, 7, 12, 3000), application.snapshotWriter());
+
+        //truncated snapshot, snapshot with wrong magic and unfinished temp file
+        truncate(new File(folder.getRoot(), PREFIX + "_snapshot_9"));
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder.getRoot(), PREFIX + "_snapshot_6"), "rw")) {
+            file.writeInt(0);
+        }
+        assertThat(new File(folder.getRoot(), PREFIX + "_snapshot_12.tmp").createNewFile()).isTrue();
+
+        final CounterApplication restored = new CounterApplication();
+        final long index = store(3).load((id, source, sourceSeq, eventTimeNanos) -> {}, (source, sourceSeq) -> {},
+                restored.snapshotLoader());
+
+        assertThat(index).isEqualTo(3);
+        assertThat(restored.counters).containsEntry(1, 10L).hasSize(1);
+    }
+
+    @Test
+    public void retainsLatestSnapshots() throws Exception {
+        final CounterApplication application = new CounterApplication();
+        final FileSnapshotStore store = store(2);
+        for (long index = 1; index <= 4; index++) {
+            application.counters.put(1, index);
+            store.write(state(index, 7, index, 1000), application.snapshotWriter());
+        }
+
+        assertThat(folder.getRoot().list()).containsOnly(PREFIX + "_snapshot_3", PREFIX + "_snapshot_4");
+    }
+
+    @Test
+    public void watermarkFollowsLatestSnapshot() throws Exception {
+        final FileSnapshotStore store = store(2);
+        assertThat(store.watermark()).isEqualTo(0);
+
+        store.write(state(4, 7, 4, 1000), new CounterApplication().snapshotWriter());
+        assertThat(store.watermark()).isEqualTo(5);
+
+        assertThat(store(2).watermark()).isEqualTo(5);
+    }
+
+    private FileSnapshotStore store(final int retainSnapshots) throws IOException {
+        return new FileSnapshotStore(folder.getRoot().getPath(), PREFIX, retainSnapshots);
+    }
+
+    private static DefaultEventProcessingState state(final long index, final int source, final long sourceSeq,
+                                                     final long eventTimeNanos) {
+        final DefaultEventProcessingState state = new DefaultEventProcessingState(System::nanoTime);
+        state.acceptCheckpoint(3, 11);
+        state.accept(index, source, sourceSeq, eventTimeNanos);
+        return state;
+    }
+
+    private static void truncate(final File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(randomAccessFile.length() - 1);
+        }
+    }
+}
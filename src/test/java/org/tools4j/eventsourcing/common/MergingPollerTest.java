@@ -0,0 +1,127 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+import org.tools4j.eventsourcing.api.IndexedPollerFactory;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MergingPollerTest {
+    private final List<String> polled = new ArrayList<>();
+    private final MessageConsumer consumer = (buffer, offset, length) -> polled.add(buffer.getInt(offset) + "@" + buffer.getLong(offset + 4));
+
+    @Test
+    public void pollsEntriesByEventTime() throws Exception {
+        final Poller poller = new MergingPoller(Poller.Options.builder().build(), MergingPoller.Ordering.EVENT_TIME,
+                queue(0, 5, 10, 30), queue(1, 1, 10, 40), queue(2), queue(3, 2, 3, 20, 50));
+
+        while (poller.poll(consumer) > 0);
+
+        assertThat(polled).containsExactly("1@1", "3@2", "3@3", "0@5", "0@10", "1@10", "3@20", "0@30", "1@40", "3@50");
+    }
+
+    @Test
+    public void pollsQueuesInTurn() throws Exception {
+        final Poller poller = new MergingPoller(Poller.Options.builder().build(), MergingPoller.Ordering.ROUND_ROBIN,
+                queue(0, 5, 10, 30), queue(1), queue(2, 1, 2));
+
+        while (poller.poll(consumer) > 0);
+
+        assertThat(polled).containsExactly("0@5", "2@1", "0@10", "2@2", "0@30");
+    }
+
+    @Test
+    public void pausedEarliestEntryPausesPolling() throws Exception {
+        final boolean[] paused = {true};
+        final Poller poller = new MergingPoller(Poller.Options.builder()
+                .pauseWhen((index, source, sourceSeq, eventTimeNanos) -> source == 0 && paused[0])
+                .build(), MergingPoller.Ordering.EVENT_TIME, queue(0, 1, 4), queue(1, 2, 3));
+
+        assertThat(poller.poll(consumer)).isEqualTo(0);
+        assertThat(poller.poll(consumer)).isEqualTo(0);
+        paused[0] = false;
+        while (poller.poll(consumer) > 0);
+
+        assertThat(polled).containsExactly("0@1", "1@2", "1@3", "0@4");
+    }
+
+    @Test
+    public void seeksQueuesToEventTime() throws Exception {
+        final Poller poller = new MergingPoller(Poller.Options.builder().build(), MergingPoller.Ordering.EVENT_TIME,
+                queue(0, 5, 10, 30), queue(1, 1, 10, 40), queue(2, 2, 3, 20, 50));
+
+        poller.poll(consumer);
+        poller.poll(consumer);
+        polled.clear();
+
+        assertThat(poller.seekToEventTime(10)).isEqualTo(4);
+        while (poller.poll(consumer) > 0);
+
+        assertThat(polled).containsExactly("0@10", "1@10", "2@20", "0@30", "1@40", "2@50");
+    }
+
+    /**
+     * @param source - source of the queue entries
+     * @param eventTimes - event times of the queue entries
+     * @return poller factory of a queue of entries with the source and event time encoded in the message
+     */
+    private static IndexedPollerFactory queue(final int source, final long... eventTimes) {
+        return options -> new Poller() {
+            final UnsafeBuffer message = new UnsafeBuffer(new byte[12]);
+            int index;
+
+            @Override
+            public int poll(final MessageConsumer consumer) {
+                if (index == eventTimes.length) return 0;
+                final long eventTimeNanos = eventTimes[index];
+                if (options.skipWhen().test(index, source, index, eventTimeNanos)) {
+                    options.onProcessingSkipped().accept(index++, source, index, eventTimeNanos);
+                    return 0;
+                }
+                if (options.pauseWhen().test(index, source, index, eventTimeNanos)) return 0;
+                options.onProcessingStart().accept(index, source, index, eventTimeNanos);
+                message.putInt(0, source);
+                message.putLong(4, eventTimeNanos);
+                consumer.accept(message, 0, 12);
+                options.onProcessingComplete().accept(index, source, index, eventTimeNanos);
+                index++;
+                return 1;
+            }
+
+            @Override
+            public long seekToEventTime(final long timeNanos) {
+                index = 0;
+                while (index < eventTimes.length && eventTimes[index] < timeNanos) index++;
+                return index;
+            }
+        };
+    }
+}
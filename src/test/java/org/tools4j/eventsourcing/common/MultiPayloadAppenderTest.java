@@ -0,0 +1,144 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MultiPayloadAppenderTest {
+    private final BufferAppender bufferAppender = new BufferAppender();
+    private final MultiPayloadAppender appender = new MultiPayloadAppender(bufferAppender);
+    private final PayloadBufferPoller bufferPoller = new PayloadBufferPoller();
+    private final UnsafeBuffer payload = new UnsafeBuffer(new byte[8]);
+    private final List<Long> polled = new ArrayList<>();
+
+    @Test
+    public void commitsSmallTransaction() throws Exception {
+        final int committed = appendEntries(3);
+
+        assertThat(committed).isEqualTo(3);
+        assertThat(poll()).isEqualTo(3);
+        assertThat(polled).containsExactly(0L, 1L, 2L);
+    }
+
+    @Test
+    public void commitsTransactionExceedingEntriesGroupInOneMessage() throws Exception {
+        final int entries = MultiPayloadAppender.MAX_FRAME_ENTRIES * 2 + 10;
+
+        final int committed = appendEntries(entries);
+
+        assertThat(committed).isEqualTo(entries);
+        assertThat(bufferAppender.commits).isEqualTo(1);
+        assertThat(poll()).isEqualTo(entries);
+        assertThat(polled).hasSize(entries);
+        for (int i = 0; i < entries; i++) {
+            assertThat(polled.get(i)).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void commitsClaimedEntriesExceedingEntriesGroup() throws Exception {
+        final int entries = MultiPayloadAppender.MAX_FRAME_ENTRIES + 1;
+
+        appender.init(1, 1, 1, false);
+        for (int i = 0; i < entries; i++) {
+            appender.claim(8).putLong(0, i);
+        }
+        appender.commit();
+
+        assertThat(poll()).isEqualTo(entries);
+        assertThat(polled.get(entries - 1)).isEqualTo(entries - 1);
+    }
+
+    @Test
+    public void continuesEncodingInBufferOfExtendedClaim() throws Exception {
+        bufferAppender.relocating = true;
+
+        appender.init(1, 1, 1, false);
+        for (int i = 0; i < 50; i++) {
+            payload.putLong(0, i);
+            appender.accept(payload, 0, 8);
+            appender.claim(8).putLong(0, i + 50);
+        }
+        assertThat(appender.commit()).isEqualTo(100);
+
+        assertThat(poll()).isEqualTo(100);
+        for (int i = 0; i < 50; i++) {
+            assertThat(polled.get(i * 2)).isEqualTo(i);
+            assertThat(polled.get(i * 2 + 1)).isEqualTo(i + 50);
+        }
+    }
+
+    @Test
+    public void commitsEmptyTransactionIfAllowed() throws Exception {
+        appender.init(1, 1, 1, true);
+
+        assertThat(appender.commit()).isEqualTo(0);
+        assertThat(bufferAppender.commits).isEqualTo(1);
+        assertThat(poll()).isEqualTo(1);
+        assertThat(polled).isEmpty();
+    }
+
+    @Test
+    public void commitsNoopsOfMultipleSourcesInOneCheckpoint() throws Exception {
+        final int noops = MultiPayloadAppender.MAX_FRAME_ENTRIES + 2;
+        final List<String> checkpointSourceSeqs = new ArrayList<>();
+
+        appender.init(1, 10, 1, true);
+        for (int source = 2; source <= noops; source++) {
+            appender.acceptNoop(source, source * 10);
+        }
+
+        assertThat(appender.commit()).isEqualTo(0);
+        assertThat(bufferAppender.commits).isEqualTo(1);
+        assertThat(bufferPoller.poll(bufferAppender.buffer, 0, bufferAppender.length,
+                (buffer, offset, length) -> polled.add(buffer.getLong(offset)),
+                (source, sourceSeq) -> checkpointSourceSeqs.add(source + ":" + sourceSeq))).isEqualTo(1);
+        assertThat(polled).isEmpty();
+        assertThat(checkpointSourceSeqs).hasSize(noops - 1);
+        assertThat(checkpointSourceSeqs.get(0)).isEqualTo("2:20");
+        assertThat(checkpointSourceSeqs.get(noops - 2)).isEqualTo(noops + ":" + noops * 10);
+        assertThatThrownBy(() -> appender.accept(payload, 0, 8)).isInstanceOf(IllegalStateException.class);
+    }
+
+    private int appendEntries(final int entries) {
+        appender.init(1, 1, 1, false);
+        for (int i = 0; i < entries; i++) {
+            payload.putLong(0, i);
+            appender.accept(payload, 0, 8);
+        }
+        return appender.commit();
+    }
+
+    private int poll() {
+        return bufferPoller.poll(bufferAppender.buffer, 0, bufferAppender.length,
+                (buffer, offset, length) -> polled.add(buffer.getLong(offset)));
+    }
+}
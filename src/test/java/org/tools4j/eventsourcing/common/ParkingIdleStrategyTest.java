@@ -0,0 +1,103 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParkingIdleStrategyTest {
+    private static final long MAX_PARK_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    @Test
+    public void idle_returns_without_parking_when_doorbell_was_rung() throws Exception {
+        final Doorbell doorbell = new Doorbell();
+        final ParkingIdleStrategy idleStrategy = new ParkingIdleStrategy(doorbell, 0, 0, MAX_PARK_NANOS);
+
+        doorbell.ring();
+        final long start = System.nanoTime();
+        idleStrategy.idle();
+
+        assertThat(System.nanoTime() - start).isLessThan(MAX_PARK_NANOS);
+    }
+
+    @Test
+    public void idle_parks_until_doorbell_is_rung() throws Exception {
+        final Doorbell doorbell = new Doorbell();
+        final ParkingIdleStrategy idleStrategy = new ParkingIdleStrategy(doorbell, 0, 0, MAX_PARK_NANOS);
+        final CountDownLatch idled = new CountDownLatch(1);
+
+        final Thread idler = new Thread(() -> {
+            final long sequence = doorbell.sequence();
+            while (doorbell.sequence() == sequence) {
+                idleStrategy.idle();
+            }
+            idled.countDown();
+        });
+        idler.start();
+        while (idler.getState() != Thread.State.TIMED_WAITING) {
+            Thread.yield();
+        }
+        doorbell.ring();
+
+        assertThat(idled.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void ring_advances_sequence_only_while_waiters_are_registered() throws Exception {
+        final Doorbell doorbell = new Doorbell();
+
+        doorbell.ring();
+        assertThat(doorbell.sequence()).isEqualTo(0);
+
+        doorbell.register();
+        doorbell.ring();
+        assertThat(doorbell.sequence()).isEqualTo(1);
+
+        doorbell.deregister();
+        doorbell.ring();
+        assertThat(doorbell.sequence()).isEqualTo(1);
+    }
+
+    @Test
+    public void idle_registers_waiter_before_parking_until_reset() throws Exception {
+        final Doorbell doorbell = new Doorbell();
+        final ParkingIdleStrategy idleStrategy = new ParkingIdleStrategy(doorbell, 1, 0, MAX_PARK_NANOS);
+
+        idleStrategy.idle();
+        doorbell.ring();
+        assertThat(doorbell.sequence()).isEqualTo(0);
+
+        idleStrategy.idle();
+        doorbell.ring();
+        assertThat(doorbell.sequence()).isEqualTo(1);
+
+        idleStrategy.reset();
+        doorbell.ring();
+        assertThat(doorbell.sequence()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,159 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.mmap.MmapBuilder;
+import org.tools4j.eventsourcing.mmap.RegionRingFactoryConfig;
+import org.tools4j.nobark.loop.Step;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PartitionedRecoveryStepTest {
+    private static final int PARTITIONS = 4;
+    private static final int KEYS = 10;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final CounterApplication recovered = new CounterApplication();
+    private final CounterApplication serial = new CounterApplication();
+    private final DefaultEventProcessingState completedState = new DefaultEventProcessingState(System::nanoTime);
+
+    private IndexedQueue queue;
+    private Poller poller;
+
+    @Before
+    public void setUp() throws Exception {
+        queue = MmapBuilder.create()
+                .directory(folder.getRoot().getPath())
+                .filePrefix("downstream")
+                .regionRingFactory(RegionRingFactoryConfig.get("SYNC"))
+                .regionSize(4096)
+                .maxFileSize(64L * 1024 * 1024)
+                .buildQueue();
+        poller = queue.createPoller(Poller.Options.builder().onProcessingComplete(completedState).build());
+    }
+
+    @After
+    public void tearDown() {
+        poller.close();
+        queue.close();
+    }
+
+    @Test
+    public void recoversSameStateAsSerialReplay() throws Exception {
+        append(1, 1000, CounterApplication.MESSAGE_LENGTH);
+        final Step step = recoveryStep(recovered.recoveryFactory(), PartitionedRecoveryStep.DEFAULT_PARTITION_BUFFER_SIZE, 16);
+
+        performUntilIdle(step);
+        assertThat(recovered.counters).hasSize(KEYS).isEqualTo(serial.counters);
+
+        //the downstream step continues from the position of the recovery
+        append(1001, 1100, CounterApplication.MESSAGE_LENGTH);
+        performUntilIdle(step);
+        assertThat(recovered.counters).isEqualTo(serial.counters);
+        assertThat(completedState.sourceSeq()).isEqualTo(1100);
+    }
+
+    @Test
+    public void appliesOversizeMessageInOrderOnceItsPartitionIsDrained() throws Exception {
+        final List<Thread> oversizeThreads = new CopyOnWriteArrayList<>();
+        final MessageConsumer.RecoveryFactory recoveryFactory = partition -> (buffer, offset, length) -> {
+            if (length > CounterApplication.MESSAGE_LENGTH) {
+                oversizeThreads.add(Thread.currentThread());
+            }
+            recovered.apply(buffer, offset, length);
+        };
+        //max message length of the ring buffer is an eighth of its capacity
+        append(1, 200, CounterApplication.MESSAGE_LENGTH);
+        append(201, 203, 256);
+        append(204, 400, CounterApplication.MESSAGE_LENGTH);
+        final Step step = recoveryStep(recoveryFactory, 1024, 1);
+
+        performUntilIdle(step);
+
+        assertThat(recovered.counters).isEqualTo(serial.counters);
+        assertThat(oversizeThreads).containsExactly(Thread.currentThread(), Thread.currentThread(), Thread.currentThread());
+    }
+
+    @Test
+    public void rethrowsRecoveryFailureFromProcessorStep() throws Exception {
+        final RuntimeException failure = new RuntimeException("Recovery consumer failed");
+        final MessageConsumer.RecoveryFactory recoveryFactory = partition -> (buffer, offset, length) -> {
+            if (buffer.getLong(offset + 4) == 500) {
+                throw failure;
+            }
+            recovered.apply(buffer, offset, length);
+        };
+        append(1, 1000, CounterApplication.MESSAGE_LENGTH);
+        final Step step = recoveryStep(recoveryFactory, PartitionedRecoveryStep.DEFAULT_PARTITION_BUFFER_SIZE, 16);
+
+        assertThatThrownBy(() -> performUntilIdle(step))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Partitioned recovery failed")
+                .hasCause(failure);
+    }
+
+    private Step recoveryStep(final MessageConsumer.RecoveryFactory recoveryFactory,
+                              final int partitionBufferSize,
+                              final int maxEntriesPerPoll) {
+        return new PartitionedRecoveryStep(
+                new PollingProcessStep(poller, recovered::apply, maxEntriesPerPoll),
+                poller, completedState, PARTITIONS, CounterApplication.PARTITIONER, recoveryFactory,
+                partitionBufferSize, maxEntriesPerPoll);
+    }
+
+    /**
+     * Appends messages with amount equal to sourceSeq and applies them to the serially replayed application.
+     */
+    private void append(final long fromSourceSeq, final long toSourceSeq, final int length) {
+        for (long sourceSeq = fromSourceSeq; sourceSeq <= toSourceSeq; sourceSeq++) {
+            final UnsafeBuffer message = CounterApplication.message((int) (sourceSeq * 7 % KEYS), sourceSeq, length);
+            queue.appender().accept(1, sourceSeq, sourceSeq, message, 0, length);
+            serial.apply(message, 0, length);
+        }
+    }
+
+    private static void performUntilIdle(final Step step) {
+        for (int i = 0; i < 100_000; i++) {
+            if (!step.perform()) {
+                return;
+            }
+        }
+        throw new AssertionError("Step is not idle");
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.EventProcessingQueue;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.IndexedTransactionalQueue;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.mmap.MmapBuilder;
+import org.tools4j.eventsourcing.mmap.RegionRingFactoryConfig;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.nobark.loop.Step;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PipelinedEventProcessingQueueTest {
+    private static final int EVENTS_PER_SOURCE = 500;
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Test
+    public void pipelinedStepsInSeparateThreadsProcessLikeSingleThreadedStep() throws Exception {
+        final CounterApplication singleThreaded = new CounterApplication();
+        final List<String> singleThreadedDownstream;
+        try (EventProcessingQueue queue = queue("single", singleThreaded, 0)) {
+            append(queue);
+            final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (singleThreaded.processed.size() < 2 * EVENTS_PER_SOURCE) {
+                assertThat(System.currentTimeMillis()).isLessThan(deadline);
+                queue.processorStep().perform();
+            }
+            singleThreadedDownstream = pollDownstream(queue);
+        }
+
+        final CounterApplication pipelined = new CounterApplication();
+        final List<String> pipelinedDownstream;
+        try (EventProcessingQueue queue = queue("pipelined", pipelined, 8)) {
+            append(queue);
+            final AtomicBoolean upstreamDone = new AtomicBoolean();
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            final Thread downstreamThread = start("downstream", failure, () -> {
+                final Step step = queue.downstreamProcessorStep();
+                boolean workDone;
+                do {
+                    workDone = step.perform();
+                } while (workDone || !upstreamDone.get());
+            });
+            final Thread upstreamThread = start("upstream", failure, () -> {
+                final Step step = queue.upstreamProcessorStep();
+                final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+                while (pipelined.processed.size() < 2 * EVENTS_PER_SOURCE && System.currentTimeMillis() < deadline) {
+                    step.perform();
+                }
+            });
+            upstreamThread.join(TIMEOUT_MILLIS);
+            upstreamDone.set(true);
+            downstreamThread.join(TIMEOUT_MILLIS);
+            assertThat(upstreamThread.isAlive()).isFalse();
+            assertThat(downstreamThread.isAlive()).isFalse();
+            assertThat(failure.get()).isNull();
+            pipelinedDownstream = pollDownstream(queue);
+        }
+
+        assertThat(pipelined.processed).hasSize(2 * EVENTS_PER_SOURCE).isEqualTo(singleThreaded.processed);
+        assertThat(pipelined.replayed).isEmpty();
+        assertThat(pipelined.counters).isEqualTo(singleThreaded.counters);
+        assertThat(pipelinedDownstream).hasSize(2 * EVENTS_PER_SOURCE).isEqualTo(singleThreadedDownstream);
+    }
+
+    @Test
+    public void builderRejectsSnapshotsOfPipelinedQueue() throws Exception {
+        final CounterApplication application = new CounterApplication();
+        final IndexedQueue upstreamQueue = upstreamQueue("builder");
+        final IndexedTransactionalQueue downstreamQueue = downstreamQueue("builder");
+        try {
+            assertThatThrownBy(() -> EventProcessingQueue.builder()
+                    .upstreamQueue(upstreamQueue)
+                    .downstreamQueue(downstreamQueue)
+                    .upstreamFactory(application.upstreamFactory())
+                    .downstreamFactory(application.downstreamFactory())
+                    .snapshotStore(new FileSnapshotStore(folder.getRoot().getPath(), "builder", 1))
+                    .snapshotWriter(application.snapshotWriter())
+                    .snapshotLoader(application.snapshotLoader())
+                    .pipelineDepth(8)
+                    .build())
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("snapshotStore is not supported with pipelineDepth");
+        } finally {
+            upstreamQueue.close();
+            downstreamQueue.close();
+        }
+    }
+
+    @Test
+    public void constructorRejectsSnapshotsOfPipelinedQueue() throws Exception {
+        final CounterApplication application = new CounterApplication();
+        final IndexedQueue upstreamQueue = upstreamQueue("constructor");
+        final IndexedTransactionalQueue downstreamQueue = downstreamQueue("constructor");
+        try {
+            final DefaultEventProcessingQueue.Config config = new DefaultEventProcessingQueue.Config()
+                    .snapshots(new FileSnapshotStore(folder.getRoot().getPath(), "constructor", 1),
+                            application::snapshotWriter, application.snapshotLoader(), 0)
+                    .pipelineDepth(8);
+            assertThatThrownBy(() -> new DefaultEventProcessingQueue(
+                    upstreamQueue, downstreamQueue, System::nanoTime, () -> true,
+                    Poller.IndexConsumer.noop(), Poller.IndexConsumer.noop(),
+                    Poller.IndexConsumer.noop(), Poller.IndexConsumer.noop(),
+                    application.upstreamFactory(), application.downstreamFactory(),
+                    DownstreamWhileDoneThenUpstreamOnceStep::new, config))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessage("Pipelined queue does not support snapshots");
+        } finally {
+            upstreamQueue.close();
+            downstreamQueue.close();
+        }
+    }
+
+    private EventProcessingQueue queue(final String filePrefix,
+                                       final CounterApplication application,
+                                       final int pipelineDepth) throws IOException {
+        return EventProcessingQueue.builder()
+                .upstreamQueue(upstreamQueue(filePrefix))
+                .downstreamQueue(downstreamQueue(filePrefix))
+                .upstreamFactory(application.upstreamFactory())
+                .downstreamFactory(application.downstreamFactory())
+                .pipelineDepth(pipelineDepth)
+                .build();
+    }
+
+    private IndexedQueue upstreamQueue(final String filePrefix) throws IOException {
+        return MmapBuilder.create()
+                .directory(folder.getRoot().getPath())
+                .filePrefix(filePrefix + "_upstream")
+                .regionRingFactory(regionRingFactory)
+                .regionSize(4096)
+                .maxFileSize(64L * 1024 * 1024)
+                .buildQueue();
+    }
+
+    private IndexedTransactionalQueue downstreamQueue(final String filePrefix) throws IOException {
+        return MmapBuilder.create()
+                .directory(folder.getRoot().getPath())
+                .filePrefix(filePrefix + "_downstream")
+                .regionRingFactory(regionRingFactory)
+                .regionSize(4096)
+                .maxFileSize(64L * 1024 * 1024)
+                .buildTransactionalQueue();
+    }
+
+    /**
+     * Appends events of two interleaved sources with amount equal to sourceSeq.
+     */
+    private static void append(final EventProcessingQueue queue) {
+        for (long sourceSeq = 1; sourceSeq <= EVENTS_PER_SOURCE; sourceSeq++) {
+            for (int source = 1; source <= 2; source++) {
+                final UnsafeBuffer message = CounterApplication.message((int) (sourceSeq % 5), sourceSeq * source);
+                queue.appender().accept(source, sourceSeq, sourceSeq, message, 0, message.capacity());
+            }
+        }
+    }
+
+    /**
+     * @return source:sourceSeq of the entries of the downstream queue in queue order
+     */
+    private static List<String> pollDownstream(final EventProcessingQueue queue) throws IOException {
+        final List<String> entries = new ArrayList<>();
+        try (Poller poller = queue.createPoller(Poller.Options.builder()
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> entries.add(source + ":" + sourceSeq))
+                .build())) {
+            while (poller.poll((buffer, offset, length) -> {}) > 0);
+        }
+        return entries;
+    }
+
+    private static Thread start(final String name, final AtomicReference<Throwable> failure, final Runnable runnable) {
+        final Thread thread = new Thread(() -> {
+            try {
+                runnable.run();
+            } catch (final Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        }, name);
+        thread.start();
+        return thread;
+    }
+}
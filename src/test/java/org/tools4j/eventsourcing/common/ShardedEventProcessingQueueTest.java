@@ -0,0 +1,180 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.EventProcessingQueue;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.mmap.MmapBuilder;
+import org.tools4j.eventsourcing.mmap.RegionRingFactoryConfig;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.nobark.loop.Step;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardedEventProcessingQueueTest {
+    private static final int SHARDS = 2;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+    private final CounterApplication[] applications = {new CounterApplication(), new CounterApplication()};
+
+    private ShardedEventProcessingQueue queue;
+
+    @After
+    public void tearDown() {
+        if (queue != null) {
+            queue.close();
+        }
+    }
+
+    @Test
+    public void routesEventsToShardOfSharder() throws Exception {
+        queue = new ShardedEventProcessingQueue(shards(), (source, shards) -> source < 10 ? 1 : 0);
+
+        append(1, 1, 1);
+        append(11, 1, 2);
+        append(2, 1, 3);
+        append(12, 1, 4);
+        performUntilProcessed(queue.processorStep(), 4);
+
+        assertThat(applications[0].counters.keySet()).containsOnly(11, 12);
+        assertThat(applications[1].counters.keySet()).containsOnly(1, 2);
+    }
+
+    @Test
+    public void routesNegativeSourcesByFloorMod() throws Exception {
+        queue = new ShardedEventProcessingQueue(shards());
+
+        append(-1, 1, 1);
+        append(-2, 1, 2);
+        append(-3, 1, 3);
+        append(4, 1, 4);
+        performUntilProcessed(queue.processorStep(), 4);
+
+        assertThat(applications[0].counters.keySet()).containsOnly(-2, 4);
+        assertThat(applications[1].counters.keySet()).containsOnly(-1, -3);
+    }
+
+    @Test
+    public void shardProcessorStepProcessesOwnShardOnly() throws Exception {
+        queue = new ShardedEventProcessingQueue(shards());
+
+        append(1, 1, 1);
+        append(2, 1, 2);
+        append(1, 2, 3);
+        performUntilProcessed(queue.processorStep(1), 2);
+        for (int i = 0; i < 100; i++) {
+            queue.processorStep(1).perform();
+        }
+
+        assertThat(applications[0].processed).isEmpty();
+        assertThat(applications[1].processed).containsExactly(1L, 2L);
+
+        append(2, 2, 4);
+        performUntilProcessed(queue.processorStep(), 4);
+
+        assertThat(applications[0].processed).containsExactly(1L, 2L);
+        assertThat(applications[1].processed).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void pollsDownstreamQueuesOfShardsMergedByEventTime() throws Exception {
+        queue = new ShardedEventProcessingQueue(shards());
+
+        append(1, 1, 10);
+        append(1, 2, 30);
+        append(2, 1, 20);
+        append(1, 3, 50);
+        append(2, 2, 40);
+        performUntilProcessed(queue.processorStep(), 5);
+
+        final List<String> polled = new ArrayList<>();
+        try (Poller poller = queue.createPoller(Poller.Options.builder()
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) ->
+                        polled.add(source + ":" + sourceSeq + "@" + eventTimeNanos))
+                .build())) {
+            while (poller.poll((buffer, offset, length) -> {}) > 0) ;
+        }
+        assertThat(polled).containsExactly("1:1@10", "2:1@20", "1:2@30", "2:2@40", "1:3@50");
+    }
+
+    private EventProcessingQueue[] shards() throws IOException {
+        final EventProcessingQueue[] shards = new EventProcessingQueue[SHARDS];
+        for (int shard = 0; shard < SHARDS; shard++) {
+            shards[shard] = EventProcessingQueue.builder()
+                    .upstreamQueue(MmapBuilder.create()
+                            .directory(folder.getRoot().getPath())
+                            .filePrefix("upstream_" + shard)
+                            .regionRingFactory(regionRingFactory)
+                            .regionSize(4096)
+                            .maxFileSize(64L * 1024 * 1024)
+                            .buildQueue())
+                    .downstreamQueue(MmapBuilder.create()
+                            .directory(folder.getRoot().getPath())
+                            .filePrefix("downstream_" + shard)
+                            .regionRingFactory(regionRingFactory)
+                            .regionSize(4096)
+                            .maxFileSize(64L * 1024 * 1024)
+                            .buildTransactionalQueue())
+                    .upstreamFactory(applications[shard].upstreamFactory())
+                    .downstreamFactory(applications[shard].downstreamFactory())
+                    .build();
+        }
+        return shards;
+    }
+
+    /**
+     * Appends an event changing the counter of the source.
+     */
+    private void append(final int source, final long sourceSeq, final long eventTimeNanos) {
+        final UnsafeBuffer message = CounterApplication.message(source, sourceSeq);
+        queue.appender().accept(source, sourceSeq, eventTimeNanos, message, 0, message.capacity());
+    }
+
+    private void performUntilProcessed(final Step step, final int events) {
+        for (int i = 0; i < 10_000 && processed() < events; i++) {
+            step.perform();
+        }
+        assertThat(processed()).isEqualTo(events);
+    }
+
+    private int processed() {
+        int processed = 0;
+        for (final CounterApplication application : applications) {
+            processed += application.processed.size();
+        }
+        return processed;
+    }
+}
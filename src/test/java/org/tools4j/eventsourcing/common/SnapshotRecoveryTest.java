@@ -0,0 +1,203 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.EventProcessingQueue;
+import org.tools4j.eventsourcing.mmap.MmapBuilder;
+import org.tools4j.eventsourcing.mmap.RegionRingFactoryConfig;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.nobark.loop.Step;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+public class SnapshotRecoveryTest {
+    private static final int SOURCE = 1;
+    private static final long SNAPSHOT_PERIOD_MILLIS = 1000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    public void restoresSnapshotAndReplaysFollowingDownstreamEntries() throws Exception {
+        final FileSnapshotStore firstStore = snapshotStore();
+        final CounterApplication first = new CounterApplication();
+        try (EventProcessingQueue queue = queue(first, firstStore, false)) {
+            append(queue, 1, 10);
+            snapshot(queue, first, firstStore, 10);
+
+            //processed after the snapshot and before the snapshot period elapses again
+            append(queue, 11, 15);
+            performUntil(queue.processorStep(), () -> first.processed.size() == 15);
+
+            //not processed before close
+            append(queue, 16, 18);
+        }
+        assertThat(first.processed).isEqualTo(sourceSeqs(1, 15));
+        assertThat(first.replayed).isEmpty();
+        assertThat(firstStore.watermark()).isEqualTo(10);
+
+        final CounterApplication second = new CounterApplication();
+        try (EventProcessingQueue queue = queue(second, snapshotStore(), false)) {
+            performUntil(queue.processorStep(), () -> second.processed.size() == 3);
+        }
+        assertThat(second.replayed).isEqualTo(sourceSeqs(11, 15));
+        assertThat(second.processed).isEqualTo(sourceSeqs(16, 18));
+        assertThat(second.counters).isEqualTo(applied(1, 18).counters);
+    }
+
+    @Test
+    public void skipsUpstreamEventsAppliedBeforeSnapshot() throws Exception {
+        final FileSnapshotStore firstStore = snapshotStore();
+        final CounterApplication first = new CounterApplication();
+        try (EventProcessingQueue queue = queue(first, firstStore, false)) {
+            append(queue, 1, 10);
+            snapshot(queue, first, firstStore, 10);
+        }
+
+        final CounterApplication second = new CounterApplication();
+        try (EventProcessingQueue queue = queue(second, snapshotStore(), false)) {
+            append(queue, 11, 12);
+            performUntil(queue.processorStep(), () -> second.processed.size() == 2);
+            for (int i = 0; i < 10; i++) {
+                queue.processorStep().perform();
+            }
+        }
+        assertThat(second.replayed).isEmpty();
+        assertThat(second.processed).isEqualTo(sourceSeqs(11, 12));
+        assertThat(second.counters).isEqualTo(applied(1, 12).counters);
+    }
+
+    @Test
+    public void rejectsSnapshotAheadOfDownstreamQueue() throws Exception {
+        final FileSnapshotStore firstStore = snapshotStore();
+        final CounterApplication first = new CounterApplication();
+        try (EventProcessingQueue queue = queue(first, firstStore, false)) {
+            append(queue, 1, 10);
+            snapshot(queue, first, firstStore, 10);
+        }
+
+        try (EventProcessingQueue queue = queue(new CounterApplication(), snapshotStore(), true)) {
+            fail("Snapshot ahead of cleared downstream queue was loaded into " + queue);
+        } catch (final IllegalStateException e) {
+            assertThat(e).hasMessage("Snapshot at index 9 is ahead of downstream queue");
+        }
+    }
+
+    private EventProcessingQueue queue(final CounterApplication application,
+                                       final FileSnapshotStore snapshotStore,
+                                       final boolean clearFiles) throws IOException {
+        final String directory = folder.getRoot().getPath();
+        return EventProcessingQueue.builder()
+                .upstreamQueue(
+                        MmapBuilder.create()
+                                .directory(directory)
+                                .filePrefix("upstream")
+                                .regionRingFactory(regionRingFactory)
+                                .clearFiles(clearFiles)
+                                .regionSize(4096)
+                                .maxFileSize(64L * 1024 * 1024)
+                                .buildQueue())
+                .downstreamQueue(
+                        MmapBuilder.create()
+                                .directory(directory)
+                                .filePrefix("downstream")
+                                .regionRingFactory(regionRingFactory)
+                                .clearFiles(clearFiles)
+                                .regionSize(4096)
+                                .maxFileSize(64L * 1024 * 1024)
+                                .buildTransactionalQueue())
+                .upstreamFactory(application.upstreamFactory())
+                .downstreamFactory(application.downstreamFactory())
+                .systemNanoClock(clock::get)
+                .snapshotStore(snapshotStore)
+                .snapshotWriter(application.snapshotWriter())
+                .snapshotLoader(application.snapshotLoader())
+                .snapshotPeriodMillis(SNAPSHOT_PERIOD_MILLIS)
+                .build();
+    }
+
+    /**
+     * Lets the snapshot period elapse once the given number of events are processed, as a snapshot is taken as soon
+     * as the downstream step has caught up, even if further upstream events are to be processed. Each event appends
+     * one downstream entry, so the watermark of the snapshot is the number of events.
+     */
+    private void snapshot(final EventProcessingQueue queue,
+                          final CounterApplication application,
+                          final FileSnapshotStore store,
+                          final int events) {
+        performUntil(queue.processorStep(), () -> application.processed.size() == events);
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(SNAPSHOT_PERIOD_MILLIS));
+        performUntil(queue.processorStep(), () -> store.watermark() == events);
+    }
+
+    private FileSnapshotStore snapshotStore() throws IOException {
+        return new FileSnapshotStore(folder.getRoot().getPath() + "/snapshots", "app", 2);
+    }
+
+    private static void append(final EventProcessingQueue queue, final long fromSourceSeq, final long toSourceSeq) {
+        for (long sourceSeq = fromSourceSeq; sourceSeq <= toSourceSeq; sourceSeq++) {
+            final UnsafeBuffer message = CounterApplication.message((int) (sourceSeq % 3), sourceSeq);
+            queue.appender().accept(SOURCE, sourceSeq, sourceSeq, message, 0, message.capacity());
+        }
+    }
+
+    private static CounterApplication applied(final long fromSourceSeq, final long toSourceSeq) {
+        final CounterApplication application = new CounterApplication();
+        for (long sourceSeq = fromSourceSeq; sourceSeq <= toSourceSeq; sourceSeq++) {
+            final UnsafeBuffer message = CounterApplication.message((int) (sourceSeq % 3), sourceSeq);
+            application.apply(message, 0, message.capacity());
+        }
+        return application;
+    }
+
+    private static List<Long> sourceSeqs(final long fromSourceSeq, final long toSourceSeq) {
+        final List<Long> sourceSeqs = new ArrayList<>();
+        for (long sourceSeq = fromSourceSeq; sourceSeq <= toSourceSeq; sourceSeq++) {
+            sourceSeqs.add(sourceSeq);
+        }
+        return sourceSeqs;
+    }
+
+    private static void performUntil(final Step step, final BooleanSupplier condition) {
+        for (int i = 0; i < 10000 && !condition.getAsBoolean(); i++) {
+            step.perform();
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
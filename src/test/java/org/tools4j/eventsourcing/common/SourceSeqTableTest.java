@@ -0,0 +1,97 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.common;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SourceSeqTableTest {
+    private final SourceSeqTable table = new SourceSeqTable();
+    private final List<String> visited = new ArrayList<>();
+
+    @Test
+    public void storesDenseAndSparseSources() throws Exception {
+        final int[] sources = {0, 5, 1000, SourceSeqTable.MAX_DENSE_SOURCE, SourceSeqTable.MAX_DENSE_SOURCE + 1,
+                -7, Integer.MIN_VALUE, Integer.MAX_VALUE};
+        for (int i = 0; i < sources.length; i++) {
+            table.put(sources[i], 100 + i);
+        }
+
+        for (int i = 0; i < sources.length; i++) {
+            assertThat(table.get(sources[i])).isEqualTo(100 + i);
+        }
+        assertThat(table.get(6)).isEqualTo(SourceSeqTable.MISSING_VALUE);
+        assertThat(table.get(-8)).isEqualTo(SourceSeqTable.MISSING_VALUE);
+        assertThat(table.size()).isEqualTo(sources.length);
+
+        table.forEach((source, sourceSeq) -> visited.add(source + ":" + sourceSeq));
+        assertThat(visited).containsExactly("0:100", "5:101", "1000:102", "65535:103", "65536:104", "-7:105",
+                "-2147483648:106", "2147483647:107");
+    }
+
+    @Test
+    public void visitsChangedSourcesOnce() throws Exception {
+        table.put(1, 10);
+        table.put(2, 20);
+        table.put(100000, 30);
+        table.forEachChanged((source, sourceSeq) -> visited.add(source + ":" + sourceSeq));
+        assertThat(visited).containsExactly("1:10", "2:20", "100000:30");
+
+        visited.clear();
+        table.put(2, 21);
+        table.put(2, 22);
+        table.put(1, 10);
+        table.put(100000, 31);
+        table.forEachChanged((source, sourceSeq) -> visited.add(source + ":" + sourceSeq));
+        assertThat(visited).containsExactly("2:22", "100000:31");
+
+        visited.clear();
+        table.forEachChanged((source, sourceSeq) -> visited.add(source + ":" + sourceSeq));
+        assertThat(visited).isEmpty();
+    }
+
+    @Test
+    public void clearsSources() throws Exception {
+        table.put(3, 30);
+        table.put(-3, 40);
+        table.clear();
+
+        assertThat(table.size()).isZero();
+        assertThat(table.get(3)).isEqualTo(SourceSeqTable.MISSING_VALUE);
+        assertThat(table.get(-3)).isEqualTo(SourceSeqTable.MISSING_VALUE);
+        table.forEachChanged((source, sourceSeq) -> visited.add(source + ":" + sourceSeq));
+        assertThat(visited).isEmpty();
+
+        table.put(3, 31);
+        table.forEach((source, sourceSeq) -> visited.add(source + ":" + sourceSeq));
+        assertThat(visited).containsExactly("3:31");
+        assertThatThrownBy(() -> table.put(3, SourceSeqTable.MISSING_VALUE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedTransactionalQueue;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.api.Transaction;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CheckpointPollingTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int LENGTH = 100;
+    private static final int TRANSACTIONS = 100;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Test
+    public void pollsCheckpointSources() throws Exception {
+        try (final IndexedTransactionalQueue queue = new MmapIndexedTransactionalQueue(folder.getRoot().getPath(),
+                "queue", true, regionRingFactory, REGION_SIZE, 4, 1, MAX_FILE_SIZE)) {
+            append(queue);
+
+            assertThat(poll(queue)).isEqualTo(expected());
+        }
+    }
+
+    @Test
+    public void pollsCheckpointSourcesAcrossSegments() throws Exception {
+        try (final IndexedTransactionalQueue queue = new MmapSegmentedIndexedTransactionalQueue(folder.getRoot().getPath(),
+                "queue", true, regionRingFactory, REGION_SIZE, 4, 1, REGION_SIZE, 0)) {
+            append(queue);
+
+            try (final SegmentManifest manifest = SegmentManifest.forReadOnly(folder.getRoot().getPath(), "queue")) {
+                assertThat(manifest.lastSegment()).isGreaterThan(1);
+            }
+            assertThat(poll(queue)).isEqualTo(expected());
+        }
+    }
+
+    /**
+     * Appends transactions of source 1 with an entry, each followed by a checkpoint of sources 2 and 3.
+     */
+    private static void append(final IndexedTransactionalQueue queue) {
+        final Transaction transaction = queue.appender();
+        for (int sourceSeq = 0; sourceSeq < TRANSACTIONS; sourceSeq++) {
+            transaction.init(1, 2 * sourceSeq, sourceSeq, false);
+            transaction.accept(PolledEntries.message(1, sourceSeq, LENGTH), 0, LENGTH);
+            transaction.commit();
+
+            transaction.init(1, 2 * sourceSeq + 1, sourceSeq, true);
+            transaction.acceptNoop(2, 20 * sourceSeq);
+            transaction.acceptNoop(3, 30 * sourceSeq);
+            transaction.commit();
+        }
+    }
+
+    private static List<String> expected() {
+        final List<String> expected = new ArrayList<>();
+        for (int sourceSeq = 0; sourceSeq < TRANSACTIONS; sourceSeq++) {
+            expected.add("complete " + 2 * sourceSeq + ":" + "1:" + 2 * sourceSeq);
+            expected.add("cp 2:" + 20 * sourceSeq);
+            expected.add("cp 3:" + 30 * sourceSeq);
+            expected.add("complete " + (2 * sourceSeq + 1) + ":" + "1:" + (2 * sourceSeq + 1));
+        }
+        return expected;
+    }
+
+    private static List<String> poll(final IndexedTransactionalQueue queue) throws IOException {
+        final List<String> polled = new ArrayList<>();
+        try (final Poller poller = queue.createPoller(Poller.Options.builder()
+                .onProcessingComplete((index, source, sourceSeq, eventTimeNanos) ->
+                        polled.add("complete " + index + ":" + source + ":" + sourceSeq))
+                .onCheckpoint((source, sourceSeq) -> polled.add("cp " + source + ":" + sourceSeq))
+                .build())) {
+            while (poller.poll((buffer, offset, length) -> {}) > 0);
+        }
+        return polled;
+    }
+}
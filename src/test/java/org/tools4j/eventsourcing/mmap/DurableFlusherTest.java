@@ -0,0 +1,147 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DurableFlusherTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int INDEX_LENGTH = 4 + IndexDecoder.ENCODED_LENGTH;
+    private static final int LENGTH = 20;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Test
+    public void advancesDurableIndexEveryEntries() throws Exception {
+        try (final MmapIndexedQueue queue = queue(true, false, DurabilityPolicy.everyEntries(5))) {
+            PolledEntries.append(queue, 1, 0, 4, LENGTH);
+            TimeUnit.MILLISECONDS.sleep(50);
+            assertThat(queue.durableIndex()).isEqualTo(0);
+
+            PolledEntries.append(queue, 1, 4, 1, LENGTH);
+            await(() -> queue.durableIndex() == 5);
+        }
+    }
+
+    @Test
+    public void advancesDurableIndexOfTrailingEntriesAfterDefaultPeriod() throws Exception {
+        try (final MmapIndexedQueue queue = queue(true, false, DurabilityPolicy.everyEntries(5))) {
+            PolledEntries.append(queue, 1, 0, 4, LENGTH);
+            await(() -> queue.durableIndex() == 4);
+        }
+    }
+
+    @Test
+    public void advancesDurableIndexPeriodically() throws Exception {
+        try (final MmapIndexedQueue queue = queue(true, false, DurabilityPolicy.periodic(10))) {
+            PolledEntries.append(queue, 1, 0, 3, LENGTH);
+            await(() -> queue.durableIndex() == 3);
+        }
+    }
+
+    @Test
+    public void flushesPendingEntriesOnClose() throws Exception {
+        try (final MmapIndexedQueue queue = queue(true, false, DurabilityPolicy.everyEntries(100))) {
+            PolledEntries.append(queue, 1, 0, 3, LENGTH);
+        }
+        try (final RegionAccessorSupplier supplier = regionAccessorSupplier()) {
+            assertThat(DurableFlusher.durableIndex(supplier.indexHeader())).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void clampsDurablePositionToRecoveredTail() throws Exception {
+        try (final MmapIndexedQueue queue = queue(true, false, DurabilityPolicy.none())) {
+            PolledEntries.append(queue, 1, 0, 10, LENGTH);
+        }
+        try (final RegionAccessorSupplier supplier = regionAccessorSupplier()) {
+            supplier.indexHeader().durablePosition(position(50));
+        }
+        try (final MmapIndexedQueue queue = queue(false, false, DurabilityPolicy.none())) {
+            PolledEntries.append(queue, 1, 10, 1, LENGTH);
+
+            assertThat(queue.durableIndex()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    public void clampsDurablePositionToTailTruncatedByChecksumVerification() throws Exception {
+        try (final MmapIndexedQueue queue = queue(true, true, DurabilityPolicy.everyEntries(1))) {
+            PolledEntries.append(queue, 1, 0, 10, LENGTH);
+        }
+        try (final RegionAccessorSupplier supplier = regionAccessorSupplier()) {
+            assertThat(DurableFlusher.durableIndex(supplier.indexHeader())).isEqualTo(10);
+            //torn index entry
+            final UnsafeBuffer mappedIndexBuffer = new UnsafeBuffer();
+            assertThat(supplier.indexAccessor().wrap(position(6), mappedIndexBuffer)).isTrue();
+            mappedIndexBuffer.putInt(0, 1);
+        }
+        try (final MmapIndexedQueue queue = queue(false, true, DurabilityPolicy.none())) {
+            PolledEntries.append(queue, 1, 10, 1, LENGTH);
+
+            assertThat(queue.durableIndex()).isEqualTo(6);
+            assertThat(PolledEntries.pollAllFrom(queue)).extracting(entry -> entry.sourceSeq)
+                    .containsExactly(0L, 1L, 2L, 3L, 4L, 5L, 10L);
+        }
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            TimeUnit.MILLISECONDS.sleep(1);
+        }
+    }
+
+    private RegionAccessorSupplier regionAccessorSupplier() throws IOException {
+        return RegionAccessorSupplier.forReadWrite(folder.getRoot().getPath(), "queue", regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE);
+    }
+
+    private MmapIndexedQueue queue(final boolean clearFiles,
+                                   final boolean checksums,
+                                   final DurabilityPolicy durability) throws IOException {
+        return new MmapIndexedQueue(folder.getRoot().getPath(), "queue", clearFiles, regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE, new MmapIndexedQueue.Config().checksums(checksums).durability(durability));
+    }
+
+    private static long position(final long index) {
+        return IndexFileHeader.LENGTH + index * INDEX_LENGTH;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DurableWatermarkPollingTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int LENGTH = 20;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Test
+    public void pausesAtDurableWatermark() throws Exception {
+        try (final IndexedQueue queue = queue(true, DurabilityPolicy.everyEntries(5))) {
+            final PolledEntries polledEntries = new PolledEntries();
+            try (final Poller poller = queue.createPoller(polledEntries.optionsBuilder()
+                    .pauseAtDurableWatermark(true).build())) {
+                PolledEntries.append(queue, 1, 0, 4, LENGTH);
+                TimeUnit.MILLISECONDS.sleep(50);
+                assertThat(poller.poll(polledEntries)).isEqualTo(0);
+                assertThat(poller.poll(polledEntries, 10)).isEqualTo(0);
+
+                PolledEntries.append(queue, 1, 4, 1, LENGTH);
+                final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+                while (polledEntries.entries().size() < 5) {
+                    assertThat(System.currentTimeMillis()).isLessThan(deadline);
+                    poller.poll(polledEntries, 10);
+                }
+                assertThat(polledEntries.entries()).extracting(entry -> entry.sourceSeq)
+                        .containsExactly(0L, 1L, 2L, 3L, 4L);
+            }
+        }
+    }
+
+    @Test
+    public void queueWithoutDurabilityPolicyRejectsPausingAtDurableWatermark() throws Exception {
+        try (final IndexedQueue queue = queue(true, DurabilityPolicy.none())) {
+            PolledEntries.append(queue, 1, 0, 10, LENGTH);
+
+            assertThatThrownBy(() -> pollAtDurableWatermark(queue)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void queueReopenedWithoutDurabilityPolicyRejectsPausingAtDurableWatermark() throws Exception {
+        try (final IndexedQueue queue = queue(true, DurabilityPolicy.everyEntries(100))) {
+            PolledEntries.append(queue, 1, 0, 3, LENGTH);
+        }
+        try (final IndexedQueue queue = queue(false, DurabilityPolicy.none())) {
+            PolledEntries.append(queue, 1, 3, 2, LENGTH);
+
+            assertThatThrownBy(() -> pollAtDurableWatermark(queue)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void segmentedQueueRejectsPausingAtDurableWatermark() throws Exception {
+        try (final IndexedQueue queue = new MmapSegmentedIndexedQueue(folder.getRoot().getPath(), "queue", true,
+                regionRingFactory, REGION_SIZE, 4, 1, REGION_SIZE, 0)) {
+            assertThatThrownBy(() -> pollAtDurableWatermark(queue)).isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    /**
+     * @return number of entries polled with a poller pausing at the durable watermark, polling single entries
+     *         and batches.
+     */
+    private static int pollAtDurableWatermark(final IndexedQueue queue) throws IOException {
+        final Poller.Options options = Poller.Options.builder().pauseAtDurableWatermark(true).build();
+        int singlePolled = 0;
+        try (final Poller poller = queue.createPoller(options)) {
+            while (poller.poll((buffer, offset, length) -> {}) > 0) singlePolled++;
+        }
+        int batchPolled = 0;
+        try (final Poller poller = queue.createPoller(options)) {
+            for (int done; (done = poller.poll((buffer, offset, length) -> {}, 2)) > 0;) batchPolled += done;
+        }
+        assertThat(batchPolled).isEqualTo(singlePolled);
+        return singlePolled;
+    }
+
+    private IndexedQueue queue(final boolean clearFiles, final DurabilityPolicy durability) throws IOException {
+        return new MmapIndexedQueue(folder.getRoot().getPath(), "queue", clearFiles, regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE, new MmapIndexedQueue.Config().durability(durability));
+    }
+}
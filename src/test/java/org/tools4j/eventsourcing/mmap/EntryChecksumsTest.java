@@ -0,0 +1,126 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class EntryChecksumsTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int INDEX_LENGTH = 4 + IndexDecoder.ENCODED_LENGTH;
+    private static final int LENGTH = 20;
+    private static final int MESSAGES = 10;
+    private static final int CORRUPT_INDEX = 6;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Before
+    public void appendMessages() throws Exception {
+        try (final IndexedQueue queue = queue(true)) {
+            PolledEntries.append(queue, 1, 0, MESSAGES, LENGTH);
+        }
+    }
+
+    @Test
+    public void verifiesIntactTail() throws Exception {
+        assertThat(verifyTail()).isEqualTo(position(MESSAGES));
+    }
+
+    @Test
+    public void truncatesIndexAtEntryFailingVerification() throws Exception {
+        corruptMessage(CORRUPT_INDEX);
+
+        assertThat(verifyTail()).isEqualTo(position(CORRUPT_INDEX));
+        assertThat(verifyTail()).isEqualTo(position(CORRUPT_INDEX));
+    }
+
+    @Test
+    public void continuesAppendingAfterTruncatedEntries() throws Exception {
+        corruptMessage(CORRUPT_INDEX);
+        try (final IndexedQueue queue = queue(false)) {
+            PolledEntries.append(queue, 1, MESSAGES, 1, LENGTH);
+
+            final List<PolledEntries.Entry> entries = PolledEntries.pollAllFrom(queue);
+
+            assertThat(entries).extracting(entry -> entry.index + ":" + entry.sourceSeq)
+                    .containsExactly("0:0", "1:1", "2:2", "3:3", "4:4", "5:5", "6:10");
+            assertThat(entries).allMatch(entry -> PolledEntries.isMessage(entry, LENGTH));
+        }
+    }
+
+    @Test
+    public void keepsIntactEntriesOnReopen() throws Exception {
+        try (final IndexedQueue queue = queue(false)) {
+            PolledEntries.append(queue, 1, MESSAGES, 1, LENGTH);
+
+            assertThat(PolledEntries.pollAllFrom(queue)).hasSize(MESSAGES + 1);
+        }
+    }
+
+    private long verifyTail() throws IOException {
+        try (final RegionAccessorSupplier supplier = regionAccessorSupplier()) {
+            return EntryChecksums.verifyTail(supplier.indexAccessor(), supplier.messageAccessor(),
+                    supplier.indexHeader().tailPosition());
+        }
+    }
+
+    private void corruptMessage(final long index) throws IOException {
+        try (final RegionAccessorSupplier supplier = regionAccessorSupplier()) {
+            final UnsafeBuffer mappedBuffer = new UnsafeBuffer();
+            assertThat(supplier.indexAccessor().wrap(position(index), mappedBuffer)).isTrue();
+            final long messagePosition = new IndexDecoder().wrap(mappedBuffer, 4).position();
+            assertThat(supplier.messageAccessor().wrap(messagePosition, mappedBuffer)).isTrue();
+            mappedBuffer.putByte(0, (byte) ~mappedBuffer.getByte(0));
+        }
+    }
+
+    private RegionAccessorSupplier regionAccessorSupplier() throws IOException {
+        return RegionAccessorSupplier.forReadWrite(folder.getRoot().getPath(), "queue", regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE);
+    }
+
+    private IndexedQueue queue(final boolean clearFiles) throws IOException {
+        return new MmapIndexedQueue(folder.getRoot().getPath(), "queue", clearFiles, regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE, new MmapIndexedQueue.Config().checksums(true));
+    }
+
+    private static long position(final long index) {
+        return IndexFileHeader.LENGTH + index * INDEX_LENGTH;
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexTailLocatorTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int INDEX_LENGTH = 4 + IndexDecoder.ENCODED_LENGTH;
+    private static final int LENGTH = 20;
+    private static final int MESSAGES = 10;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Before
+    public void appendMessages() throws Exception {
+        try (final IndexedQueue queue = queue(true)) {
+            PolledEntries.append(queue, 1, 0, MESSAGES, LENGTH);
+        }
+    }
+
+    @Test
+    public void locatesTailWhenHeaderTailIsAheadOfIndex() throws Exception {
+        assertThat(locate(position(20))).isEqualTo(position(MESSAGES));
+    }
+
+    @Test
+    public void locatesTailWhenHeaderTailIsBehindIndex() throws Exception {
+        assertThat(locate(position(3))).isEqualTo(position(MESSAGES));
+    }
+
+    @Test
+    public void locatesTailFromFirstEntryWhenHeaderTailCannotBeTrusted() throws Exception {
+        assertThat(locate(position(5000))).isEqualTo(position(MESSAGES));
+        assertThat(locate(position(4) + 1)).isEqualTo(position(MESSAGES));
+    }
+
+    @Test
+    public void continuesAppendingAtRecoveredTail() throws Exception {
+        headerTailPosition(position(20));
+        try (final IndexedQueue queue = queue(false)) {
+            PolledEntries.append(queue, 1, MESSAGES, 1, LENGTH);
+        }
+        headerTailPosition(position(3));
+        try (final IndexedQueue queue = queue(false)) {
+            PolledEntries.append(queue, 1, MESSAGES + 1, 1, LENGTH);
+
+            final List<PolledEntries.Entry> entries = PolledEntries.pollAllFrom(queue);
+
+            assertThat(entries).hasSize(MESSAGES + 2);
+            for (int index = 0; index < entries.size(); index++) {
+                assertThat(entries.get(index).index).isEqualTo(index);
+                assertThat(entries.get(index).sourceSeq).isEqualTo(index);
+            }
+            assertThat(entries).allMatch(entry -> PolledEntries.isMessage(entry, LENGTH));
+        }
+    }
+
+    private long locate(final long headerTailPosition) throws IOException {
+        headerTailPosition(headerTailPosition);
+        try (final RegionAccessorSupplier supplier = regionAccessorSupplier()) {
+            return IndexTailLocator.locate(supplier.indexAccessor(), new UnsafeBuffer(), supplier.indexHeader().tailPosition());
+        }
+    }
+
+    private void headerTailPosition(final long tailPosition) throws IOException {
+        try (final RegionAccessorSupplier supplier = regionAccessorSupplier()) {
+            supplier.indexHeader().tailPosition(tailPosition);
+        }
+    }
+
+    private RegionAccessorSupplier regionAccessorSupplier() throws IOException {
+        return RegionAccessorSupplier.forReadWrite(folder.getRoot().getPath(), "queue", regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE);
+    }
+
+    private IndexedQueue queue(final boolean clearFiles) throws IOException {
+        return new MmapIndexedQueue(folder.getRoot().getPath(), "queue", clearFiles, regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE);
+    }
+
+    private static long position(final long index) {
+        return IndexFileHeader.LENGTH + index * INDEX_LENGTH;
+    }
+}
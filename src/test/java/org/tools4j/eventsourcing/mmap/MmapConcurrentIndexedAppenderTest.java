@@ -0,0 +1,169 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedMessageConsumer;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.eventsourcing.common.SinglePayloadAppender;
+import org.tools4j.eventsourcing.sbe.IndexDecoder;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MmapConcurrentIndexedAppenderTest {
+    private static final int REGION_SIZE = 4096;
+    private static final int SPANNING_LENGTH = 3 * REGION_SIZE + 100;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int INDEX_LENGTH = 4 + IndexDecoder.ENCODED_LENGTH;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Test
+    public void appendsMessagesOfConcurrentProducersInSourceOrder() throws Exception {
+        final int producers = 4;
+        final int messages = 500;
+        try (final IndexedQueue queue = queue(true, producers)) {
+            appendConcurrently(queue, producers, 0, messages);
+
+            final List<PolledEntries.Entry> entries = PolledEntries.pollAllFrom(queue);
+
+            assertThat(entries).hasSize(producers * messages);
+            assertSourceOrder(entries, producers, messages);
+        }
+    }
+
+    @Test
+    public void continuesAppendingAfterReopen() throws Exception {
+        final int producers = 2;
+        try (final IndexedQueue queue = queue(true, producers)) {
+            appendConcurrently(queue, producers, 0, 100);
+        }
+        try (final IndexedQueue queue = queue(false, producers)) {
+            appendConcurrently(queue, producers, 100, 100);
+
+            final List<PolledEntries.Entry> entries = PolledEntries.pollAllFrom(queue);
+
+            assertThat(entries).hasSize(producers * 200);
+            assertSourceOrder(entries, producers, 200);
+        }
+    }
+
+    @Test
+    public void recoveryClearsEntriesPublishedAfterUnpublishedClaim() throws Exception {
+        final RegionAccessorSupplier[] suppliers = RegionAccessorSupplier.forConcurrentReadWrite(
+                folder.getRoot().getPath(), "queue", true, regionRingFactory, REGION_SIZE, 4, 1, MAX_FILE_SIZE, 2);
+        MmapConcurrentIndexedAppender.recover(suppliers[0]);
+        final MmapConcurrentIndexedAppender first = new MmapConcurrentIndexedAppender(suppliers[0]);
+        final MmapConcurrentIndexedAppender second = new MmapConcurrentIndexedAppender(suppliers[1]);
+        final IndexedMessageConsumer firstProducer = new SinglePayloadAppender(first);
+        final IndexedMessageConsumer secondProducer = new SinglePayloadAppender(second);
+        for (int sourceSeq = 0; sourceSeq < 3; sourceSeq++) {
+            firstProducer.accept(1, sourceSeq, sourceSeq, PolledEntries.message(1, sourceSeq, 20), 0, 20);
+        }
+        //producer stopped after claiming an index entry, the entry published by the other producer follows it
+        suppliers[0].indexHeader().claimIndex(INDEX_LENGTH);
+        secondProducer.accept(2, 0, 3, PolledEntries.message(2, 0, 20), 0, 20);
+        assertThat(suppliers[0].indexHeader().tailPosition()).isEqualTo(IndexFileHeader.LENGTH + 3 * INDEX_LENGTH);
+        first.close();
+        second.close();
+
+        try (final IndexedQueue queue = queue(false, 2)) {
+            final UnsafeBuffer message = PolledEntries.message(2, 1, 20);
+            queue.appender().accept(2, 1, 4, message, 0, 20);
+
+            final List<PolledEntries.Entry> entries = PolledEntries.pollAllFrom(queue);
+
+            assertThat(entries).extracting(entry -> entry.source + ":" + entry.sourceSeq)
+                    .containsExactly("1:0", "1:1", "1:2", "2:1");
+            assertThat(entries).allMatch(entry -> PolledEntries.isMessage(entry, 20));
+        }
+    }
+
+    private IndexedQueue queue(final boolean clearFiles, final int producers) throws IOException {
+        return new MmapIndexedQueue(folder.getRoot().getPath(), "queue", clearFiles, regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE, new MmapIndexedQueue.Config().producers(producers));
+    }
+
+    /**
+     * Appends messages from one thread per producer, the producer appends messages of own source with
+     * sourceSeq from the given first sourceSeq. Every 50th message spans regions.
+     */
+    private static void appendConcurrently(final IndexedQueue queue, final int producers,
+                                           final int firstSourceSeq, final int messages) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread[] threads = new Thread[producers];
+        for (int producer = 0; producer < producers; producer++) {
+            final int source = producer;
+            threads[producer] = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int sourceSeq = firstSourceSeq; sourceSeq < firstSourceSeq + messages; sourceSeq++) {
+                        final int length = length(sourceSeq);
+                        queue.appender().accept(source, sourceSeq, sourceSeq, PolledEntries.message(source, sourceSeq, length), 0, length);
+                    }
+                } catch (final Throwable t) {
+                    failure.set(t);
+                }
+            });
+            threads[producer].start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        assertThat(failure.get()).isNull();
+    }
+
+    private static int length(final long sourceSeq) {
+        return sourceSeq % 50 == 49 ? SPANNING_LENGTH : 8 + (int) (sourceSeq % 40);
+    }
+
+    private static void assertSourceOrder(final List<PolledEntries.Entry> entries, final int producers, final int messages) {
+        final long[] nextSourceSeq = new long[producers];
+        for (int i = 0; i < entries.size(); i++) {
+            final PolledEntries.Entry entry = entries.get(i);
+            assertThat(entry.index).isEqualTo(i);
+            assertThat(entry.sourceSeq).isEqualTo(nextSourceSeq[entry.source]++);
+            assertThat(PolledEntries.isMessage(entry, length(entry.sourceSeq))).isTrue();
+        }
+        for (int source = 0; source < producers; source++) {
+            assertThat(nextSourceSeq[source]).isEqualTo(messages);
+        }
+    }
+}
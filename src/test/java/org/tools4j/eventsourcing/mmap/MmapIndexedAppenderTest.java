@@ -0,0 +1,154 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.MutableDirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MmapIndexedAppenderTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    private MmapIndexedAppender appender;
+
+    @Before
+    public void createAppender() throws Exception {
+        appender = appender(true);
+    }
+
+    @After
+    public void closeAppender() throws Exception {
+        appender.close();
+    }
+
+    @Test
+    public void extendsClaimAcrossRegionEnd() throws Exception {
+        final int firstLength = REGION_SIZE - 100;
+        append(1, firstLength);
+
+        final MutableDirectBuffer claimed = appender.claim(50);
+        claimed.putBytes(0, PolledEntries.message(1, 2, 200), 0, 50);
+        //claim does not fit into the remainder of the region and is moved with the encoded bytes
+        assertThat(appender.extendClaim(200, 50)).isSameAs(claimed);
+        claimed.putBytes(50, PolledEntries.message(1, 2, 200), 50, 150);
+        appender.commit(1, 2, 2, 200);
+
+        assertThat(appender.messagePosition()).isEqualTo(REGION_SIZE + 200);
+        final List<PolledEntries.Entry> entries = pollAll();
+        assertThat(entries).hasSize(2);
+        assertThat(PolledEntries.isMessage(entries.get(0), firstLength)).isTrue();
+        assertThat(PolledEntries.isMessage(entries.get(1), 200)).isTrue();
+    }
+
+    @Test
+    public void discardsAbandonedClaim() throws Exception {
+        final MutableDirectBuffer abandoned = appender.claim(100);
+        abandoned.setMemory(0, 100, (byte) 0x7f);
+
+        append(1, 60);
+
+        assertThat(appender.messagePosition()).isEqualTo(60);
+        final List<PolledEntries.Entry> entries = pollAll();
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).index).isEqualTo(0);
+        assertThat(PolledEntries.isMessage(entries.get(0), 60)).isTrue();
+    }
+
+    @Test
+    public void discardsClaimAbandonedOnClose() throws Exception {
+        append(1, 60);
+        appender.claim(100).setMemory(0, 100, (byte) 0x7f);
+        appender.close();
+
+        appender = appender(false);
+        append(2, 80);
+
+        final List<PolledEntries.Entry> entries = pollAll();
+        assertThat(entries).hasSize(2);
+        assertThat(PolledEntries.isMessage(entries.get(0), 60)).isTrue();
+        assertThat(entries.get(1).sourceSeq).isEqualTo(2);
+        assertThat(PolledEntries.isMessage(entries.get(1), 80)).isTrue();
+    }
+
+    @Test
+    public void commitsShorterLengthThanClaimed() throws Exception {
+        final MutableDirectBuffer claimed = appender.claim(500);
+        claimed.putBytes(0, PolledEntries.message(1, 1, 100), 0, 100);
+        appender.commit(1, 1, 1, 100);
+
+        //next message follows the committed length
+        assertThat(appender.messagePosition()).isEqualTo(100);
+        append(2, 30);
+
+        final List<PolledEntries.Entry> entries = pollAll();
+        assertThat(entries).hasSize(2);
+        assertThat(PolledEntries.isMessage(entries.get(0), 100)).isTrue();
+        assertThat(PolledEntries.isMessage(entries.get(1), 30)).isTrue();
+    }
+
+    private void append(final long sourceSeq, final int length) {
+        final UnsafeBuffer message = PolledEntries.message(1, sourceSeq, length);
+        appender.claim(length).putBytes(0, message, 0, length);
+        appender.commit(1, sourceSeq, sourceSeq, length);
+    }
+
+    /**
+     * @return entries polled from the first entry, each message polled as is without payload decoding
+     */
+    private List<PolledEntries.Entry> pollAll() throws IOException {
+        final PolledEntries polledEntries = new PolledEntries();
+        try (final Poller poller = new MmapIndexedPoller(
+                RegionAccessorSupplier.forReadOnly(folder.getRoot().getPath(), "queue", regionRingFactory,
+                        REGION_SIZE, 4, 1),
+                polledEntries.options(),
+                (buffer, offset, length, consumer) -> {
+                    consumer.accept(buffer, offset, length);
+                    return 1;
+                })) {
+            return polledEntries.pollAll(poller).entries();
+        }
+    }
+
+    private MmapIndexedAppender appender(final boolean clearFiles) throws IOException {
+        return new MmapIndexedAppender(RegionAccessorSupplier.forReadWrite(folder.getRoot().getPath(), "queue",
+                clearFiles, regionRingFactory, REGION_SIZE, 4, 1, MAX_FILE_SIZE));
+    }
+}
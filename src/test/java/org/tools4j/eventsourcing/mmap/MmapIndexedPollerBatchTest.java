@@ -0,0 +1,163 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MmapIndexedPollerBatchTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int LENGTH = 20;
+    //index entries span several regions
+    private static final int MESSAGES = 300;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+    private final PolledEntries polledEntries = new PolledEntries();
+
+    private IndexedQueue queue;
+
+    /**
+     * Appends entries of source 1 at even and source 2 at odd indices with sourceSeq equal to the index.
+     */
+    @Before
+    public void appendMessages() throws Exception {
+        queue = new MmapIndexedQueue(folder.getRoot().getPath(), "queue", true, regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE);
+        append(0, MESSAGES);
+    }
+
+    @After
+    public void close() throws Exception {
+        queue.close();
+    }
+
+    @Test
+    public void pollsUpToMaxEntries() throws Exception {
+        try (final Poller poller = queue.createPoller(polledEntries.options())) {
+            assertThat(poller.poll(polledEntries, 30)).isEqualTo(30);
+            assertThat(poller.poll(polledEntries, 30)).isEqualTo(30);
+
+            assertIndices(polledEntries.entries(), 0, 60, 1);
+        }
+    }
+
+    @Test
+    public void pollsEntriesAcrossIndexRegions() throws Exception {
+        try (final Poller poller = queue.createPoller(polledEntries.options())) {
+            assertThat(poller.poll(polledEntries, 100)).isEqualTo(100);
+            assertThat(poller.poll(polledEntries, 1000)).isEqualTo(MESSAGES - 100);
+            assertThat(poller.poll(polledEntries, 1000)).isZero();
+
+            assertIndices(polledEntries.entries(), 0, MESSAGES, 1);
+        }
+    }
+
+    @Test
+    public void pollsEntriesPublishedAfterPreviousBatch() throws Exception {
+        try (final Poller poller = queue.createPoller(polledEntries.options())) {
+            assertThat(poller.poll(polledEntries, 1000)).isEqualTo(MESSAGES);
+            append(MESSAGES, 5);
+            assertThat(poller.poll(polledEntries, 1000)).isEqualTo(5);
+
+            assertIndices(polledEntries.entries(), 0, MESSAGES + 5, 1);
+        }
+    }
+
+    @Test
+    public void skippedEntriesCountTowardsMaxEntries() throws Exception {
+        try (final Poller poller = queue.createPoller(polledEntries.optionsBuilder()
+                .skipWhen((index, source, sourceSeq, eventTimeNanos) -> source == 2)
+                .build())) {
+            assertThat(poller.poll(polledEntries, 10)).isEqualTo(5);
+            assertThat(poller.poll(polledEntries, 10)).isEqualTo(5);
+
+            assertIndices(polledEntries.entries(), 0, 20, 2);
+        }
+    }
+
+    @Test
+    public void pausesInsideBatch() throws Exception {
+        try (final Poller poller = queue.createPoller(polledEntries.optionsBuilder()
+                .pauseWhen((index, source, sourceSeq, eventTimeNanos) -> index >= 7)
+                .build())) {
+            assertThat(poller.poll(polledEntries, 10)).isEqualTo(7);
+            assertThat(poller.poll(polledEntries, 10)).isZero();
+
+            assertIndices(polledEntries.entries(), 0, 7, 1);
+        }
+    }
+
+    @Test
+    public void defaultBatchContinuesAfterSkippedEntries() throws Exception {
+        try (final Poller mmapPoller = queue.createPoller(polledEntries.optionsBuilder()
+                .skipWhen((index, source, sourceSeq, eventTimeNanos) -> index < 50 || source == 2)
+                .build())) {
+            final Poller poller = new Poller() {
+                @Override
+                public int poll(final MessageConsumer consumer) {
+                    return mmapPoller.poll(consumer);
+                }
+
+                @Override
+                public long backlog() {
+                    return mmapPoller.backlog();
+                }
+            };
+            assertThat(poller.poll(polledEntries, 60)).isEqualTo(5);
+
+            assertIndices(polledEntries.entries(), 50, 60, 2);
+        }
+    }
+
+    private void append(final int firstIndex, final int messages) {
+        for (int index = firstIndex; index < firstIndex + messages; index++) {
+            final int source = 1 + index % 2;
+            queue.appender().accept(source, index, index, PolledEntries.message(source, index, LENGTH), 0, LENGTH);
+        }
+    }
+
+    private static void assertIndices(final List<PolledEntries.Entry> entries, final long fromIndex,
+                                      final long toIndex, final int step) {
+        assertThat(entries).hasSize((int) ((toIndex - fromIndex) / step));
+        for (int entry = 0; entry < entries.size(); entry++) {
+            assertThat(entries.get(entry).index).isEqualTo(fromIndex + entry * step);
+            assertThat(PolledEntries.isMessage(entries.get(entry), LENGTH)).isTrue();
+        }
+    }
+}
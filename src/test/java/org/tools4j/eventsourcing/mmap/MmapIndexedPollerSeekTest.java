@@ -0,0 +1,156 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MmapIndexedPollerSeekTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int LENGTH = 20;
+    //index entries span several regions
+    private static final int MESSAGES = 200;
+    private static final int SPARSE_INDEX = 151;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+    private final PolledEntries polledEntries = new PolledEntries();
+
+    private IndexedQueue queue;
+    private Poller poller;
+
+    /**
+     * Appends entries of source 1 at even and source 2 at odd indices with sourceSeq equal to the index, except
+     * for a single entry of source 3 at the sparse index.
+     */
+    @Before
+    public void appendMessages() throws Exception {
+        queue = new MmapIndexedQueue(folder.getRoot().getPath(), "queue", true, regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE);
+        for (int index = 0; index < MESSAGES; index++) {
+            final int source = index == SPARSE_INDEX ? 3 : 1 + index % 2;
+            queue.appender().accept(source, index, eventTime(index), PolledEntries.message(source, index, LENGTH), 0, LENGTH);
+        }
+        poller = queue.createPoller(polledEntries.options());
+    }
+
+    @After
+    public void close() throws Exception {
+        poller.close();
+        queue.close();
+    }
+
+    @Test
+    public void seeksToIndexInsideQueue() throws Exception {
+        assertThat(poller.seek(50)).isTrue();
+        assertNextIndex(50);
+
+        assertThat(poller.seek(SPARSE_INDEX)).isTrue();
+        assertNextIndex(SPARSE_INDEX);
+        assertThat(polledEntries.entries().get(1).source).isEqualTo(3);
+    }
+
+    @Test
+    public void seeksToTailButNotBeyond() throws Exception {
+        assertThat(poller.seek(MESSAGES)).isTrue();
+        assertThat(poller.poll(polledEntries)).isZero();
+
+        assertThat(poller.seek(10)).isTrue();
+        assertThat(poller.seek(MESSAGES + 1)).isFalse();
+        assertNextIndex(10);
+    }
+
+    @Test
+    public void seeksToFirstEntryOfSourceWithSourceSeqAtLeastGiven() throws Exception {
+        assertThat(poller.seekToSourceSeq(1, 60)).isEqualTo(60);
+        assertNextIndex(60);
+        assertThat(poller.seekToSourceSeq(1, 61)).isEqualTo(62);
+        assertThat(poller.seekToSourceSeq(2, 0)).isEqualTo(1);
+        assertThat(poller.seekToSourceSeq(2, SPARSE_INDEX)).isEqualTo(SPARSE_INDEX + 2);
+        assertThat(poller.seekToSourceSeq(3, 0)).isEqualTo(SPARSE_INDEX);
+    }
+
+    @Test
+    public void seeksToFirstEntryOfSourceWhenAllSourceSeqsAreGreater() throws Exception {
+        assertThat(poller.seekToSourceSeq(1, -5)).isEqualTo(0);
+        assertNextIndex(0);
+    }
+
+    @Test
+    public void seeksToTailWhenSourceSeqIsBeyondLastEntryOfSource() throws Exception {
+        assertThat(poller.seekToSourceSeq(1, MESSAGES - 1)).isEqualTo(MESSAGES);
+        assertThat(poller.seekToSourceSeq(3, SPARSE_INDEX + 1)).isEqualTo(MESSAGES);
+        assertThat(poller.poll(polledEntries)).isZero();
+    }
+
+    @Test
+    public void seeksToTailForMissingSource() throws Exception {
+        assertThat(poller.seekToSourceSeq(4, 0)).isEqualTo(MESSAGES);
+        assertThat(poller.poll(polledEntries)).isZero();
+    }
+
+    @Test
+    public void seeksToFirstEntryAtOrAfterEventTime() throws Exception {
+        assertThat(poller.seekToEventTime(eventTime(50))).isEqualTo(50);
+        assertNextIndex(50);
+        assertThat(poller.seekToEventTime(eventTime(50) + 1)).isEqualTo(51);
+    }
+
+    @Test
+    public void seeksToFirstEntryForEventTimeBeforeFirstEntry() throws Exception {
+        assertThat(poller.seekToEventTime(0)).isEqualTo(0);
+        assertNextIndex(0);
+    }
+
+    @Test
+    public void seeksToTailForEventTimeAfterLastEntry() throws Exception {
+        assertThat(poller.seekToEventTime(eventTime(MESSAGES))).isEqualTo(MESSAGES);
+        assertThat(poller.poll(polledEntries)).isZero();
+    }
+
+    private void assertNextIndex(final long index) {
+        final int polled = polledEntries.entries().size();
+        assertThat(poller.poll(polledEntries)).isEqualTo(1);
+        final PolledEntries.Entry entry = polledEntries.entries().get(polled);
+        assertThat(entry.index).isEqualTo(index);
+        assertThat(entry.sourceSeq).isEqualTo(index);
+        assertThat(entry.eventTimeNanos).isEqualTo(eventTime(index));
+        assertThat(PolledEntries.isMessage(entry, LENGTH)).isTrue();
+    }
+
+    private static long eventTime(final long index) {
+        return 1000 + 10 * index;
+    }
+}
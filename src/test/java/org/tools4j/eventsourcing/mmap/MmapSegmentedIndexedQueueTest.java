@@ -0,0 +1,129 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.Poller;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MmapSegmentedIndexedQueueTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long SEGMENT_SIZE = REGION_SIZE;
+    private static final int LENGTH = 100;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Test
+    public void rollsSegmentsAndPollsAcrossThem() throws Exception {
+        try (final IndexedQueue queue = queue(true)) {
+            append(queue, 0, 300);
+
+            assertThat(lastSegment()).isGreaterThan(2);
+            assertEntries(PolledEntries.pollAllFrom(queue), 0, 300);
+        }
+    }
+
+    @Test
+    public void continuesLastSegmentAfterReopen() throws Exception {
+        try (final IndexedQueue queue = queue(true)) {
+            append(queue, 0, 150);
+        }
+        final long lastSegment = lastSegment();
+        try (final IndexedQueue queue = queue(false)) {
+            append(queue, 150, 150);
+
+            assertThat(lastSegment()).isGreaterThan(lastSegment);
+            assertEntries(PolledEntries.pollAllFrom(queue), 0, 300);
+        }
+    }
+
+    @Test
+    public void seeksAcrossSegments() throws Exception {
+        try (final IndexedQueue queue = queue(true)) {
+            append(queue, 0, 300);
+
+            final PolledEntries polledEntries = new PolledEntries();
+            try (final Poller poller = queue.createPoller(polledEntries.options())) {
+                assertThat(poller.seek(250)).isTrue();
+                poller.poll(polledEntries);
+                assertThat(poller.seek(10)).isTrue();
+                poller.poll(polledEntries);
+                assertThat(poller.seekToSourceSeq(1, 180)).isEqualTo(180);
+                poller.poll(polledEntries);
+                assertThat(poller.seekToEventTime(2 * 120 + 1)).isEqualTo(121);
+                poller.poll(polledEntries);
+                assertThat(poller.seek(300)).isTrue();
+                assertThat(poller.poll(polledEntries)).isEqualTo(0);
+                assertThat(poller.seek(301)).isFalse();
+            }
+
+            assertThat(polledEntries.entries()).extracting(entry -> entry.index)
+                    .containsExactly(250L, 10L, 180L, 121L);
+            assertThat(polledEntries.entries()).allMatch(entry -> entry.sourceSeq == entry.index &&
+                    PolledEntries.isMessage(entry, LENGTH));
+        }
+    }
+
+    private IndexedQueue queue(final boolean clearFiles) throws IOException {
+        return new MmapSegmentedIndexedQueue(folder.getRoot().getPath(), "queue", clearFiles, regionRingFactory,
+                REGION_SIZE, 4, 1, SEGMENT_SIZE, 0);
+    }
+
+    private long lastSegment() throws IOException {
+        try (final SegmentManifest manifest = SegmentManifest.forReadOnly(folder.getRoot().getPath(), "queue")) {
+            return manifest.lastSegment();
+        }
+    }
+
+    /**
+     * Appends messages of source 1 with event time twice the sourceSeq.
+     */
+    private static void append(final IndexedQueue queue, final int firstSourceSeq, final int messages) {
+        for (int sourceSeq = firstSourceSeq; sourceSeq < firstSourceSeq + messages; sourceSeq++) {
+            queue.appender().accept(1, sourceSeq, 2 * sourceSeq, PolledEntries.message(1, sourceSeq, LENGTH), 0, LENGTH);
+        }
+    }
+
+    private static void assertEntries(final List<PolledEntries.Entry> entries, final int firstSourceSeq, final int messages) {
+        assertThat(entries).hasSize(messages);
+        for (int i = 0; i < messages; i++) {
+            final PolledEntries.Entry entry = entries.get(i);
+            assertThat(entry.index).isEqualTo(firstSourceSeq + i);
+            assertThat(entry.sourceSeq).isEqualTo(firstSourceSeq + i);
+            assertThat(entry.eventTimeNanos).isEqualTo(2L * (firstSourceSeq + i));
+            assertThat(PolledEntries.isMessage(entry, LENGTH)).isTrue();
+        }
+    }
+}
@@ -67,8 +67,7 @@ public class MultiPayloadAppendingAndPollingPerfTest {
                         ringSize,
                         regionsToMapAhead,
                         maxFileSize)
-                ),
-                new UnsafeBuffer(ByteBuffer.allocateDirect(8096)));
+                ));
 
         final Poller poller = new MmapIndexedPoller(
                 RegionAccessorSupplier.forReadOnly(
@@ -0,0 +1,138 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.DirectBuffer;
+import org.agrona.concurrent.UnsafeBuffer;
+import org.tools4j.eventsourcing.api.IndexedPollerFactory;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.MessageConsumer;
+import org.tools4j.eventsourcing.api.Poller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test consumer collecting polled entries with their index details.
+ */
+final class PolledEntries implements MessageConsumer {
+    private final List<Entry> entries = new ArrayList<>();
+    private long index;
+    private int source;
+    private long sourceSeq;
+    private long eventTimeNanos;
+
+    static final class Entry {
+        final long index;
+        final int source;
+        final long sourceSeq;
+        final long eventTimeNanos;
+        final byte[] message;
+
+        Entry(final long index, final int source, final long sourceSeq, final long eventTimeNanos, final byte[] message) {
+            this.index = index;
+            this.source = source;
+            this.sourceSeq = sourceSeq;
+            this.eventTimeNanos = eventTimeNanos;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return index + ":" + source + ":" + sourceSeq + "@" + eventTimeNanos + "[" + message.length + "]";
+        }
+    }
+
+    Poller.Options.Builder optionsBuilder() {
+        return Poller.Options.builder()
+                .onProcessingStart((index, source, sourceSeq, eventTimeNanos) -> {
+                    this.index = index;
+                    this.source = source;
+                    this.sourceSeq = sourceSeq;
+                    this.eventTimeNanos = eventTimeNanos;
+                });
+    }
+
+    Poller.Options options() {
+        return optionsBuilder().build();
+    }
+
+    /**
+     * Polls until no more entries are available.
+     * @param poller - poller created with {@link #options()}
+     * @return this
+     */
+    PolledEntries pollAll(final Poller poller) {
+        while (poller.poll(this) > 0);
+        return this;
+    }
+
+    /**
+     * @return entries of the queue polled from the first entry
+     */
+    static List<Entry> pollAllFrom(final IndexedPollerFactory queue) throws IOException {
+        final PolledEntries polledEntries = new PolledEntries();
+        try (final Poller poller = queue.createPoller(polledEntries.options())) {
+            return polledEntries.pollAll(poller).entries();
+        }
+    }
+
+    /**
+     * Appends messages of the given source and length with event time equal to the sourceSeq.
+     */
+    static void append(final IndexedQueue queue, final int source, final long firstSourceSeq, final int messages,
+                       final int length) {
+        for (long sourceSeq = firstSourceSeq; sourceSeq < firstSourceSeq + messages; sourceSeq++) {
+            queue.appender().accept(source, sourceSeq, sourceSeq, message(source, sourceSeq, length), 0, length);
+        }
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    @Override
+    public void accept(final DirectBuffer buffer, final int offset, final int length) {
+        final byte[] message = new byte[length];
+        buffer.getBytes(offset, message);
+        entries.add(new Entry(index, source, sourceSeq, eventTimeNanos, message));
+    }
+
+    /**
+     * @return message with content derived from source and sourceSeq
+     */
+    static UnsafeBuffer message(final int source, final long sourceSeq, final int length) {
+        final byte[] message = new byte[length];
+        for (int i = 0; i < length; i++) {
+            message[i] = (byte) (source * 31 + sourceSeq + i);
+        }
+        return new UnsafeBuffer(message);
+    }
+
+    static boolean isMessage(final Entry entry, final int length) {
+        return Arrays.equals(entry.message, message(entry.source, entry.sourceSeq, length).byteArray());
+    }
+}
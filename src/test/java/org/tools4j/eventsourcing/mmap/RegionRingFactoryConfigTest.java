@@ -0,0 +1,96 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.IndexedTransactionalQueue;
+import org.tools4j.eventsourcing.api.Transaction;
+import org.tools4j.eventsourcing.common.Doorbell;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RegionRingFactoryConfigTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int LENGTH = 100;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void asyncMapperWithIdleStrategyMapsRegions() throws Exception {
+        final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("ASYNC:BACKOFF");
+        try (final IndexedQueue queue = new MmapIndexedQueue(folder.getRoot().getPath(), "queue", true,
+                regionRingFactory, REGION_SIZE, 4, 1, MAX_FILE_SIZE)) {
+            regionRingFactory.onComplete();
+            //messages span more regions than the ring holds
+            PolledEntries.append(queue, 1, 0, 200, LENGTH);
+
+            assertThat(PolledEntries.pollAllFrom(queue)).hasSize(200)
+                    .allMatch(entry -> PolledEntries.isMessage(entry, LENGTH));
+        }
+    }
+
+    @Test
+    public void asyncMapperRejectsParking() throws Exception {
+        assertThatThrownBy(() -> RegionRingFactoryConfig.get("ASYNC:PARKING"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("PARKING");
+    }
+
+    @Test
+    public void queuesRingDoorbellWhileWaitersAreRegistered() throws Exception {
+        final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+        try (final MmapIndexedQueue queue = new MmapIndexedQueue(folder.getRoot().getPath(), "queue", true,
+                regionRingFactory, REGION_SIZE, 4, 1, MAX_FILE_SIZE);
+             final MmapIndexedTransactionalQueue transactionalQueue = new MmapIndexedTransactionalQueue(
+                     folder.getRoot().getPath(), "transactions", true, regionRingFactory, REGION_SIZE, 4, 1,
+                     MAX_FILE_SIZE)) {
+            assertRingsWhileWaitersAreRegistered(queue.doorbell(),
+                    () -> PolledEntries.append(queue, 1, 0, 1, LENGTH));
+            assertRingsWhileWaitersAreRegistered(transactionalQueue.doorbell(), () -> {
+                final Transaction transaction = transactionalQueue.appender();
+                transaction.init(1, 0, 0, false);
+                transaction.accept(PolledEntries.message(1, 0, LENGTH), 0, LENGTH);
+                transaction.commit();
+            });
+        }
+    }
+
+    private static void assertRingsWhileWaitersAreRegistered(final Doorbell doorbell, final Runnable append) {
+        final long sequence = doorbell.sequence();
+        append.run();
+        assertThat(doorbell.sequence()).isEqualTo(sequence);
+
+        doorbell.register();
+        append.run();
+        doorbell.deregister();
+        assertThat(doorbell.sequence()).isEqualTo(sequence + 1);
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SegmentRetentionTest {
+    private static final int REGION_SIZE = 4096;
+    private static final int LENGTH = 100;
+    private static final long CHECK_PERIOD_MILLIS = 5;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Test
+    public void removesSegmentsBelowWatermark() throws Exception {
+        try (final IndexedQueue queue = queue()) {
+            PolledEntries.append(queue, 1, 0, 300, LENGTH);
+            final long lastSegment = manifest().lastSegment();
+            final AtomicLong watermark = new AtomicLong(0);
+
+            final SegmentRetention retention = new SegmentRetention(directory(), "queue", 0,
+                    SegmentRetention.UNLIMITED, null, CHECK_PERIOD_MILLIS, watermark::get);
+            try {
+                TimeUnit.MILLISECONDS.sleep(20 * CHECK_PERIOD_MILLIS);
+                assertThat(firstSegment()).isEqualTo(0);
+                assertThat(segmentFiles(0)).allMatch(File::exists);
+
+                final long retainedSegment = lastSegment - 1;
+                watermark.set(firstIndex(retainedSegment));
+                await(() -> firstSegment() == retainedSegment);
+                TimeUnit.MILLISECONDS.sleep(20 * CHECK_PERIOD_MILLIS);
+
+                assertThat(firstSegment()).isEqualTo(retainedSegment);
+                for (long segment = 0; segment < retainedSegment; segment++) {
+                    assertThat(segmentFiles(segment)).allMatch(file -> !file.exists());
+                }
+                assertThat(segmentFiles(retainedSegment)).allMatch(File::exists);
+
+                watermark.set(Long.MAX_VALUE);
+                await(() -> firstSegment() == lastSegment);
+                TimeUnit.MILLISECONDS.sleep(20 * CHECK_PERIOD_MILLIS);
+                assertThat(firstSegment()).isEqualTo(lastSegment);
+                assertThat(segmentFiles(lastSegment)).allMatch(File::exists);
+            } finally {
+                retention.close();
+            }
+        }
+    }
+
+    @Test
+    public void archivesSegmentsExceedingRetainedBytes() throws Exception {
+        final File archive = new File(folder.getRoot(), "archive");
+        try (final IndexedQueue queue = queue()) {
+            PolledEntries.append(queue, 1, 0, 300, LENGTH);
+            final long lastSegment = manifest().lastSegment();
+
+            final SegmentRetention retention = new SegmentRetention(directory(), "queue", SegmentRetention.UNLIMITED,
+                    4 * REGION_SIZE, archive.getPath(), CHECK_PERIOD_MILLIS);
+            try {
+                await(() -> firstSegment() > 0 && segmentBytes(firstSegment(), lastSegment) <= 4 * REGION_SIZE);
+            } finally {
+                retention.close();
+            }
+
+            for (long segment = 0; segment < firstSegment(); segment++) {
+                assertThat(segmentFiles(segment)).allMatch(file -> !file.exists());
+                for (final File file : segmentFiles(segment)) {
+                    assertThat(new File(archive, file.getName())).exists();
+                }
+            }
+            assertThat(segmentFiles(lastSegment)).allMatch(File::exists);
+        }
+    }
+
+    private IndexedQueue queue() throws IOException {
+        return new MmapSegmentedIndexedQueue(directory(), "queue", true, regionRingFactory,
+                REGION_SIZE, 4, 1, REGION_SIZE, 0);
+    }
+
+    private String directory() {
+        return folder.getRoot().getPath();
+    }
+
+    private SegmentManifest manifest() throws IOException {
+        return SegmentManifest.forReadOnly(directory(), "queue");
+    }
+
+    private long firstSegment() {
+        try (final SegmentManifest manifest = manifest()) {
+            return manifest.firstSegment();
+        } catch (final IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private long firstIndex(final long segment) throws IOException {
+        try (final SegmentManifest manifest = manifest()) {
+            return manifest.firstIndex(segment);
+        }
+    }
+
+    private File[] segmentFiles(final long segment) {
+        final String segmentDirectory = SegmentManifest.segmentDirectory(directory(), "queue");
+        final String filePrefix = SegmentManifest.segmentFilePrefix("queue", segment);
+        return new File[] {new File(segmentDirectory, filePrefix + "_index"), new File(segmentDirectory, filePrefix + "_message")};
+    }
+
+    private long segmentBytes(final long firstSegment, final long lastSegment) {
+        long bytes = 0;
+        for (long segment = firstSegment; segment <= lastSegment; segment++) {
+            for (final File file : segmentFiles(segment)) {
+                bytes += file.length();
+            }
+        }
+        return bytes;
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(end);
+            TimeUnit.MILLISECONDS.sleep(CHECK_PERIOD_MILLIS);
+        }
+    }
+}
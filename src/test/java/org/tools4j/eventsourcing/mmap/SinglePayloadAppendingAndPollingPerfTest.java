@@ -68,8 +68,7 @@ public class SinglePayloadAppendingAndPollingPerfTest {
                                 regionsToMapAhead,
                                 maxFileSize
                         )
-                ),
-                new UnsafeBuffer(ByteBuffer.allocateDirect(8096))
+                )
         );
 
         final Poller poller = new MmapIndexedPoller(
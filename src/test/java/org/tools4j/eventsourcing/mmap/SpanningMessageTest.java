@@ -0,0 +1,131 @@
+/**
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2018 tools4j, Marco Terzer, Anton Anufriev
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package org.tools4j.eventsourcing.mmap;
+
+import org.agrona.MutableDirectBuffer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tools4j.eventsourcing.api.IndexedQueue;
+import org.tools4j.eventsourcing.api.IndexedTransactionalQueue;
+import org.tools4j.eventsourcing.api.Transaction;
+import org.tools4j.mmap.region.api.RegionRingFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SpanningMessageTest {
+    private static final int REGION_SIZE = 4096;
+    private static final long MAX_FILE_SIZE = 64L * 1024 * 1024;
+    private static final int LENGTH = 100;
+    private static final int SPANNING_LENGTH = 3 * REGION_SIZE + 100;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final RegionRingFactory regionRingFactory = RegionRingFactoryConfig.get("SYNC");
+
+    @Test
+    public void roundTripsMessagesLongerThanRegion() throws Exception {
+        roundTripsMessagesLongerThanRegion(false);
+    }
+
+    @Test
+    public void roundTripsMessagesLongerThanRegionWithChecksums() throws Exception {
+        roundTripsMessagesLongerThanRegion(true);
+    }
+
+    private void roundTripsMessagesLongerThanRegion(final boolean checksums) throws Exception {
+        try (final IndexedQueue queue = queue(true, checksums)) {
+            append(queue, 0, 10);
+        }
+        //recovery verifies checksums of the spanning messages in the tail region
+        try (final IndexedQueue queue = queue(false, checksums)) {
+            append(queue, 10, 10);
+
+            final List<PolledEntries.Entry> entries = PolledEntries.pollAllFrom(queue);
+
+            assertThat(entries).extracting(entry -> entry.sourceSeq).hasSize(20).isSorted();
+            assertThat(entries).allMatch(entry -> PolledEntries.isMessage(entry, length(entry.sourceSeq)));
+        }
+    }
+
+    @Test
+    public void extendsClaimBeyondRegion() throws Exception {
+        extendsClaimBeyondRegion(false);
+    }
+
+    @Test
+    public void extendsClaimBeyondRegionWithChecksums() throws Exception {
+        extendsClaimBeyondRegion(true);
+    }
+
+    private void extendsClaimBeyondRegion(final boolean checksums) throws Exception {
+        try (final IndexedTransactionalQueue queue = transactionalQueue(checksums)) {
+            //entries appended to a transaction extend the claim of the transaction message
+            for (int sourceSeq = 0; sourceSeq < 3; sourceSeq++) {
+                final Transaction transaction = queue.appender();
+                transaction.init(1, sourceSeq, sourceSeq, false);
+                transaction.accept(PolledEntries.message(1, sourceSeq, LENGTH), 0, LENGTH);
+                transaction.accept(PolledEntries.message(1, sourceSeq, SPANNING_LENGTH), 0, SPANNING_LENGTH);
+                final MutableDirectBuffer claimed = transaction.claim(SPANNING_LENGTH);
+                claimed.putBytes(0, PolledEntries.message(1, sourceSeq, SPANNING_LENGTH), 0, SPANNING_LENGTH);
+                assertThat(transaction.commit()).isEqualTo(3);
+            }
+
+            final List<PolledEntries.Entry> entries = PolledEntries.pollAllFrom(queue);
+
+            assertThat(entries).extracting(entry -> entry.index + ":" + entry.message.length).containsExactly(
+                    "0:" + LENGTH, "0:" + SPANNING_LENGTH, "0:" + SPANNING_LENGTH,
+                    "1:" + LENGTH, "1:" + SPANNING_LENGTH, "1:" + SPANNING_LENGTH,
+                    "2:" + LENGTH, "2:" + SPANNING_LENGTH, "2:" + SPANNING_LENGTH);
+            assertThat(entries).allMatch(entry -> PolledEntries.isMessage(entry, entry.message.length));
+        }
+    }
+
+    /**
+     * Appends messages with sourceSeq from the given first sourceSeq, every third message spans regions.
+     */
+    private static void append(final IndexedQueue queue, final int firstSourceSeq, final int messages) {
+        for (int sourceSeq = firstSourceSeq; sourceSeq < firstSourceSeq + messages; sourceSeq++) {
+            PolledEntries.append(queue, 1, sourceSeq, 1, length(sourceSeq));
+        }
+    }
+
+    private static int length(final long sourceSeq) {
+        return sourceSeq % 3 == 0 ? SPANNING_LENGTH : LENGTH;
+    }
+
+    private IndexedQueue queue(final boolean clearFiles, final boolean checksums) throws IOException {
+        return new MmapIndexedQueue(folder.getRoot().getPath(), "queue", clearFiles, regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE, new MmapIndexedQueue.Config().checksums(checksums));
+    }
+
+    private IndexedTransactionalQueue transactionalQueue(final boolean checksums) throws IOException {
+        return new MmapIndexedTransactionalQueue(folder.getRoot().getPath(), "queue", true, regionRingFactory,
+                REGION_SIZE, 4, 1, MAX_FILE_SIZE, new MmapIndexedTransactionalQueue.Config().checksums(checksums));
+    }
+}
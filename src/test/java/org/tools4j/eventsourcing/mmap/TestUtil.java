@@ -23,12 +23,13 @@
  */
 package org.tools4j.eventsourcing.mmap;
 
-import org.agrona.concurrent.BusySpinIdleStrategy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.tools4j.eventsourcing.common.IdleStrategyConfig;
 import org.tools4j.eventsourcing.common.ThreadService;
 import org.tools4j.eventsourcing.common.WhileLoop;
 import org.tools4j.mmap.region.api.RegionRingFactory;
+import org.tools4j.nobark.loop.IdleStrategy;
 import org.tools4j.nobark.loop.Service;
 import org.tools4j.nobark.loop.Step;
 
@@ -38,12 +39,17 @@ public class TestUtil {
     private static final Logger LOGGER = LoggerFactory.getLogger(TestUtil.class);
 
     public static Service startService(final String serviceName, final Step step, final BooleanSupplier stopCondition) {
+        return startService(serviceName, step, stopCondition, IdleStrategyConfig.busySpin());
+    }
+
+    public static Service startService(final String serviceName, final Step step, final BooleanSupplier stopCondition,
+                                       final IdleStrategy idleStrategy) {
         return new ThreadService(
                 serviceName,
                 (name, threadRunCondition) ->
                         new WhileLoop(name,
                                 () -> threadRunCondition.getAsBoolean() && !stopCondition.getAsBoolean(),
-                                new BusySpinIdleStrategy()::idle,
+                                idleStrategy,
                                 (message, exception) -> LOGGER.error("{} {}", message, exception),
                                 step
                         ),